@@ -1,24 +1,37 @@
 package com.muhend.backend.admin.controller;
 
+import com.muhend.backend.admin.dto.OrganizationDeletionJobDto;
 import com.muhend.backend.admin.service.OrganizationDeletionService;
 import com.muhend.backend.auth.model.PendingRegistration;
 import com.muhend.backend.auth.service.PendingRegistrationService;
-import com.muhend.backend.organization.service.OrganizationService;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.usage.dto.OrganizationUsageTotals;
+import com.muhend.backend.usage.dto.UsageLogPage;
+import com.muhend.backend.usage.dto.UsageTotals;
+import com.muhend.backend.usage.dto.UserUsageTotals;
 import com.muhend.backend.usage.model.UsageLog;
-import com.muhend.backend.usage.repository.UsageLogRepository;
+import com.muhend.backend.usage.service.UsageExportService;
+import com.muhend.backend.usage.service.UsageLogService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Contrôleur admin pour les opérations de maintenance
@@ -32,29 +45,36 @@ public class AdminController {
     
     private final OrganizationDeletionService organizationDeletionService;
     private final PendingRegistrationService pendingRegistrationService;
-    private final UsageLogRepository usageLogRepository;
-    private final OrganizationService organizationService;
+    private final UsageLogService usageLogService;
+    private final UsageExportService usageExportService;
+    private final OrganizationRepository organizationRepository;
     
     public AdminController(
         OrganizationDeletionService organizationDeletionService,
         PendingRegistrationService pendingRegistrationService,
-        UsageLogRepository usageLogRepository,
-        OrganizationService organizationService
+        UsageLogService usageLogService,
+        UsageExportService usageExportService,
+        OrganizationRepository organizationRepository
     ) {
         this.organizationDeletionService = organizationDeletionService;
         this.pendingRegistrationService = pendingRegistrationService;
-        this.usageLogRepository = usageLogRepository;
-        this.organizationService = organizationService;
+        this.usageLogService = usageLogService;
+        this.usageExportService = usageExportService;
+        this.organizationRepository = organizationRepository;
     }
     
     /**
-     * Supprime définitivement une organisation et tous ses éléments associés
+     * Lance la suppression définitive d'une organisation et de tous ses éléments associés
      * ⚠️ ATTENTION : Cette opération est irréversible !
      * 
+     * L'organisation est désactivée immédiatement, puis supprimée en arrière-plan par lots ;
+     * l'avancement est consultable via /admin/organization-deletions/{id}. Relancer une suppression
+     * en échec la reprend là où elle s'est arrêtée.
+     * 
      * Supprime :
      * - Les éléments de facture (invoice_item)
-     * - Les factures (invoice)
      * - Les paiements (payment)
+     * - Les factures (invoice)
      * - Les abonnements (subscription)
      * - Les demandes de devis (quote_request)
      * - Les logs d'utilisation (usage_log)
@@ -63,34 +83,16 @@ public class AdminController {
      * - L'organisation elle-même (organization)
      * 
      * @param organizationId ID de l'organisation à supprimer
-     * @return Statistiques de la suppression
+     * @return État de la suppression
      */
     @DeleteMapping("/organizations/{organizationId}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Map<String, Object>> deleteOrganization(@PathVariable Long organizationId) {
+    public ResponseEntity<?> deleteOrganization(@PathVariable Long organizationId) {
         logger.warn("=== DÉMARRAGE DE LA SUPPRESSION DE L'ORGANISATION {} ===", organizationId);
         logger.warn("Cette opération va supprimer définitivement l'organisation et tous ses éléments associés");
         
         try {
-            OrganizationDeletionService.DeletionResult result = organizationDeletionService.deleteOrganization(organizationId);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", result.isSuccess());
-            response.put("message", "Organisation supprimée avec succès");
-            response.put("organizationId", result.getOrganizationId());
-            response.put("organizationName", result.getOrganizationName());
-            response.put("deletedInvoiceItems", result.getDeletedInvoiceItems());
-            response.put("deletedInvoices", result.getDeletedInvoices());
-            response.put("deletedPayments", result.getDeletedPayments());
-            response.put("deletedSubscriptions", result.getDeletedSubscriptions());
-            response.put("deletedQuoteRequests", result.getDeletedQuoteRequests());
-            response.put("deletedUsageLogs", result.getDeletedUsageLogs());
-            response.put("deletedQuotaAlerts", result.getDeletedQuotaAlerts());
-            response.put("deletedOrganizationUsers", result.getDeletedOrganizationUsers());
-            
-            logger.info("Suppression terminée: organisation {} supprimée", result.getOrganizationName());
-            
-            return ResponseEntity.ok(response);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(organizationDeletionService.startDeletion(organizationId));
         } catch (IllegalArgumentException e) {
             logger.error("Organisation non trouvée: {}", e.getMessage());
             return ResponseEntity.status(404).body(Map.of(
@@ -98,13 +100,35 @@ public class AdminController {
                 "error", e.getMessage()
             ));
         } catch (Exception e) {
-            logger.error("Erreur lors de la suppression de l'organisation {}", organizationId, e);
+            logger.error("Erreur lors du lancement de la suppression de l'organisation {}", organizationId, e);
             return ResponseEntity.status(500).body(Map.of(
                 "success", false,
                 "error", "Erreur lors de la suppression: " + e.getMessage()
             ));
         }
     }
+    
+    /**
+     * Récupère les suppressions d'organisations les plus récentes (50)
+     */
+    @GetMapping("/organization-deletions")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<OrganizationDeletionJobDto>> getOrganizationDeletions() {
+        return ResponseEntity.ok(organizationDeletionService.getRecentJobs());
+    }
+    
+    /**
+     * Récupère l'avancement d'une suppression d'organisation : étape courante et lignes supprimées par table
+     */
+    @GetMapping("/organization-deletions/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<OrganizationDeletionJobDto> getOrganizationDeletion(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(organizationDeletionService.getJob(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
 
     /**
      * Récupère tous les utilisateurs en attente d'inscription
@@ -202,108 +226,157 @@ public class AdminController {
                     .withHour(23).withMinute(59).withSecond(59).withNano(999999999);
         }
         
-        // Récupérer les logs selon les filtres
-        List<UsageLog> logs;
-        if (organizationId != null) {
-            logs = usageLogRepository.findByOrganizationIdAndTimestampBetween(organizationId, startDateTime, endDateTime);
-        } else {
-            logs = usageLogRepository.findByTimestampBetween(startDateTime, endDateTime);
-        }
-        
-        // Calculer les statistiques globales
-        long totalRequests = logs.size();
-        BigDecimal totalCostUsd = logs.stream()
-                .filter(log -> log.getCostUsd() != null)
-                .map(UsageLog::getCostUsd)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        long totalTokens = logs.stream()
-                .filter(log -> log.getTokensUsed() != null)
-                .mapToLong(UsageLog::getTokensUsed)
-                .sum();
+        // Agrégats calculés en SQL (aucun log chargé en mémoire)
+        UsageTotals totals = usageLogService.getUsageTotals(organizationId, null, startDateTime, endDateTime);
         
         Map<String, Object> response = new LinkedHashMap<>();
-        response.put("totalRequests", totalRequests);
-        response.put("totalCostUsd", totalCostUsd.doubleValue());
-        response.put("totalTokens", totalTokens);
+        response.put("totalRequests", totals.getRequestCount());
+        response.put("totalCostUsd", toDouble(totals.getTotalCostUsd()));
+        response.put("totalTokens", totals.getTotalTokens() != null ? totals.getTotalTokens() : 0L);
         
         // Statistiques par organisation (si pas de filtre organisation)
         if (organizationId == null) {
-            Map<Long, List<UsageLog>> logsByOrg = logs.stream()
-                    .filter(log -> log.getOrganizationId() != null)
-                    .collect(Collectors.groupingBy(UsageLog::getOrganizationId));
+            List<OrganizationUsageTotals> totalsByOrg = usageLogService.getUsageTotalsByOrganization(startDateTime, endDateTime);
+            
+            // Noms des organisations en une seule requête
+            Map<Long, String> organizationNames = organizationRepository.findAllById(
+                    totalsByOrg.stream().map(OrganizationUsageTotals::getOrganizationId).toList())
+                    .stream()
+                    .collect(Collectors.toMap(Organization::getId, Organization::getName));
             
             List<Map<String, Object>> statsByOrganization = new ArrayList<>();
-            for (Map.Entry<Long, List<UsageLog>> entry : logsByOrg.entrySet()) {
-                Long orgId = entry.getKey();
-                List<UsageLog> orgLogs = entry.getValue();
-                
-                try {
-                    var orgDto = organizationService.getOrganizationById(orgId);
-                    if (orgDto != null) {
-                        Map<String, Object> orgStats = new LinkedHashMap<>();
-                        orgStats.put("organizationId", orgId);
-                        orgStats.put("organizationName", orgDto.getName());
-                        orgStats.put("requestCount", orgLogs.size());
-                        orgStats.put("totalCostUsd", orgLogs.stream()
-                                .filter(log -> log.getCostUsd() != null)
-                                .map(UsageLog::getCostUsd)
-                                .reduce(BigDecimal.ZERO, BigDecimal::add).doubleValue());
-                        orgStats.put("totalTokens", orgLogs.stream()
-                                .filter(log -> log.getTokensUsed() != null)
-                                .mapToLong(UsageLog::getTokensUsed)
-                                .sum());
-                        statsByOrganization.add(orgStats);
-                    }
-                } catch (Exception e) {
-                    logger.warn("Impossible de récupérer l'organisation {}: {}", orgId, e.getMessage());
+            for (OrganizationUsageTotals orgTotals : totalsByOrg) {
+                String organizationName = organizationNames.get(orgTotals.getOrganizationId());
+                if (organizationName == null) {
+                    logger.warn("Impossible de récupérer l'organisation {}", orgTotals.getOrganizationId());
+                    continue;
                 }
+                Map<String, Object> orgStats = new LinkedHashMap<>();
+                orgStats.put("organizationId", orgTotals.getOrganizationId());
+                orgStats.put("organizationName", organizationName);
+                orgStats.put("requestCount", orgTotals.getRequestCount());
+                orgStats.put("totalCostUsd", toDouble(orgTotals.getTotalCostUsd()));
+                orgStats.put("totalTokens", orgTotals.getTotalTokens() != null ? orgTotals.getTotalTokens() : 0L);
+                statsByOrganization.add(orgStats);
             }
             response.put("statsByOrganization", statsByOrganization);
         }
         
         // Statistiques par utilisateur
-        Map<String, List<UsageLog>> logsByUser = logs.stream()
-                .collect(Collectors.groupingBy(UsageLog::getKeycloakUserId));
-        
         List<Map<String, Object>> statsByUser = new ArrayList<>();
-        for (Map.Entry<String, List<UsageLog>> entry : logsByUser.entrySet()) {
-            String userId = entry.getKey();
-            List<UsageLog> userLogs = entry.getValue();
-            
+        for (UserUsageTotals userTotals : usageLogService.getUsageTotalsByUser(organizationId, startDateTime, endDateTime)) {
             Map<String, Object> userStats = new LinkedHashMap<>();
-            userStats.put("keycloakUserId", userId);
-            userStats.put("requestCount", userLogs.size());
-            userStats.put("totalCostUsd", userLogs.stream()
-                    .filter(log -> log.getCostUsd() != null)
-                    .map(UsageLog::getCostUsd)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add).doubleValue());
-            userStats.put("totalTokens", userLogs.stream()
-                    .filter(log -> log.getTokensUsed() != null)
-                    .mapToLong(UsageLog::getTokensUsed)
-                    .sum());
+            userStats.put("keycloakUserId", userTotals.getKeycloakUserId());
+            userStats.put("requestCount", userTotals.getRequestCount());
+            userStats.put("totalCostUsd", toDouble(userTotals.getTotalCostUsd()));
+            userStats.put("totalTokens", userTotals.getTotalTokens() != null ? userTotals.getTotalTokens() : 0L);
             statsByUser.add(userStats);
         }
         response.put("statsByUser", statsByUser);
         
         // Utilisations récentes (10 dernières)
-        List<Map<String, Object>> recentUsage = logs.stream()
-                .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                .limit(10)
-                .map(log -> {
-                    Map<String, Object> logMap = new LinkedHashMap<>();
-                    logMap.put("id", log.getId());
-                    logMap.put("keycloakUserId", log.getKeycloakUserId());
-                    logMap.put("organizationId", log.getOrganizationId());
-                    logMap.put("endpoint", log.getEndpoint());
-                    logMap.put("searchTerm", log.getSearchTerm());
-                    logMap.put("tokensUsed", log.getTokensUsed());
-                    logMap.put("costUsd", log.getCostUsd() != null ? log.getCostUsd().doubleValue() : null);
-                    logMap.put("timestamp", log.getTimestamp().toString());
-                    return logMap;
-                })
+        List<Map<String, Object>> recentUsage = usageLogService
+                .getRecentUsageLogs(organizationId, null, startDateTime, endDateTime, 10)
+                .stream()
+                .map(this::toUsageLogMap)
                 .collect(Collectors.toList());
         response.put("recentUsage", recentUsage);
         
         return ResponseEntity.ok(response);
     }
+    
+    /**
+     * Parcourt les logs d'utilisation (du plus récent au plus ancien) par pagination par curseur
+     * @param organizationId ID de l'organisation (optionnel)
+     * @param startDate Date de début (optionnel, format: yyyy-MM-dd)
+     * @param endDate Date de fin (optionnel, format: yyyy-MM-dd)
+     * @param cursor Curseur renvoyé par la page précédente (optionnel)
+     * @param limit Taille de la page (défaut 50, max 500)
+     * @return Page de logs et curseur suivant
+     */
+    @GetMapping("/usage/logs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getUsageLogs(
+            @RequestParam(required = false) Long organizationId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        LocalDateTime startDateTime = startDate != null ? startDate.atStartOfDay() : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime endDateTime = endDate != null ? endDate.atTime(LocalTime.MAX) : LocalDateTime.now();
+        
+        try {
+            UsageLogPage page = usageLogService.getUsageLogsPage(organizationId, null, startDateTime, endDateTime, cursor, limit);
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("items", page.getItems().stream().map(this::toUsageLogMap).toList());
+            response.put("nextCursor", page.getNextCursor());
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Exporte les logs d'utilisation bruts d'une organisation (CSV ou NDJSON), en flux continu
+     * @param organizationId ID de l'organisation
+     * @param startDate Date de début (format: yyyy-MM-dd)
+     * @param endDate Date de fin incluse (format: yyyy-MM-dd)
+     * @param format csv (défaut) ou ndjson
+     * @param gzip true pour compresser le fichier (.gz)
+     * @return Fichier d'export
+     */
+    @GetMapping("/usage/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportUsageLogs(
+            @RequestParam Long organizationId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        UsageExportService.ExportFormat exportFormat;
+        try {
+            exportFormat = UsageExportService.ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        logger.info("Export des logs d'utilisation - organizationId: {}, startDate: {}, endDate: {}, format: {}, gzip: {}",
+                organizationId, startDate, endDate, exportFormat, gzip);
+        
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+            usageExportService.exportOrganizationUsage(organizationId, startDate.atStartOfDay(),
+                    endDate.atTime(LocalTime.MAX), exportFormat, target);
+            if (gzip) {
+                ((GZIPOutputStream) target).finish();
+            }
+        };
+        
+        String filename = "usage-" + organizationId + "-" + startDate + "-" + endDate + "." + exportFormat.getExtension()
+                + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+    
+    private Map<String, Object> toUsageLogMap(UsageLog log) {
+        Map<String, Object> logMap = new LinkedHashMap<>();
+        logMap.put("id", log.getId());
+        logMap.put("keycloakUserId", log.getKeycloakUserId());
+        logMap.put("organizationId", log.getOrganizationId());
+        logMap.put("endpoint", log.getEndpoint());
+        logMap.put("searchTerm", log.getSearchTerm());
+        logMap.put("tokensUsed", log.getTokensUsed());
+        logMap.put("costUsd", log.getCostUsd() != null ? log.getCostUsd().doubleValue() : null);
+        logMap.put("timestamp", log.getTimestamp().toString());
+        return logMap;
+    }
+    
+    private static double toDouble(BigDecimal value) {
+        return value != null ? value.doubleValue() : 0.0;
+    }
 }
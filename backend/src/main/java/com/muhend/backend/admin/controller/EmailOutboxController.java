@@ -0,0 +1,41 @@
+package com.muhend.backend.admin.controller;
+
+import com.muhend.backend.email.service.EmailOutboxDispatcher;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Contrôleur admin pour le suivi de la file d'envoi des emails.
+ */
+@RestController
+@RequestMapping("/admin/email-outbox")
+public class EmailOutboxController {
+    
+    private final EmailOutboxDispatcher emailOutboxDispatcher;
+    
+    public EmailOutboxController(EmailOutboxDispatcher emailOutboxDispatcher) {
+        this.emailOutboxDispatcher = emailOutboxDispatcher;
+    }
+    
+    /**
+     * Métriques de la file d'envoi : messages en attente, envoyés, abandonnés, et activité de l'instance.
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(emailOutboxDispatcher.getStats());
+    }
+    
+    /**
+     * Déclenche immédiatement l'envoi des messages en attente.
+     */
+    @PostMapping("/dispatch")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> dispatch() {
+        emailOutboxDispatcher.dispatch();
+        return ResponseEntity.ok(emailOutboxDispatcher.getStats());
+    }
+}
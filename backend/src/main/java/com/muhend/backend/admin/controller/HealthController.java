@@ -1,5 +1,8 @@
 package com.muhend.backend.admin.controller;
 
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -15,6 +18,12 @@ import java.util.Map;
 @RequestMapping("/health")
 public class HealthController {
     
+    private final ApplicationAvailability applicationAvailability;
+    
+    public HealthController(ApplicationAvailability applicationAvailability) {
+        this.applicationAvailability = applicationAvailability;
+    }
+    
     @GetMapping
     public ResponseEntity<Map<String, String>> health() {
         return ResponseEntity.ok(Map.of(
@@ -23,5 +32,19 @@ public class HealthController {
             "message", "Backend is running"
         ));
     }
+    
+    /**
+     * Disponibilité pour le trafic : 503 tant que le démarrage n'est pas terminé
+     * (traitements de ApplicationReadyEvent compris). Sonde de disponibilité des réplicas
+     * et mesure du temps de démarrage (scripts/startup-benchmark.sh).
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, String>> ready() {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        return ResponseEntity.status(state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+            .body(Map.of(
+                "status", state.name(),
+                "service", "backend"
+            ));
+    }
 }
-
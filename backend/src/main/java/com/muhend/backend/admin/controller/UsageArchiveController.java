@@ -0,0 +1,137 @@
+package com.muhend.backend.admin.controller;
+
+import com.muhend.backend.usage.dto.UsageArchiveIndex;
+import com.muhend.backend.usage.service.UsageArchiveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contrôleur admin pour l'archivage à froid des logs d'utilisation.
+ */
+@RestController
+@RequestMapping("/admin/usage/archive")
+public class UsageArchiveController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UsageArchiveController.class);
+    
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    
+    private final UsageArchiveService usageArchiveService;
+    
+    public UsageArchiveController(UsageArchiveService usageArchiveService) {
+        this.usageArchiveService = usageArchiveService;
+    }
+    
+    /**
+     * Lance immédiatement l'archivage des logs d'utilisation antérieurs à la période de rétention.
+     * ⚠️ ATTENTION : Les logs archivés sont supprimés de la base de données !
+     * @return Statistiques de l'archivage
+     */
+    @PostMapping("/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> runArchive() {
+        logger.warn("=== DÉMARRAGE MANUEL DE L'ARCHIVAGE DES LOGS D'UTILISATION ===");
+        try {
+            UsageArchiveService.ArchiveResult result = usageArchiveService.archiveOldUsageLogs();
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("cutoff", result.getCutoff());
+            response.put("archivedRows", result.getArchivedRows());
+            response.put("deletedRows", result.getDeletedRows());
+            response.put("segments", result.getSegments().stream().map(UsageArchiveIndex::getSegment).toList());
+            return ResponseEntity.ok(response);
+        } catch (IllegalStateException e) {
+            logger.error("Archivage impossible: {}", e.getMessage());
+            return ResponseEntity.status(409).body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        } catch (Exception e) {
+            logger.error("Erreur lors de l'archivage des logs d'utilisation", e);
+            return ResponseEntity.status(500).body(Map.of(
+                "success", false,
+                "error", "Erreur lors de l'archivage: " + e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Liste les segments d'archive et leur index.
+     */
+    @GetMapping("/segments")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<UsageArchiveIndex>> getSegments() throws java.io.IOException {
+        return ResponseEntity.ok(usageArchiveService.listSegments());
+    }
+    
+    /**
+     * Vérifie l'intégrité d'un segment (empreinte SHA-256 et nombre de lignes).
+     * @param segment Nom du fichier de données du segment
+     */
+    @GetMapping("/segments/{segment}/verify")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> verifySegment(@PathVariable String segment) {
+        try {
+            UsageArchiveIndex index = usageArchiveService.verifySegment(segment);
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "segment", index.getSegment(),
+                "rowCount", index.getRowCount(),
+                "sha256", index.getSha256()
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(404).body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        } catch (Exception e) {
+            logger.error("Segment d'archive {} invalide", segment, e);
+            return ResponseEntity.status(500).body(Map.of(
+                "success", false,
+                "error", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Relit les logs archivés d'une organisation sur une période, en NDJSON (une ligne par log),
+     * directement depuis les segments sans les recharger en base.
+     * @param organizationId ID de l'organisation
+     * @param startDate Date de début (format: yyyy-MM-dd)
+     * @param endDate Date de fin incluse (format: yyyy-MM-dd)
+     */
+    @GetMapping("/organizations/{organizationId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> streamOrganizationUsage(
+            @PathVariable Long organizationId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        logger.info("Relecture des logs archivés - organizationId: {}, startDate: {}, endDate: {}",
+                organizationId, startDate, endDate);
+        
+        StreamingResponseBody body = out -> {
+            long count = usageArchiveService.streamOrganizationUsage(
+                    organizationId, startDate.atStartOfDay(), endDate.atTime(LocalTime.MAX), out);
+            logger.info("{} log(s) archivé(s) relu(s) pour l'organisation {}", count, organizationId);
+        };
+        
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"usage-archive-" + organizationId
+                        + "-" + startDate + "-" + endDate + ".ndjson\"")
+                .body(body);
+    }
+}
@@ -0,0 +1,52 @@
+package com.muhend.backend.admin.controller;
+
+import com.muhend.backend.admin.service.UserCleanupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Contrôleur admin pour le nettoyage des utilisateurs Keycloak avec les rôles ORGANIZATION ou COLLABORATOR.
+ */
+@RestController
+@RequestMapping("/admin/user-cleanup")
+public class UserCleanupController {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCleanupController.class);
+
+    private final UserCleanupService userCleanupService;
+
+    public UserCleanupController(UserCleanupService userCleanupService) {
+        this.userCleanupService = userCleanupService;
+    }
+
+    /**
+     * Lance le nettoyage en arrière-plan ; l'avancement est consultable via GET /admin/user-cleanup.
+     * ⚠️ ATTENTION : Les comptes Keycloak et les données associées sont supprimés définitivement !
+     */
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startCleanup() {
+        logger.warn("=== DÉMARRAGE MANUEL DU NETTOYAGE DES UTILISATEURS ===");
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(userCleanupService.startCleanup());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Avancement du dernier nettoyage.
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<UserCleanupService.CleanupProgress> getProgress() {
+        UserCleanupService.CleanupProgress progress = userCleanupService.getProgress();
+        return progress != null ? ResponseEntity.ok(progress) : ResponseEntity.noContent().build();
+    }
+}
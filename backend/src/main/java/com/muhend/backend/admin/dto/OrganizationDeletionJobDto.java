@@ -0,0 +1,40 @@
+package com.muhend.backend.admin.dto;
+
+import com.muhend.backend.admin.model.OrganizationDeletionJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO pour l'avancement de la suppression d'une organisation.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrganizationDeletionJobDto {
+    
+    private Long id;
+    private Long organizationId;
+    private String organizationName;
+    private OrganizationDeletionJob.JobStatus status;
+    private OrganizationDeletionJob.Step step;
+    private long deletedInvoiceItems;
+    private long deletedPayments;
+    private long deletedInvoices;
+    private long deletedSubscriptions;
+    private long deletedQuoteRequests;
+    private long deletedUsageLogs;
+    private long deletedQuotaAlerts;
+    private long deletedOrganizationUsers;
+    private String errorMessage;
+    private LocalDateTime startedAt;
+    private LocalDateTime lastCheckpointAt;
+    private LocalDateTime finishedAt;
+    
+    /**
+     * Suppression en cours d'exécution sur cette instance
+     */
+    private boolean running;
+}
@@ -0,0 +1,127 @@
+package com.muhend.backend.admin.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant la suppression définitive d'une organisation, exécutée en arrière-plan par lots.
+ * L'étape courante et les compteurs servent de point de reprise.
+ */
+@Entity
+@Table(name = "organization_deletion_job")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrganizationDeletionJob {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "organization_id", nullable = false)
+    private Long organizationId;
+    
+    @Column(name = "organization_name")
+    private String organizationName;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private JobStatus status = JobStatus.RUNNING;
+    
+    @Column(name = "step", nullable = false, length = 30)
+    @Enumerated(EnumType.STRING)
+    private Step step = Step.INVOICE_ITEMS;
+    
+    @Column(name = "deleted_invoice_items", nullable = false)
+    private long deletedInvoiceItems;
+    
+    @Column(name = "deleted_payments", nullable = false)
+    private long deletedPayments;
+    
+    @Column(name = "deleted_invoices", nullable = false)
+    private long deletedInvoices;
+    
+    @Column(name = "deleted_subscriptions", nullable = false)
+    private long deletedSubscriptions;
+    
+    @Column(name = "deleted_quote_requests", nullable = false)
+    private long deletedQuoteRequests;
+    
+    @Column(name = "deleted_usage_logs", nullable = false)
+    private long deletedUsageLogs;
+    
+    @Column(name = "deleted_quota_alerts", nullable = false)
+    private long deletedQuotaAlerts;
+    
+    @Column(name = "deleted_organization_users", nullable = false)
+    private long deletedOrganizationUsers;
+    
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+    
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+    
+    @Column(name = "last_checkpoint_at")
+    private LocalDateTime lastCheckpointAt;
+    
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (startedAt == null) {
+            startedAt = LocalDateTime.now();
+        }
+        if (status == null) {
+            status = JobStatus.RUNNING;
+        }
+        if (step == null) {
+            step = Step.INVOICE_ITEMS;
+        }
+    }
+    
+    /**
+     * Ajoute les lignes supprimées par un lot au compteur de l'étape.
+     */
+    public void addDeleted(Step step, int count) {
+        switch (step) {
+            case INVOICE_ITEMS -> deletedInvoiceItems += count;
+            case PAYMENTS -> deletedPayments += count;
+            case INVOICES -> deletedInvoices += count;
+            case SUBSCRIPTIONS -> deletedSubscriptions += count;
+            case QUOTE_REQUESTS -> deletedQuoteRequests += count;
+            case USAGE_LOGS -> deletedUsageLogs += count;
+            case QUOTA_ALERTS -> deletedQuotaAlerts += count;
+            case ORGANIZATION_USERS -> deletedOrganizationUsers += count;
+            case ORGANIZATION -> {
+                // L'organisation elle-même : pas de compteur
+            }
+        }
+    }
+    
+    /**
+     * Étapes, dans l'ordre imposé par les clés étrangères
+     */
+    public enum Step {
+        INVOICE_ITEMS,      // Éléments des factures de l'organisation
+        PAYMENTS,           // Paiements (référencent les factures et les abonnements)
+        INVOICES,
+        SUBSCRIPTIONS,
+        QUOTE_REQUESTS,
+        USAGE_LOGS,
+        QUOTA_ALERTS,
+        ORGANIZATION_USERS,
+        ORGANIZATION        // L'organisation elle-même
+    }
+    
+    public enum JobStatus {
+        RUNNING,    // En cours (ou interrompue, à reprendre)
+        COMPLETED,  // Organisation supprimée
+        FAILED      // Arrêtée sur une erreur (relancer la suppression pour la reprendre)
+    }
+}
@@ -0,0 +1,31 @@
+package com.muhend.backend.admin.repository;
+
+import com.muhend.backend.admin.model.OrganizationDeletionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OrganizationDeletionJobRepository extends JpaRepository<OrganizationDeletionJob, Long> {
+    
+    /**
+     * Récupère la suppression non terminée (en cours ou en échec) d'une organisation.
+     */
+    @Query("SELECT j FROM OrganizationDeletionJob j WHERE j.organizationId = :organizationId " +
+           "AND j.status <> com.muhend.backend.admin.model.OrganizationDeletionJob.JobStatus.COMPLETED")
+    Optional<OrganizationDeletionJob> findUnfinishedByOrganizationId(@Param("organizationId") Long organizationId);
+    
+    /**
+     * Récupère les suppressions dans un statut donné (ex: RUNNING pour la reprise au démarrage).
+     */
+    List<OrganizationDeletionJob> findByStatusOrderByIdAsc(OrganizationDeletionJob.JobStatus status);
+    
+    /**
+     * Récupère les 50 suppressions les plus récentes.
+     */
+    List<OrganizationDeletionJob> findTop50ByOrderByIdDesc();
+}
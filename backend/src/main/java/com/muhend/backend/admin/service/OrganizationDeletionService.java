@@ -1,8 +1,15 @@
 package com.muhend.backend.admin.service;
 
+import com.muhend.backend.admin.dto.OrganizationDeletionJobDto;
+import com.muhend.backend.admin.model.OrganizationDeletionJob;
+import com.muhend.backend.admin.repository.OrganizationDeletionJobRepository;
 import com.muhend.backend.alert.repository.QuotaAlertRepository;
 import com.muhend.backend.invoice.repository.InvoiceItemRepository;
 import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.invoice.service.InvoicePdfCacheService;
+import com.muhend.backend.job.service.JobLockService;
+import com.muhend.backend.organization.event.OrganizationEntitlementChangedEvent;
+import com.muhend.backend.organization.event.OrganizationMembershipChangedEvent;
 import com.muhend.backend.organization.model.Organization;
 import com.muhend.backend.organization.repository.OrganizationRepository;
 import com.muhend.backend.organization.repository.OrganizationUserRepository;
@@ -10,21 +17,53 @@ import com.muhend.backend.payment.repository.PaymentRepository;
 import com.muhend.backend.payment.repository.SubscriptionRepository;
 import com.muhend.backend.pricing.repository.QuoteRequestRepository;
 import com.muhend.backend.usage.repository.UsageLogRepository;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Service pour supprimer définitivement une organisation et tous ses éléments associés
+ * Service pour supprimer définitivement une organisation et tous ses éléments associés.
+ *
+ * La suppression s'exécute en arrière-plan, table par table, par lots de DELETE ensemblistes
+ * (admin.organization-deletion.chunk-size lignes par requête, une transaction par lot) : aucune transaction
+ * ne verrouille toutes les lignes de l'organisation, et l'étape courante et les compteurs du suivi
+ * (organization_deletion_job) sont mis à jour dans la transaction de chaque lot. Une suppression interrompue
+ * (arrêt, crash) est reprise au démarrage suivant ; une suppression en échec est reprise en la relançant.
+ *
+ * Ordre de suppression (pour respecter les contraintes de clés étrangères) : voir {@link OrganizationDeletionJob.Step}.
+ * L'organisation est désactivée dès le lancement, et la facturation et la synchronisation Stripe l'ignorent
+ * ({@link OrganizationRepository#isDeletionPending(Long)}). Des lignes ajoutées malgré tout après leur étape
+ * (traitement déjà en cours au lancement) sont supprimées par un dernier passage sur toutes les tables avant
+ * l'organisation elle-même ; s'il en trouve, la suppression reprend à la première étape.
+ * Les PDF en cache des factures supprimées sont effacés après la validation de chaque lot.
  */
 @Service
 public class OrganizationDeletionService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(OrganizationDeletionService.class);
-    
+
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 1000;
+
+    private final OrganizationDeletionJobRepository jobRepository;
     private final OrganizationRepository organizationRepository;
     private final UsageLogRepository usageLogRepository;
     private final QuotaAlertRepository quotaAlertRepository;
@@ -34,8 +73,32 @@ public class OrganizationDeletionService {
     private final InvoiceItemRepository invoiceItemRepository;
     private final PaymentRepository paymentRepository;
     private final SubscriptionRepository subscriptionRepository;
-    
+    private final InvoicePdfCacheService invoicePdfCacheService;
+    private final JobLockService jobLockService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Exécution des suppressions, une à la fois
+     */
+    private final ExecutorService coordinator;
+
+    /**
+     * Suppressions en cours d'exécution sur cette instance
+     */
+    private final Map<Long, CompletableFuture<Void>> runningFutures = new ConcurrentHashMap<>();
+
+    @Value("${admin.organization-deletion.chunk-size:5000}")
+    private int chunkSize;
+
+    /**
+     * Bail d'une suppression (prolongé à chaque lot) : une suppression n'est exécutée que par une instance à la fois
+     */
+    @Value("${admin.organization-deletion.lease-ms:600000}")
+    private long leaseMs;
+
     public OrganizationDeletionService(
+            OrganizationDeletionJobRepository jobRepository,
             OrganizationRepository organizationRepository,
             UsageLogRepository usageLogRepository,
             QuotaAlertRepository quotaAlertRepository,
@@ -44,7 +107,12 @@ public class OrganizationDeletionService {
             InvoiceRepository invoiceRepository,
             InvoiceItemRepository invoiceItemRepository,
             PaymentRepository paymentRepository,
-            SubscriptionRepository subscriptionRepository) {
+            SubscriptionRepository subscriptionRepository,
+            InvoicePdfCacheService invoicePdfCacheService,
+            JobLockService jobLockService,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager) {
+        this.jobRepository = jobRepository;
         this.organizationRepository = organizationRepository;
         this.usageLogRepository = usageLogRepository;
         this.quotaAlertRepository = quotaAlertRepository;
@@ -54,221 +122,297 @@ public class OrganizationDeletionService {
         this.invoiceItemRepository = invoiceItemRepository;
         this.paymentRepository = paymentRepository;
         this.subscriptionRepository = subscriptionRepository;
+        this.invoicePdfCacheService = invoicePdfCacheService;
+        this.jobLockService = jobLockService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.coordinator = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("organization-deletion").factory());
     }
-    
+
+    // ===================================================
+    // DÉCLENCHEMENT
+    // ===================================================
+
     /**
-     * Supprime définitivement une organisation et tous ses éléments associés
-     * 
-     * Ordre de suppression (pour respecter les contraintes de clés étrangères) :
-     * 1. InvoiceItems (liés aux invoices)
-     * 2. Invoices (liés à l'organisation)
-     * 3. Payments (liés à l'organisation)
-     * 4. Subscriptions (liés à l'organisation)
-     * 5. QuoteRequests (liés à l'organisation)
-     * 6. UsageLogs (liés à l'organisation)
-     * 7. QuotaAlerts (liés à l'organisation)
-     * 8. OrganizationUsers (liés à l'organisation)
-     * 9. Organization (l'organisation elle-même)
-     * 
+     * Lance (ou reprend) la suppression définitive d'une organisation.
+     * La suppression s'exécute en arrière-plan ; son état est consultable via {@link #getJob(Long)}.
+     *
      * @param organizationId ID de l'organisation à supprimer
-     * @return Résultat de la suppression avec statistiques
+     * @return L'état de la suppression au moment du lancement
+     * @throws IllegalArgumentException si l'organisation n'existe pas (et qu'aucune suppression n'est en cours)
      */
-    @Transactional
-    public DeletionResult deleteOrganization(Long organizationId) {
-        logger.warn("=== DÉBUT DE LA SUPPRESSION DE L'ORGANISATION {} ===", organizationId);
-        
-        // Vérifier que l'organisation existe
-        Organization organization = organizationRepository.findById(organizationId)
-            .orElseThrow(() -> new IllegalArgumentException("Organisation non trouvée avec l'ID: " + organizationId));
-        
-        String organizationName = organization.getName();
-        logger.info("Suppression de l'organisation: {} (ID: {})", organizationName, organizationId);
-        
-        DeletionResult result = new DeletionResult();
-        result.setOrganizationName(organizationName);
-        result.setOrganizationId(organizationId);
-        
-        try {
-            // 1. Supprimer les InvoiceItems (liés aux invoices de l'organisation)
-            // Récupérer les IDs des factures avant de les supprimer
-            List<Long> invoiceIds = invoiceRepository.findByOrganizationIdOrderByCreatedAtDesc(organizationId)
-                .stream()
-                .map(invoice -> invoice.getId())
-                .toList();
-            
-            for (Long invoiceId : invoiceIds) {
-                int deletedItems = invoiceItemRepository.deleteByInvoiceId(invoiceId);
-                result.addDeletedInvoiceItems(deletedItems);
-                if (deletedItems > 0) {
-                    logger.debug("  - {} éléments de facture supprimés pour la facture {}", deletedItems, invoiceId);
-                }
-            }
-            
-            // 2. Supprimer les Invoices
-            int deletedInvoices = invoiceRepository.deleteByOrganizationId(organizationId);
-            result.setDeletedInvoices(deletedInvoices);
-            logger.info("  - {} factures supprimées", deletedInvoices);
-            
-            // 3. Supprimer les Payments
-            int deletedPayments = paymentRepository.deleteByOrganizationId(organizationId);
-            result.setDeletedPayments(deletedPayments);
-            logger.info("  - {} paiements supprimés", deletedPayments);
-            
-            // 4. Supprimer les Subscriptions
-            int deletedSubscriptions = subscriptionRepository.deleteByOrganizationId(organizationId);
-            result.setDeletedSubscriptions(deletedSubscriptions);
-            logger.info("  - {} abonnements supprimés", deletedSubscriptions);
-            
-            // 5. Supprimer les QuoteRequests
-            int deletedQuoteRequests = quoteRequestRepository.deleteByOrganizationId(organizationId);
-            result.setDeletedQuoteRequests(deletedQuoteRequests);
-            logger.info("  - {} demandes de devis supprimées", deletedQuoteRequests);
-            
-            // 6. Supprimer les UsageLogs
-            int deletedUsageLogs = usageLogRepository.deleteByOrganizationId(organizationId);
-            result.setDeletedUsageLogs(deletedUsageLogs);
-            logger.info("  - {} logs d'utilisation supprimés", deletedUsageLogs);
-            
-            // 7. Supprimer les QuotaAlerts
-            int deletedQuotaAlerts = quotaAlertRepository.deleteByOrganizationId(organizationId);
-            result.setDeletedQuotaAlerts(deletedQuotaAlerts);
-            logger.info("  - {} alertes de quota supprimées", deletedQuotaAlerts);
-            
-            // 8. Supprimer les OrganizationUsers
-            int deletedOrganizationUsers = organizationUserRepository.deleteByOrganizationId(organizationId);
-            result.setDeletedOrganizationUsers(deletedOrganizationUsers);
-            logger.info("  - {} associations utilisateur-organisation supprimées", deletedOrganizationUsers);
-            
-            // 9. Supprimer l'organisation elle-même
-            organizationRepository.delete(organization);
-            logger.info("  ✓ Organisation {} supprimée avec succès", organization.getName());
-            
-            result.setSuccess(true);
-            logger.info("=== SUPPRESSION TERMINÉE AVEC SUCCÈS ===");
-            
-        } catch (Exception e) {
-            logger.error("Erreur lors de la suppression de l'organisation {}: {}", 
-                organizationId, e.getMessage(), e);
-            result.setSuccess(false);
-            result.setErrorMessage(e.getMessage());
-            throw new RuntimeException("Erreur lors de la suppression de l'organisation: " + e.getMessage(), e);
-        }
-        
-        return result;
+    public OrganizationDeletionJobDto startDeletion(Long organizationId) {
+        OrganizationDeletionJob job = findOrCreateJob(organizationId);
+        logger.warn("Suppression de l'organisation {} (ID: {}) lancée (suivi {})",
+                job.getOrganizationName(), organizationId, job.getId());
+        submit(job.getId());
+        return toDto(job);
     }
-    
+
     /**
-     * Classe pour stocker le résultat de la suppression
+     * Reprend au démarrage les suppressions interrompues (arrêt ou crash de l'application),
+     * sauf celles en cours sur une autre instance.
      */
-    public static class DeletionResult {
-        private Long organizationId;
-        private String organizationName;
-        private boolean success;
-        private String errorMessage;
-        private long deletedInvoiceItems = 0;
-        private long deletedInvoices = 0;
-        private long deletedPayments = 0;
-        private long deletedSubscriptions = 0;
-        private long deletedQuoteRequests = 0;
-        private long deletedUsageLogs = 0;
-        private long deletedQuotaAlerts = 0;
-        private long deletedOrganizationUsers = 0;
-        
-        public Long getOrganizationId() {
-            return organizationId;
-        }
-        
-        public void setOrganizationId(Long organizationId) {
-            this.organizationId = organizationId;
-        }
-        
-        public String getOrganizationName() {
-            return organizationName;
-        }
-        
-        public void setOrganizationName(String organizationName) {
-            this.organizationName = organizationName;
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedDeletions() {
+        for (OrganizationDeletionJob job : jobRepository.findByStatusOrderByIdAsc(OrganizationDeletionJob.JobStatus.RUNNING)) {
+            logger.info("Reprise de la suppression de l'organisation {} (suivi {}, étape {})",
+                    job.getOrganizationId(), job.getId(), job.getStep());
+            submit(job.getId());
         }
-        
-        public boolean isSuccess() {
-            return success;
-        }
-        
-        public void setSuccess(boolean success) {
-            this.success = success;
-        }
-        
-        public String getErrorMessage() {
-            return errorMessage;
-        }
-        
-        public void setErrorMessage(String errorMessage) {
-            this.errorMessage = errorMessage;
-        }
-        
-        public long getDeletedInvoiceItems() {
-            return deletedInvoiceItems;
-        }
-        
-        public void addDeletedInvoiceItems(int count) {
-            this.deletedInvoiceItems += count;
-        }
-        
-        public long getDeletedInvoices() {
-            return deletedInvoices;
-        }
-        
-        public void setDeletedInvoices(long deletedInvoices) {
-            this.deletedInvoices = deletedInvoices;
-        }
-        
-        public long getDeletedPayments() {
-            return deletedPayments;
-        }
-        
-        public void setDeletedPayments(long deletedPayments) {
-            this.deletedPayments = deletedPayments;
-        }
-        
-        public long getDeletedSubscriptions() {
-            return deletedSubscriptions;
-        }
-        
-        public void setDeletedSubscriptions(long deletedSubscriptions) {
-            this.deletedSubscriptions = deletedSubscriptions;
-        }
-        
-        public long getDeletedQuoteRequests() {
-            return deletedQuoteRequests;
-        }
-        
-        public void setDeletedQuoteRequests(long deletedQuoteRequests) {
-            this.deletedQuoteRequests = deletedQuoteRequests;
+    }
+
+    // ===================================================
+    // CONSULTATION
+    // ===================================================
+
+    public OrganizationDeletionJobDto getJob(Long jobId) {
+        OrganizationDeletionJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Suppression d'organisation non trouvée avec l'ID: " + jobId));
+        return toDto(job);
+    }
+
+    public List<OrganizationDeletionJobDto> getRecentJobs() {
+        return jobRepository.findTop50ByOrderByIdDesc().stream().map(this::toDto).toList();
+    }
+
+    // ===================================================
+    // EXÉCUTION
+    // ===================================================
+
+    /**
+     * Récupère la suppression non terminée de l'organisation, ou la crée et désactive l'organisation.
+     * Une suppression en échec repasse en cours, à partir de la première étape : des lignes ont pu être ajoutées
+     * depuis dans les tables des étapes déjà passées (les lots déjà supprimés ne sont pas refaits).
+     */
+    private OrganizationDeletionJob findOrCreateJob(Long organizationId) {
+        try {
+            return transactionTemplate.execute(status -> {
+                OrganizationDeletionJob job = jobRepository.findUnfinishedByOrganizationId(organizationId)
+                        .orElseGet(() -> {
+                            Organization organization = organizationRepository.findById(organizationId)
+                                    .orElseThrow(() -> new IllegalArgumentException(
+                                            "Organisation non trouvée avec l'ID: " + organizationId));
+                            // Plus aucun accès pendant la suppression
+                            organization.setEnabled(false);
+                            organizationRepository.save(organization);
+                            eventPublisher.publishEvent(OrganizationEntitlementChangedEvent.of(organizationId));
+
+                            OrganizationDeletionJob created = new OrganizationDeletionJob();
+                            created.setOrganizationId(organizationId);
+                            created.setOrganizationName(organization.getName());
+                            return created;
+                        });
+                if (job.getStatus() == OrganizationDeletionJob.JobStatus.FAILED) {
+                    job.setStatus(OrganizationDeletionJob.JobStatus.RUNNING);
+                    job.setStep(OrganizationDeletionJob.Step.INVOICE_ITEMS);
+                    job.setErrorMessage(null);
+                    job.setFinishedAt(null);
+                }
+                return jobRepository.save(job);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Créée au même moment par un autre appel : utiliser celle-ci
+            return jobRepository.findUnfinishedByOrganizationId(organizationId).orElseThrow(() -> e);
         }
-        
-        public long getDeletedUsageLogs() {
-            return deletedUsageLogs;
+    }
+
+    private void submit(Long jobId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (runningFutures.putIfAbsent(jobId, future) != null) {
+            logger.info("Suppression d'organisation {} déjà en cours d'exécution", jobId);
+            return;
         }
-        
-        public void setDeletedUsageLogs(long deletedUsageLogs) {
-            this.deletedUsageLogs = deletedUsageLogs;
+        coordinator.execute(() -> {
+            try {
+                runExclusively(jobId);
+            } catch (Exception e) {
+                logger.error("Erreur lors de la suppression d'organisation {}: {}", jobId, e.getMessage(), e);
+                fail(jobId, e);
+            } finally {
+                runningFutures.remove(jobId);
+                future.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Exécute la suppression sous bail : une autre instance ne la traite pas en même temps.
+     */
+    private void runExclusively(Long jobId) {
+        String lockName = "organization-deletion-" + jobId;
+        LocalDateTime lockedAt = LocalDateTime.now();
+        if (!jobLockService.tryLock(lockName, Duration.ofMillis(leaseMs))) {
+            logger.info("Suppression d'organisation {} en cours sur une autre instance", jobId);
+            return;
         }
-        
-        public long getDeletedQuotaAlerts() {
-            return deletedQuotaAlerts;
+        try {
+            run(jobId, lockName);
+        } finally {
+            jobLockService.unlock(lockName, lockedAt, Duration.ZERO);
         }
-        
-        public void setDeletedQuotaAlerts(long deletedQuotaAlerts) {
-            this.deletedQuotaAlerts = deletedQuotaAlerts;
+    }
+
+    /**
+     * Supprime les lignes de l'organisation lot par lot, de l'étape enregistrée jusqu'à l'organisation elle-même.
+     */
+    void run(Long jobId, String lockName) {
+        long startNanos = System.nanoTime();
+        OrganizationDeletionJob job = jobRepository.findById(jobId).orElseThrow();
+        while (job.getStatus() == OrganizationDeletionJob.JobStatus.RUNNING) {
+            job = deleteChunk(jobId);
+            if (!jobLockService.extend(lockName, Duration.ofMillis(leaseMs))) {
+                // Reprise par une autre instance : la suppression y continue
+                return;
+            }
         }
-        
-        public long getDeletedOrganizationUsers() {
-            return deletedOrganizationUsers;
+        logger.info("=== SUPPRESSION DE L'ORGANISATION {} (ID: {}) TERMINÉE en {} s : {} éléments de facture, {} paiements, " +
+                        "{} factures, {} abonnements, {} demandes de devis, {} logs d'utilisation, {} alertes de quota, " +
+                        "{} associations utilisateur-organisation ===",
+                job.getOrganizationName(), job.getOrganizationId(), Duration.ofNanos(System.nanoTime() - startNanos).toSeconds(),
+                job.getDeletedInvoiceItems(), job.getDeletedPayments(), job.getDeletedInvoices(),
+                job.getDeletedSubscriptions(), job.getDeletedQuoteRequests(), job.getDeletedUsageLogs(),
+                job.getDeletedQuotaAlerts(), job.getDeletedOrganizationUsers());
+    }
+
+    /**
+     * Supprime un lot de l'étape courante et enregistre l'avancement dans la même transaction.
+     * Un lot incomplet termine l'étape. Les PDF en cache des factures du lot sont supprimés après validation.
+     */
+    private OrganizationDeletionJob deleteChunk(Long jobId) {
+        List<Long> deletedInvoiceIds = new ArrayList<>();
+        OrganizationDeletionJob result = transactionTemplate.execute(status -> {
+            deletedInvoiceIds.clear();
+            OrganizationDeletionJob job = jobRepository.findById(jobId).orElseThrow();
+            OrganizationDeletionJob.Step step = job.getStep();
+            Long organizationId = job.getOrganizationId();
+
+            if (step == OrganizationDeletionJob.Step.ORGANIZATION) {
+                long swept = sweep(job, deletedInvoiceIds);
+                if (swept > 0) {
+                    logger.warn("Suppression de l'organisation {}: {} ligne(s) ajoutée(s) après leur étape, nouveau passage",
+                            organizationId, swept);
+                    job.setStep(OrganizationDeletionJob.Step.INVOICE_ITEMS);
+                    job.setLastCheckpointAt(LocalDateTime.now());
+                    return jobRepository.save(job);
+                }
+                organizationRepository.findById(organizationId).ifPresent(organizationRepository::delete);
+            }
+            int deleted = deleteBatch(step, organizationId, deletedInvoiceIds);
+            job.addDeleted(step, deleted);
+            job.setLastCheckpointAt(LocalDateTime.now());
+
+            if (deleted >= chunkSize) {
+                return jobRepository.save(job);
+            }
+            if (step != OrganizationDeletionJob.Step.ORGANIZATION) {
+                logger.info("Suppression de l'organisation {}: étape {} terminée", organizationId, step);
+                job.setStep(OrganizationDeletionJob.Step.values()[step.ordinal() + 1]);
+                return jobRepository.save(job);
+            }
+            job.setStatus(OrganizationDeletionJob.JobStatus.COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+            eventPublisher.publishEvent(OrganizationEntitlementChangedEvent.of(organizationId));
+            eventPublisher.publishEvent(OrganizationMembershipChangedEvent.ofOrganization(organizationId));
+            return jobRepository.save(job);
+        });
+        deletedInvoiceIds.forEach(invoicePdfCacheService::delete);
+        return result;
+    }
+
+    /**
+     * Supprime un lot de lignes de l'organisation pour une étape (idempotent : 0 une fois la table vidée).
+     */
+    private int deleteBatch(OrganizationDeletionJob.Step step, Long organizationId, List<Long> deletedInvoiceIds) {
+        return switch (step) {
+            case INVOICE_ITEMS -> invoiceItemRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+            case PAYMENTS -> paymentRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+            case INVOICES -> {
+                List<Long> invoiceIds = invoiceRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+                deletedInvoiceIds.addAll(invoiceIds);
+                yield invoiceIds.size();
+            }
+            case SUBSCRIPTIONS -> subscriptionRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+            case QUOTE_REQUESTS -> quoteRequestRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+            case USAGE_LOGS -> usageLogRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+            case QUOTA_ALERTS -> quotaAlertRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+            case ORGANIZATION_USERS -> organizationUserRepository.deleteBatchByOrganizationId(organizationId, chunkSize);
+            case ORGANIZATION -> 0;
+        };
+    }
+
+    /**
+     * Dernier passage avant l'organisation : un lot par table, dans l'ordre des étapes. S'arrête au premier
+     * lot complet (la table suivante peut dépendre de lignes restantes).
+     *
+     * @return Nombre de lignes trouvées (et supprimées) depuis leur étape
+     */
+    private long sweep(OrganizationDeletionJob job, List<Long> deletedInvoiceIds) {
+        long swept = 0;
+        for (OrganizationDeletionJob.Step step : OrganizationDeletionJob.Step.values()) {
+            if (step == OrganizationDeletionJob.Step.ORGANIZATION) {
+                break;
+            }
+            int deleted = deleteBatch(step, job.getOrganizationId(), deletedInvoiceIds);
+            job.addDeleted(step, deleted);
+            swept += deleted;
+            if (deleted >= chunkSize) {
+                break;
+            }
         }
-        
-        public void setDeletedOrganizationUsers(long deletedOrganizationUsers) {
-            this.deletedOrganizationUsers = deletedOrganizationUsers;
+        return swept;
+    }
+
+    /**
+     * Marque la suppression en échec : les lots déjà validés restent supprimés, la relancer la reprend à la première étape.
+     */
+    private void fail(Long jobId, Exception e) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jobRepository.findById(jobId).ifPresent(job -> {
+                String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+                job.setStatus(OrganizationDeletionJob.JobStatus.FAILED);
+                job.setErrorMessage(message.length() > ERROR_MESSAGE_MAX_LENGTH
+                        ? message.substring(0, ERROR_MESSAGE_MAX_LENGTH) : message);
+                job.setFinishedAt(LocalDateTime.now());
+                jobRepository.save(job);
+            }));
+        } catch (Exception saveError) {
+            // La suppression reste RUNNING : elle sera reprise au prochain démarrage
+            logger.error("Impossible d'enregistrer l'échec de la suppression d'organisation {}: {}",
+                    jobId, saveError.getMessage());
         }
     }
-}
 
+    private OrganizationDeletionJobDto toDto(OrganizationDeletionJob job) {
+        OrganizationDeletionJobDto dto = new OrganizationDeletionJobDto();
+        dto.setId(job.getId());
+        dto.setOrganizationId(job.getOrganizationId());
+        dto.setOrganizationName(job.getOrganizationName());
+        dto.setStatus(job.getStatus());
+        dto.setStep(job.getStep());
+        dto.setDeletedInvoiceItems(job.getDeletedInvoiceItems());
+        dto.setDeletedPayments(job.getDeletedPayments());
+        dto.setDeletedInvoices(job.getDeletedInvoices());
+        dto.setDeletedSubscriptions(job.getDeletedSubscriptions());
+        dto.setDeletedQuoteRequests(job.getDeletedQuoteRequests());
+        dto.setDeletedUsageLogs(job.getDeletedUsageLogs());
+        dto.setDeletedQuotaAlerts(job.getDeletedQuotaAlerts());
+        dto.setDeletedOrganizationUsers(job.getDeletedOrganizationUsers());
+        dto.setErrorMessage(job.getErrorMessage());
+        dto.setStartedAt(job.getStartedAt());
+        dto.setLastCheckpointAt(job.getLastCheckpointAt());
+        dto.setFinishedAt(job.getFinishedAt());
+        dto.setRunning(runningFutures.containsKey(job.getId()));
+        return dto;
+    }
+
+    /**
+     * Arrêt de l'application : le lot en cours est annulé (transaction non validée)
+     * et la suppression sera reprise au prochain démarrage.
+     */
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+    }
+}
@@ -1,181 +1,323 @@
 package com.muhend.backend.admin.service;
 
 import com.muhend.backend.alert.repository.QuotaAlertRepository;
-import com.muhend.backend.organization.model.OrganizationUser;
+import com.muhend.backend.auth.service.KeycloakUserDirectory;
+import com.muhend.backend.organization.event.OrganizationMembershipChangedEvent;
 import com.muhend.backend.organization.repository.OrganizationUserRepository;
 import com.muhend.backend.usage.repository.UsageLogRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.NotFoundException;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.resource.RealmResource;
-import org.keycloak.admin.client.resource.UserResource;
 import org.keycloak.admin.client.resource.UsersResource;
-import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service pour nettoyer les données des utilisateurs avec les rôles ORGANIZATION ou COLLABORATOR
+ *
+ * Les utilisateurs concernés sont lus page par page via la liste des membres de chaque rôle
+ * (et non en parcourant tout le realm), puis traités par lots : les données locales du lot sont
+ * supprimées en quelques requêtes ensemblistes, puis les comptes Keycloak en parallèle sur un pool borné.
+ * Le nettoyage est idempotent : relancé après une interruption, il ne retrouve que les comptes
+ * qui existent encore et reprend donc là où il s'était arrêté.
  */
 @Service
 public class UserCleanupService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(UserCleanupService.class);
-    
-    private final Keycloak keycloak;
+
+    private static final List<String> ROLES_TO_CLEAN = List.of("ORGANIZATION", "COLLABORATOR");
+
+    /**
+     * Client d'administration Keycloak, créé à la première utilisation (voir KeycloakAdminConfig)
+     */
+    private final ObjectFactory<Keycloak> keycloak;
     private final UsageLogRepository usageLogRepository;
     private final QuotaAlertRepository quotaAlertRepository;
     private final OrganizationUserRepository organizationUserRepository;
-    
+    private final ApplicationEventPublisher eventPublisher;
+    private final KeycloakUserDirectory keycloakUserDirectory;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService coordinator;
+    private final ExecutorService deleters;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile CleanupProgress progress;
+
     @Value("${keycloak.admin.realm:hscode-realm}")
     private String realm;
-    
+
+    @Value("${admin.user-cleanup.page-size:500}")
+    private int pageSize;
+
+    @Value("${admin.user-cleanup.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${admin.user-cleanup.delete-batch-size:5000}")
+    private int deleteBatchSize;
+
     public UserCleanupService(
-            Keycloak keycloak,
+            ObjectFactory<Keycloak> keycloak,
             UsageLogRepository usageLogRepository,
             QuotaAlertRepository quotaAlertRepository,
-            OrganizationUserRepository organizationUserRepository) {
+            OrganizationUserRepository organizationUserRepository,
+            ApplicationEventPublisher eventPublisher,
+            KeycloakUserDirectory keycloakUserDirectory,
+            PlatformTransactionManager transactionManager,
+            @Value("${admin.user-cleanup.parallelism:8}") int parallelism) {
         this.keycloak = keycloak;
         this.usageLogRepository = usageLogRepository;
         this.quotaAlertRepository = quotaAlertRepository;
         this.organizationUserRepository = organizationUserRepository;
+        this.eventPublisher = eventPublisher;
+        this.keycloakUserDirectory = keycloakUserDirectory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.coordinator = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("user-cleanup").factory());
+        this.deleters = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                Thread.ofPlatform().name("user-cleanup-", 1).factory());
+    }
+
+    /**
+     * Lance le nettoyage en arrière-plan.
+     *
+     * @return L'avancement initial
+     * @throws IllegalStateException si un nettoyage est déjà en cours
+     */
+    public CleanupProgress startCleanup() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Un nettoyage des utilisateurs est déjà en cours");
+        }
+        CleanupProgress started = new CleanupProgress();
+        progress = started;
+        try {
+            coordinator.execute(() -> {
+                try {
+                    run(started);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        return started;
     }
-    
+
     /**
-     * Nettoie tous les utilisateurs avec les rôles ORGANIZATION ou COLLABORATOR
+     * Avancement du dernier nettoyage (null si aucun nettoyage n'a été lancé depuis le démarrage)
+     */
+    public CleanupProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Nettoie tous les utilisateurs avec les rôles ORGANIZATION ou COLLABORATOR, dans le thread appelant
      * @return Résultat du nettoyage avec statistiques
+     * @throws IllegalStateException si un nettoyage est déjà en cours
      */
-    @Transactional
     public CleanupResult cleanupUsersWithRoles() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Un nettoyage des utilisateurs est déjà en cours");
+        }
+        try {
+            CleanupProgress current = new CleanupProgress();
+            progress = current;
+            run(current);
+            return new CleanupResult(current.getDeleted(), current.getErrors(), current.getTotalFound());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void run(CleanupProgress current) {
         logger.info("=== Début du nettoyage des utilisateurs avec rôles ORGANIZATION ou COLLABORATOR ===");
-        
-        RealmResource realmResource = keycloak.realm(realm);
-        UsersResource usersResource = realmResource.users();
-        
-        // Récupérer tous les utilisateurs
-        List<UserRepresentation> allUsers = usersResource.list();
-        logger.info("Nombre total d'utilisateurs dans Keycloak: {}", allUsers.size());
-        
-        // Filtrer les utilisateurs avec les rôles ORGANIZATION ou COLLABORATOR
-        List<String> userIdsToDelete = allUsers.stream()
-            .filter(user -> {
-                try {
-                    boolean hasOrgRole = hasRole(user.getId(), "ORGANIZATION");
-                    boolean hasCollabRole = hasRole(user.getId(), "COLLABORATOR");
-                    boolean shouldDelete = hasOrgRole || hasCollabRole;
-                    
-                    if (shouldDelete) {
-                        logger.info("Utilisateur {} trouvé avec rôles - ORGANIZATION: {}, COLLABORATOR: {}", 
-                            user.getUsername(), hasOrgRole, hasCollabRole);
-                    }
-                    
-                    return shouldDelete;
-                } catch (Exception e) {
-                    logger.warn("Erreur lors de la vérification des rôles pour l'utilisateur {}: {}", 
-                        user.getUsername(), e.getMessage());
-                    return false;
-                }
-            })
-            .map(UserRepresentation::getId)
-            .collect(Collectors.toList());
-        
-        logger.info("Nombre d'utilisateurs à supprimer: {}", userIdsToDelete.size());
-        
-        if (!userIdsToDelete.isEmpty()) {
-            logger.info("IDs des utilisateurs à supprimer: {}", userIdsToDelete);
-        }
-        
-        if (userIdsToDelete.isEmpty()) {
-            logger.info("Aucun utilisateur à supprimer");
-            return new CleanupResult(0, 0, 0);
-        }
-        
-        int deletedCount = 0;
-        int errorCount = 0;
-        
-        for (String keycloakUserId : userIdsToDelete) {
-            try {
-                UserResource userResource = usersResource.get(keycloakUserId);
-                UserRepresentation user = userResource.toRepresentation();
-                
-                logger.info("Suppression de l'utilisateur: {} (ID: {})", user.getUsername(), keycloakUserId);
-                
-                // 1. Supprimer les logs d'utilisation
-                long deletedLogs = usageLogRepository.deleteByKeycloakUserId(keycloakUserId);
-                logger.debug("  - {} logs d'utilisation supprimés", deletedLogs);
-                
-                // 2. Récupérer les IDs des organisations associées avant suppression
-                List<OrganizationUser> orgUsers = organizationUserRepository.findByKeycloakUserId(keycloakUserId);
-                List<Long> organizationIds = orgUsers.stream()
-                    .map(ou -> ou.getOrganization().getId())
-                    .collect(Collectors.toList());
-                
-                // 3. Supprimer les associations organisation-utilisateur
-                long deletedAssociations = organizationUserRepository.deleteByKeycloakUserId(keycloakUserId);
-                logger.debug("  - {} associations organisation-utilisateur supprimées", deletedAssociations);
-                
-                // 4. Supprimer les alertes de quota pour ces organisations
-                for (Long orgId : organizationIds) {
-                    long deletedAlerts = quotaAlertRepository.deleteByOrganizationId(orgId);
-                    if (deletedAlerts > 0) {
-                        logger.debug("  - {} alertes de quota supprimées pour l'organisation {}", deletedAlerts, orgId);
-                    }
+        try {
+            UsersResource usersResource = keycloak.getObject().realm(realm).users();
+            Set<String> userIdsToDelete = findUsersWithRoles(current);
+            logger.info("Nombre d'utilisateurs à supprimer: {}", userIdsToDelete.size());
+
+            current.phase = "DELETING";
+            List<String> chunk = new ArrayList<>(chunkSize);
+            for (String keycloakUserId : userIdsToDelete) {
+                chunk.add(keycloakUserId);
+                if (chunk.size() >= Math.max(1, chunkSize)) {
+                    processChunk(usersResource, chunk, current);
+                    chunk = new ArrayList<>(chunkSize);
                 }
-                
-                // 5. Supprimer l'utilisateur de Keycloak
-                userResource.remove();
-                logger.info("  ✓ Utilisateur {} supprimé avec succès", user.getUsername());
-                
-                deletedCount++;
-            } catch (Exception e) {
-                logger.error("Erreur lors de la suppression de l'utilisateur {}: {}", 
-                    keycloakUserId, e.getMessage(), e);
-                errorCount++;
             }
+            if (!chunk.isEmpty()) {
+                processChunk(usersResource, chunk, current);
+            }
+            current.finish("COMPLETED", null);
+        } catch (Exception e) {
+            logger.error("Nettoyage des utilisateurs interrompu: {}", e.getMessage(), e);
+            current.finish("FAILED", e.getMessage());
         }
-        
+
         logger.info("=== Fin du nettoyage ===");
-        logger.info("Utilisateurs supprimés avec succès: {}", deletedCount);
-        logger.info("Erreurs rencontrées: {}", errorCount);
-        
-        return new CleanupResult(deletedCount, errorCount, userIdsToDelete.size());
+        logger.info("Utilisateurs supprimés avec succès: {}", current.getDeleted());
+        logger.info("Erreurs rencontrées: {}", current.getErrors());
     }
-    
+
     /**
-     * Vérifie si un utilisateur a un rôle spécifique (ORGANIZATION ou COLLABORATOR)
-     * Les rôles sont stockés au niveau du realm, pas au niveau du client
+     * Lit les membres directs des rôles à nettoyer, page par page (un utilisateur ayant les deux rôles n'est compté qu'une fois)
      */
-    private boolean hasRole(String userId, String roleName) {
-        try {
-            RealmResource realmResource = keycloak.realm(realm);
-            UsersResource usersResource = realmResource.users();
-            UserResource userResource = usersResource.get(userId);
-            
-            // Vérifier les rôles du realm (pas du client)
-            List<RoleRepresentation> realmRoles = userResource.roles()
-                .realmLevel()
-                .listAll();
-            
-            boolean hasRole = realmRoles.stream()
-                .anyMatch(role -> role.getName().equalsIgnoreCase(roleName));
-            
-            if (hasRole) {
-                logger.debug("Utilisateur {} a le rôle {}", userId, roleName);
-            }
-            
-            return hasRole;
-        } catch (Exception e) {
-            logger.warn("Erreur lors de la vérification du rôle {} pour l'utilisateur {}: {}", 
-                roleName, userId, e.getMessage());
-            return false;
+    private Set<String> findUsersWithRoles(CleanupProgress current) {
+        RealmResource realmResource = keycloak.getObject().realm(realm);
+        Set<String> userIds = new LinkedHashSet<>();
+        int size = Math.max(1, pageSize);
+        for (String roleName : ROLES_TO_CLEAN) {
+            int first = 0;
+            List<UserRepresentation> page;
+            do {
+                page = realmResource.roles().get(roleName).getUserMembers(true, first, size);
+                for (UserRepresentation user : page) {
+                    userIds.add(user.getId());
+                }
+                first += page.size();
+                current.totalFound.set(userIds.size());
+            } while (page.size() == size);
+            logger.info("Rôle {}: {} membre(s)", roleName, first);
         }
+        return userIds;
     }
-    
+
+    /**
+     * Traite un lot : données locales supprimées en une transaction, puis comptes Keycloak supprimés en parallèle.
+     */
+    private void processChunk(UsersResource usersResource, List<String> keycloakUserIds, CleanupProgress current) {
+        deleteLocalData(keycloakUserIds);
+        keycloakUserIds.forEach(keycloakUserId ->
+                eventPublisher.publishEvent(OrganizationMembershipChangedEvent.ofUser(keycloakUserId)));
+
+        List<CompletableFuture<Void>> deletions = keycloakUserIds.stream()
+                .map(keycloakUserId -> CompletableFuture.runAsync(() -> {
+                    try {
+                        usersResource.get(keycloakUserId).remove();
+                        current.deleted.incrementAndGet();
+                    } catch (NotFoundException e) {
+                        // Déjà supprimé (nettoyage relancé)
+                        current.deleted.incrementAndGet();
+                    } catch (Exception e) {
+                        logger.error("Erreur lors de la suppression de l'utilisateur {}: {}",
+                                keycloakUserId, e.getMessage());
+                        current.errors.incrementAndGet();
+                    } finally {
+                        keycloakUserDirectory.invalidate(keycloakUserId);
+                        current.processed.incrementAndGet();
+                    }
+                }, deleters))
+                .toList();
+        CompletableFuture.allOf(deletions.toArray(CompletableFuture[]::new)).join();
+        logger.info("Nettoyage des utilisateurs: {}/{} traité(s), {} erreur(s)",
+                current.getProcessed(), current.getTotalFound(), current.getErrors());
+    }
+
+    private void deleteLocalData(List<String> keycloakUserIds) {
+        // Logs d'utilisation : par lots bornés, chacun dans sa transaction
+        long deletedLogs = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status ->
+                    usageLogRepository.deleteBatchByKeycloakUserIdIn(keycloakUserIds, deleteBatchSize));
+            deletedLogs += deleted;
+        } while (deleted > 0);
+
+        long[] counts = transactionTemplate.execute(status -> {
+            List<Long> organizationIds = organizationUserRepository.findOrganizationIdsByKeycloakUserIdIn(keycloakUserIds);
+            int deletedAssociations = organizationUserRepository.deleteByKeycloakUserIdIn(keycloakUserIds);
+            int deletedAlerts = organizationIds.isEmpty() ? 0 : quotaAlertRepository.deleteByOrganizationIdIn(organizationIds);
+            return new long[] { deletedAssociations, deletedAlerts };
+        });
+        logger.debug("Lot de {} utilisateur(s): {} logs d'utilisation, {} associations organisation-utilisateur, {} alertes de quota supprimés",
+                keycloakUserIds.size(), deletedLogs, counts[0], counts[1]);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        deleters.shutdownNow();
+    }
+
+    /**
+     * Avancement d'un nettoyage (mis à jour pendant son exécution)
+     */
+    public static class CleanupProgress {
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile String phase = "LISTING";
+        private volatile String status = "RUNNING";
+        private volatile String lastError;
+        private volatile LocalDateTime finishedAt;
+        private final AtomicInteger totalFound = new AtomicInteger();
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger deleted = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+
+        private void finish(String finalStatus, String error) {
+            this.lastError = error;
+            this.finishedAt = LocalDateTime.now();
+            this.phase = "DONE";
+            this.status = finalStatus;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public LocalDateTime getStartedAt() {
+            return startedAt;
+        }
+
+        public LocalDateTime getFinishedAt() {
+            return finishedAt;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public int getTotalFound() {
+            return totalFound.get();
+        }
+
+        public int getProcessed() {
+            return processed.get();
+        }
+
+        public int getDeleted() {
+            return deleted.get();
+        }
+
+        public int getErrors() {
+            return errors.get();
+        }
+    }
+
     /**
      * Classe pour stocker le résultat du nettoyage
      */
@@ -183,24 +325,23 @@ public class UserCleanupService {
         private final int deletedCount;
         private final int errorCount;
         private final int totalFound;
-        
+
         public CleanupResult(int deletedCount, int errorCount, int totalFound) {
             this.deletedCount = deletedCount;
             this.errorCount = errorCount;
             this.totalFound = totalFound;
         }
-        
+
         public int getDeletedCount() {
             return deletedCount;
         }
-        
+
         public int getErrorCount() {
             return errorCount;
         }
-        
+
         public int getTotalFound() {
             return totalFound;
         }
     }
 }
-
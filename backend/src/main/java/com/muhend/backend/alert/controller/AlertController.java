@@ -2,6 +2,7 @@ package com.muhend.backend.alert.controller;
 
 import com.muhend.backend.alert.dto.QuotaAlertDto;
 import com.muhend.backend.alert.service.QuotaAlertService;
+import com.muhend.backend.notification.service.BadgeNotificationService;
 import com.muhend.backend.organization.service.OrganizationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -30,6 +31,7 @@ public class AlertController {
     
     private final QuotaAlertService quotaAlertService;
     private final OrganizationService organizationService;
+    private final BadgeNotificationService badgeNotificationService;
     
     /**
      * Récupère les alertes non lues de l'utilisateur connecté (basées sur son organisation).
@@ -86,7 +88,8 @@ public class AlertController {
             return ResponseEntity.ok(Map.of("count", 0));
         }
         
-        long count = quotaAlertService.countUnreadAlertsForOrganization(organizationId);
+        // Compteur en mémoire (voir aussi le flux /notifications/stream)
+        long count = badgeNotificationService.getCounters(organizationId).getUnreadAlerts();
         return ResponseEntity.ok(Map.of("count", count));
     }
     
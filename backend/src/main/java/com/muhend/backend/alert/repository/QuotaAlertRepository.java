@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -30,17 +31,19 @@ public interface QuotaAlertRepository extends JpaRepository<QuotaAlert, Long> {
     
     /**
      * Marque une alerte comme lue.
+     * @return 1 si l'alerte était non lue, 0 sinon
      */
     @Modifying
-    @Query("UPDATE QuotaAlert a SET a.isRead = true WHERE a.id = :id")
-    void markAsRead(@Param("id") Long id);
+    @Query("UPDATE QuotaAlert a SET a.isRead = true WHERE a.id = :id AND a.isRead = false")
+    int markAsRead(@Param("id") Long id);
     
     /**
      * Marque toutes les alertes d'une organisation comme lues.
+     * @return Nombre d'alertes qui étaient non lues
      */
     @Modifying
-    @Query("UPDATE QuotaAlert a SET a.isRead = true WHERE a.organizationId = :organizationId")
-    void markAllAsReadForOrganization(@Param("organizationId") Long organizationId);
+    @Query("UPDATE QuotaAlert a SET a.isRead = true WHERE a.organizationId = :organizationId AND a.isRead = false")
+    int markAllAsReadForOrganization(@Param("organizationId") Long organizationId);
     
     /**
      * Supprime les alertes anciennes (plus de 30 jours).
@@ -60,10 +63,19 @@ public interface QuotaAlertRepository extends JpaRepository<QuotaAlert, Long> {
     long countByIsReadFalse();
     
     /**
-     * Supprime toutes les alertes d'une organisation.
+     * Supprime un lot de lignes (au plus {@code batchSize}) parmi les alertes d'une organisation.
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize}, pour borner la durée de chaque transaction.
      */
     @Modifying
-    @Query("DELETE FROM QuotaAlert q WHERE q.organizationId = :organizationId")
-    int deleteByOrganizationId(@Param("organizationId") Long organizationId);
+    @Query(value = "DELETE FROM quota_alert WHERE id IN (" +
+                   "SELECT id FROM quota_alert WHERE organization_id = :organizationId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
+    
+    /**
+     * Supprime toutes les alertes d'un ensemble d'organisations.
+     */
+    @Modifying
+    @Query("DELETE FROM QuotaAlert q WHERE q.organizationId IN :organizationIds")
+    int deleteByOrganizationIdIn(@Param("organizationIds") Collection<Long> organizationIds);
 }
-
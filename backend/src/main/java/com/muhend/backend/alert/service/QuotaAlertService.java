@@ -4,19 +4,29 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.muhend.backend.alert.dto.QuotaAlertDto;
 import com.muhend.backend.alert.model.QuotaAlert;
 import com.muhend.backend.alert.repository.QuotaAlertRepository;
+import com.muhend.backend.notification.event.BadgeCounterChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.muhend.backend.organization.dto.OrganizationDto;
+import com.muhend.backend.organization.dto.OrganizationEntitlement;
+import com.muhend.backend.organization.service.OrganizationEntitlementService;
 import com.muhend.backend.organization.service.OrganizationService;
 import com.muhend.backend.pricing.dto.PricingPlanDto;
 import com.muhend.backend.pricing.service.PricingPlanService;
+import com.muhend.backend.usage.event.UsageRecordedEvent;
 import com.muhend.backend.usage.repository.UsageLogRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.FileWriter;
 import java.io.PrintWriter;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +35,13 @@ import java.util.stream.Collectors;
 /**
  * Service pour gérer les alertes de quota.
  * Détecte automatiquement les organisations dont le quota approche ou dépasse la limite.
+ *
+ * La détection se fait au moment où l'utilisation est enregistrée ({@link UsageRecordedEvent}) :
+ * un compteur mensuel par organisation est incrémenté et une alerte n'est créée que lorsque
+ * l'incrément fait franchir un seuil (80 %, 100 %, dépassement). Le traitement est asynchrone.
+ * Les compteurs sont propres à chaque instance et réinitialisés par un COUNT au plus toutes les heures.
+ * Une réconciliation horaire (tâche coordonnée, une seule instance) recompte en base les organisations
+ * actives sur la dernière heure, quelle que soit l'instance qui a servi leurs recherches.
  */
 @Service
 @Slf4j
@@ -56,6 +73,21 @@ public class QuotaAlertService {
     private final OrganizationService organizationService;
     private final UsageLogRepository usageLogRepository;
     private final PricingPlanService pricingPlanService;
+    private final OrganizationEntitlementService organizationEntitlementService;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    /**
+     * Compteurs d'utilisation du mois en cours des organisations actives
+     */
+    private final Cache<Long, UsageCounter> usageCounters = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofHours(6))
+            .build();
+    
+    /**
+     * Âge au-delà duquel un compteur est réinitialisé par un COUNT (correction d'une éventuelle dérive)
+     */
+    private static final Duration COUNTER_REFRESH = Duration.ofHours(1);
     
     // Seuils d'alerte
     private static final double WARNING_THRESHOLD = 80.0;  // Alerte à 80%
@@ -65,28 +97,157 @@ public class QuotaAlertService {
             QuotaAlertRepository quotaAlertRepository,
             OrganizationService organizationService,
             UsageLogRepository usageLogRepository,
-            PricingPlanService pricingPlanService) {
+            PricingPlanService pricingPlanService,
+            OrganizationEntitlementService organizationEntitlementService,
+            ApplicationEventPublisher eventPublisher) {
         this.quotaAlertRepository = quotaAlertRepository;
         this.organizationService = organizationService;
         this.usageLogRepository = usageLogRepository;
         this.pricingPlanService = pricingPlanService;
+        this.organizationEntitlementService = organizationEntitlementService;
+        this.eventPublisher = eventPublisher;
+    }
+    
+    /**
+     * Détecte le franchissement d'un seuil d'alerte lors de l'enregistrement d'une utilisation.
+     * Compare le niveau d'alerte avant et après l'incrément du compteur mensuel de l'organisation.
+     * Au premier événement du mois (ou après un redémarrage, ou si le compteur a plus d'une heure),
+     * le compteur est initialisé par un COUNT, exécuté hors du verrou de la map, et le niveau atteint
+     * est vérifié directement. Un événement traité en retard, déjà inclus dans ce COUNT, n'est pas recompté.
+     */
+    @Async
+    @EventListener
+    @Transactional
+    public void onUsageRecorded(UsageRecordedEvent event) {
+        Long organizationId = event.getOrganizationId();
+        if (organizationId == null) {
+            return;
+        }
+        try {
+            OrganizationEntitlement entitlement = organizationEntitlementService.getEntitlement(organizationId);
+            Integer quota = alertQuota(entitlement);
+            if (quota == null) {
+                return; // Quota illimité : pas d'alerte
+            }
+            
+            YearMonth period = YearMonth.from(event.getTimestamp());
+            UsageCounter existing = usageCounters.getIfPresent(organizationId);
+            if (existing != null && period.isBefore(existing.period)) {
+                return; // Événement d'un mois précédent traité en retard : plus d'alerte pour ce mois
+            }
+            UsageCounter seed = null;
+            if (existing == null || !existing.period.equals(period) || existing.isStale()) {
+                // Jusqu'à l'horodatage de l'événement : les logs suivants seront comptés par leur propre événement
+                seed = new UsageCounter(period, usageLogRepository.countByOrganizationIdAndTimestampBetween(
+                        organizationId, period.atDay(1).atStartOfDay(), event.getTimestamp()), event.getTimestamp());
+            }
+            UsageCounter seeded = seed;
+            
+            QuotaAlert.AlertType[] toCreate = new QuotaAlert.AlertType[1];
+            long[] usage = new long[1];
+            usageCounters.asMap().compute(organizationId, (id, counter) -> {
+                QuotaAlert.AlertType before;
+                if (counter != null && period.isBefore(counter.period)) {
+                    return counter;
+                }
+                if (seeded != null && (counter == null || !counter.period.equals(period) || counter.isStale())) {
+                    if (counter != null && counter.period.equals(period)) {
+                        // Compteur réinitialisé en cours de mois : les alertes déjà signalées le restent
+                        seeded.alertedSeverity = counter.alertedSeverity;
+                    }
+                    counter = seeded;
+                    before = null;
+                } else if (counter == null || !counter.period.equals(period)) {
+                    // Compteur expiré ou remplacé entre-temps : rattrapé par la réconciliation
+                    return counter;
+                } else if (!event.getTimestamp().isAfter(counter.countedUntil)) {
+                    // Déjà inclus dans le COUNT d'initialisation
+                    return counter;
+                } else {
+                    before = alertTypeFor(counter.count, quota);
+                    counter.count++;
+                }
+                QuotaAlert.AlertType after = alertTypeFor(counter.count, quota);
+                // Seuil franchi (ou atteint au démarrage du compteur) et pas encore signalé pour ce mois
+                if (after != null && after != before
+                        && getAlertTypeSeverity(after) > counter.alertedSeverity) {
+                    counter.alertedSeverity = getAlertTypeSeverity(after);
+                    toCreate[0] = after;
+                }
+                usage[0] = counter.count;
+                return counter;
+            });
+            
+            if (toCreate[0] != null) {
+                log.debug("Seuil {} franchi pour l'organisation {} ({}/{})", toCreate[0], organizationId, usage[0], quota);
+                createAlertIfNeeded(organizationId, entitlement.getOrganizationName(), usage[0], quota, event.getTimestamp());
+            }
+        } catch (Exception e) {
+            // Ne jamais propager : l'alerte sera rattrapée par la réconciliation
+            log.warn("Erreur lors de la détection des seuils de quota pour l'organisation {}: {}", organizationId, e.getMessage());
+        }
+    }
+    
+    /**
+     * Réconciliation (tâche coordonnée, voir ScheduledJobs) : recompte en base l'utilisation des organisations
+     * ayant enregistré une recherche depuis {@code activeSince}, sur toutes les instances, et rattrape une alerte
+     * manquée (ex: quota modifié, événement perdu). Le compteur local est corrigé s'il existe.
+     *
+     * @return Nombre d'organisations vérifiées
+     */
+    @Transactional
+    public int reconcileActiveOrganizations(Duration activeSince) {
+        YearMonth period = YearMonth.now();
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> organizationIds = usageLogRepository.findDistinctOrganizationIdsSince(now.minus(activeSince));
+        log.debug("Réconciliation des alertes de quota pour {} organisation(s) active(s)", organizationIds.size());
+        
+        int checked = 0;
+        for (Long organizationId : organizationIds) {
+            try {
+                OrganizationEntitlement entitlement = organizationEntitlementService.getEntitlement(organizationId);
+                Integer quota = alertQuota(entitlement);
+                if (quota == null) {
+                    usageCounters.invalidate(organizationId);
+                    continue;
+                }
+                long usage = countUsage(organizationId, period);
+                usageCounters.asMap().computeIfPresent(organizationId, (id, counter) -> {
+                    UsageCounter refreshed = new UsageCounter(period, usage, now);
+                    QuotaAlert.AlertType current = alertTypeFor(usage, quota);
+                    refreshed.alertedSeverity = Math.max(counter.period.equals(period) ? counter.alertedSeverity : 0,
+                            current != null ? getAlertTypeSeverity(current) : 0);
+                    return refreshed;
+                });
+                createAlertIfNeeded(organizationId, entitlement.getOrganizationName(), usage, quota, now);
+                checked++;
+            } catch (Exception e) {
+                log.warn("Erreur lors de la réconciliation des alertes de l'organisation {}: {}", organizationId, e.getMessage());
+            }
+        }
+        return checked;
     }
     
     /**
      * Vérifie les quotas de toutes les organisations et crée des alertes si nécessaire.
-     * Cette méthode est appelée automatiquement toutes les heures.
+     * Parcours complet déclenché manuellement par un administrateur ; la détection courante
+     * est faite à l'enregistrement de l'utilisation (voir onUsageRecorded).
+     *
+     * @return Nombre d'organisations vérifiées
      */
-    @Scheduled(fixedRate = 3600000) // Toutes les heures (3600000 ms)
     @Transactional
-    public void checkAllOrganizations() {
+    public int checkAllOrganizations() {
         log.debug("Vérification automatique des quotas pour toutes les organisations");
         List<OrganizationDto> organizations = organizationService.getAllOrganizations();
         
+        int checked = 0;
         for (OrganizationDto org : organizations) {
             if (org.getMonthlyQuota() != null) {
                 checkOrganizationQuota(org.getId());
+                checked++;
             }
         }
+        return checked;
     }
     
     /**
@@ -155,6 +316,82 @@ public class QuotaAlertService {
         logDataD2.put("planMonthlyQuota", currentMonthlyQuota);
         debugLog("QuotaAlertService.java:91", "checkOrganizationQuota - calculating percentage", logDataD2, "F");
         // #endregion
+        createAlertIfNeeded(organizationId, organization.getName(), currentUsage, currentMonthlyQuota, now);
+    }
+    
+    /**
+     * Récupère les alertes non lues pour une organisation.
+     */
+    public List<QuotaAlertDto> getUnreadAlertsForOrganization(Long organizationId) {
+        return quotaAlertRepository.findByOrganizationIdAndIsReadFalseOrderByCreatedAtDesc(organizationId)
+                .stream()
+                .map(this::toDto)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Récupère toutes les alertes non lues (pour les admins).
+     */
+    public List<QuotaAlertDto> getAllUnreadAlerts() {
+        return quotaAlertRepository.findByIsReadFalseOrderByCreatedAtDesc()
+                .stream()
+                .map(this::toDto)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Récupère toutes les alertes d'une organisation.
+     */
+    public List<QuotaAlertDto> getAllAlertsForOrganization(Long organizationId) {
+        return quotaAlertRepository.findByOrganizationIdOrderByCreatedAtDesc(organizationId)
+                .stream()
+                .map(this::toDto)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Marque une alerte comme lue.
+     */
+    @Transactional
+    public void markAlertAsRead(Long alertId) {
+        quotaAlertRepository.findById(alertId).ifPresent(alert -> {
+            if (quotaAlertRepository.markAsRead(alertId) > 0) {
+                publishUnreadAlertsChanged(alert.getOrganizationId(), -1);
+            }
+        });
+        log.debug("Alerte {} marquée comme lue", alertId);
+    }
+    
+    /**
+     * Marque toutes les alertes d'une organisation comme lues.
+     */
+    @Transactional
+    public void markAllAlertsAsReadForOrganization(Long organizationId) {
+        int markedAsRead = quotaAlertRepository.markAllAsReadForOrganization(organizationId);
+        publishUnreadAlertsChanged(organizationId, -markedAsRead);
+        log.debug("Toutes les alertes de l'organisation {} marquées comme lues", organizationId);
+    }
+    
+    /**
+     * Compte les alertes non lues pour une organisation.
+     */
+    public long countUnreadAlertsForOrganization(Long organizationId) {
+        return quotaAlertRepository.countByOrganizationIdAndIsReadFalse(organizationId);
+    }
+    
+    /**
+     * Compte toutes les alertes non lues (pour les admins).
+     */
+    public long countAllUnreadAlerts() {
+        return quotaAlertRepository.countByIsReadFalse();
+    }
+    
+    /**
+     * Crée une alerte si la consommation atteint un seuil, sans doublon pour le mois en cours :
+     * une alerte n'est créée que si aucune alerte non lue de même niveau ou plus critique n'existe déjà.
+     */
+    private void createAlertIfNeeded(Long organizationId, String organizationName, long currentUsage,
+                                     Integer currentMonthlyQuota, LocalDateTime now) {
         double percentageUsed = (double) currentUsage / currentMonthlyQuota * 100;
         
         // Déterminer le type d'alerte
@@ -166,20 +403,20 @@ public class QuotaAlertService {
                 alertType = QuotaAlert.AlertType.EXCEEDED;
                 message = String.format(
                     "⚠️ Le quota mensuel de votre organisation '%s' a été DÉPASSÉ ! Consommation de l'organisation: %d/%d requêtes (%.1f%%)",
-                    organization.getName(), currentUsage, currentMonthlyQuota, percentageUsed
+                    organizationName, currentUsage, currentMonthlyQuota, percentageUsed
                 );
             } else {
                 alertType = QuotaAlert.AlertType.CRITICAL;
                 message = String.format(
                     "🔴 Le quota mensuel de votre organisation '%s' a été ATTEINT ! Consommation de l'organisation: %d/%d requêtes (100%%)",
-                    organization.getName(), currentUsage, currentMonthlyQuota
+                    organizationName, currentUsage, currentMonthlyQuota
                 );
             }
         } else if (percentageUsed >= WARNING_THRESHOLD) {
             alertType = QuotaAlert.AlertType.WARNING;
             message = String.format(
                 "🟡 Le quota mensuel de votre organisation '%s' approche de la limite ! Consommation de l'organisation: %d/%d requêtes (%.1f%%)",
-                organization.getName(), currentUsage, currentMonthlyQuota, percentageUsed
+                organizationName, currentUsage, currentMonthlyQuota, percentageUsed
             );
         } else {
             // Pas d'alerte nécessaire, sortir de la méthode
@@ -218,11 +455,13 @@ public class QuotaAlertService {
                 int comparison = compareAlertTypeSeverity(alertType, mostCriticalExisting);
                 if (comparison > 0) {
                     // La nouvelle alerte est plus critique, marquer les anciennes comme lues et créer la nouvelle
+                    int markedAsRead = 0;
                     for (QuotaAlert existingAlert : currentMonthAlerts) {
-                        quotaAlertRepository.markAsRead(existingAlert.getId());
+                        markedAsRead += quotaAlertRepository.markAsRead(existingAlert.getId());
                         log.debug("Alerte {} marquée comme lue car remplacée par une alerte plus critique ({})", 
                                 existingAlert.getAlertType(), alertType);
                     }
+                    publishUnreadAlertsChanged(organizationId, -markedAsRead);
                     shouldCreateAlert = true;
                 } else if (comparison < 0) {
                     // La nouvelle alerte est moins critique, ne pas créer (garder la plus critique)
@@ -246,7 +485,7 @@ public class QuotaAlertService {
             if (shouldCreateAlert) {
                 QuotaAlert alert = new QuotaAlert();
                 alert.setOrganizationId(organizationId);
-                alert.setOrganizationName(organization.getName());
+                alert.setOrganizationName(organizationName);
                 alert.setAlertType(alertType);
                 alert.setCurrentUsage(currentUsage);
                 alert.setMonthlyQuota(currentMonthlyQuota); // Utiliser la valeur actuelle du plan
@@ -255,72 +494,47 @@ public class QuotaAlertService {
                 alert.setIsRead(false);
                 
                 quotaAlertRepository.save(alert);
+                publishUnreadAlertsChanged(organizationId, 1);
                 log.info("Alerte de quota créée: {} pour l'organisation {} ({}%)", 
-                        alertType, organization.getName(), String.format("%.1f", percentageUsed));
+                        alertType, organizationName, String.format("%.1f", percentageUsed));
             }
         }
     }
     
     /**
-     * Récupère les alertes non lues pour une organisation.
-     */
-    public List<QuotaAlertDto> getUnreadAlertsForOrganization(Long organizationId) {
-        return quotaAlertRepository.findByOrganizationIdAndIsReadFalseOrderByCreatedAtDesc(organizationId)
-                .stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
-    }
-    
-    /**
-     * Récupère toutes les alertes non lues (pour les admins).
+     * Publie la variation du compteur d'alertes non lues (badge), appliquée après commit.
      */
-    public List<QuotaAlertDto> getAllUnreadAlerts() {
-        return quotaAlertRepository.findByIsReadFalseOrderByCreatedAtDesc()
-                .stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
-    }
-    
-    /**
-     * Récupère toutes les alertes d'une organisation.
-     */
-    public List<QuotaAlertDto> getAllAlertsForOrganization(Long organizationId) {
-        return quotaAlertRepository.findByOrganizationIdOrderByCreatedAtDesc(organizationId)
-                .stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
-    }
-    
-    /**
-     * Marque une alerte comme lue.
-     */
-    @Transactional
-    public void markAlertAsRead(Long alertId) {
-        quotaAlertRepository.markAsRead(alertId);
-        log.debug("Alerte {} marquée comme lue", alertId);
+    private void publishUnreadAlertsChanged(Long organizationId, long delta) {
+        if (delta != 0) {
+            eventPublisher.publishEvent(BadgeCounterChangedEvent.of(
+                    organizationId, BadgeCounterChangedEvent.Counter.UNREAD_ALERTS, delta));
+        }
     }
     
     /**
-     * Marque toutes les alertes d'une organisation comme lues.
+     * Quota utilisé pour les alertes : celui du plan tarifaire, ou celui de l'organisation à défaut.
      */
-    @Transactional
-    public void markAllAlertsAsReadForOrganization(Long organizationId) {
-        quotaAlertRepository.markAllAsReadForOrganization(organizationId);
-        log.debug("Toutes les alertes de l'organisation {} marquées comme lues", organizationId);
+    private Integer alertQuota(OrganizationEntitlement entitlement) {
+        return entitlement.isPlanFound() ? entitlement.getPlanMonthlyQuota() : entitlement.getMonthlyQuota();
     }
     
-    /**
-     * Compte les alertes non lues pour une organisation.
-     */
-    public long countUnreadAlertsForOrganization(Long organizationId) {
-        return quotaAlertRepository.countByOrganizationIdAndIsReadFalse(organizationId);
+    private long countUsage(Long organizationId, YearMonth period) {
+        return usageLogRepository.countByOrganizationIdAndTimestampBetween(
+                organizationId, period.atDay(1).atStartOfDay(), period.atEndOfMonth().atTime(23, 59, 59, 999999999));
     }
     
     /**
-     * Compte toutes les alertes non lues (pour les admins).
+     * Niveau d'alerte correspondant à une consommation (null si sous le seuil d'avertissement).
      */
-    public long countAllUnreadAlerts() {
-        return quotaAlertRepository.countByIsReadFalse();
+    private static QuotaAlert.AlertType alertTypeFor(long usage, int quota) {
+        double percentageUsed = (double) usage / quota * 100;
+        if (percentageUsed >= CRITICAL_THRESHOLD) {
+            return usage > quota ? QuotaAlert.AlertType.EXCEEDED : QuotaAlert.AlertType.CRITICAL;
+        }
+        if (percentageUsed >= WARNING_THRESHOLD) {
+            return QuotaAlert.AlertType.WARNING;
+        }
+        return null;
     }
     
     /**
@@ -357,6 +571,34 @@ public class QuotaAlertService {
         }
     }
     
+    /**
+     * Compteur d'utilisation d'une organisation pour un mois.
+     * Modifié uniquement à l'intérieur de compute() (verrou par organisation).
+     */
+    private static class UsageCounter {
+        private final YearMonth period;
+        private long count;
+        /**
+         * Borne du COUNT d'initialisation : les événements antérieurs ou égaux y sont déjà inclus
+         */
+        private final LocalDateTime countedUntil;
+        private final long seededAtNanos = System.nanoTime();
+        /**
+         * Niveau d'alerte le plus critique déjà signalé ce mois-ci
+         */
+        private int alertedSeverity;
+        
+        private UsageCounter(YearMonth period, long count, LocalDateTime countedUntil) {
+            this.period = period;
+            this.count = count;
+            this.countedUntil = countedUntil;
+        }
+        
+        private boolean isStale() {
+            return System.nanoTime() - seededAtNanos > COUNTER_REFRESH.toNanos();
+        }
+    }
+    
     /**
      * Convertit une QuotaAlert en DTO.
      */
@@ -11,6 +11,7 @@ import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -27,13 +28,18 @@ public class KeycloakAdminService {
     private static final int MAX_RETRIES = 3;
     private static final long RETRY_DELAY_MS = 2000;
 
-    private final Keycloak keycloak;
+    /**
+     * Client d'administration Keycloak, créé à la première utilisation (voir KeycloakAdminConfig)
+     */
+    private final ObjectFactory<Keycloak> keycloak;
+    private final KeycloakUserDirectory keycloakUserDirectory;
 
     @Value("${keycloak.registration.realm}")
     private String realm;
 
-    public KeycloakAdminService(Keycloak keycloak) {
+    public KeycloakAdminService(ObjectFactory<Keycloak> keycloak, KeycloakUserDirectory keycloakUserDirectory) {
         this.keycloak = keycloak;
+        this.keycloakUserDirectory = keycloakUserDirectory;
     }
 
     public Response createUser(UserRegistrationRequest registrationRequest) {
@@ -87,7 +93,7 @@ public class KeycloakAdminService {
                 passwordCred.setValue(password);
                 user.setCredentials(Collections.singletonList(passwordCred));
 
-                RealmResource realmResource = keycloak.realm(realm);
+                RealmResource realmResource = keycloak.getObject().realm(realm);
                 UsersResource usersResource = realmResource.users();
 
                 logger.info("Sending create user request to Keycloak (attempt {}/{})", attempt + 1, MAX_RETRIES);
@@ -98,6 +104,8 @@ public class KeycloakAdminService {
 
                 if (status >= 200 && status < 300) {
                     logger.info("✓ User created successfully");
+                    // Un utilisateur inexistant a pu être mémorisé dans l'annuaire local
+                    keycloakUserDirectory.invalidate(getUserIdFromResponse(response));
                     return response;
                 } else if (status == 409) {
                     logger.warn("User already exists");
@@ -165,7 +173,7 @@ public class KeycloakAdminService {
      */
     public String getUserIdByUsername(String username) {
         try {
-            RealmResource realmResource = keycloak.realm(realm);
+            RealmResource realmResource = keycloak.getObject().realm(realm);
             java.util.List<org.keycloak.representations.idm.UserRepresentation> users = 
                 realmResource.users().searchByUsername(username, true);
             
@@ -191,27 +199,20 @@ public class KeycloakAdminService {
      * @return L'email de l'utilisateur ou null si non trouvé
      */
     public String getUserEmail(String keycloakUserId) {
-        try {
-            RealmResource realmResource = keycloak.realm(realm);
-            UserRepresentation user = realmResource.users().get(keycloakUserId).toRepresentation();
-            return user.getEmail();
-        } catch (Exception e) {
-            logger.error("Erreur lors de la récupération de l'email de l'utilisateur {}: {}", keycloakUserId, e.getMessage());
-            return null;
-        }
+        return keycloakUserDirectory.getUser(keycloakUserId)
+                .map(KeycloakUserDirectory.KeycloakUser::email)
+                .orElse(null);
     }
 
     /**
      * Récupère les emails de plusieurs utilisateurs depuis Keycloak.
+     * Les utilisateurs absents de l'annuaire local sont demandés en parallèle.
      *
      * @param keycloakUserIds Liste des IDs d'utilisateurs Keycloak
      * @return Liste des emails (sans les nulls)
      */
     public java.util.List<String> getUserEmails(java.util.List<String> keycloakUserIds) {
-        return keycloakUserIds.stream()
-                .map(this::getUserEmail)
-                .filter(email -> email != null && !email.trim().isEmpty())
-                .collect(java.util.stream.Collectors.toList());
+        return keycloakUserDirectory.getEmails(keycloakUserIds);
     }
     
     /**
@@ -221,23 +222,29 @@ public class KeycloakAdminService {
      * @return Le nom d'utilisateur ou null si non trouvé
      */
     public String getUsername(String keycloakUserId) {
-        try {
-            RealmResource realmResource = keycloak.realm(realm);
-            UserRepresentation user = realmResource.users().get(keycloakUserId).toRepresentation();
-            return user.getUsername();
-        } catch (Exception e) {
-            logger.error("Erreur lors de la récupération du nom d'utilisateur pour {}: {}", keycloakUserId, e.getMessage());
-            return null;
-        }
+        return keycloakUserDirectory.getUser(keycloakUserId)
+                .map(KeycloakUserDirectory.KeycloakUser::username)
+                .orElse(null);
+    }
+
+    /**
+     * Récupère plusieurs utilisateurs depuis l'annuaire local (les absents sont demandés à Keycloak en parallèle).
+     *
+     * @param keycloakUserIds IDs des utilisateurs Keycloak
+     * @return Les utilisateurs trouvés, par ID
+     */
+    public Map<String, KeycloakUserDirectory.KeycloakUser> getUsers(java.util.Collection<String> keycloakUserIds) {
+        return keycloakUserDirectory.getUsers(keycloakUserIds);
     }
 
     public void disableUser(String keycloakUserId) {
         try {
-            RealmResource realmResource = keycloak.realm(realm);
+            RealmResource realmResource = keycloak.getObject().realm(realm);
             UsersResource usersResource = realmResource.users();
             UserRepresentation user = usersResource.get(keycloakUserId).toRepresentation();
             user.setEnabled(false);
             usersResource.get(keycloakUserId).update(user);
+            keycloakUserDirectory.invalidate(keycloakUserId);
             logger.info("Utilisateur {} désactivé dans Keycloak", keycloakUserId);
         } catch (Exception e) {
             logger.error("Erreur lors de la désactivation de l'utilisateur {}: {}", keycloakUserId, e.getMessage(), e);
@@ -252,11 +259,12 @@ public class KeycloakAdminService {
      */
     public void enableUser(String keycloakUserId) {
         try {
-            RealmResource realmResource = keycloak.realm(realm);
+            RealmResource realmResource = keycloak.getObject().realm(realm);
             UsersResource usersResource = realmResource.users();
             UserRepresentation user = usersResource.get(keycloakUserId).toRepresentation();
             user.setEnabled(true);
             usersResource.get(keycloakUserId).update(user);
+            keycloakUserDirectory.invalidate(keycloakUserId);
             logger.info("Utilisateur {} activé dans Keycloak", keycloakUserId);
         } catch (Exception e) {
             logger.error("Erreur lors de l'activation de l'utilisateur {}: {}", keycloakUserId, e.getMessage(), e);
@@ -271,19 +279,14 @@ public class KeycloakAdminService {
      * @return true si l'utilisateur est activé, false sinon
      */
     public boolean isUserEnabled(String keycloakUserId) {
-        try {
-            RealmResource realmResource = keycloak.realm(realm);
-            UserRepresentation user = realmResource.users().get(keycloakUserId).toRepresentation();
-            return user.isEnabled() != null && user.isEnabled();
-        } catch (Exception e) {
-            logger.error("Erreur lors de la vérification du statut de l'utilisateur {}: {}", keycloakUserId, e.getMessage(), e);
-            return false;
-        }
+        return keycloakUserDirectory.getUser(keycloakUserId)
+                .map(KeycloakUserDirectory.KeycloakUser::enabled)
+                .orElse(false);
     }
 
     public UserRepresentation getUserRepresentation(String keycloakUserId) {
         try {
-            RealmResource realmResource = keycloak.realm(realm);
+            RealmResource realmResource = keycloak.getObject().realm(realm);
             return realmResource.users().get(keycloakUserId).toRepresentation();
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération de l'utilisateur {}: {}", keycloakUserId, e.getMessage());
@@ -296,7 +299,7 @@ public class KeycloakAdminService {
             return;
         }
         try {
-            RealmResource realmResource = keycloak.realm(realm);
+            RealmResource realmResource = keycloak.getObject().realm(realm);
             RolesResource rolesResource = realmResource.roles();
 
             List<RoleRepresentation> roles = roleNames.stream()
@@ -317,6 +320,7 @@ public class KeycloakAdminService {
             }
 
             realmResource.users().get(keycloakUserId).roles().realmLevel().add(roles);
+            keycloakUserDirectory.invalidate(keycloakUserId);
             logger.info("Rôles {} assignés à l'utilisateur {}", roles.stream().map(RoleRepresentation::getName).toList(), keycloakUserId);
         } catch (Exception e) {
             logger.error("Erreur lors de l'assignation des rôles {} à l'utilisateur {}: {}", roleNames, keycloakUserId, e.getMessage(), e);
@@ -0,0 +1,224 @@
+package com.muhend.backend.auth.service;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.NotFoundException;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Annuaire local des utilisateurs Keycloak (id, nom d'utilisateur, email, statut, rôles du realm), en lecture traversante.
+ *
+ * L'API d'administration Keycloak n'offre qu'une lecture par id : les lectures groupées ({@link #getUsers(Collection)})
+ * ne demandent que les utilisateurs absents du cache, en parallèle sur un pool borné, si bien que la latence
+ * ne croît plus avec la taille des organisations. Les entrées sont rafraîchies en arrière-plan après
+ * {@code refresh-after-ms} (l'ancienne valeur reste servie pendant le rechargement) et expirent après
+ * {@code expire-after-ms}. Nos propres modifications (création, activation, désactivation, rôles)
+ * invalident l'entrée concernée ; les modifications faites directement dans Keycloak sont visibles
+ * au plus tard au rafraîchissement suivant.
+ */
+@Service
+public class KeycloakUserDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakUserDirectory.class);
+
+    /**
+     * Client d'administration Keycloak, créé à la première utilisation (voir KeycloakAdminConfig)
+     */
+    private final ObjectFactory<Keycloak> keycloak;
+    private final ExecutorService fetchers;
+
+    /**
+     * Optional.empty() mémorise un utilisateur inexistant, pour ne pas réinterroger Keycloak à chaque lecture
+     */
+    private final LoadingCache<String, Optional<KeycloakUser>> cache;
+
+    @Value("${keycloak.registration.realm}")
+    private String realm;
+
+    public KeycloakUserDirectory(ObjectFactory<Keycloak> keycloak,
+                                 @Value("${keycloak.directory.parallelism:8}") int parallelism,
+                                 @Value("${keycloak.directory.maximum-size:50000}") long maximumSize,
+                                 @Value("${keycloak.directory.refresh-after-ms:300000}") long refreshAfterMs,
+                                 @Value("${keycloak.directory.expire-after-ms:3600000}") long expireAfterMs) {
+        this.keycloak = keycloak;
+        this.fetchers = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                Thread.ofPlatform().name("keycloak-directory-", 1).daemon(true).factory());
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(Duration.ofMillis(refreshAfterMs))
+                .expireAfterWrite(Duration.ofMillis(Math.max(expireAfterMs, refreshAfterMs)))
+                .executor(fetchers)
+                .build(new DirectoryLoader());
+    }
+
+    /**
+     * Utilisateur Keycloak tel que mis en cache
+     */
+    public record KeycloakUser(String id, String username, String email, String firstName, String lastName,
+                               boolean enabled, Set<String> realmRoles) {
+
+        /**
+         * Prénom et nom, ou à défaut le nom d'utilisateur
+         */
+        public String displayName() {
+            if (firstName != null && lastName != null) {
+                return firstName + " " + lastName;
+            }
+            return firstName != null ? firstName : (lastName != null ? lastName : username);
+        }
+    }
+
+    /**
+     * Récupère un utilisateur (depuis le cache si possible).
+     *
+     * @return L'utilisateur, ou Optional.empty() s'il n'existe pas ou si Keycloak est injoignable
+     */
+    public Optional<KeycloakUser> getUser(String keycloakUserId) {
+        if (keycloakUserId == null || keycloakUserId.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return cache.get(keycloakUserId);
+        } catch (RuntimeException e) {
+            logger.error("Erreur lors de la récupération de l'utilisateur {}: {}", keycloakUserId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Récupère plusieurs utilisateurs en une fois : seuls les absents du cache sont demandés à Keycloak, en parallèle.
+     *
+     * @return Les utilisateurs trouvés, par id, dans l'ordre de la demande (les inexistants et les erreurs sont omis)
+     */
+    public Map<String, KeycloakUser> getUsers(Collection<String> keycloakUserIds) {
+        Set<String> ids = keycloakUserIds.stream()
+                .filter(id -> id != null && !id.isBlank())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, KeycloakUser> users = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return users;
+        }
+        Map<String, Optional<KeycloakUser>> cached;
+        try {
+            cached = cache.getAll(ids);
+        } catch (RuntimeException e) {
+            logger.error("Erreur lors de la récupération de {} utilisateur(s): {}", ids.size(), e.getMessage());
+            return users;
+        }
+        for (String id : ids) {
+            Optional<KeycloakUser> user = cached.get(id);
+            if (user != null && user.isPresent()) {
+                users.put(id, user.get());
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Récupère les emails de plusieurs utilisateurs (sans doublons ni emails vides), dans l'ordre de la demande.
+     */
+    public List<String> getEmails(Collection<String> keycloakUserIds) {
+        return getUsers(keycloakUserIds).values().stream()
+                .map(KeycloakUser::email)
+                .filter(email -> email != null && !email.trim().isEmpty())
+                .map(String::trim)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retire un utilisateur du cache après une modification faite par l'application.
+     */
+    public void invalidate(String keycloakUserId) {
+        if (keycloakUserId != null) {
+            cache.invalidate(keycloakUserId);
+            logger.debug("Utilisateur {} retiré de l'annuaire local", keycloakUserId);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchers.shutdownNow();
+    }
+
+    private Optional<KeycloakUser> fetch(String keycloakUserId) {
+        UserResource userResource = keycloak.getObject().realm(realm).users().get(keycloakUserId);
+        UserRepresentation user;
+        try {
+            user = userResource.toRepresentation();
+        } catch (NotFoundException e) {
+            return Optional.empty();
+        }
+        List<RoleRepresentation> roles = userResource.roles().realmLevel().listAll();
+        Set<String> roleNames = roles == null ? Set.of() : roles.stream()
+                .map(RoleRepresentation::getName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+        return Optional.of(new KeycloakUser(
+                user.getId() != null ? user.getId() : keycloakUserId,
+                user.getUsername(),
+                user.getEmail(),
+                user.getFirstName(),
+                user.getLastName(),
+                Boolean.TRUE.equals(user.isEnabled()),
+                roleNames));
+    }
+
+    private final class DirectoryLoader implements CacheLoader<String, Optional<KeycloakUser>> {
+
+        @Override
+        public Optional<KeycloakUser> load(String keycloakUserId) {
+            return fetch(keycloakUserId);
+        }
+
+        /**
+         * Lecture groupée : un appel par utilisateur, exécutés en parallèle sur le pool de l'annuaire.
+         * Un utilisateur en erreur est omis (et donc non mis en cache) sans faire échouer les autres.
+         */
+        @Override
+        public Map<String, Optional<KeycloakUser>> loadAll(Set<? extends String> keycloakUserIds) {
+            Map<String, CompletableFuture<Optional<KeycloakUser>>> futures = new LinkedHashMap<>();
+            for (String id : keycloakUserIds) {
+                futures.put(id, CompletableFuture.supplyAsync(() -> fetch(id), fetchers));
+            }
+            Map<String, Optional<KeycloakUser>> users = new LinkedHashMap<>();
+            futures.forEach((id, future) -> {
+                try {
+                    users.put(id, future.join());
+                } catch (RuntimeException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.error("Erreur lors de la récupération de l'utilisateur {}: {}", id, cause.getMessage());
+                }
+            });
+            return users;
+        }
+    }
+}
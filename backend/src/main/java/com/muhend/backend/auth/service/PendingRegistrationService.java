@@ -10,7 +10,6 @@ import com.muhend.backend.organization.repository.OrganizationRepository;
 import com.muhend.backend.organization.service.OrganizationService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -461,30 +460,18 @@ public class PendingRegistrationService {
     }
     
     /**
-     * Nettoie les inscriptions expirées (peut être appelé par un scheduled task).
+     * Nettoie les inscriptions expirées.
+     * Tâche planifiée tous les jours à 2h du matin (voir ScheduledJobs).
+     *
+     * @return Nombre d'inscriptions supprimées
      */
     @Transactional
-    public void cleanupExpiredRegistrations() {
+    public int cleanupExpiredRegistrations() {
         LocalDateTime now = LocalDateTime.now();
         List<PendingRegistration> expired = pendingRegistrationRepository.findExpiredUnconfirmed(now);
         log.info("Nettoyage de {} inscriptions expirées", expired.size());
         pendingRegistrationRepository.deleteExpiredUnconfirmed(now);
-    }
-    
-    /**
-     * Tâche planifiée pour nettoyer automatiquement les inscriptions expirées.
-     * Exécutée tous les jours à 2h du matin.
-     */
-    @Scheduled(cron = "0 0 2 * * ?") // Tous les jours à 2h du matin
-    @Transactional
-    public void scheduledCleanupExpiredRegistrations() {
-        log.info("=== Nettoyage automatique des inscriptions expirées ===");
-        try {
-            cleanupExpiredRegistrations();
-            log.info("✓ Nettoyage automatique terminé avec succès");
-        } catch (Exception e) {
-            log.error("✗ Erreur lors du nettoyage automatique des inscriptions expirées", e);
-        }
+        return expired.size();
     }
     
     /**
@@ -0,0 +1,25 @@
+package com.muhend.backend.cache.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Message d'invalidation d'un cache local, diffusé aux autres instances du backend.
+ *
+ * @param cache Nom du cache (voir les constantes de {@link com.muhend.backend.cache.service.CacheInvalidationBus})
+ * @param key   Clé à invalider, ou null pour vider tout le cache
+ */
+public record CacheInvalidation(String cache, String key) {
+
+    public static CacheInvalidation of(String cache, Object key) {
+        return new CacheInvalidation(cache, key != null ? key.toString() : null);
+    }
+
+    public static CacheInvalidation all(String cache) {
+        return new CacheInvalidation(cache, null);
+    }
+
+    @JsonIgnore
+    public boolean isAll() {
+        return key == null;
+    }
+}
@@ -0,0 +1,320 @@
+package com.muhend.backend.cache.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bus d'invalidation des caches locaux entre les instances du backend, via LISTEN/NOTIFY de PostgreSQL.
+ *
+ * Une instance qui modifie une donnée invalide son propre cache puis diffuse l'invalidation
+ * ({@link #broadcast(CacheInvalidation)}). Les invalidations sont regroupées pendant quelques millisecondes,
+ * dédoublonnées (trop de clés d'un même cache deviennent un vidage complet) et envoyées en quelques NOTIFY.
+ * Chaque instance écoute le canal sur une connexion dédiée (hors pool) et applique les invalidations
+ * des autres instances aux caches enregistrés ({@link #register}).
+ *
+ * NOTIFY n'est pas durable : une instance déconnectée perd les messages. À chaque (re)connexion,
+ * tous les caches enregistrés sont donc vidés.
+ */
+@Service
+@Slf4j
+public class CacheInvalidationBus {
+
+    public static final String ORGANIZATION_ENTITLEMENTS = "organization-entitlements";
+    public static final String MEMBERSHIPS_BY_USER = "memberships-by-user";
+    public static final String MEMBERSHIPS_BY_ORGANIZATION = "memberships-by-organization";
+    public static final String PRICING_CATALOG = "pricing-catalog";
+    public static final String BADGE_COUNTERS = "badge-counters";
+    /**
+     * Pas un cache : recherches enregistrées (organisation:utilisateur) à pousser aux flux d'utilisation
+     */
+    public static final String USAGE_STREAM = "usage-stream";
+
+    static final String CHANNEL = "cache_invalidation";
+    /**
+     * Taille maximale d'un message NOTIFY (8000 octets), avec une marge
+     */
+    static final int MAX_PAYLOAD_BYTES = 7000;
+
+    /**
+     * Invalidation d'un cache local.
+     */
+    public interface Handler {
+        void invalidate(String key);
+
+        void invalidateAll();
+    }
+
+    /**
+     * Message diffusé : invalidations d'une instance
+     */
+    record Notification(String origin, List<CacheInvalidation> invalidations) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String origin = UUID.randomUUID().toString();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Set<CacheInvalidation> pending = new LinkedHashSet<>();
+    private final ScheduledExecutorService sender;
+    private boolean flushScheduled;
+    private volatile boolean running = true;
+    private volatile Thread listener;
+
+    @Value("${cache.bus.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Délai de regroupement des invalidations avant envoi
+     */
+    @Value("${cache.bus.coalesce-ms:50}")
+    private long coalesceMs;
+
+    /**
+     * Au-delà de ce nombre de clés d'un même cache dans un envoi, le cache est vidé entièrement
+     */
+    @Value("${cache.bus.max-keys-per-cache:100}")
+    private int maxKeysPerCache;
+
+    @Value("${cache.bus.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    @Value("${spring.datasource.url:}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    public CacheInvalidationBus(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.sender = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("cache-bus-sender").factory());
+    }
+
+    /**
+     * Enregistre un cache local, invalidé à la réception des messages qui le concernent.
+     */
+    public void register(String cache, Handler handler) {
+        handlers.put(cache, handler);
+    }
+
+    /**
+     * Diffuse une invalidation aux autres instances (le cache local doit déjà être invalidé).
+     */
+    public void broadcast(CacheInvalidation invalidation) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (pending) {
+            pending.add(invalidation);
+            if (!flushScheduled) {
+                try {
+                    sender.schedule(this::flush, coalesceMs, TimeUnit.MILLISECONDS);
+                    flushScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    // Arrêt en cours : les autres instances gardent au plus la durée de vie de leurs caches
+                }
+            }
+        }
+    }
+
+    /**
+     * Envoie les invalidations en attente, regroupées en messages de moins de MAX_PAYLOAD_BYTES octets.
+     */
+    void flush() {
+        List<CacheInvalidation> batch;
+        synchronized (pending) {
+            batch = coalesce(pending, maxKeysPerCache);
+            pending.clear();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (String payload : toPayloads(batch)) {
+                jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, payload);
+            }
+            log.debug("{} invalidation(s) de cache diffusée(s)", batch.size());
+        } catch (Exception e) {
+            // Les autres instances gardent au plus la durée de vie de leurs caches
+            log.warn("Impossible de diffuser {} invalidation(s) de cache: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Dédoublonne les invalidations : un vidage complet remplace les clés de son cache,
+     * et trop de clés d'un même cache deviennent un vidage complet.
+     */
+    static List<CacheInvalidation> coalesce(Set<CacheInvalidation> invalidations, int maxKeysPerCache) {
+        Map<String, Set<CacheInvalidation>> byCache = new LinkedHashMap<>();
+        for (CacheInvalidation invalidation : invalidations) {
+            byCache.computeIfAbsent(invalidation.cache(), cache -> new LinkedHashSet<>()).add(invalidation);
+        }
+        List<CacheInvalidation> result = new ArrayList<>();
+        byCache.forEach((cache, keys) -> {
+            if (keys.size() > maxKeysPerCache || keys.stream().anyMatch(CacheInvalidation::isAll)) {
+                result.add(CacheInvalidation.all(cache));
+            } else {
+                result.addAll(keys);
+            }
+        });
+        return result;
+    }
+
+    List<String> toPayloads(List<CacheInvalidation> invalidations) throws JsonProcessingException {
+        List<String> payloads = new ArrayList<>();
+        List<CacheInvalidation> chunk = new ArrayList<>();
+        String current = null;
+        for (CacheInvalidation invalidation : invalidations) {
+            chunk.add(invalidation);
+            String payload = objectMapper.writeValueAsString(new Notification(origin, chunk));
+            if (payload.getBytes(StandardCharsets.UTF_8).length > MAX_PAYLOAD_BYTES && current != null) {
+                payloads.add(current);
+                chunk = new ArrayList<>(List.of(invalidation));
+                payload = objectMapper.writeValueAsString(new Notification(origin, chunk));
+            }
+            current = payload;
+        }
+        if (current != null) {
+            payloads.add(current);
+        }
+        return payloads;
+    }
+
+    /**
+     * Applique un message reçu (les messages de cette instance sont ignorés).
+     */
+    void receive(String payload) {
+        Notification notification;
+        try {
+            notification = objectMapper.readValue(payload, Notification.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Message d'invalidation de cache illisible: {}", e.getMessage());
+            return;
+        }
+        if (origin.equals(notification.origin()) || notification.invalidations() == null) {
+            return;
+        }
+        for (CacheInvalidation invalidation : notification.invalidations()) {
+            Handler handler = handlers.get(invalidation.cache());
+            if (handler == null) {
+                continue;
+            }
+            try {
+                if (invalidation.isAll()) {
+                    handler.invalidateAll();
+                } else {
+                    handler.invalidate(invalidation.key());
+                }
+            } catch (Exception e) {
+                log.warn("Erreur lors de l'invalidation du cache {} (clé {}): {}",
+                        invalidation.cache(), invalidation.key(), e.getMessage());
+            }
+        }
+        log.debug("{} invalidation(s) de cache reçue(s) de l'instance {}", notification.invalidations().size(), notification.origin());
+    }
+
+    /**
+     * Vide tous les caches enregistrés (messages éventuellement perdus pendant une déconnexion).
+     */
+    void invalidateAll() {
+        handlers.forEach((cache, handler) -> {
+            try {
+                handler.invalidateAll();
+            } catch (Exception e) {
+                log.warn("Erreur lors du vidage du cache {}: {}", cache, e.getMessage());
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startListening() {
+        if (!enabled || url == null || !url.startsWith("jdbc:postgresql:")) {
+            log.info("Bus d'invalidation des caches désactivé");
+            return;
+        }
+        listener = Thread.ofPlatform().name("cache-bus-listener").daemon(true).start(this::listen);
+    }
+
+    /**
+     * Écoute le canal sur une connexion dédiée, reconnectée en cas de coupure.
+     */
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                invalidateAll();
+                log.info("Écoute des invalidations de cache des autres instances (canal {})", CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(10_000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Connexion d'écoute des invalidations de cache perdue, reconnexion dans {} ms: {}",
+                        reconnectDelayMs, e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        sender.shutdown();
+        try {
+            // Dernières invalidations en attente
+            sender.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+}
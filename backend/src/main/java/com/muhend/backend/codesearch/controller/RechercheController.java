@@ -9,13 +9,11 @@ import com.muhend.backend.codesearch.service.ai.AiPrompts;
 import com.muhend.backend.codesearch.service.ai.AiService;
 import com.muhend.backend.codesearch.service.ai.OpenAiService;
 import com.muhend.backend.usage.service.UsageLogService;
+import com.muhend.backend.organization.service.OrganizationEntitlementService;
 import com.muhend.backend.organization.service.OrganizationService;
-import com.muhend.backend.organization.dto.OrganizationDto;
+import com.muhend.backend.organization.dto.OrganizationEntitlement;
 import com.muhend.backend.organization.dto.QuotaCheckResult;
 import com.muhend.backend.organization.exception.UserNotAssociatedException;
-import com.muhend.backend.pricing.dto.PricingPlanDto;
-import com.muhend.backend.pricing.service.PricingPlanService;
-import java.math.BigDecimal;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,16 +48,18 @@ public class RechercheController {
     private final Position6DzService position6DzService;
     private final UsageLogService usageLogService;
     private final OrganizationService organizationService;
-    private final PricingPlanService pricingPlanService;
+    private final OrganizationEntitlementService organizationEntitlementService;
     
     // ThreadLocal pour stocker le résultat de la vérification du quota pour la requête courante
     private static final ThreadLocal<QuotaCheckResult> currentQuotaCheck = new ThreadLocal<>();
+    // ThreadLocal pour stocker les droits de l'organisation, réutilisés par logUsage() pour la facturation
+    private static final ThreadLocal<OrganizationEntitlement> currentEntitlement = new ThreadLocal<>();
 
     @Autowired
     public RechercheController(AiService aiService, AiPrompts aiPrompts, SectionService sectionService, ChapitreService chapitreService,
                                Position4Service position4Service, Position6DzService position6DzService,
                                UsageLogService usageLogService, OrganizationService organizationService,
-                               PricingPlanService pricingPlanService) {
+                               OrganizationEntitlementService organizationEntitlementService) {
         this.aiService = aiService;
         this.aiPrompts = aiPrompts;
         this.sectionService = sectionService;
@@ -68,7 +68,7 @@ public class RechercheController {
         this.position6DzService = position6DzService;
         this.usageLogService = usageLogService;
         this.organizationService = organizationService;
-        this.pricingPlanService = pricingPlanService;
+        this.organizationEntitlementService = organizationEntitlementService;
     }
 
     // Enumération des différents niveaux de recherche
@@ -202,11 +202,14 @@ public class RechercheController {
                 return;
             }
             
-            // Récupérer l'organisation de l'utilisateur (obligatoire)
+            // Récupérer les droits de l'organisation de l'utilisateur (obligatoire), déjà chargés par checkQuotaBeforeSearch()
             // Si l'utilisateur n'a pas d'organisation, on ne peut pas logger l'utilisation
-            Long organizationId;
+            OrganizationEntitlement entitlement = currentEntitlement.get();
             try {
-                organizationId = organizationService.getOrganizationIdByUserId(userId);
+                if (entitlement == null) {
+                    entitlement = organizationEntitlementService.getEntitlement(
+                            organizationService.getOrganizationIdByUserId(userId));
+                }
             } catch (UserNotAssociatedException e) {
                 log.warn("Utilisateur {} non associé à une organisation. Logging non effectué.", userId);
                 return;
@@ -215,62 +218,58 @@ public class RechercheController {
                 log.warn("Erreur lors de la récupération de l'organisation pour l'utilisateur {}: {}", userId, e.getMessage());
                 return;
             }
+            Long organizationId = entitlement.getOrganizationId();
             
             // Récupérer les informations d'utilisation depuis OpenAiService
             UsageInfo usageInfo = OpenAiService.getCurrentUsage();
             if (usageInfo != null && usageInfo.getTokens() != null && usageInfo.getTokens() > 0) {
-                // Récupérer l'organisation pour déterminer le type de plan
-                OrganizationDto organization = organizationService.getOrganizationById(organizationId);
                 QuotaCheckResult quotaResult = getCurrentQuotaCheck();
                 
                 // Déterminer le coût selon la politique de facturation
                 Double costToUse = null; // Par défaut : pas de facturation
                 String billingReason = "plan mensuel (facturation mensuelle fixe)";
                 
-                if (organization != null && organization.getPricingPlanId() != null) {
-                    try {
-                        PricingPlanDto plan = pricingPlanService.getPricingPlanById(organization.getPricingPlanId());
-                        boolean hasPricePerRequest = plan.getPricePerRequest() != null && plan.getPricePerRequest().compareTo(BigDecimal.ZERO) > 0;
-                        boolean hasPricePerMonth = plan.getPricePerMonth() != null && plan.getPricePerMonth().compareTo(BigDecimal.ZERO) > 0;
-                        boolean isPayPerRequest = hasPricePerRequest && !hasPricePerMonth;
-                        boolean isMonthlyPlan = hasPricePerMonth && !hasPricePerRequest;
-                        
-                        if (isPayPerRequest) {
-                            // Plan pay-per-request : facturer chaque requête avec le prix du plan dans sa monnaie
-                            costToUse = plan.getPricePerRequest().doubleValue();
-                            billingReason = String.format("plan pay-per-request (%s %s)", 
-                                    plan.getPricePerRequest(), plan.getCurrency() != null ? plan.getCurrency() : "EUR");
-                            log.debug("💰 Facturation par requête pour plan pay-per-request: {} {}", 
-                                    costToUse, plan.getCurrency() != null ? plan.getCurrency() : "EUR");
-                        } else if (isMonthlyPlan) {
-                            // Plan mensuel : pas de facturation par requête SAUF si quota dépassé
-                            if (quotaResult != null && !quotaResult.isQuotaOk() && quotaResult.isCanUsePayPerRequest()) {
-                                // Quota dépassé : facturer au prix Pay-per-Request du plan correspondant au marché
-                                if (quotaResult.getPayPerRequestPrice() != null) {
-                                    costToUse = quotaResult.getPayPerRequestPrice().doubleValue();
-                                    billingReason = "quota mensuel dépassé (facturation pay-per-request)";
-                                    log.info("💰 Requête facturée au prix Pay-per-Request (quota dépassé): {} au lieu de {}", 
-                                            costToUse, usageInfo.getCostUsd());
-                                } else {
-                                    log.warn("⚠️ Quota dépassé mais prix Pay-per-Request non disponible, pas de facturation");
-                                }
+                if (entitlement.getPricingPlanId() != null && entitlement.isPlanFound()) {
+                    boolean hasPricePerRequest = entitlement.hasPricePerRequest();
+                    boolean hasPricePerMonth = entitlement.hasPricePerMonth();
+                    boolean isPayPerRequest = hasPricePerRequest && !hasPricePerMonth;
+                    boolean isMonthlyPlan = hasPricePerMonth && !hasPricePerRequest;
+                    String currency = entitlement.getCurrency() != null ? entitlement.getCurrency() : "EUR";
+                    
+                    if (isPayPerRequest) {
+                        // Plan pay-per-request : facturer chaque requête avec le prix du plan dans sa monnaie
+                        costToUse = entitlement.getPricePerRequest().doubleValue();
+                        billingReason = String.format("plan pay-per-request (%s %s)", 
+                                entitlement.getPricePerRequest(), currency);
+                        log.debug("💰 Facturation par requête pour plan pay-per-request: {} {}", costToUse, currency);
+                    } else if (isMonthlyPlan) {
+                        // Plan mensuel : pas de facturation par requête SAUF si quota dépassé
+                        if (quotaResult != null && !quotaResult.isQuotaOk() && quotaResult.isCanUsePayPerRequest()) {
+                            // Quota dépassé : facturer au prix Pay-per-Request du plan correspondant au marché
+                            if (quotaResult.getPayPerRequestPrice() != null) {
+                                costToUse = quotaResult.getPayPerRequestPrice().doubleValue();
+                                billingReason = "quota mensuel dépassé (facturation pay-per-request)";
+                                log.info("💰 Requête facturée au prix Pay-per-Request (quota dépassé): {} au lieu de {}", 
+                                        costToUse, usageInfo.getCostUsd());
                             } else {
-                                // Plan mensuel normal : pas de facturation par requête
-                                costToUse = null;
-                                log.debug("✅ Plan mensuel : pas de facturation par requête (facturation mensuelle fixe)");
+                                log.warn("⚠️ Quota dépassé mais prix Pay-per-Request non disponible, pas de facturation");
                             }
                         } else {
-                            // Plan gratuit ou mixte : pas de facturation
+                            // Plan mensuel normal : pas de facturation par requête
                             costToUse = null;
-                            billingReason = "plan gratuit ou mixte";
-                            log.debug("Plan gratuit ou mixte : pas de facturation");
+                            log.debug("✅ Plan mensuel : pas de facturation par requête (facturation mensuelle fixe)");
                         }
-                    } catch (Exception e) {
-                        log.warn("Erreur lors de la récupération du plan {} pour déterminer la facturation: {}", 
-                                organization.getPricingPlanId(), e.getMessage());
-                        // En cas d'erreur, ne pas facturer pour éviter les erreurs
+                    } else {
+                        // Plan gratuit ou mixte : pas de facturation
                         costToUse = null;
+                        billingReason = "plan gratuit ou mixte";
+                        log.debug("Plan gratuit ou mixte : pas de facturation");
                     }
+                } else if (entitlement.getPricingPlanId() != null) {
+                    // Plan introuvable : ne pas facturer pour éviter les erreurs
+                    log.warn("Plan {} introuvable pour déterminer la facturation de l'organisation {}", 
+                            entitlement.getPricingPlanId(), organizationId);
+                    costToUse = null;
                 } else {
                     // Pas de plan : pas de facturation
                     costToUse = null;
@@ -336,48 +335,40 @@ public class RechercheController {
             // EXIGER une organisation (lève une exception si pas d'organisation)
             Long organizationId = organizationService.getOrganizationIdByUserId(userId);
             
+            // Droits de l'organisation (instantané en cache) + un seul comptage de l'utilisation
+            OrganizationEntitlementService.SearchAccess access = organizationEntitlementService.checkSearchAccess(organizationId);
+            
             // Vérifier si l'essai est expiré (quota atteint pour un plan d'essai)
             // Si le quota de l'essai gratuit est atteint, l'essai est définitivement terminé
             // et aucune requête n'est autorisée pour tous les collaborateurs de l'organisation
-            if (!organizationService.canOrganizationMakeRequests(organizationId)) {
-                // Vérifier si c'est parce que l'organisation est désactivée ou le quota atteint
-                try {
-                    OrganizationDto organization = organizationService.getOrganizationById(organizationId);
-                    if (organization != null) {
-                        // Vérifier si l'organisation est désactivée par un administrateur
-                        if (!Boolean.TRUE.equals(organization.getEnabled())) {
-                            throw new IllegalStateException(
-                                "Votre organisation a été désactivée par un administrateur. " +
-                                "Aucune requête HS-code n'est autorisée pour tous les collaborateurs. " +
-                                "Veuillez contacter l'administrateur pour plus d'informations."
-                            );
-                        }
-                        // Vérifier si c'est parce que le quota est atteint et définitivement terminé
-                        if (Boolean.TRUE.equals(organization.getTrialPermanentlyExpired())) {
-                            throw new IllegalStateException(
-                                "Le quota de votre essai gratuit a été atteint et est maintenant définitivement désactivé pour votre organisation. " +
-                                "Aucune requête HS-code n'est autorisée pour tous les collaborateurs. " +
-                                "Veuillez choisir un plan tarifaire ou faire une demande de devis pour continuer à utiliser le service."
-                            );
-                        }
-                    }
-                } catch (IllegalStateException e) {
-                    // Relancer l'exception si c'est déjà notre message personnalisé
-                    throw e;
-                } catch (Exception e) {
-                    // Si l'organisation n'est pas trouvée ou autre erreur, utiliser le message générique
-                    log.debug("Erreur lors de la vérification du statut de l'organisation: {}", e.getMessage());
+            if (!access.isCanMakeRequests()) {
+                // Vérifier si l'organisation est désactivée par un administrateur
+                if (!access.getEntitlement().isEnabled()) {
+                    throw new IllegalStateException(
+                        "Votre organisation a été désactivée par un administrateur. " +
+                        "Aucune requête HS-code n'est autorisée pour tous les collaborateurs. " +
+                        "Veuillez contacter l'administrateur pour plus d'informations."
+                    );
+                }
+                // Vérifier si c'est parce que le quota est atteint et définitivement terminé
+                if (access.isTrialPermanentlyExpired()) {
+                    throw new IllegalStateException(
+                        "Le quota de votre essai gratuit a été atteint et est maintenant définitivement désactivé pour votre organisation. " +
+                        "Aucune requête HS-code n'est autorisée pour tous les collaborateurs. " +
+                        "Veuillez choisir un plan tarifaire ou faire une demande de devis pour continuer à utiliser le service."
+                    );
                 }
                 throw new IllegalStateException(
                     "Votre période d'essai gratuit est terminée. Veuillez choisir un plan tarifaire ou faire une demande de devis pour continuer à utiliser le service."
                 );
             }
             
-            // Vérifier le quota avec résultat détaillé (ne lève plus d'exception si dépassé)
-            QuotaCheckResult quotaResult = organizationService.checkQuotaWithResult(organizationId);
+            // Résultat détaillé du quota (ne lève plus d'exception si dépassé)
+            QuotaCheckResult quotaResult = access.getQuotaResult();
             
             // Stocker le résultat dans ThreadLocal pour utilisation dans logUsage()
             currentQuotaCheck.set(quotaResult);
+            currentEntitlement.set(access.getEntitlement());
             
             // Si le quota est dépassé mais qu'on peut utiliser Pay-per-Request, permettre la requête
             if (!quotaResult.isQuotaOk() && quotaResult.isCanUsePayPerRequest()) {
@@ -393,7 +384,7 @@ public class RechercheController {
                         "Aucun plan Pay-per-Request disponible pour votre marché.",
                         quotaResult.getCurrentUsage(), quotaResult.getMonthlyQuota());
                 log.warn("❌ {}", message);
-                currentQuotaCheck.remove();
+                clearCurrentQuotaCheck();
                 throw new com.muhend.backend.organization.exception.QuotaExceededException(message);
             } else {
                 // Quota OK
@@ -403,19 +394,19 @@ public class RechercheController {
             
         } catch (UserNotAssociatedException e) {
             // Un utilisateur doit être associé à une organisation
-            currentQuotaCheck.remove();
+            clearCurrentQuotaCheck();
             throw new IllegalStateException("Vous devez être associé à une organisation pour effectuer des recherches.", e);
         } catch (com.muhend.backend.organization.exception.QuotaExceededException e) {
             // Relancer l'exception pour qu'elle soit gérée par le gestionnaire d'exceptions global
-            currentQuotaCheck.remove();
+            clearCurrentQuotaCheck();
             throw e;
         } catch (IllegalArgumentException e) {
             // Erreur lors de la vérification du quota (organisation introuvable, etc.)
-            currentQuotaCheck.remove();
+            clearCurrentQuotaCheck();
             throw new IllegalStateException("Impossible de vérifier le quota. Recherche non autorisée.", e);
         } catch (Exception e) {
             // En cas d'erreur inattendue, on bloque la recherche pour la sécurité
-            currentQuotaCheck.remove();
+            clearCurrentQuotaCheck();
             log.error("Erreur inattendue lors de la vérification du quota: {}", e.getMessage(), e);
             throw new IllegalStateException("Erreur lors de la vérification du quota. Recherche non autorisée.", e);
         }
@@ -430,10 +421,11 @@ public class RechercheController {
     }
     
     /**
-     * Nettoie le ThreadLocal du quota check.
+     * Nettoie les ThreadLocal du quota check et des droits de l'organisation.
      */
     public static void clearCurrentQuotaCheck() {
         currentQuotaCheck.remove();
+        currentEntitlement.remove();
     }
 
 
@@ -0,0 +1,94 @@
+package com.muhend.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Démarrage rapide des réplicas (profil Maven fast-startup, Dockerfile) : traitement AOT de Spring et archive CDS.
+ *
+ * Avec l'AOT (-Dspring.aot.enabled=true), les conditions des beans (@ConditionalOnProperty, @Profile...) sont
+ * évaluées à la compilation avec les profils aot.profiles : les profils actifs à l'exécution
+ * (SPRING_PROFILES_ACTIVE) ne les changent plus. Le démarrage échoue donc si les profils actifs diffèrent
+ * de ceux de la compilation (variable AOT_PROFILES de l'image), plutôt que de les ignorer silencieusement.
+ * Le profil cds-training (exécution d'entraînement CDS) est ajouté aux profils de la compilation.
+ *
+ * Le temps de démarrage jusqu'à la disponibilité (/health/ready), mesuré par scripts/startup-benchmark.sh,
+ * est journalisé avec le mode de lancement.
+ */
+@Configuration
+@Slf4j
+public class FastStartupConfig {
+
+    public static final String CDS_TRAINING_PROFILE = "cds-training";
+
+    private final Environment environment;
+
+    /**
+     * Profils utilisés par le traitement AOT (variable d'environnement AOT_PROFILES), vide si inconnus
+     */
+    @Value("${aot.profiles:}")
+    private String aotProfiles;
+
+    public FastStartupConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    void checkAotProfiles() {
+        if (!AotDetector.useGeneratedArtifacts() || !StringUtils.hasText(aotProfiles)) {
+            return;
+        }
+        Set<String> compiled = new TreeSet<>(StringUtils.commaDelimitedListToSet(aotProfiles.replace(" ", "")));
+        Set<String> active = new TreeSet<>(Arrays.asList(environment.getActiveProfiles()));
+        active.remove(CDS_TRAINING_PROFILE);
+        if (!active.equals(compiled)) {
+            throw new IllegalStateException("Profils actifs " + active + " différents des profils du traitement AOT "
+                    + compiled + " : les conditions des beans ont été évaluées avec " + compiled
+                    + ". Reconstruire l'image avec AOT_PROFILES=" + String.join(",", active)
+                    + " ou lancer sans -Dspring.aot.enabled=true.");
+        }
+    }
+
+    /**
+     * Migrations Flyway selon spring.flyway.enabled lu à l'exécution : avec l'AOT, Flyway est présent
+     * s'il l'était à la compilation, même désactivé ensuite (exécution d'entraînement CDS, sans base de données).
+     */
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(@Value("${spring.flyway.enabled:true}") boolean enabled) {
+        return flyway -> {
+            if (enabled) {
+                flyway.migrate();
+            } else {
+                log.info("Flyway désactivé (spring.flyway.enabled=false) : migrations ignorées");
+            }
+        };
+    }
+
+    @EventListener
+    public void onReadinessChanged(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        boolean cds = runtime.getInputArguments().stream().anyMatch(argument -> argument.startsWith("-XX:SharedArchiveFile="));
+        log.info("Application prête en {} ms depuis le lancement de la JVM (AOT: {}, CDS: {}, profils: {})",
+                runtime.getUptime(), AotDetector.useGeneratedArtifacts() ? "oui" : "non", cds ? "oui" : "non",
+                Arrays.toString(environment.getActiveProfiles()));
+    }
+}
@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 @Configuration
 public class KeycloakAdminConfig {
@@ -26,7 +27,12 @@ public class KeycloakAdminConfig {
     @Value("${keycloak.admin.client-secret}")
     private String clientSecret;
 
+    /**
+     * Client d'administration Keycloak, créé à la première utilisation et non au démarrage
+     * (client REST RESTEasy coûteux à initialiser). Les services l'obtiennent via {@code ObjectFactory<Keycloak>}.
+     */
     @Bean
+    @Lazy
     public Keycloak keycloak() {
         logger.info("Configuring Keycloak Admin Client:");
         logger.info("  Server URL: {}", serverUrl);
@@ -0,0 +1,71 @@
+package com.muhend.backend.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Délai des réponses en flux continu (exports CSV/NDJSON des logs d'utilisation, relecture des archives,
+ * archive ZIP des PDF de factures).
+ *
+ * Ces réponses sont écrites en tâche asynchrone : sans configuration dédiée, elles seraient interrompues
+ * au bout de spring.mvc.async.request-timeout (10 minutes), ce qui ne suffit pas pour un gros export.
+ * Les méthodes de contrôleur retournant un {@link StreamingResponseBody} (éventuellement dans une
+ * {@link ResponseEntity}) ont donc leur propre délai (export.streaming-timeout-ms) ; les autres requêtes
+ * asynchrones gardent le délai global.
+ */
+@Configuration
+public class StreamingExportConfig implements WebMvcConfigurer {
+
+    @Value("${export.streaming-timeout-ms:7200000}")
+    private long streamingTimeoutMs;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new StreamingTimeoutInterceptor(streamingTimeoutMs));
+    }
+
+    /**
+     * Applique le délai des réponses en flux avant le démarrage du traitement asynchrone.
+     */
+    static final class StreamingTimeoutInterceptor implements CallableProcessingInterceptor {
+
+        private final long timeoutMs;
+
+        StreamingTimeoutInterceptor(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+            if (request instanceof AsyncWebRequest asyncWebRequest && isStreamingHandler(request)) {
+                asyncWebRequest.setTimeout(timeoutMs);
+            }
+        }
+
+        private static boolean isStreamingHandler(NativeWebRequest request) {
+            HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+            if (servletRequest == null
+                    || !(servletRequest.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler)) {
+                return false;
+            }
+            ResolvableType returnType = ResolvableType.forMethodReturnType(handler.getMethod());
+            if (ResponseEntity.class.isAssignableFrom(returnType.toClass())) {
+                returnType = returnType.getGeneric(0);
+            }
+            return StreamingResponseBody.class.isAssignableFrom(returnType.toClass());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.muhend.backend.email.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant un email en file d'envoi (outbox).
+ */
+@Entity
+@Table(name = "email_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailOutboxMessage {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "message_type", nullable = false, length = 50)
+    private String messageType;
+    
+    @Column(name = "recipient", nullable = false, length = 320)
+    private String recipient;
+    
+    @Column(name = "subject", nullable = false, length = 500)
+    private String subject;
+    
+    @Column(name = "body", columnDefinition = "TEXT")
+    private String body;
+    
+    @Column(name = "html", nullable = false)
+    private boolean html = true;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.PENDING;
+    
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+    
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+        if (status == null) {
+            status = Status.PENDING;
+        }
+    }
+    
+    public enum Status {
+        PENDING,    // À envoyer (ou à renvoyer après un échec temporaire)
+        SENT,       // Envoyé
+        FAILED      // Abandonné après le nombre maximal de tentatives
+    }
+}
@@ -0,0 +1,47 @@
+package com.muhend.backend.email.repository;
+
+import com.muhend.backend.email.model.EmailOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+    
+    /**
+     * Réserve un lot de messages à envoyer : leur prochaine tentative est repoussée jusqu'à la fin du bail,
+     * ce qui les rend invisibles aux autres instances pendant l'envoi (SKIP LOCKED : pas d'attente entre instances).
+     * Un message dont l'envoi a été interrompu (arrêt, crash) redevient disponible à la fin du bail.
+     *
+     * @return Les IDs des messages réservés
+     */
+    @Query(value = "UPDATE email_outbox SET next_attempt_at = :leaseUntil, attempts = attempts + 1 " +
+                   "WHERE id IN (SELECT id FROM email_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+                   "ORDER BY next_attempt_at, id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING id",
+           nativeQuery = true)
+    List<Long> claimBatch(
+            @Param("now") LocalDateTime now,
+            @Param("leaseUntil") LocalDateTime leaseUntil,
+            @Param("limit") int limit);
+    
+    /**
+     * Compte les messages par statut : [statut, nombre].
+     */
+    @Query("SELECT m.status, COUNT(m) FROM EmailOutboxMessage m GROUP BY m.status")
+    List<Object[]> countByStatus();
+    
+    /**
+     * Supprime les messages dans un statut donné (envoyés, abandonnés) créés avant la date donnée.
+     */
+    @Modifying
+    @Query("DELETE FROM EmailOutboxMessage m WHERE m.status = :status AND m.createdAt < :before")
+    int deleteByStatusAndCreatedAtBefore(
+            @Param("status") EmailOutboxMessage.Status status,
+            @Param("before") LocalDateTime before);
+}
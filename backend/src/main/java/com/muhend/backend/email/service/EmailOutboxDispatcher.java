@@ -0,0 +1,306 @@
+package com.muhend.backend.email.service;
+
+import com.muhend.backend.email.model.EmailOutboxMessage;
+import com.muhend.backend.email.repository.EmailOutboxRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UnsupportedEncodingException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Envoi en arrière-plan des emails de la file d'envoi (outbox).
+ *
+ * Les messages sont réservés par lots (bail en base, compatible avec plusieurs instances), puis envoyés
+ * ensemble : JavaMailSenderImpl ouvre une seule connexion SMTP par lot. Un message en échec est retenté
+ * avec un délai exponentiel, puis abandonné (FAILED) après le nombre maximal de tentatives.
+ * Les envois ont lieu sur un thread dédié : un serveur SMTP lent ne bloque pas le planificateur Spring.
+ */
+@Service
+@Slf4j
+public class EmailOutboxDispatcher {
+    
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 1000;
+    
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final JavaMailSender mailSender;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ExecutorService sender;
+    
+    @Value("${email.outbox.batch-size:50}")
+    private int batchSize;
+    
+    @Value("${email.outbox.max-attempts:8}")
+    private int maxAttempts;
+    
+    @Value("${email.outbox.initial-backoff-ms:60000}")
+    private long initialBackoffMs;
+    
+    @Value("${email.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+    
+    /**
+     * Durée de réservation d'un lot : au-delà, un lot non confirmé (instance arrêtée) est renvoyé
+     */
+    @Value("${email.outbox.lease-ms:300000}")
+    private long leaseMs;
+    
+    @Value("${email.outbox.retention-days:30}")
+    private int retentionDays;
+    
+    /**
+     * Les emails abandonnés sont conservés (sans leur contenu) plus longtemps, pour le diagnostic
+     */
+    @Value("${email.outbox.failed-retention-days:90}")
+    private int failedRetentionDays;
+    
+    @Value("${spring.mail.from:noreply@enclume-numerique.com}")
+    private String fromEmail;
+    
+    @Value("${spring.mail.from-name:Enclume Numérique}")
+    private String fromName;
+    
+    // Métriques depuis le démarrage de l'instance
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedAttemptCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private volatile LocalDateTime lastBatchAt;
+    private volatile long lastBatchDurationMs;
+    private volatile String lastError;
+    
+    public EmailOutboxDispatcher(EmailOutboxRepository emailOutboxRepository,
+                                 JavaMailSender mailSender,
+                                 PlatformTransactionManager transactionManager) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.mailSender = mailSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sender = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("email-outbox").factory());
+    }
+    
+    /**
+     * Lance l'envoi des messages en attente, lot par lot jusqu'à épuisement de la file, sur le thread d'envoi
+     * (sans effet si un envoi est déjà en cours).
+     */
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:2000}")
+    public void dispatch() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sender.execute(() -> {
+                try {
+                    while (dispatchBatch() >= batchSize) {
+                        // Lot complet : il reste probablement des messages
+                    }
+                } catch (Exception e) {
+                    log.error("Erreur lors de l'envoi des emails en file d'attente: {}", e.getMessage(), e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Arrêt de l'application
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Réserve et envoie un lot de messages sur une même connexion SMTP.
+     *
+     * @return Nombre de messages traités
+     */
+    int dispatchBatch() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutboxMessage> batch = transactionTemplate.execute(status -> {
+            List<Long> ids = emailOutboxRepository.claimBatch(now, now.plusNanos(leaseMs * 1_000_000), batchSize);
+            return ids.isEmpty() ? List.<EmailOutboxMessage>of() : emailOutboxRepository.findAllById(ids).stream()
+                    .sorted(Comparator.comparing(EmailOutboxMessage::getId))
+                    .toList();
+        });
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+        
+        // Entités comparées par identité (equals/hashCode Lombok portent sur des champs modifiés ci-dessous)
+        Map<EmailOutboxMessage, Exception> failures = new IdentityHashMap<>();
+        Map<MimeMessage, EmailOutboxMessage> prepared = new IdentityHashMap<>();
+        List<MimeMessage> toSend = new ArrayList<>();
+        for (EmailOutboxMessage message : batch) {
+            try {
+                MimeMessage mimeMessage = toMimeMessage(message);
+                prepared.put(mimeMessage, message);
+                toSend.add(mimeMessage);
+            } catch (MessagingException | UnsupportedEncodingException e) {
+                failures.put(message, e);
+            }
+        }
+        
+        if (!toSend.isEmpty()) {
+            try {
+                mailSender.send(toSend.toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                if (e.getFailedMessages().isEmpty()) {
+                    prepared.values().forEach(message -> failures.put(message, e));
+                } else {
+                    e.getFailedMessages().forEach((mimeMessage, cause) -> {
+                        EmailOutboxMessage message = prepared.get(mimeMessage);
+                        if (message != null) {
+                            failures.put(message, cause);
+                        }
+                    });
+                }
+            } catch (MailException e) {
+                prepared.values().forEach(message -> failures.put(message, e));
+            }
+        }
+        
+        LocalDateTime completedAt = LocalDateTime.now();
+        for (EmailOutboxMessage message : batch) {
+            Exception failure = failures.get(message);
+            if (failure == null) {
+                markSent(message, completedAt);
+            } else {
+                markFailed(message, failure, completedAt);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> emailOutboxRepository.saveAll(batch));
+        
+        batchCount.incrementAndGet();
+        lastBatchAt = completedAt;
+        lastBatchDurationMs = System.currentTimeMillis() - start;
+        log.info("Lot d'emails envoyé: {} message(s), {} échec(s) en {} ms",
+                batch.size(), failures.size(), lastBatchDurationMs);
+        return batch.size();
+    }
+    
+    private MimeMessage toMimeMessage(EmailOutboxMessage message) throws MessagingException, UnsupportedEncodingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
+        helper.setFrom(fromEmail != null ? fromEmail : "noreply@enclume-numerique.com",
+                fromName != null ? fromName : "Enclume Numérique");
+        helper.setTo(message.getRecipient());
+        helper.setSubject(message.getSubject());
+        helper.setText(message.getBody() != null ? message.getBody() : "", message.isHtml());
+        return mimeMessage;
+    }
+    
+    private void markSent(EmailOutboxMessage message, LocalDateTime sentAt) {
+        message.setStatus(EmailOutboxMessage.Status.SENT);
+        message.setSentAt(sentAt);
+        message.setLastError(null);
+        // Le contenu n'est plus nécessaire (et peut contenir un mot de passe temporaire)
+        message.setBody(null);
+        sentCount.incrementAndGet();
+        log.debug("Email {} ({}) envoyé à {}", message.getId(), message.getMessageType(), message.getRecipient());
+    }
+    
+    private void markFailed(EmailOutboxMessage message, Exception failure, LocalDateTime failedAt) {
+        String error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getName();
+        message.setLastError(error.length() > ERROR_MESSAGE_MAX_LENGTH ? error.substring(0, ERROR_MESSAGE_MAX_LENGTH) : error);
+        lastError = message.getLastError();
+        failedAttemptCount.incrementAndGet();
+        
+        if (message.getAttempts() >= maxAttempts) {
+            message.setStatus(EmailOutboxMessage.Status.FAILED);
+            // Plus aucun envoi : le contenu n'est plus nécessaire (et peut contenir un mot de passe temporaire)
+            message.setBody(null);
+            abandonedCount.incrementAndGet();
+            log.error("Email {} ({}) à {} abandonné après {} tentative(s): {}",
+                    message.getId(), message.getMessageType(), message.getRecipient(), message.getAttempts(), error);
+        } else {
+            message.setNextAttemptAt(failedAt.plusNanos(backoffMs(message.getAttempts()) * 1_000_000));
+            log.warn("Échec de l'envoi de l'email {} ({}) à {} (tentative {}), nouvelle tentative à {}: {}",
+                    message.getId(), message.getMessageType(), message.getRecipient(), message.getAttempts(),
+                    message.getNextAttemptAt(), error);
+        }
+    }
+    
+    /**
+     * Délai avant la tentative suivante : doublé à chaque échec, borné par maxBackoffMs.
+     */
+    long backoffMs(int attempts) {
+        int exponent = Math.max(0, Math.min(attempts - 1, 30));
+        return Math.min(maxBackoffMs, initialBackoffMs * (1L << exponent));
+    }
+    
+    /**
+     * Supprime les messages envoyés depuis plus de retentionDays jours et les messages abandonnés
+     * depuis plus de failedRetentionDays jours.
+     * Tâche planifiée chaque nuit à 3h45 (voir ScheduledJobs).
+     *
+     * @return Nombre de messages supprimés
+     */
+    public int purgeFinishedMessages() {
+        LocalDateTime now = LocalDateTime.now();
+        Integer sent = transactionTemplate.execute(status -> emailOutboxRepository.deleteByStatusAndCreatedAtBefore(
+                EmailOutboxMessage.Status.SENT, now.minusDays(retentionDays)));
+        if (sent != null && sent > 0) {
+            log.info("{} email(s) envoyé(s) supprimé(s) de la file d'envoi", sent);
+        }
+        Integer failed = transactionTemplate.execute(status -> emailOutboxRepository.deleteByStatusAndCreatedAtBefore(
+                EmailOutboxMessage.Status.FAILED, now.minusDays(failedRetentionDays)));
+        if (failed != null && failed > 0) {
+            log.info("{} email(s) abandonné(s) supprimé(s) de la file d'envoi", failed);
+        }
+        return (sent != null ? sent : 0) + (failed != null ? failed : 0);
+    }
+    
+    /**
+     * Métriques de la file d'envoi : messages par statut (en base) et compteurs de l'instance.
+     */
+    public Map<String, Object> getStats() {
+        Map<EmailOutboxMessage.Status, Long> byStatus = new EnumMap<>(EmailOutboxMessage.Status.class);
+        for (EmailOutboxMessage.Status status : EmailOutboxMessage.Status.values()) {
+            byStatus.put(status, 0L);
+        }
+        for (Object[] row : emailOutboxRepository.countByStatus()) {
+            byStatus.put((EmailOutboxMessage.Status) row[0], ((Number) row[1]).longValue());
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", byStatus.get(EmailOutboxMessage.Status.PENDING));
+        stats.put("sent", byStatus.get(EmailOutboxMessage.Status.SENT));
+        stats.put("failed", byStatus.get(EmailOutboxMessage.Status.FAILED));
+        stats.put("sentSinceStartup", sentCount.get());
+        stats.put("failedAttemptsSinceStartup", failedAttemptCount.get());
+        stats.put("abandonedSinceStartup", abandonedCount.get());
+        stats.put("batchesSinceStartup", batchCount.get());
+        stats.put("lastBatchAt", lastBatchAt != null ? lastBatchAt.toString() : null);
+        stats.put("lastBatchDurationMs", lastBatchDurationMs);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+    
+    /**
+     * Arrêt de l'application : le lot en cours est interrompu, ses messages seront renvoyés à l'expiration du bail.
+     */
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+}
@@ -0,0 +1,47 @@
+package com.muhend.backend.email.service;
+
+import com.muhend.backend.email.model.EmailOutboxMessage;
+import com.muhend.backend.email.repository.EmailOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * File d'envoi des emails (outbox transactionnelle).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailOutboxService {
+    
+    private final EmailOutboxRepository emailOutboxRepository;
+    
+    /**
+     * Enregistre un email à envoyer, dans la transaction de l'appelant s'il y en a une :
+     * si elle est annulée, l'email ne sera pas envoyé.
+     *
+     * Pas de @Transactional ici : l'enregistrement rejoint la transaction de l'appelant (ou en ouvre une)
+     * au niveau du repository, et un destinataire invalide est refusé avant, sans marquer cette transaction
+     * pour annulation (un appelant qui ignore l'échec de l'email peut valider la sienne).
+     *
+     * @param messageType Type de message (pour le suivi)
+     * @param recipient Email du destinataire
+     * @param subject Sujet
+     * @param body Contenu (HTML ou texte brut)
+     * @param html true si le contenu est en HTML
+     */
+    public EmailOutboxMessage enqueue(String messageType, String recipient, String subject, String body, boolean html) {
+        if (recipient == null || recipient.trim().isEmpty()) {
+            throw new IllegalArgumentException("Le destinataire de l'email est obligatoire");
+        }
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setMessageType(messageType);
+        message.setRecipient(recipient.trim());
+        message.setSubject(subject != null ? subject : "");
+        message.setBody(body);
+        message.setHtml(html);
+        message = emailOutboxRepository.save(message);
+        log.debug("Email {} ({}) mis en file d'envoi pour {}", message.getId(), messageType, message.getRecipient());
+        return message;
+    }
+}
@@ -1,12 +1,8 @@
 package com.muhend.backend.email.service;
 
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
@@ -15,21 +11,18 @@ import java.util.List;
 
 /**
  * Service pour l'envoi d'emails.
+ * Les emails sont générés immédiatement puis enregistrés dans la file d'envoi (outbox), dans la transaction
+ * de l'appelant : l'appelant n'attend pas le serveur SMTP, et un email n'est envoyé que si sa transaction
+ * est validée. L'envoi effectif est assuré par EmailOutboxDispatcher.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailService {
 
-    private final JavaMailSender mailSender;
+    private final EmailOutboxService emailOutboxService;
     private final TemplateEngine templateEngine;
 
-    @Value("${spring.mail.from}")
-    private String fromEmail;
-
-    @Value("${spring.mail.from-name:Enclume Numérique}")
-    private String fromName;
-
     @Value("${FRONTEND_URL:https://hscode.enclume-numerique.com}")
     private String frontendUrl;
 
@@ -67,25 +60,12 @@ public class EmailService {
                 throw new RuntimeException("Le template d'email a généré un contenu vide");
             }
 
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-            String from = fromEmail != null ? fromEmail : "noreply@enclume-numerique.com";
-            String fromNameValue = fromName != null ? fromName : "Enclume Numérique";
-            
-            helper.setFrom(from, fromNameValue);
-            helper.setTo(toEmail != null ? toEmail : "");
-            helper.setSubject("Nouvelle facture disponible - " + (invoiceNumber != null ? invoiceNumber : ""));
-            helper.setText(htmlContent, true);
-
-            mailSender.send(message);
-            log.info("Email de notification de facture envoyé à {} pour la facture {}", toEmail, invoiceNumber);
-        } catch (MessagingException e) {
-            log.error("Erreur lors de l'envoi de l'email de notification de facture à {}: {}", toEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
+            emailOutboxService.enqueue("INVOICE_NOTIFICATION", toEmail,
+                    "Nouvelle facture disponible - " + (invoiceNumber != null ? invoiceNumber : ""), htmlContent, true);
+            log.info("Email de notification de facture mis en file d'envoi pour {} (facture {})", toEmail, invoiceNumber);
         } catch (Exception e) {
             log.error("Erreur inattendue lors de l'envoi de l'email à {}: {}", toEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
+            throw new RuntimeException("Erreur lors de la préparation de l'email", e);
         }
     }
 
@@ -152,26 +132,14 @@ public class EmailService {
                 throw new RuntimeException("Le template d'email a généré un contenu vide");
             }
 
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-            String from = fromEmail != null ? fromEmail : "noreply@enclume-numerique.com";
-            String fromNameValue = fromName != null ? fromName : "Enclume Numérique";
-            
-            helper.setFrom(from, fromNameValue);
-            helper.setTo(toEmail != null ? toEmail : "");
-            helper.setSubject("⚠️ Facture en retard - " + (invoiceNumber != null ? invoiceNumber : "") + " (" + daysOverdue + " jour(s) de retard)");
-            helper.setText(htmlContent, true);
-
-            mailSender.send(message);
-            log.info("Email de rappel de facture en retard envoyé à {} pour la facture {} ({} jours de retard)", 
+            emailOutboxService.enqueue("INVOICE_OVERDUE_REMINDER", toEmail,
+                    "⚠️ Facture en retard - " + (invoiceNumber != null ? invoiceNumber : "") + " (" + daysOverdue + " jour(s) de retard)",
+                    htmlContent, true);
+            log.info("Email de rappel de facture en retard mis en file d'envoi pour {} (facture {}, {} jours de retard)", 
                     toEmail, invoiceNumber, daysOverdue);
-        } catch (MessagingException e) {
-            log.error("Erreur lors de l'envoi de l'email de rappel de facture en retard à {}: {}", toEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
         } catch (Exception e) {
             log.error("Erreur inattendue lors de l'envoi de l'email de rappel à {}: {}", toEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
+            throw new RuntimeException("Erreur lors de la préparation de l'email", e);
         }
     }
 
@@ -243,32 +211,16 @@ public class EmailService {
                 throw new RuntimeException("Le template d'email a généré un contenu vide");
             }
 
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-            String from = fromEmail != null ? fromEmail : "noreply@enclume-numerique.com";
-            String fromNameValue = fromName != null ? fromName : "Enclume Numérique";
-            
-            helper.setFrom(from, fromNameValue);
-            helper.setTo(organizationEmail != null ? organizationEmail : "");
-            
             String subject = isExistingOrganization 
                 ? "Nouvelle demande d'inscription - " + (organizationName != null ? organizationName : "")
                 : "Confirmation de création d'organisation - " + (organizationName != null ? organizationName : "");
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-
-            mailSender.send(message);
-            log.info("Email de confirmation d'inscription envoyé à {} pour l'organisation {}", 
+            emailOutboxService.enqueue("REGISTRATION_CONFIRMATION", organizationEmail, subject, htmlContent, true);
+            log.info("Email de confirmation d'inscription mis en file d'envoi pour {} (organisation {})", 
                 organizationEmail, organizationName);
-        } catch (MessagingException e) {
-            log.error("Erreur lors de l'envoi de l'email de confirmation d'inscription à {}: {}", 
-                organizationEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
         } catch (Exception e) {
             log.error("Erreur inattendue lors de l'envoi de l'email de confirmation à {}: {}", 
                 organizationEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
+            throw new RuntimeException("Erreur lors de la préparation de l'email", e);
         }
     }
 
@@ -309,27 +261,12 @@ public class EmailService {
                 throw new RuntimeException("Le template d'invitation collaborateur a généré un contenu vide");
             }
 
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-            String from = fromEmail != null ? fromEmail : "noreply@enclume-numerique.com";
-            String fromNameValue = fromName != null ? fromName : "Enclume Numérique";
-
-            helper.setFrom(from, fromNameValue);
-            helper.setTo(collaboratorEmail);
-
             String subject = "Invitation à rejoindre " + (organizationName != null ? organizationName : "votre organisation");
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-
-            mailSender.send(message);
-            log.info("Invitation collaborateur envoyée à {} pour l'organisation {}", collaboratorEmail, organizationName);
-        } catch (MessagingException e) {
-            log.error("Erreur lors de l'envoi de l'invitation collaborateur à {}: {}", collaboratorEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'invitation collaborateur", e);
+            emailOutboxService.enqueue("COLLABORATOR_INVITATION", collaboratorEmail, subject, htmlContent, true);
+            log.info("Invitation collaborateur mise en file d'envoi pour {} (organisation {})", collaboratorEmail, organizationName);
         } catch (Exception e) {
             log.error("Erreur inattendue lors de l'envoi de l'invitation collaborateur à {}: {}", collaboratorEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'invitation collaborateur", e);
+            throw new RuntimeException("Erreur lors de la préparation de l'invitation collaborateur", e);
         }
     }
 
@@ -385,28 +322,14 @@ public class EmailService {
                 throw new RuntimeException("Le template d'email a généré un contenu vide");
             }
 
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-            String from = fromEmail != null ? fromEmail : "noreply@enclume-numerique.com";
-            String fromNameValue = fromName != null ? fromName : "Enclume Numérique";
-            
-            helper.setFrom(from, fromNameValue);
-            helper.setTo(toEmail != null ? toEmail : "");
-            helper.setSubject("Changement de plan tarifaire - " + (organizationName != null ? organizationName : ""));
-            helper.setText(htmlContent, true);
-
-            mailSender.send(message);
-            log.info("Email de notification de changement de plan envoyé à {} pour l'organisation {}", 
+            emailOutboxService.enqueue("PRICING_PLAN_CHANGED", toEmail,
+                    "Changement de plan tarifaire - " + (organizationName != null ? organizationName : ""), htmlContent, true);
+            log.info("Email de notification de changement de plan mis en file d'envoi pour {} (organisation {})", 
                     toEmail, organizationName);
-        } catch (MessagingException e) {
-            log.error("Erreur lors de l'envoi de l'email de notification de changement de plan à {}: {}", 
-                    toEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
         } catch (Exception e) {
             log.error("Erreur inattendue lors de l'envoi de l'email de notification de changement de plan à {}: {}", 
                     toEmail, e.getMessage(), e);
-            throw new RuntimeException("Erreur lors de l'envoi de l'email", e);
+            throw new RuntimeException("Erreur lors de la préparation de l'email", e);
         }
     }
 
@@ -460,20 +383,12 @@ public class EmailService {
         }
         
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-            String from = fromEmail != null ? fromEmail : "noreply@enclume-numerique.com";
-            String fromNameValue = fromName != null ? fromName : "Enclume Numérique";
-            
-            helper.setFrom(from, fromNameValue);
-            helper.setTo(adminEmail);
-            helper.setSubject("Nouvelle création de compte - " + (organizationName != null ? organizationName : "Organisation"));
+            String subject = "Nouvelle création de compte - " + (organizationName != null ? organizationName : "Organisation");
             
             // Créer le contenu HTML simple
             String htmlContent = buildNewOrganizationNotificationHtml(organizationName, organizationAddress);
             if (htmlContent != null && !htmlContent.trim().isEmpty()) {
-                helper.setText(htmlContent, true);
+                emailOutboxService.enqueue("NEW_ORGANIZATION_ADMIN", adminEmail, subject, htmlContent, true);
             } else {
                 // Fallback en cas de problème avec le HTML
                 String plainText = String.format(
@@ -483,14 +398,9 @@ public class EmailService {
                     organizationName != null ? organizationName : "Non renseigné",
                     organizationAddress != null ? organizationAddress : "Non renseignée"
                 );
-                helper.setText(plainText, false);
+                emailOutboxService.enqueue("NEW_ORGANIZATION_ADMIN", adminEmail, subject, plainText, false);
             }
-
-            mailSender.send(message);
-            log.info("Notification admin envoyée à {} pour la nouvelle organisation {}", adminEmail, organizationName);
-        } catch (MessagingException e) {
-            log.error("Erreur lors de l'envoi de la notification admin à {}: {}", adminEmail, e.getMessage(), e);
-            // Ne pas faire échouer la création d'organisation si l'email admin échoue
+            log.info("Notification admin mise en file d'envoi pour {} (nouvelle organisation {})", adminEmail, organizationName);
         } catch (Exception e) {
             log.error("Erreur inattendue lors de l'envoi de la notification admin à {}: {}", adminEmail, e.getMessage(), e);
             // Ne pas faire échouer la création d'organisation si l'email admin échoue
@@ -2,6 +2,7 @@ package com.muhend.backend.flyway;
 
 import lombok.extern.slf4j.Slf4j;
 import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.flyway.FlywayProperties;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
@@ -14,8 +15,11 @@ import javax.sql.DataSource;
 /**
  * Service pour réparer automatiquement Flyway en cas de mismatch de checksums.
  * S'exécute au démarrage de l'application pour réparer les checksums avant la validation.
+ * Absent lorsque Flyway est désactivé (ex: profil cds-training), et inactif si Flyway n'est désactivé
+ * qu'à l'exécution (avec l'AOT, la condition est évaluée à la compilation).
  */
 @Service
+@ConditionalOnProperty(name = "spring.flyway.enabled", havingValue = "true", matchIfMissing = true)
 @Slf4j
 @Order(1) // S'exécuter avant les autres services
 public class FlywayRepairService implements ApplicationListener<ContextRefreshedEvent> {
@@ -32,7 +36,7 @@ public class FlywayRepairService implements ApplicationListener<ContextRefreshed
     @Override
     public void onApplicationEvent(@NonNull ContextRefreshedEvent event) {
         // Réparer une seule fois au démarrage pour mettre à jour les checksums
-        if (!repairExecuted) {
+        if (!repairExecuted && flywayProperties.isEnabled()) {
             repairFlyway();
             repairExecuted = true;
         }
@@ -1,10 +1,15 @@
 package com.muhend.backend.invoice.controller;
 
+import com.muhend.backend.invoice.dto.BillingJobDto;
 import com.muhend.backend.invoice.dto.GenerateInvoiceRequest;
 import com.muhend.backend.invoice.dto.InvoiceDto;
+import com.muhend.backend.invoice.dto.InvoicePage;
 import com.muhend.backend.invoice.dto.UpdateInvoiceStatusRequest;
-import com.muhend.backend.invoice.service.InvoicePdfService;
+import com.muhend.backend.invoice.service.BillingJobService;
+import com.muhend.backend.invoice.service.InvoiceArchiveExportService;
+import com.muhend.backend.invoice.service.InvoicePdfCacheService;
 import com.muhend.backend.invoice.service.InvoiceService;
+import com.muhend.backend.notification.service.BadgeNotificationService;
 import com.muhend.backend.organization.exception.UserNotAssociatedException;
 import com.muhend.backend.organization.service.OrganizationService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -13,6 +18,10 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -22,8 +31,10 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -39,8 +50,11 @@ import java.util.Map;
 public class InvoiceController {
     
     private final InvoiceService invoiceService;
-    private final InvoicePdfService invoicePdfService;
+    private final InvoicePdfCacheService invoicePdfCacheService;
+    private final BillingJobService billingJobService;
+    private final InvoiceArchiveExportService invoiceArchiveExportService;
     private final OrganizationService organizationService;
+    private final BadgeNotificationService badgeNotificationService;
     
     /**
      * Récupère l'ID de l'utilisateur Keycloak depuis le contexte de sécurité.
@@ -59,14 +73,18 @@ public class InvoiceController {
     }
     
     /**
-     * Récupère toutes les factures de l'utilisateur connecté (basées sur son organisation).
+     * Récupère les factures les plus récentes de l'utilisateur connecté (basées sur son organisation).
+     *
+     * @deprecated liste bornée, utiliser /my-invoices/page
      */
+    @Deprecated
     @GetMapping("/my-invoices")
     @PreAuthorize("isAuthenticated()")
     @Operation(
             summary = "Récupérer mes factures",
-            description = "Retourne toutes les factures de l'organisation de l'utilisateur connecté. " +
-                         "Un utilisateur doit toujours être associé à une organisation.",
+            description = "Retourne les " + InvoiceService.MAX_PAGE_SIZE + " factures les plus récentes de l'organisation de l'utilisateur connecté. " +
+                         "Un utilisateur doit toujours être associé à une organisation. Déprécié : utiliser /my-invoices/page.",
+            deprecated = true,
             security = @SecurityRequirement(name = "bearerAuth")
     )
     public ResponseEntity<List<InvoiceDto>> getMyInvoices() {
@@ -86,6 +104,37 @@ public class InvoiceController {
         }
     }
     
+    /**
+     * Parcourt les factures de l'utilisateur connecté par pagination par curseur.
+     */
+    @GetMapping("/my-invoices/page")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+            summary = "Parcourir mes factures",
+            description = "Retourne une page de factures de l'organisation de l'utilisateur connecté, de la plus récente à la plus ancienne. " +
+                         "Renvoyer le champ nextCursor dans ?cursor=... pour obtenir la page suivante. " +
+                         "Paramètre optionnel: ?limit=... (défaut 20, max 200).",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<InvoicePage> getMyInvoicesPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        String userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        try {
+            Long organizationId = organizationService.getOrganizationIdByUserId(userId);
+            return ResponseEntity.ok(invoiceService.getInvoicesPage(organizationId, cursor, limit));
+        } catch (UserNotAssociatedException e) {
+            log.error("Utilisateur {} non associé à une organisation", userId);
+            throw e;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     /**
      * Récupère une facture par son ID (pour l'utilisateur connecté).
      * Marque automatiquement la facture comme consultée.
@@ -143,7 +192,8 @@ public class InvoiceController {
         
         try {
             Long organizationId = organizationService.getOrganizationIdByUserId(userId);
-            long count = invoiceService.countNewInvoices(organizationId);
+            // Compteur en mémoire (voir aussi le flux /notifications/stream)
+            long count = badgeNotificationService.getCounters(organizationId).getNewInvoices();
             return ResponseEntity.ok(Map.of("count", count));
         } catch (UserNotAssociatedException e) {
             log.error("Utilisateur {} non associé à une organisation", userId);
@@ -170,7 +220,8 @@ public class InvoiceController {
         
         try {
             Long organizationId = organizationService.getOrganizationIdByUserId(userId);
-            long count = invoiceService.countOverdueInvoices(organizationId);
+            // Compteur en mémoire (voir aussi le flux /notifications/stream)
+            long count = badgeNotificationService.getCounters(organizationId).getOverdueInvoices();
             return ResponseEntity.ok(Map.of("count", count));
         } catch (UserNotAssociatedException e) {
             log.error("Utilisateur {} non associé à une organisation", userId);
@@ -214,13 +265,18 @@ public class InvoiceController {
     }
     
     /**
-     * Récupère toutes les factures (admin uniquement).
+     * Récupère les factures les plus récentes (admin uniquement).
+     *
+     * @deprecated liste bornée, utiliser /admin/page
      */
+    @Deprecated
     @GetMapping("/admin/all")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(
             summary = "Récupérer toutes les factures",
-            description = "Retourne toutes les factures de toutes les organisations. Nécessite le rôle ADMIN.",
+            description = "Retourne les " + InvoiceService.MAX_PAGE_SIZE + " factures les plus récentes, toutes organisations confondues. " +
+                         "Nécessite le rôle ADMIN. Déprécié : utiliser /admin/page.",
+            deprecated = true,
             security = @SecurityRequirement(name = "bearerAuth")
     )
     public ResponseEntity<List<InvoiceDto>> getAllInvoices() {
@@ -229,13 +285,41 @@ public class InvoiceController {
     }
     
     /**
-     * Récupère les factures d'une organisation spécifique (admin uniquement).
+     * Parcourt les factures par pagination par curseur (admin uniquement).
+     */
+    @GetMapping("/admin/page")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            summary = "Parcourir les factures",
+            description = "Retourne une page de factures, de la plus récente à la plus ancienne. Nécessite le rôle ADMIN. " +
+                         "Renvoyer le champ nextCursor dans ?cursor=... pour obtenir la page suivante. " +
+                         "Paramètres optionnels: ?organizationId=... pour filtrer par organisation, ?limit=... (défaut 50, max 200).",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<InvoicePage> getInvoicesPage(
+            @RequestParam(required = false) Long organizationId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(invoiceService.getInvoicesPage(organizationId, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Récupère les factures les plus récentes d'une organisation spécifique (admin uniquement).
+     *
+     * @deprecated liste bornée, utiliser /admin/page?organizationId=...
      */
+    @Deprecated
     @GetMapping("/admin/organization/{organizationId}")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(
             summary = "Récupérer les factures d'une organisation",
-            description = "Retourne toutes les factures d'une organisation. Nécessite le rôle ADMIN.",
+            description = "Retourne les " + InvoiceService.MAX_PAGE_SIZE + " factures les plus récentes d'une organisation. " +
+                         "Nécessite le rôle ADMIN. Déprécié : utiliser /admin/page?organizationId=....",
+            deprecated = true,
             security = @SecurityRequirement(name = "bearerAuth")
     )
     public ResponseEntity<List<InvoiceDto>> getInvoicesByOrganization(@PathVariable Long organizationId) {
@@ -296,24 +380,53 @@ public class InvoiceController {
     }
     
     /**
-     * Génère les factures mensuelles pour toutes les organisations (admin uniquement).
+     * Lance la génération des factures mensuelles pour toutes les organisations (admin uniquement).
+     * Le traitement s'exécute en arrière-plan ; son avancement est consultable via /admin/billing-jobs/{id}.
      */
     @PostMapping("/admin/generate-all-monthly")
     @PreAuthorize("hasRole('ADMIN')")
     @Operation(
             summary = "Générer les factures mensuelles pour toutes les organisations",
-            description = "Génère les factures mensuelles pour toutes les organisations ayant une utilisation. Nécessite le rôle ADMIN.",
+            description = "Lance (ou reprend) en arrière-plan la génération des factures mensuelles pour toutes les organisations ayant une utilisation. " +
+                    "Retourne l'état du traitement. Nécessite le rôle ADMIN.",
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<Map<String, Object>> generateAllMonthlyInvoices(
+    public ResponseEntity<BillingJobDto> generateAllMonthlyInvoices(
             @RequestParam int year,
             @RequestParam int month) {
-        List<InvoiceDto> invoices = invoiceService.generateMonthlyInvoicesForAllOrganizations(year, month);
-        return ResponseEntity.ok(Map.of(
-                "message", "Factures générées avec succès",
-                "count", invoices.size(),
-                "invoices", invoices
-        ));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(billingJobService.startMonthlyJob(year, month));
+    }
+    
+    /**
+     * Récupère les traitements de facturation en masse les plus récents (admin uniquement).
+     */
+    @GetMapping("/admin/billing-jobs")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            summary = "Lister les traitements de facturation en masse",
+            description = "Retourne les 50 traitements de facturation en masse les plus récents avec leur avancement. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<List<BillingJobDto>> getBillingJobs() {
+        return ResponseEntity.ok(billingJobService.getRecentJobs());
+    }
+    
+    /**
+     * Récupère l'avancement d'un traitement de facturation en masse (admin uniquement).
+     */
+    @GetMapping("/admin/billing-jobs/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            summary = "Avancement d'un traitement de facturation en masse",
+            description = "Retourne l'état d'un traitement : organisations traitées, ignorées, en échec, en attente et débit. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<BillingJobDto> getBillingJob(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(billingJobService.getJob(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
     
     /**
@@ -330,6 +443,7 @@ public class InvoiceController {
             @PathVariable Long id,
             @Valid @RequestBody UpdateInvoiceStatusRequest request) {
         InvoiceDto invoice = invoiceService.updateInvoiceStatus(id, request.getStatus(), request.getNotes());
+        invoicePdfCacheService.evict(id);
         return ResponseEntity.ok(invoice);
     }
     
@@ -344,7 +458,7 @@ public class InvoiceController {
                          "Un utilisateur doit toujours être associé à une organisation.",
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<byte[]> downloadMyInvoicePdf(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadMyInvoicePdf(@PathVariable Long id) {
         String userId = getCurrentUserId();
         if (userId == null) {
             return ResponseEntity.badRequest().build();
@@ -377,29 +491,66 @@ public class InvoiceController {
             description = "Télécharge le PDF d'une facture. Nécessite le rôle ADMIN.",
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<byte[]> downloadInvoicePdf(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadInvoicePdf(@PathVariable Long id) {
         InvoiceDto invoice = invoiceService.getInvoiceById(id);
         return generatePdfResponse(invoice);
     }
     
+    /**
+     * Exporte les PDF des factures d'une période dans une archive ZIP (admin uniquement).
+     */
+    @GetMapping("/admin/export/pdf-archive")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(
+            summary = "Exporter les PDF des factures d'une période (ZIP)",
+            description = "Retourne en flux continu une archive ZIP contenant le PDF de chaque facture dont la période " +
+                         "commence entre startDate et endDate, éventuellement restreint à certaines organisations. " +
+                         "Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<StreamingResponseBody> exportInvoicePdfArchive(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) List<Long> organizationIds) {
+        if (endDate.isBefore(startDate)) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Export ZIP des PDF de factures - startDate: {}, endDate: {}, organizationIds: {}",
+                startDate, endDate, organizationIds);
+        
+        StreamingResponseBody body = out ->
+                invoiceArchiveExportService.exportPdfArchive(startDate, endDate, organizationIds, out);
+        
+        String filename = "factures-" + startDate + "-" + endDate + ".zip";
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+    
     /**
      * Génère une réponse PDF à partir d'une facture.
+     * Le PDF est servi depuis le cache disque ; l'empreinte de la facture sert d'ETag
+     * (réponse 304 si inchangé) et les requêtes Range sont prises en charge (réponse 206).
      */
-    private ResponseEntity<byte[]> generatePdfResponse(InvoiceDto invoice) {
+    private ResponseEntity<Resource> generatePdfResponse(InvoiceDto invoice) {
         try {
-            byte[] pdfBytes = invoicePdfService.generatePdf(invoice);
+            InvoicePdfCacheService.CachedPdf pdf = invoicePdfCacheService.getOrRender(invoice);
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", 
                     "facture_" + invoice.getInvoiceNumber() + ".pdf");
-            headers.setContentLength(pdfBytes.length);
+            headers.setContentLength(pdf.size());
+            headers.setETag("\"" + pdf.fingerprint() + "\"");
+            // Le statut de la facture peut changer : le navigateur doit revalider (ETag) avant de réutiliser sa copie
+            headers.setCacheControl(CacheControl.noCache().cachePrivate());
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
             
-            return new ResponseEntity<>(pdfBytes, headers, HttpStatus.OK);
+            return new ResponseEntity<>(new FileSystemResource(pdf.file()), headers, HttpStatus.OK);
         } catch (IOException e) {
             log.error("Erreur lors de la génération du PDF pour la facture {}", invoice.getInvoiceNumber(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 }
-
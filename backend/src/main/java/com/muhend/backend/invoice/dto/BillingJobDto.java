@@ -0,0 +1,42 @@
+package com.muhend.backend.invoice.dto;
+
+import com.muhend.backend.invoice.model.BillingJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * DTO pour l'état d'un traitement de facturation en masse.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillingJobDto {
+    
+    private Long id;
+    private BillingJob.JobType jobType;
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+    private BillingJob.JobStatus status;
+    private int totalItems;
+    private int generatedCount;
+    private int skippedCount;
+    private int failedCount;
+    private int pendingCount;
+    private LocalDateTime startedAt;
+    private LocalDateTime lastCheckpointAt;
+    private LocalDateTime finishedAt;
+    
+    /**
+     * Traitement en cours d'exécution sur cette instance
+     */
+    private boolean running;
+    
+    /**
+     * Débit moyen (organisations traitées par seconde depuis le démarrage)
+     */
+    private double organizationsPerSecond;
+}
@@ -0,0 +1,25 @@
+package com.muhend.backend.invoice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page de factures (de la plus récente à la plus ancienne) avec pagination par curseur.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoicePage {
+    
+    private List<InvoiceDto> items;
+    
+    /**
+     * Curseur opaque à renvoyer pour obtenir la page suivante (null s'il n'y a plus de résultats)
+     */
+    private String nextCursor;
+    
+    private boolean hasMore;
+}
@@ -0,0 +1,24 @@
+package com.muhend.backend.invoice.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Projection d'une facture passée en retard (colonnes renvoyées par UPDATE ... RETURNING).
+ */
+public interface OverdueInvoice {
+    
+    Long getId();
+    
+    Long getOrganizationId();
+    
+    String getInvoiceNumber();
+    
+    LocalDate getPeriodStart();
+    
+    LocalDate getPeriodEnd();
+    
+    LocalDate getDueDate();
+    
+    BigDecimal getTotalAmount();
+}
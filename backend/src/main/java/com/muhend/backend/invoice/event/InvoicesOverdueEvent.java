@@ -0,0 +1,16 @@
+package com.muhend.backend.invoice.event;
+
+import com.muhend.backend.invoice.dto.OverdueInvoice;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Événement publié lorsque des factures en attente sont passées en retard (OVERDUE).
+ * Les rappels par email sont envoyés après la validation de la transaction.
+ */
+@Value
+public class InvoicesOverdueEvent {
+    
+    List<OverdueInvoice> invoices;
+}
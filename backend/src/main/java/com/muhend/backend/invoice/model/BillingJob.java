@@ -0,0 +1,81 @@
+package com.muhend.backend.invoice.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant un traitement de facturation en masse pour une période.
+ * Un traitement est unique par type et par période : relancé, il reprend là où il s'était arrêté.
+ */
+@Entity
+@Table(name = "billing_job")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillingJob {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "job_type", nullable = false, length = 30)
+    @Enumerated(EnumType.STRING)
+    private JobType jobType;
+    
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+    
+    @Column(name = "period_end", nullable = false)
+    private LocalDate periodEnd;
+    
+    @Column(name = "status", nullable = false, length = 30)
+    @Enumerated(EnumType.STRING)
+    private JobStatus status = JobStatus.RUNNING;
+    
+    @Column(name = "total_items", nullable = false)
+    private int totalItems;
+    
+    @Column(name = "generated_count", nullable = false)
+    private int generatedCount;
+    
+    @Column(name = "skipped_count", nullable = false)
+    private int skippedCount;
+    
+    @Column(name = "failed_count", nullable = false)
+    private int failedCount;
+    
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+    
+    @Column(name = "last_checkpoint_at")
+    private LocalDateTime lastCheckpointAt;
+    
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (startedAt == null) {
+            startedAt = LocalDateTime.now();
+        }
+        if (status == null) {
+            status = JobStatus.RUNNING;
+        }
+    }
+    
+    public enum JobType {
+        MONTHLY,                // Factures mensuelles de toutes les organisations ayant une utilisation
+        BIWEEKLY_PAY_PER_REQUEST // Factures bihebdomadaires des organisations au plan Pay-per-Request
+    }
+    
+    public enum JobStatus {
+        RUNNING,                // En cours (ou interrompu, à reprendre)
+        COMPLETED,              // Toutes les organisations ont été traitées
+        COMPLETED_WITH_ERRORS   // Terminé, certaines organisations en échec (relancer pour les retraiter)
+    }
+}
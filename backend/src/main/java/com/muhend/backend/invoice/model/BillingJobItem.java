@@ -0,0 +1,52 @@
+package com.muhend.backend.invoice.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant le traitement d'une organisation dans un traitement de facturation en masse.
+ */
+@Entity
+@Table(name = "billing_job_item")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillingJobItem {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+    
+    @Column(name = "organization_id", nullable = false)
+    private Long organizationId;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private ItemStatus status = ItemStatus.PENDING;
+    
+    @Column(name = "invoice_id")
+    private Long invoiceId;
+    
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+    
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+    
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+    
+    public enum ItemStatus {
+        PENDING,    // À traiter
+        GENERATED,  // Facture générée
+        SKIPPED,    // Aucune facture nécessaire (déjà existante ou aucune utilisation)
+        FAILED      // Échec (retraité à la relance du traitement)
+    }
+}
@@ -64,6 +64,16 @@ public class Invoice {
     @Column(name = "viewed_at")
     private LocalDateTime viewedAt;
     
+    // Statistiques d'utilisation de la période, figées une fois la période terminée (null = pas encore figées)
+    @Column(name = "total_requests")
+    private Long totalRequests;
+    
+    @Column(name = "total_tokens")
+    private Long totalTokens;
+    
+    @Column(name = "total_cost_usd", precision = 12, scale = 2)
+    private BigDecimal totalCostUsd;
+    
     // Colonnes pour l'intégration avec le système de paiement
     @Column(name = "payment_id")
     private Long paymentId; // Référence au paiement associé
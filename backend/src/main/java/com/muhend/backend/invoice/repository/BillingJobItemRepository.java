@@ -0,0 +1,38 @@
+package com.muhend.backend.invoice.repository;
+
+import com.muhend.backend.invoice.model.BillingJobItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BillingJobItemRepository extends JpaRepository<BillingJobItem, Long> {
+    
+    /**
+     * Récupère les IDs des organisations déjà enregistrées dans un traitement.
+     */
+    @Query("SELECT i.organizationId FROM BillingJobItem i WHERE i.jobId = :jobId")
+    List<Long> findOrganizationIdsByJobId(@Param("jobId") Long jobId);
+    
+    /**
+     * Récupère un lot d'éléments à traiter (par ordre d'ID, après le dernier élément du lot précédent).
+     */
+    @Query("SELECT i FROM BillingJobItem i WHERE i.jobId = :jobId AND i.status IN :statuses AND i.id > :afterId " +
+           "ORDER BY i.id")
+    List<BillingJobItem> findChunk(
+            @Param("jobId") Long jobId,
+            @Param("statuses") Collection<BillingJobItem.ItemStatus> statuses,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+    
+    /**
+     * Compte les éléments d'un traitement par statut : [statut, nombre].
+     */
+    @Query("SELECT i.status, COUNT(i) FROM BillingJobItem i WHERE i.jobId = :jobId GROUP BY i.status")
+    List<Object[]> countByStatus(@Param("jobId") Long jobId);
+}
@@ -0,0 +1,29 @@
+package com.muhend.backend.invoice.repository;
+
+import com.muhend.backend.invoice.model.BillingJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BillingJobRepository extends JpaRepository<BillingJob, Long> {
+    
+    /**
+     * Récupère le traitement d'un type pour une période.
+     */
+    Optional<BillingJob> findByJobTypeAndPeriodStartAndPeriodEnd(
+            BillingJob.JobType jobType, LocalDate periodStart, LocalDate periodEnd);
+    
+    /**
+     * Récupère les traitements dans un statut donné (ex: RUNNING pour la reprise au démarrage).
+     */
+    List<BillingJob> findByStatusOrderByIdAsc(BillingJob.JobStatus status);
+    
+    /**
+     * Récupère les 50 traitements les plus récents.
+     */
+    List<BillingJob> findTop50ByOrderByIdDesc();
+}
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -18,10 +19,20 @@ public interface InvoiceItemRepository extends JpaRepository<InvoiceItem, Long>
     List<InvoiceItem> findByInvoiceIdOrderById(Long invoiceId);
     
     /**
-     * Supprime tous les éléments d'une facture.
+     * Récupère en une seule requête les éléments de plusieurs factures.
+     */
+    @Query("SELECT i FROM InvoiceItem i WHERE i.invoice.id IN :invoiceIds ORDER BY i.id")
+    List<InvoiceItem> findByInvoiceIdIn(@Param("invoiceIds") Collection<Long> invoiceIds);
+    
+    /**
+     * Supprime un lot d'éléments (au plus {@code batchSize} lignes) des factures d'une organisation.
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize}, pour borner la durée de chaque transaction.
      */
     @Modifying
-    @Query("DELETE FROM InvoiceItem i WHERE i.invoice.id = :invoiceId")
-    int deleteByInvoiceId(@Param("invoiceId") Long invoiceId);
+    @Query(value = "DELETE FROM invoice_item WHERE id IN (" +
+                   "SELECT ii.id FROM invoice_item ii JOIN invoice i ON i.id = ii.invoice_id " +
+                   "WHERE i.organization_id = :organizationId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
 }
 
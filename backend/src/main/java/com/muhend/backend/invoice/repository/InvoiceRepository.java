@@ -1,24 +1,22 @@
 package com.muhend.backend.invoice.repository;
 
+import com.muhend.backend.invoice.dto.OverdueInvoice;
 import com.muhend.backend.invoice.model.Invoice;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     
-    /**
-     * Récupère toutes les factures d'une organisation.
-     */
-    List<Invoice> findByOrganizationIdOrderByCreatedAtDesc(Long organizationId);
-    
     /**
      * Récupère une facture par son numéro.
      */
@@ -57,20 +55,89 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     List<Invoice> findByOrganizationIdAndViewedAtIsNullOrderByCreatedAtDesc(Long organizationId);
     
     /**
-     * Récupère les factures en attente (PENDING) dont la date d'échéance est dépassée.
+     * Passe en retard (OVERDUE), en une seule requête, les factures en attente (PENDING)
+     * dont la date d'échéance est antérieure à la date donnée, et renvoie les factures modifiées.
      */
-    List<Invoice> findByStatusAndDueDateBefore(Invoice.InvoiceStatus status, LocalDate date);
+    @Query(value = "UPDATE invoice SET status = 'OVERDUE' WHERE status = 'PENDING' AND due_date < :today " +
+                   "RETURNING id AS id, organization_id AS organizationId, invoice_number AS invoiceNumber, " +
+                   "period_start AS periodStart, period_end AS periodEnd, due_date AS dueDate, " +
+                   "total_amount AS totalAmount",
+           nativeQuery = true)
+    List<OverdueInvoice> markPendingAsOverdue(@Param("today") LocalDate today);
     
     /**
      * Compte les factures en retard (OVERDUE) d'une organisation.
      */
     long countByOrganizationIdAndStatus(Long organizationId, Invoice.InvoiceStatus status);
     
+    // ===================================================
+    // PAGINATION PAR CLÉ (createdAt DESC, id DESC)
+    // ===================================================
+    
+    @Query("SELECT i FROM Invoice i WHERE i.createdAt < :beforeCreatedAt " +
+           "OR (i.createdAt = :beforeCreatedAt AND i.id < :beforeId) " +
+           "ORDER BY i.createdAt DESC, i.id DESC")
+    List<Invoice> findPageBefore(
+            @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+            @Param("beforeId") Long beforeId,
+            Pageable pageable);
+    
+    @Query("SELECT i FROM Invoice i WHERE i.organizationId = :organizationId " +
+           "AND (i.createdAt < :beforeCreatedAt OR (i.createdAt = :beforeCreatedAt AND i.id < :beforeId)) " +
+           "ORDER BY i.createdAt DESC, i.id DESC")
+    List<Invoice> findPageByOrganizationBefore(
+            @Param("organizationId") Long organizationId,
+            @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt,
+            @Param("beforeId") Long beforeId,
+            Pageable pageable);
+    
+    // ===================================================
+    // EXPORT (pagination par clé sur id)
+    // ===================================================
+    
+    /**
+     * Récupère un lot de factures dont la période commence entre les deux dates (par ordre d'ID).
+     */
+    @Query("SELECT i FROM Invoice i WHERE i.periodStart >= :periodStart AND i.periodStart <= :periodEnd " +
+           "AND i.id > :afterId ORDER BY i.id")
+    List<Invoice> findForExport(
+            @Param("periodStart") LocalDate periodStart,
+            @Param("periodEnd") LocalDate periodEnd,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+    
+    /**
+     * Idem {@link #findForExport}, restreint à un ensemble d'organisations.
+     */
+    @Query("SELECT i FROM Invoice i WHERE i.organizationId IN :organizationIds " +
+           "AND i.periodStart >= :periodStart AND i.periodStart <= :periodEnd " +
+           "AND i.id > :afterId ORDER BY i.id")
+    List<Invoice> findForExportByOrganizations(
+            @Param("organizationIds") Collection<Long> organizationIds,
+            @Param("periodStart") LocalDate periodStart,
+            @Param("periodEnd") LocalDate periodEnd,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+    
+    /**
+     * Récupère un lot de factures dont les statistiques d'utilisation ne sont pas encore figées
+     * et dont la période est terminée (avant la date donnée).
+     */
+    @Query("SELECT i FROM Invoice i WHERE i.totalRequests IS NULL AND i.periodEnd < :today AND i.id > :afterId " +
+           "ORDER BY i.id")
+    List<Invoice> findUsageStatsPending(
+            @Param("today") LocalDate today,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+    
     /**
-     * Supprime toutes les factures d'une organisation.
+     * Supprime un lot de lignes (au plus {@code batchSize}) parmi les factures d'une organisation
+     * et renvoie les IDs des factures supprimées (pour nettoyer leurs PDF en cache).
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize} IDs, pour borner la durée de chaque transaction.
      */
-    @Modifying
-    @Query("DELETE FROM Invoice i WHERE i.organizationId = :organizationId")
-    int deleteByOrganizationId(@Param("organizationId") Long organizationId);
+    @Query(value = "DELETE FROM invoice WHERE id IN (" +
+                   "SELECT id FROM invoice WHERE organization_id = :organizationId LIMIT :batchSize) RETURNING id",
+           nativeQuery = true)
+    List<Long> deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
 }
 
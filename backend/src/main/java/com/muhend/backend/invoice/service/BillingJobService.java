@@ -0,0 +1,454 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.invoice.dto.BillingJobDto;
+import com.muhend.backend.invoice.dto.InvoiceDto;
+import com.muhend.backend.invoice.model.BillingJob;
+import com.muhend.backend.invoice.model.BillingJobItem;
+import com.muhend.backend.invoice.repository.BillingJobItemRepository;
+import com.muhend.backend.invoice.repository.BillingJobRepository;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.job.service.JobLockService;
+import com.muhend.backend.organization.dto.OrganizationDto;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.organization.service.OrganizationService;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moteur des traitements de facturation en masse (factures mensuelles de toutes les organisations,
+ * factures bihebdomadaires des plans Pay-per-Request).
+ *
+ * Chaque organisation est traitée dans sa propre transaction par un pool de workers borné :
+ * une organisation lente ou en échec ne bloque ni n'annule les autres. L'état de chaque organisation
+ * (billing_job_item) est enregistré dans la même transaction que sa facture, ce qui sert de point de reprise :
+ * un traitement interrompu (arrêt, crash) est repris au démarrage suivant sans refacturer personne.
+ * Un traitement est unique par type et par période ; le relancer ne retraite que les organisations
+ * en attente ou en échec.
+ */
+@Service
+@Slf4j
+public class BillingJobService {
+
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 1000;
+    private static final List<BillingJobItem.ItemStatus> TO_PROCESS =
+            List.of(BillingJobItem.ItemStatus.PENDING, BillingJobItem.ItemStatus.FAILED);
+
+    private final BillingJobRepository jobRepository;
+    private final BillingJobItemRepository itemRepository;
+    private final InvoiceService invoiceService;
+    private final InvoiceRepository invoiceRepository;
+    private final UsageLogRepository usageLogRepository;
+    private final OrganizationRepository organizationRepository;
+    private final OrganizationService organizationService;
+    private final JobLockService jobLockService;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Exécution des traitements (un à la fois) et des organisations (pool borné)
+     */
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+
+    /**
+     * Traitements en cours d'exécution sur cette instance
+     */
+    private final Map<Long, CompletableFuture<Void>> runningFutures = new ConcurrentHashMap<>();
+
+    @Value("${invoice.billing-job.chunk-size:100}")
+    private int chunkSize;
+
+    /**
+     * Bail d'un traitement (prolongé à chaque lot) : un traitement n'est exécuté que par une instance à la fois
+     */
+    @Value("${invoice.billing-job.lease-ms:600000}")
+    private long leaseMs;
+
+    public BillingJobService(BillingJobRepository jobRepository,
+                             BillingJobItemRepository itemRepository,
+                             InvoiceService invoiceService,
+                             InvoiceRepository invoiceRepository,
+                             UsageLogRepository usageLogRepository,
+                             OrganizationRepository organizationRepository,
+                             @Lazy OrganizationService organizationService,
+                             JobLockService jobLockService,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${invoice.billing-job.workers:4}") int workerCount) {
+        this.jobRepository = jobRepository;
+        this.itemRepository = itemRepository;
+        this.invoiceService = invoiceService;
+        this.invoiceRepository = invoiceRepository;
+        this.usageLogRepository = usageLogRepository;
+        this.organizationRepository = organizationRepository;
+        this.organizationService = organizationService;
+        this.jobLockService = jobLockService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.coordinator = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("billing-job").factory());
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount),
+                Thread.ofPlatform().name("billing-worker-", 1).factory());
+    }
+
+    // ===================================================
+    // DÉCLENCHEMENT
+    // ===================================================
+
+    /**
+     * Lance (ou reprend) la génération des factures mensuelles de toutes les organisations ayant une utilisation.
+     * Le traitement s'exécute en arrière-plan ; son état est consultable via {@link #getJob(Long)}.
+     *
+     * @return L'état du traitement au moment du lancement (inchangé s'il était déjà terminé sans erreur)
+     */
+    public BillingJobDto startMonthlyJob(int year, int month) {
+        YearMonth yearMonth = YearMonth.of(year, month);
+        return start(BillingJob.JobType.MONTHLY, yearMonth.atDay(1), yearMonth.atEndOfMonth());
+    }
+
+    /**
+     * Lance (ou reprend) la génération des factures bihebdomadaires des organisations au plan Pay-per-Request.
+     * Période : les 14 derniers jours (jusqu'à hier inclus).
+     */
+    public BillingJobDto startBiweeklyPayPerRequestJob() {
+        LocalDate periodEnd = LocalDate.now().minusDays(1); // Hier (dimanche)
+        LocalDate periodStart = periodEnd.minusDays(13); // 14 jours avant (lundi il y a 2 semaines)
+        return start(BillingJob.JobType.BIWEEKLY_PAY_PER_REQUEST, periodStart, periodEnd);
+    }
+
+    /**
+     * Lance la génération des factures bihebdomadaires Pay-per-Request sans attendre la fin du traitement,
+     * qui a son propre bail et son propre suivi (voir {@link #getJob(Long)}).
+     * Tâche planifiée tous les lundis à 8h00 (voir ScheduledJobs).
+     *
+     * @return Nombre de factures déjà générées par le traitement de la période au moment du lancement
+     */
+    public int runBiweeklyPayPerRequestJob() {
+        return startBiweeklyPayPerRequestJob().getGeneratedCount();
+    }
+
+    /**
+     * Reprend au démarrage les traitements interrompus (arrêt ou crash de l'application),
+     * sauf ceux en cours sur une autre instance.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        for (BillingJob job : jobRepository.findByStatusOrderByIdAsc(BillingJob.JobStatus.RUNNING)) {
+            log.info("Reprise du traitement de facturation {} ({} du {} au {})",
+                    job.getId(), job.getJobType(), job.getPeriodStart(), job.getPeriodEnd());
+            submit(job.getId());
+        }
+    }
+
+    // ===================================================
+    // CONSULTATION
+    // ===================================================
+
+    public BillingJobDto getJob(Long jobId) {
+        BillingJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Traitement de facturation non trouvé avec l'ID: " + jobId));
+        return toDto(job);
+    }
+
+    public List<BillingJobDto> getRecentJobs() {
+        return jobRepository.findTop50ByOrderByIdDesc().stream().map(this::toDto).toList();
+    }
+
+    // ===================================================
+    // EXÉCUTION
+    // ===================================================
+
+    private BillingJobDto start(BillingJob.JobType jobType, LocalDate periodStart, LocalDate periodEnd) {
+        BillingJob job = findOrCreateJob(jobType, periodStart, periodEnd);
+        if (job.getStatus() == BillingJob.JobStatus.COMPLETED) {
+            log.info("Traitement de facturation {} ({} du {} au {}) déjà terminé",
+                    job.getId(), jobType, periodStart, periodEnd);
+            return toDto(job);
+        }
+        submit(job.getId());
+        return toDto(job);
+    }
+
+    /**
+     * Récupère le traitement de la période, ou le crée. Un traitement terminé avec erreurs repasse en cours.
+     */
+    private BillingJob findOrCreateJob(BillingJob.JobType jobType, LocalDate periodStart, LocalDate periodEnd) {
+        try {
+            return transactionTemplate.execute(status -> {
+                BillingJob job = jobRepository.findByJobTypeAndPeriodStartAndPeriodEnd(jobType, periodStart, periodEnd)
+                        .orElseGet(() -> {
+                            BillingJob created = new BillingJob();
+                            created.setJobType(jobType);
+                            created.setPeriodStart(periodStart);
+                            created.setPeriodEnd(periodEnd);
+                            return created;
+                        });
+                if (job.getStatus() == BillingJob.JobStatus.COMPLETED_WITH_ERRORS) {
+                    job.setStatus(BillingJob.JobStatus.RUNNING);
+                    job.setFinishedAt(null);
+                }
+                return jobRepository.save(job);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Créé au même moment par un autre appel : utiliser celui-ci
+            return jobRepository.findByJobTypeAndPeriodStartAndPeriodEnd(jobType, periodStart, periodEnd)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    private void submit(Long jobId) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (runningFutures.putIfAbsent(jobId, future) != null) {
+            log.info("Traitement de facturation {} déjà en cours d'exécution", jobId);
+            return;
+        }
+        coordinator.execute(() -> {
+            try {
+                runExclusively(jobId);
+            } catch (Exception e) {
+                // Le traitement reste RUNNING : il sera repris au prochain lancement ou démarrage
+                log.error("Erreur lors du traitement de facturation {}: {}", jobId, e.getMessage(), e);
+            } finally {
+                runningFutures.remove(jobId);
+                future.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Exécute le traitement sous bail : une autre instance ne le traite pas en même temps.
+     */
+    private void runExclusively(Long jobId) {
+        String lockName = "billing-job-" + jobId;
+        LocalDateTime lockedAt = LocalDateTime.now();
+        if (!jobLockService.tryLock(lockName, Duration.ofMillis(leaseMs))) {
+            log.info("Traitement de facturation {} en cours sur une autre instance", jobId);
+            return;
+        }
+        try {
+            run(jobId, lockName);
+        } finally {
+            jobLockService.unlock(lockName, lockedAt, Duration.ZERO);
+        }
+    }
+
+    private void run(Long jobId, String lockName) {
+        BillingJob job = jobRepository.findById(jobId).orElseThrow();
+        long startNanos = System.nanoTime();
+        seedItems(job);
+
+        int processed = 0;
+        long afterId = 0L;
+        while (true) {
+            // Chaque élément en attente ou en échec est traité au plus une fois par exécution
+            List<BillingJobItem> chunk = itemRepository.findChunk(jobId, TO_PROCESS, afterId, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            CompletableFuture.allOf(chunk.stream()
+                    .map(item -> CompletableFuture.runAsync(() -> processItem(job, item), workers))
+                    .toArray(CompletableFuture[]::new))
+                    .join();
+            afterId = chunk.get(chunk.size() - 1).getId();
+            processed += chunk.size();
+
+            BillingJob checkpoint = checkpoint(jobId, false);
+            log.info("Traitement de facturation {}: {}/{} organisation(s) traitée(s), {} org/s",
+                    jobId, checkpoint.getGeneratedCount() + checkpoint.getSkippedCount() + checkpoint.getFailedCount(),
+                    checkpoint.getTotalItems(), String.format("%.1f", rate(processed, System.nanoTime() - startNanos)));
+            if (!jobLockService.extend(lockName, Duration.ofMillis(leaseMs))) {
+                // Repris par une autre instance : le traitement y continue
+                return;
+            }
+        }
+
+        BillingJob finished = checkpoint(jobId, true);
+        log.info("Traitement de facturation {} terminé ({}): {} facture(s) générée(s), {} ignorée(s), {} erreur(s) - " +
+                        "{} organisation(s) en {} s ({} org/s)",
+                jobId, finished.getStatus(), finished.getGeneratedCount(), finished.getSkippedCount(),
+                finished.getFailedCount(), processed, Duration.ofNanos(System.nanoTime() - startNanos).toSeconds(),
+                String.format("%.1f", rate(processed, System.nanoTime() - startNanos)));
+    }
+
+    /**
+     * Enregistre une ligne PENDING pour chaque organisation concernée qui n'en a pas encore.
+     */
+    private void seedItems(BillingJob job) {
+        List<Long> organizationIds = switch (job.getJobType()) {
+            case MONTHLY -> organizationRepository.findAllIds();
+            case BIWEEKLY_PAY_PER_REQUEST -> organizationService.getOrganizationsWithPayPerRequestPlan().stream()
+                    .map(OrganizationDto::getId)
+                    .toList();
+        };
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Long> existing = new HashSet<>(itemRepository.findOrganizationIdsByJobId(job.getId()));
+            List<BillingJobItem> missing = organizationIds.stream()
+                    .filter(organizationId -> !existing.contains(organizationId))
+                    .map(organizationId -> {
+                        BillingJobItem item = new BillingJobItem();
+                        item.setJobId(job.getId());
+                        item.setOrganizationId(organizationId);
+                        item.setStatus(BillingJobItem.ItemStatus.PENDING);
+                        return item;
+                    })
+                    .toList();
+            itemRepository.saveAll(missing);
+            if (!missing.isEmpty()) {
+                log.info("Traitement de facturation {}: {} organisation(s) ajoutée(s)", job.getId(), missing.size());
+            }
+        });
+    }
+
+    /**
+     * Traite une organisation : génération de la facture et mise à jour de son état dans une même transaction.
+     */
+    private void processItem(BillingJob job, BillingJobItem item) {
+        int attempts = item.getAttempts() + 1;
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Long invoiceId = generateInvoice(job, item.getOrganizationId());
+                item.setStatus(invoiceId != null ? BillingJobItem.ItemStatus.GENERATED : BillingJobItem.ItemStatus.SKIPPED);
+                item.setInvoiceId(invoiceId);
+                item.setAttempts(attempts);
+                item.setErrorMessage(null);
+                item.setProcessedAt(LocalDateTime.now());
+                itemRepository.save(item);
+            });
+        } catch (Exception e) {
+            log.error("✗ Erreur lors de la facturation de l'organisation {} (traitement {}): {}",
+                    item.getOrganizationId(), job.getId(), e.getMessage(), e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            item.setStatus(BillingJobItem.ItemStatus.FAILED);
+            item.setInvoiceId(null);
+            item.setAttempts(attempts);
+            item.setErrorMessage(message.length() > ERROR_MESSAGE_MAX_LENGTH
+                    ? message.substring(0, ERROR_MESSAGE_MAX_LENGTH) : message);
+            item.setProcessedAt(LocalDateTime.now());
+            transactionTemplate.executeWithoutResult(status -> itemRepository.save(item));
+        }
+    }
+
+    /**
+     * Génère la facture d'une organisation pour la période du traitement.
+     *
+     * @return L'ID de la facture générée, ou null si aucune facture n'est nécessaire (déjà existante, aucune utilisation
+     *         ou organisation en cours de suppression)
+     */
+    private Long generateInvoice(BillingJob job, Long organizationId) {
+        if (organizationRepository.isDeletionPending(organizationId)) {
+            log.info("Organisation {} en cours de suppression : pas de facture (traitement {})", organizationId, job.getId());
+            return null;
+        }
+        switch (job.getJobType()) {
+            case MONTHLY -> {
+                if (invoiceRepository.existsByOrganizationIdAndPeriodStartAndPeriodEnd(
+                        organizationId, job.getPeriodStart(), job.getPeriodEnd())) {
+                    return null;
+                }
+                if (!usageLogRepository.existsByOrganizationIdAndTimestampBetween(organizationId,
+                        job.getPeriodStart().atStartOfDay(), job.getPeriodEnd().atTime(LocalTime.MAX))) {
+                    return null;
+                }
+                YearMonth yearMonth = YearMonth.from(job.getPeriodStart());
+                return invoiceService.generateMonthlyInvoice(
+                        organizationId, yearMonth.getYear(), yearMonth.getMonthValue()).getId();
+            }
+            case BIWEEKLY_PAY_PER_REQUEST -> {
+                InvoiceDto invoice = invoiceService.generateBiweeklyInvoice(
+                        organizationId, job.getPeriodStart(), job.getPeriodEnd());
+                return invoice != null ? invoice.getId() : null;
+            }
+            default -> throw new IllegalStateException("Type de traitement inconnu: " + job.getJobType());
+        }
+    }
+
+    /**
+     * Point de reprise : recalcule les compteurs du traitement à partir de l'état de ses organisations.
+     */
+    private BillingJob checkpoint(Long jobId, boolean finish) {
+        return transactionTemplate.execute(status -> {
+            BillingJob job = jobRepository.findById(jobId).orElseThrow();
+            Map<BillingJobItem.ItemStatus, Integer> counts = new EnumMap<>(BillingJobItem.ItemStatus.class);
+            for (Object[] row : itemRepository.countByStatus(jobId)) {
+                counts.put((BillingJobItem.ItemStatus) row[0], ((Number) row[1]).intValue());
+            }
+            job.setGeneratedCount(counts.getOrDefault(BillingJobItem.ItemStatus.GENERATED, 0));
+            job.setSkippedCount(counts.getOrDefault(BillingJobItem.ItemStatus.SKIPPED, 0));
+            job.setFailedCount(counts.getOrDefault(BillingJobItem.ItemStatus.FAILED, 0));
+            job.setTotalItems(counts.values().stream().mapToInt(Integer::intValue).sum());
+            job.setLastCheckpointAt(LocalDateTime.now());
+            if (finish) {
+                job.setStatus(job.getFailedCount() > 0
+                        ? BillingJob.JobStatus.COMPLETED_WITH_ERRORS
+                        : BillingJob.JobStatus.COMPLETED);
+                job.setFinishedAt(LocalDateTime.now());
+            }
+            return jobRepository.save(job);
+        });
+    }
+
+    private static double rate(int processed, long elapsedNanos) {
+        return elapsedNanos > 0 ? processed / (elapsedNanos / 1_000_000_000.0) : 0.0;
+    }
+
+    private BillingJobDto toDto(BillingJob job) {
+        int done = job.getGeneratedCount() + job.getSkippedCount() + job.getFailedCount();
+        LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt()
+                : job.getLastCheckpointAt() != null ? job.getLastCheckpointAt() : job.getStartedAt();
+        long elapsedNanos = job.getStartedAt() != null && end != null
+                ? Duration.between(job.getStartedAt(), end).toNanos() : 0L;
+
+        BillingJobDto dto = new BillingJobDto();
+        dto.setId(job.getId());
+        dto.setJobType(job.getJobType());
+        dto.setPeriodStart(job.getPeriodStart());
+        dto.setPeriodEnd(job.getPeriodEnd());
+        dto.setStatus(job.getStatus());
+        dto.setTotalItems(job.getTotalItems());
+        dto.setGeneratedCount(job.getGeneratedCount());
+        dto.setSkippedCount(job.getSkippedCount());
+        dto.setFailedCount(job.getFailedCount());
+        dto.setPendingCount(Math.max(0, job.getTotalItems() - done));
+        dto.setStartedAt(job.getStartedAt());
+        dto.setLastCheckpointAt(job.getLastCheckpointAt());
+        dto.setFinishedAt(job.getFinishedAt());
+        dto.setRunning(runningFutures.containsKey(job.getId()));
+        dto.setOrganizationsPerSecond(rate(done, elapsedNanos));
+        return dto;
+    }
+
+    /**
+     * Arrêt de l'application : les organisations en cours sont annulées (transaction non validée)
+     * et resteront en attente pour la reprise au prochain démarrage.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
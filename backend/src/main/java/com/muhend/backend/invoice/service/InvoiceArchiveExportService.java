@@ -0,0 +1,194 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.invoice.dto.InvoiceDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Export des PDF de factures dans une archive ZIP, écrite en flux continu.
+ *
+ * Les factures sont lues par lots (pagination par clé sur id) et leurs PDF rendus en parallèle
+ * par un pool borné, via le cache disque (un PDF déjà généré n'est pas recalculé). Les entrées sont
+ * écrites dans l'ordre des factures ; au plus {@code window} rendus sont en cours ou en attente d'écriture,
+ * et les PDF sont recopiés depuis le disque : la mémoire reste bornée quel que soit le nombre de factures.
+ */
+@Service
+@Slf4j
+public class InvoiceArchiveExportService {
+
+    private static final String ERRORS_ENTRY = "ERREURS.txt";
+
+    private final InvoiceService invoiceService;
+    private final InvoicePdfCacheService invoicePdfCacheService;
+    private final ExecutorService renderers;
+    private final int window;
+
+    @Value("${invoice.export.batch-size:100}")
+    private int batchSize;
+
+    public InvoiceArchiveExportService(InvoiceService invoiceService,
+                                       InvoicePdfCacheService invoicePdfCacheService,
+                                       @Value("${invoice.export.workers:4}") int workerCount) {
+        this.invoiceService = invoiceService;
+        this.invoicePdfCacheService = invoicePdfCacheService;
+        int workers = Math.max(1, workerCount);
+        this.renderers = Executors.newFixedThreadPool(workers, Thread.ofPlatform().name("invoice-pdf-", 1).factory());
+        this.window = workers * 2;
+    }
+
+    /**
+     * Écrit l'archive ZIP des PDF des factures dont la période commence entre les deux dates.
+     * Une facture dont le rendu échoue est listée dans l'entrée ERREURS.txt au lieu d'interrompre l'export.
+     *
+     * @param organizationIds Organisations à inclure (null ou vide = toutes les organisations)
+     * @return Nombre de PDF écrits dans l'archive
+     */
+    public int exportPdfArchive(LocalDate periodStart, LocalDate periodEnd, Collection<Long> organizationIds,
+                                OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        // Les PDF sont déjà compressés : une compression rapide suffit
+        zip.setLevel(Deflater.BEST_SPEED);
+
+        Deque<Rendering> pending = new ArrayDeque<>();
+        List<String> errors = new ArrayList<>();
+        int written = 0;
+        try {
+            Iterator<InvoiceDto> invoices = new InvoiceBatchIterator(periodStart, periodEnd, organizationIds);
+            while (invoices.hasNext()) {
+                InvoiceDto invoice = invoices.next();
+                pending.addLast(new Rendering(invoice, CompletableFuture.supplyAsync(() -> render(invoice), renderers)));
+                if (pending.size() >= window) {
+                    written += writeEntry(zip, pending.removeFirst(), errors);
+                }
+            }
+            while (!pending.isEmpty()) {
+                written += writeEntry(zip, pending.removeFirst(), errors);
+            }
+        } finally {
+            // Export interrompu (client déconnecté) : abandonner les rendus restants
+            pending.forEach(rendering -> rendering.pdf.cancel(false));
+        }
+
+        if (!errors.isEmpty()) {
+            zip.putNextEntry(new ZipEntry(ERRORS_ENTRY));
+            zip.write(String.join("\n", errors).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        log.info("Export ZIP des factures du {} au {} terminé: {} PDF, {} erreur(s)",
+                periodStart, periodEnd, written, errors.size());
+        return written;
+    }
+
+    private InvoicePdfCacheService.CachedPdf render(InvoiceDto invoice) {
+        try {
+            return invoicePdfCacheService.getOrRender(invoice);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Attend le rendu de la facture la plus ancienne en attente et l'écrit dans l'archive.
+     *
+     * @return 1 si le PDF a été écrit, 0 si son rendu a échoué
+     */
+    private int writeEntry(ZipOutputStream zip, Rendering rendering, List<String> errors) throws IOException {
+        InvoicePdfCacheService.CachedPdf pdf;
+        try {
+            pdf = rendering.pdf.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("Erreur lors du rendu du PDF de la facture {} pour l'export: {}",
+                    rendering.invoice.getInvoiceNumber(), cause.getMessage(), cause);
+            errors.add(rendering.invoice.getInvoiceNumber() + ": " + cause.getMessage());
+            return 0;
+        }
+        InputStream content;
+        try {
+            content = Files.newInputStream(pdf.file());
+        } catch (NoSuchFileException e) {
+            // Version supprimée du cache depuis le rendu (facture modifiée entre-temps) : nouveau rendu
+            content = Files.newInputStream(invoicePdfCacheService.getOrRender(rendering.invoice).file());
+        }
+        try (InputStream in = content) {
+            zip.putNextEntry(new ZipEntry("facture_" + rendering.invoice.getInvoiceNumber() + ".pdf"));
+            in.transferTo(zip);
+        }
+        zip.closeEntry();
+        return 1;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderers.shutdownNow();
+    }
+
+    private record Rendering(InvoiceDto invoice, CompletableFuture<InvoicePdfCacheService.CachedPdf> pdf) {
+    }
+
+    /**
+     * Parcourt les factures à exporter lot par lot (un seul lot en mémoire).
+     */
+    private final class InvoiceBatchIterator implements Iterator<InvoiceDto> {
+        private final LocalDate periodStart;
+        private final LocalDate periodEnd;
+        private final Collection<Long> organizationIds;
+        private Iterator<InvoiceDto> batch = List.<InvoiceDto>of().iterator();
+        private long afterId = 0L;
+        private boolean exhausted;
+
+        private InvoiceBatchIterator(LocalDate periodStart, LocalDate periodEnd, Collection<Long> organizationIds) {
+            this.periodStart = periodStart;
+            this.periodEnd = periodEnd;
+            this.organizationIds = organizationIds;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!batch.hasNext() && !exhausted) {
+                int limit = Math.max(1, Math.min(batchSize, InvoiceService.MAX_PAGE_SIZE));
+                List<InvoiceDto> invoices = invoiceService.getInvoicesForExport(
+                        periodStart, periodEnd, organizationIds, afterId, limit);
+                exhausted = invoices.size() < limit;
+                if (!invoices.isEmpty()) {
+                    afterId = invoices.get(invoices.size() - 1).getId();
+                }
+                batch = invoices.iterator();
+            }
+            return batch.hasNext();
+        }
+
+        @Override
+        public InvoiceDto next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.next();
+        }
+    }
+}
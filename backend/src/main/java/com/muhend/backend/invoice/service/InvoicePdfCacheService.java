@@ -0,0 +1,203 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.invoice.dto.InvoiceDto;
+import com.muhend.backend.invoice.dto.InvoiceItemDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cache disque des PDF de factures.
+ *
+ * Chaque PDF est stocké sous {répertoire}/{id facture}/{empreinte}.pdf, où l'empreinte est un SHA-256
+ * de tout ce qui est imprimé sur la facture (statut et notes compris). Une facture modifiée a donc
+ * une nouvelle empreinte : l'ancien PDF n'est jamais resservi. L'empreinte sert aussi d'ETag.
+ *
+ * Un fichier retourné peut être lu bien après (téléchargement en cours, export ZIP) : les versions
+ * remplacées (nouveau rendu ou {@link #evict(Long)}) ne sont donc supprimées qu'après un délai de grâce
+ * (invoice.pdf-cache.grace-period-ms). Les PDF d'une facture supprimée le sont immédiatement ({@link #delete(Long)}).
+ */
+@Service
+@Slf4j
+public class InvoicePdfCacheService {
+
+    /**
+     * Version de la mise en page : à incrémenter lors d'une modification d'InvoicePdfService
+     * pour que les PDF déjà en cache soient régénérés
+     */
+    private static final String RENDER_VERSION = "1";
+    private static final String PDF_SUFFIX = ".pdf";
+    private static final String PART_SUFFIX = ".part";
+
+    private final InvoicePdfService invoicePdfService;
+
+    /**
+     * Suppressions différées des versions remplacées
+     */
+    private final ScheduledExecutorService cleaner;
+
+    @Value("${invoice.pdf-cache.directory:./data/invoice-pdf-cache}")
+    private String directory;
+
+    @Value("${invoice.pdf-cache.grace-period-ms:600000}")
+    private long gracePeriodMs;
+
+    public InvoicePdfCacheService(InvoicePdfService invoicePdfService) {
+        this.invoicePdfService = invoicePdfService;
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("invoice-pdf-cache").factory());
+    }
+
+    /**
+     * PDF en cache : fichier, empreinte du contenu de la facture et taille
+     */
+    public record CachedPdf(Path file, String fingerprint, long size) {
+    }
+
+    /**
+     * Retourne le PDF de la facture depuis le cache, en le générant s'il est absent ou périmé.
+     * Le fichier retourné est conservé au moins pendant le délai de grâce.
+     */
+    public CachedPdf getOrRender(InvoiceDto invoice) throws IOException {
+        String fingerprint = fingerprint(invoice);
+        Path invoiceDir = getInvoiceDirectory(invoice.getId());
+        Path file = invoiceDir.resolve(fingerprint + PDF_SUFFIX);
+        if (Files.exists(file)) {
+            try {
+                // Date de dernier accès : une suppression programmée avant cet accès ne touche plus ce fichier
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                return new CachedPdf(file, fingerprint, Files.size(file));
+            } catch (NoSuchFileException e) {
+                // Supprimé entre-temps : nouveau rendu
+            }
+        }
+
+        byte[] pdfBytes = invoicePdfService.generatePdf(invoice);
+        // Écriture dans un fichier temporaire puis renommage atomique : un lecteur ne voit jamais un PDF partiel
+        Path partFile = Files.createTempFile(invoiceDir, fingerprint, PART_SUFFIX);
+        try {
+            Files.write(partFile, pdfBytes);
+            Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partFile);
+        }
+        // Les versions précédentes peuvent être en cours de lecture
+        scheduleCleanup(invoice.getId(), Files.getLastModifiedTime(file).toMillis());
+        log.debug("PDF de la facture {} mis en cache ({} octets)", invoice.getInvoiceNumber(), pdfBytes.length);
+        return new CachedPdf(file, fingerprint, pdfBytes.length);
+    }
+
+    /**
+     * Supprime, après le délai de grâce, les PDF en cache d'une facture (après un changement de statut ou de notes).
+     */
+    public void evict(Long invoiceId) {
+        scheduleCleanup(invoiceId, System.currentTimeMillis());
+    }
+
+    /**
+     * Supprime immédiatement les PDF en cache d'une facture supprimée.
+     */
+    public void delete(Long invoiceId) {
+        Path invoiceDir = resolveInvoiceDirectory(invoiceId);
+        deleteVersionsBefore(invoiceDir, Long.MAX_VALUE);
+        try {
+            Files.deleteIfExists(invoiceDir);
+        } catch (IOException e) {
+            log.warn("Impossible de supprimer le répertoire de cache {}: {}", invoiceDir, e.getMessage());
+        }
+    }
+
+    /**
+     * Programme la suppression, après le délai de grâce, des PDF de la facture
+     * ni écrits ni servis depuis {@code cutoffMillis}.
+     */
+    private void scheduleCleanup(Long invoiceId, long cutoffMillis) {
+        Path invoiceDir = resolveInvoiceDirectory(invoiceId);
+        try {
+            cleaner.schedule(() -> deleteVersionsBefore(invoiceDir, cutoffMillis), gracePeriodMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Arrêt en cours : les versions remplacées seront supprimées après le prochain rendu
+        }
+    }
+
+    private void deleteVersionsBefore(Path invoiceDir, long cutoffMillis) {
+        if (!Files.isDirectory(invoiceDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(invoiceDir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(PDF_SUFFIX)).toList()) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoffMillis) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Déjà supprimé
+                }
+            }
+        } catch (IOException e) {
+            // Sans conséquence : l'empreinte a changé, l'ancien PDF ne sera plus servi
+            log.warn("Impossible de supprimer les anciens PDF en cache dans {}: {}", invoiceDir, e.getMessage());
+        }
+    }
+
+    private Path resolveInvoiceDirectory(Long invoiceId) {
+        return Paths.get(directory).toAbsolutePath().normalize().resolve(String.valueOf(invoiceId));
+    }
+
+    private Path getInvoiceDirectory(Long invoiceId) throws IOException {
+        Path invoiceDir = resolveInvoiceDirectory(invoiceId);
+        Files.createDirectories(invoiceDir);
+        return invoiceDir;
+    }
+
+    /**
+     * Empreinte SHA-256 des champs imprimés sur la facture (voir InvoicePdfService).
+     */
+    static String fingerprint(InvoiceDto invoice) {
+        StringBuilder content = new StringBuilder()
+                .append(RENDER_VERSION).append('\n')
+                .append(invoice.getId()).append('\n')
+                .append(invoice.getInvoiceNumber()).append('\n')
+                .append(invoice.getOrganizationName()).append('\n')
+                .append(invoice.getOrganizationEmail()).append('\n')
+                .append(invoice.getPeriodStart()).append('\n')
+                .append(invoice.getPeriodEnd()).append('\n')
+                .append(invoice.getCreatedAt()).append('\n')
+                .append(invoice.getDueDate()).append('\n')
+                .append(invoice.getStatus()).append('\n')
+                .append(invoice.getTotalAmount()).append('\n')
+                .append(invoice.getNotes()).append('\n');
+        if (invoice.getItems() != null) {
+            for (InvoiceItemDto item : invoice.getItems()) {
+                content.append(item.getDescription()).append('\t')
+                        .append(item.getQuantity()).append('\t')
+                        .append(item.getUnitPrice()).append('\t')
+                        .append(item.getTotalPrice()).append('\n');
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+}
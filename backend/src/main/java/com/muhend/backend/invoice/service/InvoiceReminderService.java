@@ -0,0 +1,140 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.auth.service.KeycloakAdminService;
+import com.muhend.backend.auth.service.KeycloakUserDirectory;
+import com.muhend.backend.email.service.EmailService;
+import com.muhend.backend.invoice.dto.OverdueInvoice;
+import com.muhend.backend.invoice.event.InvoicesOverdueEvent;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.organization.repository.OrganizationUserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Envoi des rappels par email pour les factures passées en retard.
+ *
+ * Exécuté en arrière-plan après la validation du passage en retard : la tâche quotidienne
+ * n'attend pas le serveur SMTP. Les destinataires sont résolus une seule fois par organisation
+ * (email de l'organisation et emails Keycloak de ses utilisateurs), puis tous les rappels
+ * de l'organisation sont envoyés.
+ */
+@Service
+@Slf4j
+public class InvoiceReminderService {
+    
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    
+    private final OrganizationRepository organizationRepository;
+    private final OrganizationUserRepository organizationUserRepository;
+    private final KeycloakAdminService keycloakAdminService;
+    private final EmailService emailService;
+    
+    public InvoiceReminderService(OrganizationRepository organizationRepository,
+                                  OrganizationUserRepository organizationUserRepository,
+                                  KeycloakAdminService keycloakAdminService,
+                                  EmailService emailService) {
+        this.organizationRepository = organizationRepository;
+        this.organizationUserRepository = organizationUserRepository;
+        this.keycloakAdminService = keycloakAdminService;
+        this.emailService = emailService;
+    }
+    
+    /**
+     * Envoie un rappel pour chaque facture passée en retard, organisation par organisation.
+     */
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInvoicesOverdue(InvoicesOverdueEvent event) {
+        Map<Long, List<OverdueInvoice>> invoicesByOrganization = event.getInvoices().stream()
+                .collect(Collectors.groupingBy(OverdueInvoice::getOrganizationId));
+        
+        // Organisations et utilisateurs de toutes les organisations concernées : deux requêtes
+        Map<Long, Organization> organizations = organizationRepository.findAllById(invoicesByOrganization.keySet()).stream()
+                .collect(Collectors.toMap(Organization::getId, Function.identity()));
+        Map<Long, List<String>> userIdsByOrganization = new HashMap<>();
+        for (Object[] row : organizationUserRepository.findKeycloakUserIdsByOrganizationIdIn(invoicesByOrganization.keySet())) {
+            userIdsByOrganization.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        }
+        
+        // Une seule lecture groupée de l'annuaire Keycloak pour tous les utilisateurs concernés
+        Map<String, KeycloakUserDirectory.KeycloakUser> keycloakUsers = keycloakAdminService.getUsers(
+                userIdsByOrganization.values().stream().flatMap(List::stream).distinct().toList());
+        int sent = 0;
+        for (Map.Entry<Long, List<OverdueInvoice>> entry : invoicesByOrganization.entrySet()) {
+            Organization organization = organizations.get(entry.getKey());
+            if (organization == null) {
+                continue;
+            }
+            try {
+                List<String> recipientEmails = resolveRecipients(organization,
+                        userIdsByOrganization.getOrDefault(organization.getId(), List.of()), keycloakUsers);
+                if (recipientEmails.isEmpty()) {
+                    log.warn("Aucun email trouvé pour envoyer les rappels de factures en retard à l'organisation {}",
+                            organization.getName());
+                    continue;
+                }
+                for (OverdueInvoice invoice : entry.getValue()) {
+                    sendReminder(invoice, organization, recipientEmails);
+                    sent++;
+                }
+            } catch (Exception e) {
+                log.error("Erreur lors de l'envoi des rappels de factures en retard à l'organisation {}: {}",
+                        organization.getName(), e.getMessage(), e);
+            }
+        }
+        log.info("Rappels de factures en retard envoyés: {} facture(s), {} organisation(s)",
+                sent, invoicesByOrganization.size());
+    }
+    
+    private List<String> resolveRecipients(Organization organization, List<String> keycloakUserIds,
+                                           Map<String, KeycloakUserDirectory.KeycloakUser> keycloakUsers) {
+        Set<String> recipientEmails = new LinkedHashSet<>();
+        if (organization.getEmail() != null && !organization.getEmail().trim().isEmpty()) {
+            recipientEmails.add(organization.getEmail().trim());
+        }
+        for (String keycloakUserId : keycloakUserIds) {
+            KeycloakUserDirectory.KeycloakUser user = keycloakUsers.get(keycloakUserId);
+            if (user != null && user.email() != null && !user.email().trim().isEmpty()) {
+                recipientEmails.add(user.email().trim());
+            }
+        }
+        return new ArrayList<>(recipientEmails);
+    }
+    
+    private void sendReminder(OverdueInvoice invoice, Organization organization, List<String> recipientEmails) {
+        try {
+            long daysOverdue = ChronoUnit.DAYS.between(invoice.getDueDate(), LocalDate.now());
+            emailService.sendOverdueInvoiceReminderEmailToMultiple(
+                    recipientEmails,
+                    organization.getName(),
+                    invoice.getInvoiceNumber(),
+                    invoice.getPeriodStart().format(DATE_FORMATTER),
+                    invoice.getPeriodEnd().format(DATE_FORMATTER),
+                    invoice.getDueDate().format(DATE_FORMATTER),
+                    String.format("%.2f", invoice.getTotalAmount()),
+                    daysOverdue,
+                    invoice.getId()
+            );
+            log.info("Email de rappel de facture en retard {} envoyé à {} destinataire(s) pour l'organisation {}",
+                    invoice.getInvoiceNumber(), recipientEmails.size(), organization.getName());
+        } catch (Exception e) {
+            log.error("Erreur lors de l'envoi de l'email de rappel pour la facture en retard {}: {}",
+                    invoice.getInvoiceNumber(), e.getMessage(), e);
+        }
+    }
+}
@@ -2,26 +2,33 @@ package com.muhend.backend.invoice.service;
 
 import com.muhend.backend.invoice.dto.InvoiceDto;
 import com.muhend.backend.invoice.dto.InvoiceItemDto;
+import com.muhend.backend.invoice.dto.InvoicePage;
+import com.muhend.backend.invoice.dto.OverdueInvoice;
+import com.muhend.backend.invoice.event.InvoicesOverdueEvent;
 import com.muhend.backend.invoice.model.Invoice;
 import com.muhend.backend.invoice.model.InvoiceItem;
 import com.muhend.backend.invoice.repository.InvoiceItemRepository;
 import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.notification.event.BadgeCounterChangedEvent;
 import com.muhend.backend.email.service.EmailService;
 import com.muhend.backend.auth.service.KeycloakAdminService;
 import com.muhend.backend.organization.dto.OrganizationDto;
 import com.muhend.backend.organization.dto.OrganizationUserDto;
 import com.muhend.backend.organization.service.OrganizationService;
 import com.muhend.backend.pricing.dto.PricingPlanDto;
-import com.muhend.backend.usage.model.UsageLog;
+import com.muhend.backend.usage.dto.EndpointUsageTotals;
+import com.muhend.backend.usage.dto.UsageTotals;
 import com.muhend.backend.usage.repository.UsageLogRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -29,7 +36,12 @@ import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -46,6 +58,18 @@ public class InvoiceService {
     private final OrganizationService organizationService;
     private final EmailService emailService;
     private final KeycloakAdminService keycloakAdminService;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    /**
+     * Taille maximale d'une page de factures
+     */
+    public static final int MAX_PAGE_SIZE = 200;
+    
+    /**
+     * Nombre maximal d'IDs par requête de chargement des lignes de factures
+     * (PostgreSQL limite une requête à 65535 paramètres)
+     */
+    static final int ITEMS_LOOKUP_CHUNK_SIZE = 1000;
     
     private static final DateTimeFormatter INVOICE_NUMBER_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
@@ -56,13 +80,15 @@ public class InvoiceService {
             UsageLogRepository usageLogRepository,
             @Lazy OrganizationService organizationService,
             EmailService emailService,
-            KeycloakAdminService keycloakAdminService) {
+            KeycloakAdminService keycloakAdminService,
+            ApplicationEventPublisher eventPublisher) {
         this.invoiceRepository = invoiceRepository;
         this.invoiceItemRepository = invoiceItemRepository;
         this.usageLogRepository = usageLogRepository;
         this.organizationService = organizationService;
         this.emailService = emailService;
         this.keycloakAdminService = keycloakAdminService;
+        this.eventPublisher = eventPublisher;
     }
     
     /**
@@ -98,20 +124,17 @@ public class InvoiceService {
         LocalDateTime startDateTime = periodStart.atStartOfDay();
         LocalDateTime endDateTime = periodEnd.atTime(LocalTime.MAX);
         
-        List<UsageLog> usageLogs = usageLogRepository.findByOrganizationIdAndTimestampBetween(
+        // Agrégats par endpoint calculés en SQL (les logs ne sont pas chargés)
+        List<EndpointUsageTotals> usageByEndpoint = usageLogRepository.sumGroupedByEndpointForOrganization(
                 organizationId, startDateTime, endDateTime);
         
-        if (usageLogs.isEmpty()) {
+        if (usageByEndpoint.isEmpty()) {
             throw new IllegalArgumentException(
                     "Aucune utilisation trouvée pour cette période. Impossible de générer une facture.");
         }
         
         // Calculer le total
-        BigDecimal totalAmount = usageLogs.stream()
-                .filter(log -> log.getCostUsd() != null)
-                .map(UsageLog::getCostUsd)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal totalAmount = sumCost(usageByEndpoint);
         
         // Générer le numéro de facture
         String invoiceNumber = generateInvoiceNumber(organizationId, year, month);
@@ -128,10 +151,12 @@ public class InvoiceService {
         invoice.setStatus(Invoice.InvoiceStatus.PENDING);
         invoice.setDueDate(periodEnd.plusDays(30)); // 30 jours après la fin de la période
         
+        freezeUsageStats(invoice, usageByEndpoint);
         invoice = invoiceRepository.save(invoice);
+        publishInvoiceCreated(invoice);
         
         // Créer les lignes de facture
-        List<InvoiceItem> items = createInvoiceItems(invoice, usageLogs);
+        List<InvoiceItem> items = createInvoiceItems(invoice, usageByEndpoint);
         if (!items.isEmpty()) {
             invoiceItemRepository.saveAll(items);
         }
@@ -175,20 +200,17 @@ public class InvoiceService {
         LocalDateTime startDateTime = periodStart.atStartOfDay();
         LocalDateTime endDateTime = periodEnd.atTime(LocalTime.MAX);
         
-        List<UsageLog> usageLogs = usageLogRepository.findByOrganizationIdAndTimestampBetween(
+        // Agrégats par endpoint calculés en SQL (les logs ne sont pas chargés)
+        List<EndpointUsageTotals> usageByEndpoint = usageLogRepository.sumGroupedByEndpointForOrganization(
                 organizationId, startDateTime, endDateTime);
         
-        if (usageLogs.isEmpty()) {
+        if (usageByEndpoint.isEmpty()) {
             throw new IllegalArgumentException(
                     "Aucune utilisation trouvée pour cette période. Impossible de générer une facture.");
         }
         
         // Calculer le total
-        BigDecimal totalAmount = usageLogs.stream()
-                .filter(log -> log.getCostUsd() != null)
-                .map(UsageLog::getCostUsd)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal totalAmount = sumCost(usageByEndpoint);
         
         // Générer le numéro de facture (basé sur la date de début)
         YearMonth yearMonth = YearMonth.from(periodStart);
@@ -206,10 +228,12 @@ public class InvoiceService {
         invoice.setStatus(Invoice.InvoiceStatus.PENDING);
         invoice.setDueDate(periodEnd.plusDays(30)); // 30 jours après la fin de la période
         
+        freezeUsageStats(invoice, usageByEndpoint);
         invoice = invoiceRepository.save(invoice);
+        publishInvoiceCreated(invoice);
         
         // Créer les lignes de facture
-        List<InvoiceItem> items = createInvoiceItems(invoice, usageLogs);
+        List<InvoiceItem> items = createInvoiceItems(invoice, usageByEndpoint);
         if (!items.isEmpty()) {
             invoiceItemRepository.saveAll(items);
         }
@@ -253,22 +277,19 @@ public class InvoiceService {
         LocalDateTime startDateTime = periodStart.atStartOfDay();
         LocalDateTime endDateTime = periodEnd.atTime(LocalTime.MAX);
         
-        List<UsageLog> usageLogs = usageLogRepository.findByOrganizationIdAndTimestampBetween(
+        // Agrégats par endpoint calculés en SQL (les logs ne sont pas chargés)
+        List<EndpointUsageTotals> usageByEndpoint = usageLogRepository.sumGroupedByEndpointForOrganization(
                 organizationId, startDateTime, endDateTime);
         
         // Si aucune utilisation, ne pas générer de facture
-        if (usageLogs.isEmpty()) {
+        if (usageByEndpoint.isEmpty()) {
             log.info("Aucune utilisation trouvée pour l'organisation {} sur la période {} - {}. Facture non générée.",
                     organizationId, periodStart, periodEnd);
             return null;
         }
         
         // Calculer le total
-        BigDecimal totalAmount = usageLogs.stream()
-                .filter(log -> log.getCostUsd() != null)
-                .map(UsageLog::getCostUsd)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal totalAmount = sumCost(usageByEndpoint);
         
         // Générer le numéro de facture (format: ORG-YYYYMMDD-BIWEEKLY)
         String invoiceNumber = String.format("ORG-%d-%s-BIWEEKLY",
@@ -287,10 +308,12 @@ public class InvoiceService {
         invoice.setStatus(Invoice.InvoiceStatus.PENDING);
         invoice.setDueDate(periodEnd.plusDays(14)); // Échéance dans 14 jours
         
+        freezeUsageStats(invoice, usageByEndpoint);
         invoice = invoiceRepository.save(invoice);
+        publishInvoiceCreated(invoice);
         
         // Créer les lignes de facture
-        List<InvoiceItem> items = createInvoiceItems(invoice, usageLogs);
+        List<InvoiceItem> items = createInvoiceItems(invoice, usageByEndpoint);
         if (!items.isEmpty()) {
             invoiceItemRepository.saveAll(items);
         }
@@ -307,28 +330,15 @@ public class InvoiceService {
     }
     
     /**
-     * Crée les lignes de facture à partir des logs d'utilisation.
+     * Crée les lignes de facture à partir des agrégats d'utilisation par endpoint.
      */
-    private List<InvoiceItem> createInvoiceItems(Invoice invoice, List<UsageLog> usageLogs) {
+    private List<InvoiceItem> createInvoiceItems(Invoice invoice, List<EndpointUsageTotals> usageByEndpoint) {
         List<InvoiceItem> items = new ArrayList<>();
         
-        // Agréger par endpoint
-        var usageByEndpoint = usageLogs.stream()
-                .collect(Collectors.groupingBy(
-                        UsageLog::getEndpoint,
-                        Collectors.toList()
-                ));
-        
-        for (var entry : usageByEndpoint.entrySet()) {
-            String endpoint = entry.getKey();
-            List<UsageLog> logs = entry.getValue();
-            
-            // Calculer le total pour cet endpoint
-            long requestCount = logs.size();
-            BigDecimal totalCost = logs.stream()
-                    .filter(log -> log.getCostUsd() != null)
-                    .map(UsageLog::getCostUsd)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add)
+        for (EndpointUsageTotals usage : usageByEndpoint) {
+            // Total pour cet endpoint
+            long requestCount = usage.getRequestCount();
+            BigDecimal totalCost = (usage.getTotalCostUsd() != null ? usage.getTotalCostUsd() : BigDecimal.ZERO)
                     .setScale(2, RoundingMode.HALF_UP);
             
             // Calculer le prix unitaire moyen
@@ -338,7 +348,7 @@ public class InvoiceService {
             
             InvoiceItem item = new InvoiceItem();
             item.setInvoice(invoice);
-            item.setDescription(getEndpointDescription(endpoint));
+            item.setDescription(getEndpointDescription(usage.getEndpoint()));
             item.setQuantity((int) requestCount);
             item.setUnitPrice(unitPrice);
             item.setTotalPrice(totalCost);
@@ -348,18 +358,14 @@ public class InvoiceService {
         }
         
         // Ajouter une ligne récapitulative pour les tokens si nécessaire
-        long totalTokens = usageLogs.stream()
-                .filter(log -> log.getTokensUsed() != null)
-                .mapToLong(UsageLog::getTokensUsed)
+        long totalTokens = usageByEndpoint.stream()
+                .filter(usage -> usage.getTotalTokens() != null)
+                .mapToLong(EndpointUsageTotals::getTotalTokens)
                 .sum();
         
         if (totalTokens > 0) {
             // Calculer le coût total des tokens
-            BigDecimal totalTokenCost = usageLogs.stream()
-                    .filter(log -> log.getCostUsd() != null)
-                    .map(UsageLog::getCostUsd)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add)
-                    .setScale(2, RoundingMode.HALF_UP);
+            BigDecimal totalTokenCost = sumCost(usageByEndpoint);
             
             BigDecimal tokenUnitPrice = totalTokens > 0
                     ? totalTokenCost.divide(BigDecimal.valueOf(totalTokens), 6, RoundingMode.HALF_UP)
@@ -379,6 +385,62 @@ public class InvoiceService {
         return items;
     }
     
+    /**
+     * Coût total de la période (somme exacte des agrégats, arrondie au centime).
+     */
+    private static BigDecimal sumCost(List<EndpointUsageTotals> usageByEndpoint) {
+        return usageByEndpoint.stream()
+                .map(EndpointUsageTotals::getTotalCostUsd)
+                .filter(Objects::nonNull)
+                .reduce(BigDecimal.ZERO, BigDecimal::add)
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+    
+    /**
+     * Fige sur la facture les statistiques d'utilisation de sa période, à partir des agrégats déjà calculés.
+     * Tant que la période n'est pas terminée, elles restent null et sont figées ensuite
+     * par InvoiceUsageStatsBackfillService.
+     */
+    private void freezeUsageStats(Invoice invoice, List<EndpointUsageTotals> usageByEndpoint) {
+        if (!isUsagePeriodEnded(invoice)) {
+            return;
+        }
+        invoice.setTotalRequests(usageByEndpoint.stream().mapToLong(EndpointUsageTotals::getRequestCount).sum());
+        invoice.setTotalTokens(usageByEndpoint.stream()
+                .filter(usage -> usage.getTotalTokens() != null)
+                .mapToLong(EndpointUsageTotals::getTotalTokens)
+                .sum());
+        invoice.setTotalCostUsd(sumCost(usageByEndpoint));
+    }
+    
+    /**
+     * Fige sur la facture les statistiques d'utilisation de sa période (une requête d'agrégat).
+     */
+    private void freezeUsageStats(Invoice invoice) {
+        if (isUsagePeriodEnded(invoice)) {
+            applyUsageStats(invoice, usageLogRepository.sumByOrganizationIdAndTimestampBetween(invoice.getOrganizationId(),
+                    invoice.getPeriodStart().atStartOfDay(), invoice.getPeriodEnd().atTime(LocalTime.MAX)));
+        }
+    }
+    
+    /**
+     * La période est terminée : plus aucun log ne peut s'y ajouter, les statistiques peuvent être figées.
+     */
+    private static boolean isUsagePeriodEnded(Invoice invoice) {
+        return invoice.getPeriodEnd().isBefore(LocalDate.now());
+    }
+    
+    /**
+     * Recopie des agrégats d'utilisation sur la facture (arrondi au centime comme le montant).
+     */
+    static void applyUsageStats(Invoice invoice, UsageTotals usageTotals) {
+        invoice.setTotalRequests(usageTotals != null ? usageTotals.getRequestCount() : 0L);
+        invoice.setTotalTokens(usageTotals != null && usageTotals.getTotalTokens() != null ? usageTotals.getTotalTokens() : 0L);
+        invoice.setTotalCostUsd((usageTotals != null && usageTotals.getTotalCostUsd() != null
+                ? usageTotals.getTotalCostUsd()
+                : BigDecimal.ZERO).setScale(2, RoundingMode.HALF_UP));
+    }
+    
     /**
      * Génère un numéro de facture unique.
      * Format: INV-{YYYYMM}-{ORG_ID}-{SEQUENCE}
@@ -422,24 +484,69 @@ public class InvoiceService {
     }
     
     /**
-     * Récupère toutes les factures d'une organisation.
+     * Récupère les {@value #MAX_PAGE_SIZE} factures les plus récentes d'une organisation.
+     *
+     * @deprecated liste bornée conservée pour compatibilité, utiliser {@link #getInvoicesPage}
      */
+    @Deprecated
     public List<InvoiceDto> getInvoicesByOrganization(Long organizationId) {
-        return invoiceRepository.findByOrganizationIdOrderByCreatedAtDesc(organizationId)
-                .stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        return getInvoicesPage(organizationId, null, MAX_PAGE_SIZE).getItems();
     }
     
     /**
-     * Récupère toutes les factures (admin uniquement).
+     * Récupère les {@value #MAX_PAGE_SIZE} factures les plus récentes, toutes organisations confondues (admin uniquement).
+     *
+     * @deprecated liste bornée conservée pour compatibilité, utiliser {@link #getInvoicesPage}
      */
+    @Deprecated
     public List<InvoiceDto> getAllInvoices() {
-        return invoiceRepository.findAll()
-                .stream()
-                .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        return getInvoicesPage(null, null, MAX_PAGE_SIZE).getItems();
+    }
+    
+    /**
+     * Récupère une page de factures (de la plus récente à la plus ancienne) par pagination par clé sur (createdAt, id).
+     *
+     * @param organizationId ID de l'organisation (null = toutes les organisations)
+     * @param cursor Curseur renvoyé par la page précédente (null pour la première page)
+     * @param limit Taille de la page (bornée à {@value #MAX_PAGE_SIZE})
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    public InvoicePage getInvoicesPage(Long organizationId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        
+        // Première page : toutes les factures
+        LocalDateTime beforeCreatedAt = LocalDateTime.of(9999, 12, 31, 23, 59);
+        Long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] decoded = decodeCursor(cursor);
+            beforeCreatedAt = LocalDateTime.parse(decoded[0]);
+            beforeId = Long.parseLong(decoded[1]);
+        }
+        
+        // Une ligne de plus pour savoir s'il reste des résultats
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<Invoice> invoices = organizationId == null
+                ? invoiceRepository.findPageBefore(beforeCreatedAt, beforeId, page)
+                : invoiceRepository.findPageByOrganizationBefore(organizationId, beforeCreatedAt, beforeId, page);
+        
+        boolean hasMore = invoices.size() > pageSize;
+        List<Invoice> items = hasMore ? invoices.subList(0, pageSize) : invoices;
+        String nextCursor = hasMore ? encodeCursor(items.get(items.size() - 1)) : null;
+        return new InvoicePage(toDtos(items), nextCursor, hasMore);
+    }
+    
+    /**
+     * Récupère un lot de factures à exporter (par ordre d'ID, après le dernier ID du lot précédent).
+     *
+     * @param organizationIds Organisations à inclure (null ou vide = toutes les organisations)
+     */
+    public List<InvoiceDto> getInvoicesForExport(LocalDate periodStart, LocalDate periodEnd,
+                                                 Collection<Long> organizationIds, Long afterId, int limit) {
+        PageRequest page = PageRequest.of(0, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        List<Invoice> invoices = organizationIds == null || organizationIds.isEmpty()
+                ? invoiceRepository.findForExport(periodStart, periodEnd, afterId, page)
+                : invoiceRepository.findForExportByOrganizations(organizationIds, periodStart, periodEnd, afterId, page);
+        return toDtos(invoices);
     }
     
     /**
@@ -462,6 +569,7 @@ public class InvoiceService {
         }
         
         invoice = invoiceRepository.save(invoice);
+        publishOverdueChanged(invoice.getOrganizationId(), previousStatus, status);
         
         log.info("Statut de la facture {} mis à jour: {} -> {}", invoice.getInvoiceNumber(), previousStatus, status);
         
@@ -479,6 +587,29 @@ public class InvoiceService {
         return invoiceDto;
     }
     
+    /**
+     * Publie la variation d'un compteur de badge de factures, appliquée après commit.
+     */
+    private void publishBadgeChanged(Long organizationId, BadgeCounterChangedEvent.Counter counter, long delta) {
+        eventPublisher.publishEvent(BadgeCounterChangedEvent.of(organizationId, counter, delta));
+    }
+    
+    /**
+     * Une nouvelle facture est non consultée (et éventuellement déjà en retard).
+     */
+    private void publishInvoiceCreated(Invoice invoice) {
+        publishBadgeChanged(invoice.getOrganizationId(), BadgeCounterChangedEvent.Counter.NEW_INVOICES, 1);
+        publishOverdueChanged(invoice.getOrganizationId(), null, invoice.getStatus());
+    }
+    
+    private void publishOverdueChanged(Long organizationId, Invoice.InvoiceStatus previousStatus, Invoice.InvoiceStatus status) {
+        int delta = (status == Invoice.InvoiceStatus.OVERDUE ? 1 : 0)
+                - (previousStatus == Invoice.InvoiceStatus.OVERDUE ? 1 : 0);
+        if (delta != 0) {
+            publishBadgeChanged(organizationId, BadgeCounterChangedEvent.Counter.OVERDUE_INVOICES, delta);
+        }
+    }
+    
     /**
      * Compte les nouvelles factures non consultées d'une organisation.
      */
@@ -505,6 +636,7 @@ public class InvoiceService {
         if (invoice.getViewedAt() == null) {
             invoice.setViewedAt(LocalDateTime.now());
             invoice = invoiceRepository.save(invoice);
+            publishBadgeChanged(invoice.getOrganizationId(), BadgeCounterChangedEvent.Counter.NEW_INVOICES, -1);
             log.info("Facture {} marquée comme consultée", invoice.getInvoiceNumber());
         }
         
@@ -515,6 +647,31 @@ public class InvoiceService {
      * Convertit une Invoice en DTO.
      */
     private InvoiceDto toDto(Invoice invoice) {
+        return toDto(invoice, invoiceItemRepository.findByInvoiceIdOrderById(invoice.getId()));
+    }
+    
+    /**
+     * Convertit une liste de factures en DTO : les lignes sont chargées par lots de
+     * {@value #ITEMS_LOOKUP_CHUNK_SIZE} factures (une requête par lot, liste IN bornée).
+     */
+    private List<InvoiceDto> toDtos(List<Invoice> invoices) {
+        if (invoices.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> invoiceIds = invoices.stream().map(Invoice::getId).toList();
+        Map<Long, List<InvoiceItem>> itemsByInvoice = new HashMap<>();
+        for (int from = 0; from < invoiceIds.size(); from += ITEMS_LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = invoiceIds.subList(from, Math.min(from + ITEMS_LOOKUP_CHUNK_SIZE, invoiceIds.size()));
+            for (InvoiceItem item : invoiceItemRepository.findByInvoiceIdIn(chunk)) {
+                itemsByInvoice.computeIfAbsent(item.getInvoice().getId(), id -> new ArrayList<>()).add(item);
+            }
+        }
+        return invoices.stream()
+                .map(invoice -> toDto(invoice, itemsByInvoice.getOrDefault(invoice.getId(), List.of())))
+                .collect(Collectors.toList());
+    }
+    
+    private InvoiceDto toDto(Invoice invoice, List<InvoiceItem> items) {
         InvoiceDto dto = new InvoiceDto();
         dto.setId(invoice.getId());
         dto.setOrganizationId(invoice.getOrganizationId());
@@ -531,8 +688,7 @@ public class InvoiceService {
         dto.setNotes(invoice.getNotes());
         dto.setViewedAt(invoice.getViewedAt());
         
-        // Récupérer les lignes de facture
-        List<InvoiceItem> items = invoiceItemRepository.findByInvoiceIdOrderById(invoice.getId());
+        // Lignes de facture
         if (items != null) {
             dto.setItems(items.stream()
                     .map(this::toItemDto)
@@ -541,25 +697,23 @@ public class InvoiceService {
             dto.setItems(new ArrayList<>());
         }
         
-        // Calculer les statistiques d'utilisation pour la période
-        LocalDateTime startDateTime = invoice.getPeriodStart().atStartOfDay();
-        LocalDateTime endDateTime = invoice.getPeriodEnd().atTime(LocalTime.MAX);
-        
-        Long orgId = invoice.getOrganizationId();
-        List<UsageLog> usageLogs = orgId != null 
-                ? usageLogRepository.findByOrganizationIdAndTimestampBetween(orgId, startDateTime, endDateTime)
-                : new ArrayList<>();
-        
-        dto.setTotalRequests((long) usageLogs.size());
-        dto.setTotalTokens(usageLogs.stream()
-                .filter(log -> log.getTokensUsed() != null)
-                .mapToLong(UsageLog::getTokensUsed)
-                .sum());
-        dto.setTotalCostUsd(usageLogs.stream()
-                .filter(log -> log.getCostUsd() != null)
-                .map(UsageLog::getCostUsd)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .setScale(2, RoundingMode.HALF_UP));
+        // Statistiques d'utilisation de la période : figées sur la facture une fois la période terminée,
+        // calculées en SQL tant qu'elle est en cours
+        if (invoice.getTotalRequests() != null) {
+            dto.setTotalRequests(invoice.getTotalRequests());
+            dto.setTotalTokens(invoice.getTotalTokens() != null ? invoice.getTotalTokens() : 0L);
+            dto.setTotalCostUsd(invoice.getTotalCostUsd() != null ? invoice.getTotalCostUsd() : BigDecimal.ZERO.setScale(2));
+        } else {
+            UsageTotals usageTotals = invoice.getOrganizationId() != null
+                    ? usageLogRepository.sumByOrganizationIdAndTimestampBetween(invoice.getOrganizationId(),
+                            invoice.getPeriodStart().atStartOfDay(), invoice.getPeriodEnd().atTime(LocalTime.MAX))
+                    : null;
+            dto.setTotalRequests(usageTotals != null ? usageTotals.getRequestCount() : 0L);
+            dto.setTotalTokens(usageTotals != null && usageTotals.getTotalTokens() != null ? usageTotals.getTotalTokens() : 0L);
+            dto.setTotalCostUsd((usageTotals != null && usageTotals.getTotalCostUsd() != null
+                    ? usageTotals.getTotalCostUsd()
+                    : BigDecimal.ZERO).setScale(2, RoundingMode.HALF_UP));
+        }
         
         return dto;
     }
@@ -648,236 +802,34 @@ public class InvoiceService {
     }
     
     /**
-     * Génère les factures mensuelles pour toutes les organisations ayant une utilisation.
-     * 
-     * @param year Année
-     * @param month Mois (1-12)
-     * @return Liste des factures générées
+     * Marque automatiquement les factures en retard (OVERDUE).
+     * Tâche planifiée quotidiennement à 9h00 du matin (voir ScheduledJobs).
+     * Les factures sont mises à jour en une seule requête ; les rappels par email sont envoyés
+     * en arrière-plan après la validation de la transaction (voir InvoiceReminderService).
+     *
+     * @return Nombre de factures marquées comme en retard
      */
     @Transactional
-    public List<InvoiceDto> generateMonthlyInvoicesForAllOrganizations(int year, int month) {
-        List<InvoiceDto> invoices = new ArrayList<>();
-        
-        // Récupérer toutes les organisations
-        List<OrganizationDto> organizations = organizationService.getAllOrganizations();
-        
-        YearMonth yearMonth = YearMonth.of(year, month);
-        LocalDate periodStart = yearMonth.atDay(1);
-        LocalDate periodEnd = yearMonth.atEndOfMonth();
-        
-        LocalDateTime startDateTime = periodStart.atStartOfDay();
-        LocalDateTime endDateTime = periodEnd.atTime(LocalTime.MAX);
-        
-        for (OrganizationDto organization : organizations) {
-            try {
-                // Vérifier si une facture existe déjà
-                if (invoiceRepository.existsByOrganizationIdAndPeriodStartAndPeriodEnd(
-                        organization.getId(), periodStart, periodEnd)) {
-                    log.debug("Facture déjà existante pour l'organisation {} pour la période {}",
-                            organization.getName(), yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-                    continue;
-                }
-                
-                // Vérifier s'il y a de l'utilisation pour cette période
-                List<UsageLog> usageLogs = usageLogRepository.findByOrganizationIdAndTimestampBetween(
-                        organization.getId(), startDateTime, endDateTime);
-                
-                if (usageLogs.isEmpty()) {
-                    log.debug("Aucune utilisation pour l'organisation {} pour la période {}",
-                            organization.getName(), yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-                    continue;
-                }
-                
-                // Générer la facture
-                InvoiceDto invoice = generateMonthlyInvoice(organization.getId(), year, month);
-                invoices.add(invoice);
-                
-                log.info("Facture générée pour l'organisation {}: {}",
-                        organization.getName(), invoice.getInvoiceNumber());
-                
-            } catch (Exception e) {
-                log.error("Erreur lors de la génération de la facture pour l'organisation {}: {}",
-                        organization.getName(), e.getMessage(), e);
-            }
-        }
-        
-        log.info("Génération de factures terminée. {} facture(s) générée(s) pour la période {}",
-                invoices.size(), yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-        
-        return invoices;
-    }
-    
-    /**
-     * Tâche planifiée pour marquer automatiquement les factures en retard (OVERDUE).
-     * Exécutée quotidiennement à 9h00 du matin.
-     */
-    @Scheduled(cron = "0 0 9 * * ?") // Tous les jours à 9h00
-    @Transactional
-    public void markOverdueInvoices() {
+    public int markOverdueInvoices() {
         log.info("Démarrage de la vérification des factures en retard...");
         
-        LocalDate today = LocalDate.now();
-        List<Invoice> overdueInvoices = invoiceRepository.findByStatusAndDueDateBefore(
-                Invoice.InvoiceStatus.PENDING, today);
+        List<OverdueInvoice> overdueInvoices = invoiceRepository.markPendingAsOverdue(LocalDate.now());
         
         if (overdueInvoices.isEmpty()) {
             log.info("Aucune facture en retard trouvée.");
-            return;
+            return 0;
         }
         
-        log.info("{} facture(s) en retard trouvée(s).", overdueInvoices.size());
-        
-        for (Invoice invoice : overdueInvoices) {
-            try {
-                // Marquer comme en retard
-                invoice.setStatus(Invoice.InvoiceStatus.OVERDUE);
-                invoice = invoiceRepository.save(invoice);
-                
-                log.info("Facture {} marquée comme en retard (date d'échéance: {})",
-                        invoice.getInvoiceNumber(), invoice.getDueDate());
-                
-                // Envoyer un email de rappel
-                InvoiceDto invoiceDto = toDto(invoice);
-                OrganizationDto organization = organizationService.getOrganizationById(invoice.getOrganizationId());
-                if (organization != null) {
-                    sendOverdueInvoiceReminderEmail(invoiceDto, organization);
-                }
-                
-            } catch (Exception e) {
-                log.error("Erreur lors du traitement de la facture en retard {}: {}",
-                        invoice.getInvoiceNumber(), e.getMessage(), e);
-            }
-        }
+        // Un seul événement de badge par organisation
+        overdueInvoices.stream()
+                .collect(Collectors.groupingBy(OverdueInvoice::getOrganizationId, Collectors.counting()))
+                .forEach((organizationId, count) ->
+                        publishBadgeChanged(organizationId, BadgeCounterChangedEvent.Counter.OVERDUE_INVOICES, count));
         
-        log.info("Vérification des factures en retard terminée. {} facture(s) traitée(s).", overdueInvoices.size());
-    }
-    
-    /**
-     * Tâche planifiée pour générer automatiquement les factures bihebdomadaires
-     * pour les organisations avec un plan Pay-per-Request.
-     * Exécutée tous les lundis à 8h00 (toutes les deux semaines).
-     */
-    @Scheduled(cron = "0 0 8 * * MON") // Tous les lundis à 8h00
-    @Transactional
-    public void generateBiweeklyInvoicesForPayPerRequestPlans() {
-        log.info("=== Démarrage de la génération des factures bihebdomadaires pour les plans Pay-per-Request ===");
+        eventPublisher.publishEvent(new InvoicesOverdueEvent(overdueInvoices));
         
-        try {
-            // Récupérer toutes les organisations avec un plan Pay-per-Request
-            List<OrganizationDto> organizations = organizationService.getOrganizationsWithPayPerRequestPlan();
-            
-            if (organizations.isEmpty()) {
-                log.info("Aucune organisation avec un plan Pay-per-Request trouvée.");
-                return;
-            }
-            
-            log.info("{} organisation(s) avec un plan Pay-per-Request trouvée(s).", organizations.size());
-            
-            // Calculer la période : 14 derniers jours (du lundi il y a 2 semaines au dimanche dernier)
-            LocalDate today = LocalDate.now();
-            LocalDate periodEnd = today.minusDays(1); // Hier (dimanche)
-            LocalDate periodStart = periodEnd.minusDays(13); // 14 jours avant (lundi il y a 2 semaines)
-            
-            int invoicesGenerated = 0;
-            int invoicesSkipped = 0;
-            int errors = 0;
-            
-            for (OrganizationDto organization : organizations) {
-                try {
-                    InvoiceDto invoice = generateBiweeklyInvoice(
-                            organization.getId(),
-                            periodStart,
-                            periodEnd);
-                    
-                    if (invoice != null) {
-                        invoicesGenerated++;
-                        log.info("✓ Facture bihebdomadaire générée pour l'organisation {} (ID: {})",
-                                organization.getName(), organization.getId());
-                    } else {
-                        invoicesSkipped++;
-                        log.debug("Facture non générée pour l'organisation {} (ID: {}) - déjà existante ou aucune utilisation",
-                                organization.getName(), organization.getId());
-                    }
-                } catch (Exception e) {
-                    errors++;
-                    log.error("✗ Erreur lors de la génération de la facture bihebdomadaire pour l'organisation {} (ID: {}): {}",
-                            organization.getName(), organization.getId(), e.getMessage(), e);
-                }
-            }
-            
-            log.info("=== Génération des factures bihebdomadaires terminée ===");
-            log.info("Résumé: {} facture(s) générée(s), {} facture(s) ignorée(s), {} erreur(s)",
-                    invoicesGenerated, invoicesSkipped, errors);
-            
-        } catch (Exception e) {
-            log.error("Erreur critique lors de la génération des factures bihebdomadaires: {}", 
-                    e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * Envoie un email de rappel pour une facture en retard.
-     */
-    private void sendOverdueInvoiceReminderEmail(InvoiceDto invoice, OrganizationDto organization) {
-        try {
-            // Collecter les emails des destinataires
-            List<String> recipientEmails = new ArrayList<>();
-
-            // Ajouter l'email de l'organisation s'il existe
-            if (organization.getEmail() != null && !organization.getEmail().trim().isEmpty()) {
-                recipientEmails.add(organization.getEmail().trim());
-            }
-
-            // Récupérer les utilisateurs de l'organisation et leurs emails depuis Keycloak
-            List<OrganizationUserDto> organizationUsers = organizationService.getUsersByOrganization(organization.getId());
-            List<String> keycloakUserIds = organizationUsers.stream()
-                    .map(OrganizationUserDto::getKeycloakUserId)
-                    .collect(Collectors.toList());
-
-            // Récupérer les emails des utilisateurs depuis Keycloak
-            List<String> userEmails = keycloakAdminService.getUserEmails(keycloakUserIds);
-            recipientEmails.addAll(userEmails);
-
-            // Supprimer les doublons
-            recipientEmails = recipientEmails.stream()
-                    .distinct()
-                    .filter(email -> email != null && !email.trim().isEmpty())
-                    .collect(Collectors.toList());
-
-            if (recipientEmails.isEmpty()) {
-                log.warn("Aucun email trouvé pour envoyer le rappel de facture en retard {} à l'organisation {}",
-                        invoice.getInvoiceNumber(), organization.getName());
-                return;
-            }
-
-            // Formater les dates et le montant
-            String periodStartFormatted = invoice.getPeriodStart().format(DATE_FORMATTER);
-            String periodEndFormatted = invoice.getPeriodEnd().format(DATE_FORMATTER);
-            String dueDateFormatted = invoice.getDueDate().format(DATE_FORMATTER);
-            String totalAmountFormatted = String.format("%.2f", invoice.getTotalAmount());
-            
-            // Calculer le nombre de jours de retard
-            long daysOverdue = java.time.temporal.ChronoUnit.DAYS.between(invoice.getDueDate(), LocalDate.now());
-
-            // Envoyer l'email à tous les destinataires
-            emailService.sendOverdueInvoiceReminderEmailToMultiple(
-                    recipientEmails,
-                    organization.getName(),
-                    invoice.getInvoiceNumber(),
-                    periodStartFormatted,
-                    periodEndFormatted,
-                    dueDateFormatted,
-                    totalAmountFormatted,
-                    daysOverdue,
-                    invoice.getId()
-            );
-
-            log.info("Email de rappel de facture en retard {} envoyé à {} destinataire(s) pour l'organisation {}",
-                    invoice.getInvoiceNumber(), recipientEmails.size(), organization.getName());
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi de l'email de rappel pour la facture en retard {}: {}",
-                    invoice.getInvoiceNumber(), e.getMessage(), e);
-        }
+        log.info("Vérification des factures en retard terminée. {} facture(s) marquée(s) comme en retard.", overdueInvoices.size());
+        return overdueInvoices.size();
     }
     
     /**
@@ -941,7 +893,9 @@ public class InvoiceService {
         invoice.setNotes(String.format("Facture de clôture - Crédit prorata pour le plan %s (%d jours non utilisés sur %d jours)", 
             plan.getName(), daysUnused, daysInMonth));
         
+        freezeUsageStats(invoice);
         invoice = invoiceRepository.save(invoice);
+        publishInvoiceCreated(invoice);
         
         // Créer une ligne de facture pour le crédit
         InvoiceItem item = new InvoiceItem();
@@ -1023,7 +977,9 @@ public class InvoiceService {
         invoice.setNotes(String.format("Facture de démarrage - Plan %s (prorata pour %d jours sur %d jours)", 
             plan.getName(), daysRemaining, daysInMonth));
         
+        freezeUsageStats(invoice);
         invoice = invoiceRepository.save(invoice);
+        publishInvoiceCreated(invoice);
         
         // Créer une ligne de facture pour le plan
         InvoiceItem item = new InvoiceItem();
@@ -1100,7 +1056,9 @@ public class InvoiceService {
         invoice.setNotes(String.format("Facture de cycle mensuel - Plan %s (du %s au %s inclus)", 
                 plan.getName(), startDate, endDate));
         
+        freezeUsageStats(invoice);
         invoice = invoiceRepository.save(invoice);
+        publishInvoiceCreated(invoice);
         
         // Créer une ligne de facture
         InvoiceItem item = new InvoiceItem();
@@ -1167,22 +1125,19 @@ public class InvoiceService {
         LocalDateTime startDateTime = startDate.atStartOfDay();
         LocalDateTime endDateTime = endDate.atTime(LocalTime.MAX);
         
-        List<UsageLog> usageLogs = usageLogRepository.findByOrganizationIdAndTimestampBetween(
+        // Agrégats par endpoint calculés en SQL (les logs ne sont pas chargés)
+        List<EndpointUsageTotals> usageByEndpoint = usageLogRepository.sumGroupedByEndpointForOrganization(
                 organizationId, startDateTime, endDateTime);
         
         // Si aucune utilisation, ne pas générer de facture
-        if (usageLogs.isEmpty()) {
+        if (usageByEndpoint.isEmpty()) {
             log.info("Aucune utilisation trouvée pour l'organisation {} sur la période {} - {}. Facture non générée.",
                     organizationId, startDate, endDate);
             return null;
         }
         
         // Calculer le total (somme des coûts des requêtes)
-        BigDecimal totalAmount = usageLogs.stream()
-                .filter(log -> log.getCostUsd() != null)
-                .map(UsageLog::getCostUsd)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal totalAmount = sumCost(usageByEndpoint);
         
         // Générer le numéro de facture
         YearMonth yearMonth = YearMonth.from(startDate);
@@ -1210,10 +1165,12 @@ public class InvoiceService {
         invoice.setNotes(String.format("Facture de clôture Pay-per-Request - Plan %s (du %s au %s)", 
                 plan.getName(), startDate, endDate));
         
+        freezeUsageStats(invoice, usageByEndpoint);
         invoice = invoiceRepository.save(invoice);
+        publishInvoiceCreated(invoice);
         
         // Créer les lignes de facture
-        List<InvoiceItem> items = createInvoiceItems(invoice, usageLogs);
+        List<InvoiceItem> items = createInvoiceItems(invoice, usageByEndpoint);
         if (!items.isEmpty()) {
             invoiceItemRepository.saveAll(items);
         }
@@ -1226,5 +1183,24 @@ public class InvoiceService {
         
         return invoiceDto;
     }
+    
+    private static String encodeCursor(Invoice last) {
+        String raw = last.getCreatedAt() + "_" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("_", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Curseur invalide");
+            }
+            LocalDateTime.parse(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Curseur invalide: " + cursor);
+        }
+    }
 }
-
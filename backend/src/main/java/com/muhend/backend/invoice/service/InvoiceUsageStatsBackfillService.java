@@ -0,0 +1,114 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.invoice.model.Invoice;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fige les statistiques d'utilisation (requêtes, tokens, coût) sur les factures dont la période est terminée.
+ *
+ * Les factures générées après la fin de leur période sont figées dès leur création par InvoiceService.
+ * Ce service traite les autres : factures antérieures à la migration V24 (au démarrage)
+ * et factures dont la période vient de se terminer (chaque nuit). Traitement par lots, un lot par transaction.
+ */
+@Service
+@Slf4j
+public class InvoiceUsageStatsBackfillService {
+
+    private final InvoiceRepository invoiceRepository;
+    private final UsageLogRepository usageLogRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Value("${invoice.usage-stats.batch-size:200}")
+    private int batchSize;
+
+    public InvoiceUsageStatsBackfillService(InvoiceRepository invoiceRepository,
+                                            UsageLogRepository usageLogRepository,
+                                            PlatformTransactionManager transactionManager) {
+        this.invoiceRepository = invoiceRepository;
+        this.usageLogRepository = usageLogRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Rattrapage au démarrage (en arrière-plan, sans retarder la disponibilité de l'application).
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        runSafely();
+    }
+
+    /**
+     * Fige les statistiques de toutes les factures en attente.
+     * Tâche planifiée (par défaut chaque nuit à 0h15, voir ScheduledJobs) : fige les factures
+     * dont la période s'est terminée la veille.
+     *
+     * @return Nombre de factures mises à jour (0 si un traitement est déjà en cours)
+     */
+    public int backfillPendingInvoices() {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Calcul des statistiques d'utilisation des factures déjà en cours");
+            return 0;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            int total = 0;
+            long afterId = 0L;
+            while (true) {
+                long lastId = afterId;
+                List<Long> processed = transactionTemplate.execute(status -> freezeBatch(today, lastId));
+                if (processed == null || processed.isEmpty()) {
+                    break;
+                }
+                total += processed.size();
+                afterId = processed.get(processed.size() - 1);
+            }
+            if (total > 0) {
+                log.info("Statistiques d'utilisation figées sur {} facture(s)", total);
+            }
+            return total;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Fige un lot de factures (entités gérées : mises à jour à la validation de la transaction).
+     *
+     * @return IDs des factures traitées, dans l'ordre
+     */
+    private List<Long> freezeBatch(LocalDate today, long afterId) {
+        List<Invoice> invoices = invoiceRepository.findUsageStatsPending(today, afterId, PageRequest.of(0, batchSize));
+        for (Invoice invoice : invoices) {
+            InvoiceService.applyUsageStats(invoice, usageLogRepository.sumByOrganizationIdAndTimestampBetween(
+                    invoice.getOrganizationId(),
+                    invoice.getPeriodStart().atStartOfDay(),
+                    invoice.getPeriodEnd().atTime(LocalTime.MAX)));
+        }
+        return invoices.stream().map(Invoice::getId).toList();
+    }
+
+    private void runSafely() {
+        try {
+            backfillPendingInvoices();
+        } catch (Exception e) {
+            log.error("Erreur lors du calcul des statistiques d'utilisation des factures: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.muhend.backend.job.controller;
+
+import com.muhend.backend.job.model.JobRun;
+import com.muhend.backend.job.service.ScheduledJobService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller admin pour consulter et déclencher les tâches planifiées.
+ */
+@RestController
+@RequestMapping("/admin/jobs")
+@RequiredArgsConstructor
+@Slf4j
+@PreAuthorize("hasRole('ADMIN')")
+@Tag(name = "Admin Jobs", description = "Tâches planifiées coordonnées entre les instances")
+public class AdminJobController {
+    
+    private final ScheduledJobService scheduledJobService;
+    
+    /**
+     * Liste les tâches planifiées (admin uniquement).
+     */
+    @GetMapping
+    @Operation(
+            summary = "Récupérer les tâches planifiées",
+            description = "Retourne les tâches planifiées avec leur planification, l'instance qui les exécute le cas échéant et leur dernière exécution. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<List<Map<String, Object>>> getJobs() {
+        return ResponseEntity.ok(scheduledJobService.getJobs());
+    }
+    
+    /**
+     * Historique des exécutions d'une tâche (admin uniquement).
+     */
+    @GetMapping("/{name}/runs")
+    @Operation(
+            summary = "Historique d'une tâche planifiée",
+            description = "Retourne les dernières exécutions d'une tâche (début, fin, durée, éléments traités, erreur), de la plus récente à la plus ancienne. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<List<JobRun>> getRuns(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(scheduledJobService.getRuns(name, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Déclenche une tâche en arrière-plan (admin uniquement).
+     */
+    @PostMapping("/{name}/trigger")
+    @Operation(
+            summary = "Déclencher une tâche planifiée",
+            description = "Exécute immédiatement la tâche en arrière-plan sur cette instance, si aucune instance ne l'exécute. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<?> trigger(@PathVariable String name) {
+        try {
+            log.info("Déclenchement manuel de la tâche {}", name);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(scheduledJobService.trigger(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "error", "Déclenchement impossible",
+                    "message", e.getMessage()
+            ));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.muhend.backend.job.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant le bail d'une tâche : seule l'instance qui le détient exécute la tâche.
+ */
+@Entity
+@Table(name = "job_lock")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobLock {
+    
+    @Id
+    @Column(name = "name", length = 100)
+    private String name;
+    
+    @Column(name = "locked_by", nullable = false)
+    private String lockedBy;
+    
+    @Column(name = "locked_at", nullable = false)
+    private LocalDateTime lockedAt;
+    
+    @Column(name = "locked_until", nullable = false)
+    private LocalDateTime lockedUntil;
+}
@@ -0,0 +1,64 @@
+package com.muhend.backend.job.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant une exécution d'une tâche planifiée (historique).
+ */
+@Entity
+@Table(name = "job_run")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobRun {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "job_name", nullable = false, length = 100)
+    private String jobName;
+    
+    @Column(name = "instance_id", nullable = false)
+    private String instanceId;
+    
+    @Column(name = "trigger_type", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private Trigger triggerType;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.RUNNING;
+    
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+    
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    @Column(name = "duration_ms")
+    private Long durationMs;
+    
+    @Column(name = "items_processed")
+    private Integer itemsProcessed;
+    
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+    
+    public enum Trigger {
+        SCHEDULED,  // Planification (cron)
+        MANUAL      // Déclenchement par un administrateur
+    }
+    
+    public enum Status {
+        RUNNING,    // En cours
+        SUCCEEDED,  // Terminée
+        FAILED,     // Terminée en erreur
+        ABANDONED   // Interrompue (instance arrêtée), constatée à l'exécution suivante
+    }
+}
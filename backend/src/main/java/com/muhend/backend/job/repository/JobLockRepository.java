@@ -0,0 +1,49 @@
+package com.muhend.backend.job.repository;
+
+import com.muhend.backend.job.model.JobLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface JobLockRepository extends JpaRepository<JobLock, String> {
+    
+    /**
+     * Prend le bail s'il est libre (inexistant ou expiré), de façon atomique.
+     *
+     * @return 1 si le bail a été pris, 0 s'il est détenu par une instance
+     */
+    @Modifying
+    @Query(value = "INSERT INTO job_lock (name, locked_by, locked_at, locked_until) " +
+                   "VALUES (:name, :owner, :now, :until) " +
+                   "ON CONFLICT (name) DO UPDATE SET locked_by = EXCLUDED.locked_by, " +
+                   "locked_at = EXCLUDED.locked_at, locked_until = EXCLUDED.locked_until " +
+                   "WHERE job_lock.locked_until <= :now",
+           nativeQuery = true)
+    int tryAcquire(@Param("name") String name, @Param("owner") String owner,
+                   @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+    
+    /**
+     * Prolonge un bail encore détenu par l'instance.
+     *
+     * @return 0 si le bail a expiré et a été pris par une autre instance
+     */
+    @Modifying
+    @Query(value = "UPDATE job_lock SET locked_until = :until " +
+                   "WHERE name = :name AND locked_by = :owner AND locked_until > :now",
+           nativeQuery = true)
+    int extend(@Param("name") String name, @Param("owner") String owner,
+               @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+    
+    /**
+     * Libère un bail détenu par l'instance (fin du bail ramenée à :until).
+     */
+    @Modifying
+    @Query(value = "UPDATE job_lock SET locked_until = :until WHERE name = :name AND locked_by = :owner",
+           nativeQuery = true)
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("until") LocalDateTime until);
+}
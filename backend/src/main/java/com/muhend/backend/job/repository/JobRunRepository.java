@@ -0,0 +1,38 @@
+package com.muhend.backend.job.repository;
+
+import com.muhend.backend.job.model.JobRun;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface JobRunRepository extends JpaRepository<JobRun, Long> {
+    
+    List<JobRun> findByJobNameOrderByStartedAtDesc(String jobName, Pageable pageable);
+    
+    /**
+     * Dernière exécution de chaque tâche.
+     */
+    @Query(value = "SELECT DISTINCT ON (job_name) * FROM job_run ORDER BY job_name, started_at DESC, id DESC",
+           nativeQuery = true)
+    List<JobRun> findLatestRuns();
+    
+    /**
+     * Exécutions restées en cours alors que le bail de la tâche a été repris : l'instance a été arrêtée.
+     */
+    @Modifying
+    @Query(value = "UPDATE job_run SET status = 'ABANDONED', finished_at = :now " +
+                   "WHERE job_name = :jobName AND status = 'RUNNING'",
+           nativeQuery = true)
+    int markAbandoned(@Param("jobName") String jobName, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("DELETE FROM JobRun r WHERE r.startedAt < :before")
+    int deleteByStartedAtBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,108 @@
+package com.muhend.backend.job.service;
+
+import com.muhend.backend.job.model.JobLock;
+import com.muhend.backend.job.repository.JobLockRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Baux en base (table job_lock) garantissant qu'une tâche n'est exécutée que par une seule instance du backend.
+ *
+ * Le bail est pris de façon atomique s'il est libre ou expiré. Il est borné (lockAtMostFor) pour qu'une
+ * instance arrêtée pendant la tâche ne la bloque pas indéfiniment, et peut être conservé après la fin
+ * de la tâche (lockAtLeastFor) pour qu'une autre instance, déclenchée par le même cron quelques
+ * instants plus tard, ne la réexécute pas.
+ */
+@Service
+@Slf4j
+public class JobLockService {
+
+    private final JobLockRepository jobLockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final String instanceId;
+
+    public JobLockService(JobLockRepository jobLockRepository,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${jobs.instance-id:}") String instanceId) {
+        this.jobLockRepository = jobLockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.instanceId = instanceId != null && !instanceId.isBlank() ? instanceId : defaultInstanceId();
+    }
+
+    /**
+     * Identifiant de cette instance (détentrice des baux qu'elle prend).
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Prend le bail s'il est libre.
+     *
+     * @return true si le bail a été pris par cette instance
+     */
+    public boolean tryLock(String name, Duration lockAtMostFor) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer acquired = transactionTemplate.execute(status ->
+                jobLockRepository.tryAcquire(name, instanceId, now, now.plus(lockAtMostFor)));
+        return acquired != null && acquired > 0;
+    }
+
+    /**
+     * Prolonge le bail (traitement long encore en cours).
+     *
+     * @return false si le bail a expiré entre-temps et a été pris par une autre instance
+     */
+    public boolean extend(String name, Duration lockAtMostFor) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer extended = transactionTemplate.execute(status ->
+                jobLockRepository.extend(name, instanceId, now, now.plus(lockAtMostFor)));
+        if (extended == null || extended == 0) {
+            log.warn("Bail de la tâche {} perdu par l'instance {}", name, instanceId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Libère le bail, en le conservant au moins jusqu'à lockedAt + lockAtLeastFor.
+     */
+    public void unlock(String name, LocalDateTime lockedAt, Duration lockAtLeastFor) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime minimum = lockedAt.plus(lockAtLeastFor);
+        LocalDateTime until = minimum.isAfter(now) ? minimum : now;
+        try {
+            transactionTemplate.executeWithoutResult(status -> jobLockRepository.release(name, instanceId, until));
+        } catch (Exception e) {
+            // Le bail expirera de lui-même
+            log.error("Impossible de libérer le bail de la tâche {}: {}", name, e.getMessage());
+        }
+    }
+
+    public List<JobLock> getLocks() {
+        return jobLockRepository.findAll();
+    }
+
+    private static String defaultInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        // Suffixe aléatoire : un conteneur redémarré garde souvent le même nom d'hôte et le même PID
+        return host + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,301 @@
+package com.muhend.backend.job.service;
+
+import com.muhend.backend.job.model.JobLock;
+import com.muhend.backend.job.model.JobRun;
+import com.muhend.backend.job.repository.JobRunRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Exécution coordonnée des tâches planifiées entre les instances du backend.
+ *
+ * Chaque tâche enregistrée n'est exécutée que par l'instance qui obtient son bail ({@link JobLockService}) :
+ * les autres instances, déclenchées par le même cron, l'ignorent. Le bail est prolongé pendant l'exécution
+ * (battement tous les tiers de lockAtMostFor), qui a lieu sur un thread dédié pour ne pas bloquer le thread
+ * du planificateur Spring, partagé par toutes les méthodes @Scheduled. Si une prolongation échoue parce que
+ * le bail a expiré et a été pris par une autre instance, l'exécution est enregistrée en échec : la tâche a pu
+ * s'exécuter en même temps ailleurs. Chaque exécution est historisée (début, fin, durée, éléments traités, erreur).
+ * Une tâche peut aussi être déclenchée par un administrateur.
+ */
+@Service
+@Slf4j
+public class ScheduledJobService {
+
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 1000;
+    private static final String LEASE_LOST_MESSAGE =
+            "Bail perdu pendant l'exécution : la tâche a pu s'exécuter en même temps sur une autre instance";
+
+    /**
+     * Traitement d'une tâche.
+     */
+    @FunctionalInterface
+    public interface JobTask {
+        /**
+         * @return Nombre d'éléments traités
+         */
+        int execute() throws Exception;
+    }
+
+    /**
+     * Tâche enregistrée.
+     *
+     * @param schedule       Planification affichée (expression cron), null si la tâche n'est que manuelle
+     * @param lockAtMostFor  Durée du bail, prolongé tant que la tâche s'exécute (au-delà, sans prolongation,
+     *                       la tâche est considérée comme interrompue)
+     * @param lockAtLeastFor Durée minimale du bail, même si la tâche se termine avant
+     */
+    public record JobDefinition(String name, String description, String schedule,
+                                Duration lockAtMostFor, Duration lockAtLeastFor, JobTask task) {
+    }
+
+    private final JobLockService jobLockService;
+    private final JobRunRepository jobRunRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, JobDefinition> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService runs;
+    private final ScheduledExecutorService heartbeats;
+
+    @Value("${jobs.history-retention-days:90}")
+    private int historyRetentionDays;
+
+    public ScheduledJobService(JobLockService jobLockService,
+                               JobRunRepository jobRunRepository,
+                               PlatformTransactionManager transactionManager) {
+        this.jobLockService = jobLockService;
+        this.jobRunRepository = jobRunRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.runs = Executors.newCachedThreadPool(Thread.ofPlatform().name("scheduled-job-", 1).factory());
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("scheduled-job-heartbeat").factory());
+    }
+
+    public void register(JobDefinition definition) {
+        if (jobs.putIfAbsent(definition.name(), definition) != null) {
+            throw new IllegalStateException("Tâche déjà enregistrée: " + definition.name());
+        }
+    }
+
+    /**
+     * Lance la tâche en arrière-plan si aucune autre instance ne l'exécute.
+     *
+     * @return L'exécution démarrée, ou vide si le bail est détenu par une autre instance (ou l'a été il y a peu)
+     * @throws IllegalArgumentException si la tâche n'est pas enregistrée
+     */
+    public Optional<JobRun> run(String name, JobRun.Trigger trigger) {
+        JobDefinition definition = getDefinition(name);
+        Optional<JobRun> run = start(definition, trigger);
+        run.ifPresent(started -> runs.execute(() -> execute(definition, started)));
+        return run;
+    }
+
+    /**
+     * Déclenche la tâche en arrière-plan (administrateur).
+     *
+     * @return L'exécution démarrée
+     * @throws IllegalArgumentException si la tâche n'est pas enregistrée
+     * @throws IllegalStateException si la tâche est en cours (ou vient de s'exécuter) sur une instance
+     */
+    public JobRun trigger(String name) {
+        return run(name, JobRun.Trigger.MANUAL)
+                .orElseThrow(() -> new IllegalStateException("La tâche " + name + " est en cours d'exécution ou vient de s'exécuter"));
+    }
+
+    /**
+     * Prend le bail et enregistre le début de l'exécution.
+     */
+    private Optional<JobRun> start(JobDefinition definition, JobRun.Trigger trigger) {
+        if (!jobLockService.tryLock(definition.name(), definition.lockAtMostFor())) {
+            log.debug("Tâche {} ignorée: exécutée par une autre instance", definition.name());
+            return Optional.empty();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            JobRun run = transactionTemplate.execute(status -> {
+                int abandoned = jobRunRepository.markAbandoned(definition.name(), now);
+                if (abandoned > 0) {
+                    log.warn("Tâche {}: {} exécution(s) interrompue(s) marquée(s) comme abandonnée(s)", definition.name(), abandoned);
+                }
+                JobRun started = new JobRun();
+                started.setJobName(definition.name());
+                started.setInstanceId(jobLockService.getInstanceId());
+                started.setTriggerType(trigger);
+                started.setStatus(JobRun.Status.RUNNING);
+                started.setStartedAt(now);
+                return jobRunRepository.save(started);
+            });
+            return Optional.ofNullable(run);
+        } catch (RuntimeException e) {
+            jobLockService.unlock(definition.name(), now, Duration.ZERO);
+            throw e;
+        }
+    }
+
+    private void execute(JobDefinition definition, JobRun run) {
+        log.info("Démarrage de la tâche {} ({}) sur l'instance {}", definition.name(), run.getTriggerType(), run.getInstanceId());
+        long start = System.nanoTime();
+        LeaseHeartbeat heartbeat = new LeaseHeartbeat(definition);
+        long periodMs = Math.max(1, definition.lockAtMostFor().toMillis() / 3);
+        ScheduledFuture<?> heartbeatFuture = heartbeats.scheduleAtFixedRate(heartbeat, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        try {
+            int itemsProcessed = definition.task().execute();
+            run.setStatus(JobRun.Status.SUCCEEDED);
+            run.setItemsProcessed(itemsProcessed);
+        } catch (Exception e) {
+            log.error("Erreur lors de la tâche {}: {}", definition.name(), e.getMessage(), e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            run.setStatus(JobRun.Status.FAILED);
+            run.setErrorMessage(message.length() > ERROR_MESSAGE_MAX_LENGTH
+                    ? message.substring(0, ERROR_MESSAGE_MAX_LENGTH) : message);
+        } finally {
+            heartbeatFuture.cancel(false);
+            heartbeat.stop();
+            if (heartbeat.isLost() && run.getStatus() == JobRun.Status.SUCCEEDED) {
+                run.setStatus(JobRun.Status.FAILED);
+                run.setErrorMessage(LEASE_LOST_MESSAGE);
+            }
+            run.setFinishedAt(LocalDateTime.now());
+            run.setDurationMs(Duration.ofNanos(System.nanoTime() - start).toMillis());
+            try {
+                transactionTemplate.executeWithoutResult(status -> jobRunRepository.save(run));
+            } catch (Exception e) {
+                log.error("Impossible d'enregistrer la fin de la tâche {}: {}", definition.name(), e.getMessage());
+            }
+            jobLockService.unlock(definition.name(), run.getStartedAt(), definition.lockAtLeastFor());
+        }
+        log.info("Tâche {} terminée ({}) en {} ms: {} élément(s) traité(s)", definition.name(), run.getStatus(),
+                run.getDurationMs(), run.getItemsProcessed() != null ? run.getItemsProcessed() : 0);
+    }
+
+    /**
+     * Prolonge le bail d'une tâche en cours. Arrêté avant la libération du bail : une prolongation
+     * en cours se termine avant, et aucune ne peut avoir lieu après. Arrêté aussi dès que le bail est perdu.
+     */
+    private final class LeaseHeartbeat implements Runnable {
+
+        private final JobDefinition definition;
+        private boolean stopped;
+        private boolean lost;
+
+        private LeaseHeartbeat(JobDefinition definition) {
+            this.definition = definition;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (stopped) {
+                return;
+            }
+            try {
+                if (!jobLockService.extend(definition.name(), definition.lockAtMostFor())) {
+                    // Bail pris par une autre instance : le prolonger ne ferait que le lui disputer
+                    log.error("Bail de la tâche {} perdu pendant son exécution: l'exécution sera enregistrée en échec",
+                            definition.name());
+                    lost = true;
+                    stopped = true;
+                }
+            } catch (Exception e) {
+                // Nouvel essai au prochain battement, avant l'expiration du bail
+                log.error("Impossible de prolonger le bail de la tâche {}: {}", definition.name(), e.getMessage());
+            }
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+        }
+
+        private synchronized boolean isLost() {
+            return lost;
+        }
+    }
+
+    /**
+     * Tâches enregistrées, avec leur bail actuel et leur dernière exécution.
+     */
+    public List<Map<String, Object>> getJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, JobLock> locks = jobLockService.getLocks().stream()
+                .collect(Collectors.toMap(JobLock::getName, Function.identity()));
+        Map<String, JobRun> latestRuns = jobRunRepository.findLatestRuns().stream()
+                .collect(Collectors.toMap(JobRun::getJobName, Function.identity()));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        jobs.values().stream()
+                .sorted(Comparator.comparing(JobDefinition::name))
+                .forEach(definition -> {
+                    Map<String, Object> job = new LinkedHashMap<>();
+                    job.put("name", definition.name());
+                    job.put("description", definition.description());
+                    job.put("schedule", definition.schedule());
+                    JobLock lock = locks.get(definition.name());
+                    boolean locked = lock != null && lock.getLockedUntil().isAfter(now);
+                    job.put("locked", locked);
+                    job.put("lockedBy", locked ? lock.getLockedBy() : null);
+                    job.put("lockedUntil", locked ? lock.getLockedUntil() : null);
+                    job.put("lastRun", latestRuns.get(definition.name()));
+                    result.add(job);
+                });
+        return result;
+    }
+
+    /**
+     * Dernières exécutions d'une tâche (les plus récentes d'abord).
+     *
+     * @throws IllegalArgumentException si la tâche n'est pas enregistrée
+     */
+    public List<JobRun> getRuns(String name, int limit) {
+        getDefinition(name);
+        return jobRunRepository.findByJobNameOrderByStartedAtDesc(name, PageRequest.of(0, Math.max(1, Math.min(limit, 500))));
+    }
+
+    /**
+     * Supprime l'historique de plus de historyRetentionDays jours.
+     * Tâche planifiée chaque nuit à 3h55 (voir ScheduledJobs).
+     *
+     * @return Nombre d'exécutions supprimées
+     */
+    public int purgeHistory() {
+        Integer deleted = transactionTemplate.execute(status ->
+                jobRunRepository.deleteByStartedAtBefore(LocalDateTime.now().minusDays(historyRetentionDays)));
+        if (deleted != null && deleted > 0) {
+            log.info("{} exécution(s) de tâche supprimée(s) de l'historique", deleted);
+        }
+        return deleted != null ? deleted : 0;
+    }
+
+    private JobDefinition getDefinition(String name) {
+        JobDefinition definition = jobs.get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("Tâche inconnue: " + name);
+        }
+        return definition;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        runs.shutdownNow();
+    }
+}
@@ -0,0 +1,164 @@
+package com.muhend.backend.job.service;
+
+import com.muhend.backend.alert.service.QuotaAlertService;
+import com.muhend.backend.auth.service.PendingRegistrationService;
+import com.muhend.backend.email.service.EmailOutboxDispatcher;
+import com.muhend.backend.invoice.service.BillingJobService;
+import com.muhend.backend.invoice.service.InvoiceService;
+import com.muhend.backend.invoice.service.InvoiceUsageStatsBackfillService;
+import com.muhend.backend.job.model.JobRun;
+import com.muhend.backend.job.service.ScheduledJobService.JobDefinition;
+import com.muhend.backend.organization.service.MonthlyPlanSchedulerService;
+import com.muhend.backend.payment.service.StripeWebhookDispatcher;
+import com.muhend.backend.usage.service.UsageArchiveService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Tâches planifiées à exécuter une seule fois pour l'ensemble des instances du backend
+ * (factures, emails, cycles de plans...). Chaque déclenchement passe par {@link ScheduledJobService} :
+ * seule l'instance qui obtient le bail exécute la tâche, sur un thread dédié (le thread du planificateur
+ * est aussitôt rendu aux autres méthodes @Scheduled).
+ *
+ * Les tâches propres à chaque instance (battements SSE) et la scrutation des files traitées avec réservation
+ * en base (emails, webhooks Stripe) restent planifiées dans leur service ; les purges de ces files sont coordonnées ici.
+ */
+@Component
+public class ScheduledJobs {
+
+    public static final String INVOICE_OVERDUE = "invoice-overdue";
+    public static final String BIWEEKLY_PAY_PER_REQUEST_INVOICES = "biweekly-pay-per-request-invoices";
+    public static final String MONTHLY_PLAN_CYCLES = "monthly-plan-cycles";
+    public static final String QUOTA_CHECK = "quota-check";
+    public static final String QUOTA_RECONCILE = "quota-reconcile";
+    public static final String PENDING_REGISTRATION_CLEANUP = "pending-registration-cleanup";
+    public static final String INVOICE_USAGE_STATS = "invoice-usage-stats";
+    public static final String USAGE_ARCHIVE = "usage-archive";
+    public static final String EMAIL_OUTBOX_PURGE = "email-outbox-purge";
+    public static final String STRIPE_WEBHOOK_PURGE = "stripe-webhook-purge";
+    public static final String JOB_HISTORY_PURGE = "job-history-purge";
+
+    /**
+     * Bail conservé après la fin d'une tâche : couvre le décalage d'horloge entre instances déclenchées par le même cron
+     */
+    private static final Duration MIN_LOCK = Duration.ofMinutes(1);
+
+    /**
+     * Organisations recomptées par la réconciliation horaire des quotas : actives sur cette période
+     * (plus d'une heure, pour couvrir un déclenchement retardé)
+     */
+    private static final Duration QUOTA_RECONCILE_WINDOW = Duration.ofMinutes(90);
+
+    private final ScheduledJobService scheduledJobService;
+
+    public ScheduledJobs(ScheduledJobService scheduledJobService,
+                         InvoiceService invoiceService,
+                         BillingJobService billingJobService,
+                         MonthlyPlanSchedulerService monthlyPlanSchedulerService,
+                         QuotaAlertService quotaAlertService,
+                         PendingRegistrationService pendingRegistrationService,
+                         InvoiceUsageStatsBackfillService invoiceUsageStatsBackfillService,
+                         UsageArchiveService usageArchiveService,
+                         EmailOutboxDispatcher emailOutboxDispatcher,
+                         StripeWebhookDispatcher stripeWebhookDispatcher,
+                         @Value("${invoice.usage-stats.cron:0 15 0 * * ?}") String invoiceUsageStatsCron,
+                         @Value("${usage.archive.cron:0 30 3 1 * ?}") String usageArchiveCron,
+                         @Value("${email.outbox.purge-cron:0 45 3 * * ?}") String emailOutboxPurgeCron,
+                         @Value("${stripe.webhook-inbox.purge-cron:0 50 3 * * ?}") String stripeWebhookPurgeCron,
+                         @Value("${jobs.history-purge-cron:0 55 3 * * ?}") String jobHistoryPurgeCron) {
+        this.scheduledJobService = scheduledJobService;
+
+        scheduledJobService.register(new JobDefinition(INVOICE_OVERDUE,
+                "Marque les factures en retard et envoie les rappels", "0 0 9 * * ?",
+                Duration.ofMinutes(30), MIN_LOCK, invoiceService::markOverdueInvoices));
+        scheduledJobService.register(new JobDefinition(BIWEEKLY_PAY_PER_REQUEST_INVOICES,
+                "Génère les factures bihebdomadaires des plans Pay-per-Request", "0 0 8 * * MON",
+                Duration.ofMinutes(30), MIN_LOCK, billingJobService::runBiweeklyPayPerRequestJob));
+        scheduledJobService.register(new JobDefinition(MONTHLY_PLAN_CYCLES,
+                "Applique les changements de plan en attente et reconduit les plans mensuels", "0 0 0 * * ?",
+                Duration.ofHours(1), MIN_LOCK, monthlyPlanSchedulerService::processMonthlyPlanCycles));
+        scheduledJobService.register(new JobDefinition(QUOTA_CHECK,
+                "Vérifie les quotas de toutes les organisations", null,
+                Duration.ofMinutes(30), Duration.ZERO, quotaAlertService::checkAllOrganizations));
+        scheduledJobService.register(new JobDefinition(QUOTA_RECONCILE,
+                "Recompte l'utilisation des organisations actives et rattrape les alertes de quota manquées", "0 0 * * * ?",
+                Duration.ofMinutes(30), MIN_LOCK,
+                () -> quotaAlertService.reconcileActiveOrganizations(QUOTA_RECONCILE_WINDOW)));
+        scheduledJobService.register(new JobDefinition(PENDING_REGISTRATION_CLEANUP,
+                "Supprime les inscriptions expirées", "0 0 2 * * ?",
+                Duration.ofMinutes(30), MIN_LOCK, pendingRegistrationService::cleanupExpiredRegistrations));
+        scheduledJobService.register(new JobDefinition(INVOICE_USAGE_STATS,
+                "Fige les statistiques d'utilisation des factures", invoiceUsageStatsCron,
+                Duration.ofHours(1), MIN_LOCK, invoiceUsageStatsBackfillService::backfillPendingInvoices));
+        scheduledJobService.register(new JobDefinition(USAGE_ARCHIVE,
+                "Archive les logs d'utilisation anciens", usageArchiveCron,
+                Duration.ofHours(6), MIN_LOCK, () -> {
+                    if (!usageArchiveService.isEnabled()) {
+                        return 0;
+                    }
+                    return Math.toIntExact(usageArchiveService.archiveOldUsageLogs().getArchivedRows());
+                }));
+        scheduledJobService.register(new JobDefinition(EMAIL_OUTBOX_PURGE,
+                "Supprime les emails envoyés ou abandonnés anciens de la file d'envoi", emailOutboxPurgeCron,
+                Duration.ofMinutes(30), MIN_LOCK, emailOutboxDispatcher::purgeFinishedMessages));
+        scheduledJobService.register(new JobDefinition(STRIPE_WEBHOOK_PURGE,
+                "Supprime les webhooks Stripe traités anciens de la file de réception", stripeWebhookPurgeCron,
+                Duration.ofMinutes(30), MIN_LOCK, stripeWebhookDispatcher::purgeProcessedEvents));
+        scheduledJobService.register(new JobDefinition(JOB_HISTORY_PURGE,
+                "Supprime l'historique ancien des exécutions de tâches", jobHistoryPurgeCron,
+                Duration.ofMinutes(30), MIN_LOCK, scheduledJobService::purgeHistory));
+    }
+
+    @Scheduled(cron = "0 0 9 * * ?") // Tous les jours à 9h00
+    public void markOverdueInvoices() {
+        scheduledJobService.run(INVOICE_OVERDUE, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "0 0 8 * * MON") // Tous les lundis à 8h00
+    public void generateBiweeklyPayPerRequestInvoices() {
+        scheduledJobService.run(BIWEEKLY_PAY_PER_REQUEST_INVOICES, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "0 0 0 * * ?") // Tous les jours à minuit
+    public void processMonthlyPlanCycles() {
+        scheduledJobService.run(MONTHLY_PLAN_CYCLES, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "0 0 * * * ?") // Toutes les heures
+    public void reconcileQuotaAlerts() {
+        scheduledJobService.run(QUOTA_RECONCILE, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "0 0 2 * * ?") // Tous les jours à 2h du matin
+    public void cleanupExpiredRegistrations() {
+        scheduledJobService.run(PENDING_REGISTRATION_CLEANUP, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "${invoice.usage-stats.cron:0 15 0 * * ?}")
+    public void freezeInvoiceUsageStats() {
+        scheduledJobService.run(INVOICE_USAGE_STATS, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "${usage.archive.cron:0 30 3 1 * ?}")
+    public void archiveUsageLogs() {
+        scheduledJobService.run(USAGE_ARCHIVE, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "${email.outbox.purge-cron:0 45 3 * * ?}")
+    public void purgeEmailOutbox() {
+        scheduledJobService.run(EMAIL_OUTBOX_PURGE, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "${stripe.webhook-inbox.purge-cron:0 50 3 * * ?}")
+    public void purgeStripeWebhookInbox() {
+        scheduledJobService.run(STRIPE_WEBHOOK_PURGE, JobRun.Trigger.SCHEDULED);
+    }
+
+    @Scheduled(cron = "${jobs.history-purge-cron:0 55 3 * * ?}")
+    public void purgeJobHistory() {
+        scheduledJobService.run(JOB_HISTORY_PURGE, JobRun.Trigger.SCHEDULED);
+    }
+}
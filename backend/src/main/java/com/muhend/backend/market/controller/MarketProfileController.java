@@ -4,6 +4,8 @@ import com.muhend.backend.market.dto.CreateMarketProfileRequest;
 import com.muhend.backend.market.dto.MarketProfileDto;
 import com.muhend.backend.market.dto.UpdateMarketProfileRequest;
 import com.muhend.backend.market.service.MarketProfileService;
+import com.muhend.backend.pricing.dto.PricingCatalog;
+import com.muhend.backend.pricing.service.PricingCatalogService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -18,6 +20,7 @@ import java.util.Map;
 
 /**
  * Controller REST pour gérer les profils de marché.
+ * Les réponses publiques portent l'ETag de la version du catalogue (réponse 304 si inchangé).
  */
 @RestController
 @RequestMapping("/market-profiles")
@@ -26,9 +29,12 @@ import java.util.Map;
 public class MarketProfileController {
     
     private final MarketProfileService marketProfileService;
+    private final PricingCatalogService pricingCatalogService;
     
-    public MarketProfileController(MarketProfileService marketProfileService) {
+    public MarketProfileController(MarketProfileService marketProfileService,
+                                   PricingCatalogService pricingCatalogService) {
         this.marketProfileService = marketProfileService;
+        this.pricingCatalogService = pricingCatalogService;
     }
     
     /**
@@ -40,8 +46,9 @@ public class MarketProfileController {
         description = "Retourne la liste de tous les profils de marché actifs, triés par ordre d'affichage."
     )
     public ResponseEntity<List<MarketProfileDto>> getAllActiveMarketProfiles() {
+        PricingCatalog catalog = pricingCatalogService.getCatalog();
         List<MarketProfileDto> profiles = marketProfileService.getAllActiveMarketProfiles();
-        return ResponseEntity.ok(profiles);
+        return cacheable(catalog, profiles);
     }
     
     /**
@@ -69,8 +76,9 @@ public class MarketProfileController {
         description = "Retourne les détails d'un profil de marché spécifique."
     )
     public ResponseEntity<MarketProfileDto> getMarketProfileById(@PathVariable Long id) {
+        PricingCatalog catalog = pricingCatalogService.getCatalog();
         MarketProfileDto profile = marketProfileService.getMarketProfileById(id);
-        return ResponseEntity.ok(profile);
+        return cacheable(catalog, profile);
     }
     
     /**
@@ -82,8 +90,9 @@ public class MarketProfileController {
         description = "Retourne les détails d'un profil de marché à partir de sa version (ex: DEFAULT, DZ)."
     )
     public ResponseEntity<MarketProfileDto> getMarketProfileByVersion(@PathVariable String marketVersion) {
+        PricingCatalog catalog = pricingCatalogService.getCatalog();
         MarketProfileDto profile = marketProfileService.getMarketProfileByVersion(marketVersion);
-        return ResponseEntity.ok(profile);
+        return cacheable(catalog, profile);
     }
     
     /**
@@ -95,8 +104,9 @@ public class MarketProfileController {
         description = "Retourne les détails d'un profil de marché à partir du code ISO alpha-2 (ex: FR, DZ)."
     )
     public ResponseEntity<MarketProfileDto> getMarketProfileByCountryCode(@PathVariable String countryCode) {
+        PricingCatalog catalog = pricingCatalogService.getCatalog();
         MarketProfileDto profile = marketProfileService.getMarketProfileByCountryCode(countryCode.toUpperCase());
-        return ResponseEntity.ok(profile);
+        return cacheable(catalog, profile);
     }
     
     /**
@@ -148,5 +158,15 @@ public class MarketProfileController {
         marketProfileService.deleteMarketProfile(id);
         return ResponseEntity.ok(Map.of("message", "Profil de marché supprimé avec succès"));
     }
+    
+    /**
+     * Réponse publique mise en cache par le navigateur, revalidée par l'ETag de la version du catalogue
+     * (lue avant le corps : l'ETag ne peut pas désigner un contenu plus récent).
+     */
+    private <T> ResponseEntity<T> cacheable(PricingCatalog catalog, T body) {
+        return ResponseEntity.ok()
+                .eTag(catalog.getETag())
+                .cacheControl(pricingCatalogService.getCacheControl())
+                .body(body);
+    }
 }
-
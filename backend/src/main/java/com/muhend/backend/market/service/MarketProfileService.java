@@ -5,76 +5,71 @@ import com.muhend.backend.market.dto.MarketProfileDto;
 import com.muhend.backend.market.dto.UpdateMarketProfileRequest;
 import com.muhend.backend.market.model.MarketProfile;
 import com.muhend.backend.market.repository.MarketProfileRepository;
+import com.muhend.backend.pricing.event.PricingCatalogChangedEvent;
+import com.muhend.backend.pricing.service.PricingCatalogService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Service pour gérer les profils de marché.
+ * Les lectures sont servies par le catalogue en mémoire ({@link PricingCatalogService}).
  */
 @Service
 @Slf4j
 public class MarketProfileService {
     
     private final MarketProfileRepository marketProfileRepository;
+    private final PricingCatalogService pricingCatalogService;
+    private final ApplicationEventPublisher eventPublisher;
     
-    public MarketProfileService(MarketProfileRepository marketProfileRepository) {
+    public MarketProfileService(MarketProfileRepository marketProfileRepository,
+                                PricingCatalogService pricingCatalogService,
+                                ApplicationEventPublisher eventPublisher) {
         this.marketProfileRepository = marketProfileRepository;
+        this.pricingCatalogService = pricingCatalogService;
+        this.eventPublisher = eventPublisher;
     }
     
     /**
      * Récupère tous les profils de marché actifs, triés par ordre d'affichage.
      */
-    @Transactional(readOnly = true)
     public List<MarketProfileDto> getAllActiveMarketProfiles() {
-        List<MarketProfile> profiles = marketProfileRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
-        return profiles.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        return pricingCatalogService.getCatalog().getActiveMarketProfiles();
     }
     
     /**
      * Récupère tous les profils de marché (actifs et inactifs), triés par ordre d'affichage.
      */
-    @Transactional(readOnly = true)
     public List<MarketProfileDto> getAllMarketProfiles() {
-        List<MarketProfile> profiles = marketProfileRepository.findAll();
-        return profiles.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        return pricingCatalogService.getCatalog().getMarketProfiles();
     }
     
     /**
      * Récupère un profil de marché par son ID.
      */
-    @Transactional(readOnly = true)
     public MarketProfileDto getMarketProfileById(Long id) {
-        MarketProfile profile = marketProfileRepository.findById(id)
+        return pricingCatalogService.getCatalog().findMarketProfile(id)
                 .orElseThrow(() -> new IllegalArgumentException("Profil de marché introuvable avec l'ID: " + id));
-        return toDto(profile);
     }
     
     /**
      * Récupère un profil de marché par sa version de marché.
      */
-    @Transactional(readOnly = true)
     public MarketProfileDto getMarketProfileByVersion(String marketVersion) {
-        MarketProfile profile = marketProfileRepository.findByMarketVersion(marketVersion)
+        return pricingCatalogService.getCatalog().findMarketProfileByVersion(marketVersion)
                 .orElseThrow(() -> new IllegalArgumentException("Profil de marché introuvable pour la version: " + marketVersion));
-        return toDto(profile);
     }
     
     /**
      * Récupère un profil de marché par son code ISO alpha-2.
      */
-    @Transactional(readOnly = true)
     public MarketProfileDto getMarketProfileByCountryCode(String countryCode) {
-        MarketProfile profile = marketProfileRepository.findByCountryCodeIsoAlpha2(countryCode)
+        return pricingCatalogService.getCatalog().findMarketProfileByCountryCode(countryCode)
                 .orElseThrow(() -> new IllegalArgumentException("Profil de marché introuvable pour le code pays: " + countryCode));
-        return toDto(profile);
     }
     
     /**
@@ -95,6 +90,7 @@ public class MarketProfileService {
         MarketProfile profile = toEntity(request);
         profile = marketProfileRepository.save(profile);
         log.info("Profil de marché créé: {} (version: {})", profile.getCountryName(), profile.getMarketVersion());
+        eventPublisher.publishEvent(PricingCatalogChangedEvent.of("profil de marché " + profile.getId()));
         
         return toDto(profile);
     }
@@ -167,6 +163,7 @@ public class MarketProfileService {
         
         profile = marketProfileRepository.save(profile);
         log.info("Profil de marché mis à jour: {} (ID: {})", profile.getCountryName(), profile.getId());
+        eventPublisher.publishEvent(PricingCatalogChangedEvent.of("profil de marché " + profile.getId()));
         
         return toDto(profile);
     }
@@ -181,12 +178,13 @@ public class MarketProfileService {
         }
         marketProfileRepository.deleteById(id);
         log.info("Profil de marché supprimé (ID: {})", id);
+        eventPublisher.publishEvent(PricingCatalogChangedEvent.of("profil de marché " + id));
     }
     
     /**
      * Convertit une entité MarketProfile en DTO.
      */
-    private MarketProfileDto toDto(MarketProfile profile) {
+    public static MarketProfileDto toDto(MarketProfile profile) {
         MarketProfileDto dto = new MarketProfileDto();
         dto.setId(profile.getId());
         dto.setMarketVersion(profile.getMarketVersion());
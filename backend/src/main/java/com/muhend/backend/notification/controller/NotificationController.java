@@ -0,0 +1,96 @@
+package com.muhend.backend.notification.controller;
+
+import com.muhend.backend.notification.dto.BadgeCounters;
+import com.muhend.backend.notification.service.BadgeNotificationService;
+import com.muhend.backend.organization.service.OrganizationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Contrôleur du canal de notifications (compteurs de badges des alertes et des factures).
+ */
+@RestController
+@RequestMapping("/notifications")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Notifications", description = "Canal de notifications en temps réel")
+public class NotificationController {
+
+    private final BadgeNotificationService badgeNotificationService;
+    private final OrganizationService organizationService;
+
+    /**
+     * Ouvre un flux Server-Sent Events des compteurs de badges de l'organisation de l'utilisateur connecté.
+     * Événements : "counters" (état complet, à la connexion) puis "counter" ({counter, delta, value}) à chaque variation.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+        summary = "Flux des compteurs de badges",
+        description = "Flux SSE des compteurs d'alertes non lues, de nouvelles factures et de factures en retard " +
+                     "de l'organisation de l'utilisateur connecté. Remplace l'interrogation périodique des endpoints de comptage.",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<SseEmitter> stream() {
+        String userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Long organizationId = organizationService.getOrganizationIdByUserId(userId);
+        return ResponseEntity.ok()
+                .header("Cache-Control", "no-cache")
+                .header("X-Accel-Buffering", "no") // Désactive la mise en tampon des proxys (nginx)
+                .body(badgeNotificationService.subscribe(organizationId, userId));
+    }
+
+    /**
+     * Récupère l'état courant des compteurs de badges de l'organisation de l'utilisateur connecté.
+     */
+    @GetMapping("/counters")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(
+        summary = "Compteurs de badges",
+        description = "Retourne les compteurs d'alertes non lues, de nouvelles factures et de factures en retard " +
+                     "de l'organisation de l'utilisateur connecté.",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<BadgeCounters> getCounters() {
+        String userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Long organizationId = organizationService.getOrganizationIdByUserId(userId);
+        return ResponseEntity.ok(badgeNotificationService.getCounters(organizationId));
+    }
+
+    /**
+     * Récupère l'ID de l'utilisateur Keycloak depuis le contexte de sécurité.
+     */
+    private String getCurrentUserId() {
+        try {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.getPrincipal() instanceof Jwt) {
+                Jwt jwt = (Jwt) authentication.getPrincipal();
+                return jwt.getClaimAsString("sub");
+            }
+        } catch (Exception e) {
+            log.error("Erreur lors de la récupération de l'ID utilisateur", e);
+        }
+        return null;
+    }
+}
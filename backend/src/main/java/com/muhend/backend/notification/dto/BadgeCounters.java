@@ -0,0 +1,17 @@
+package com.muhend.backend.notification.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compteurs de badges d'une organisation (alertes non lues, nouvelles factures, factures en retard).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BadgeCounters {
+    private long unreadAlerts;
+    private long newInvoices;
+    private long overdueInvoices;
+}
@@ -0,0 +1,25 @@
+package com.muhend.backend.notification.event;
+
+import lombok.Value;
+
+/**
+ * Événement publié lorsqu'un compteur de badge d'une organisation change
+ * (alerte créée ou lue, facture créée, consultée ou passée en retard).
+ */
+@Value
+public class BadgeCounterChangedEvent {
+    
+    public enum Counter {
+        UNREAD_ALERTS,
+        NEW_INVOICES,
+        OVERDUE_INVOICES
+    }
+    
+    Long organizationId;
+    Counter counter;
+    long delta;
+    
+    public static BadgeCounterChangedEvent of(Long organizationId, Counter counter, long delta) {
+        return new BadgeCounterChangedEvent(organizationId, counter, delta);
+    }
+}
@@ -0,0 +1,270 @@
+package com.muhend.backend.notification.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.muhend.backend.alert.repository.QuotaAlertRepository;
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.invoice.model.Invoice;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.notification.dto.BadgeCounters;
+import com.muhend.backend.notification.event.BadgeCounterChangedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service des compteurs de badges (alertes non lues, nouvelles factures, factures en retard).
+ *
+ * Les compteurs sont conservés en mémoire par organisation : ils sont initialisés par trois COUNT
+ * puis mis à jour par {@link BadgeCounterChangedEvent} après validation de chaque transaction.
+ * Chaque variation est poussée aux utilisateurs connectés de l'organisation via Server-Sent Events,
+ * ce qui remplace l'interrogation périodique des endpoints de comptage.
+ *
+ * Les envois SSE se font sur un thread dédié, jamais sur le thread de la requête ni sur le pool @Scheduled.
+ * Chaque variation est aussi diffusée sur le bus d'invalidation ({@link CacheInvalidationBus#BADGE_COUNTERS}) :
+ * les autres instances oublient leurs compteurs de l'organisation, les rechargent depuis la base
+ * et poussent l'état complet à leurs utilisateurs connectés.
+ */
+@Service
+@Slf4j
+public class BadgeNotificationService {
+
+    private static final String COUNTERS_EVENT = "counters";
+    private static final String COUNTER_EVENT = "counter";
+
+    private final QuotaAlertRepository quotaAlertRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final ScheduledExecutorService sender;
+
+    @Value("${notifications.sse.timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${notifications.sse.heartbeat-interval-ms:25000}")
+    private long heartbeatIntervalMs;
+
+    /**
+     * Compteurs par organisation, rechargés depuis la base après expiration (correction d'une éventuelle dérive)
+     */
+    private final Cache<Long, CounterState> counters = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(30))
+            .build();
+
+    /**
+     * Connexions SSE ouvertes par organisation
+     */
+    private final Map<Long, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    public BadgeNotificationService(QuotaAlertRepository quotaAlertRepository,
+                                    InvoiceRepository invoiceRepository,
+                                    CacheInvalidationBus cacheInvalidationBus) {
+        this.quotaAlertRepository = quotaAlertRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.sender = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("badge-notifications").factory());
+    }
+
+    @PostConstruct
+    void start() {
+        cacheInvalidationBus.register(CacheInvalidationBus.BADGE_COUNTERS, new CacheInvalidationBus.Handler() {
+            @Override
+            public void invalidate(String key) {
+                Long organizationId = Long.valueOf(key);
+                counters.invalidate(organizationId);
+                execute(() -> pushCounters(organizationId));
+            }
+
+            @Override
+            public void invalidateAll() {
+                counters.invalidateAll();
+                execute(() -> emitters.keySet().forEach(BadgeNotificationService.this::pushCounters));
+            }
+        });
+        sender.scheduleAtFixedRate(() -> {
+            try {
+                heartbeat();
+            } catch (Exception e) {
+                // Une exception annulerait les heartbeats suivants
+                log.warn("Erreur lors du heartbeat des notifications: {}", e.getMessage());
+            }
+        }, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    /**
+     * Récupère les compteurs d'une organisation (depuis la mémoire si possible).
+     */
+    public BadgeCounters getCounters(Long organizationId) {
+        return counters.get(organizationId, this::loadCounters).toDto();
+    }
+
+    /**
+     * Ouvre un canal SSE pour un utilisateur de l'organisation.
+     * Un événement "counters" contenant l'état complet est envoyé immédiatement,
+     * puis un événement "counter" à chaque variation.
+     */
+    public SseEmitter subscribe(Long organizationId, String keycloakUserId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Set<SseEmitter> organizationEmitters = emitters.computeIfAbsent(organizationId, id -> ConcurrentHashMap.newKeySet());
+        organizationEmitters.add(emitter);
+
+        Runnable remove = () -> removeEmitter(organizationId, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        try {
+            emitter.send(SseEmitter.event().name(COUNTERS_EVENT).data(getCounters(organizationId)));
+        } catch (IOException | IllegalStateException e) {
+            removeEmitter(organizationId, emitter);
+            emitter.completeWithError(e);
+        }
+        log.debug("Canal de notifications ouvert pour l'utilisateur {} (organisation {}, {} connexion(s))",
+                keycloakUserId, organizationId, organizationEmitters.size());
+        return emitter;
+    }
+
+    /**
+     * Applique la variation d'un compteur, la diffuse aux autres instances
+     * et la pousse (de façon asynchrone) aux utilisateurs connectés de l'organisation.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCounterChanged(BadgeCounterChangedEvent event) {
+        Long organizationId = event.getOrganizationId();
+        if (organizationId == null || event.getDelta() == 0) {
+            return;
+        }
+        cacheInvalidationBus.broadcast(CacheInvalidation.of(CacheInvalidationBus.BADGE_COUNTERS, organizationId));
+
+        CounterState state = counters.getIfPresent(organizationId);
+        if (state != null) {
+            long value = state.add(event.getCounter(), event.getDelta());
+            execute(() -> send(organizationId, SseEmitter.event().name(COUNTER_EVENT).data(Map.of(
+                    "counter", event.getCounter().name(),
+                    "delta", event.getDelta(),
+                    "value", value))));
+        } else if (emitters.containsKey(organizationId)) {
+            // Rechargé après validation : la variation est déjà incluse
+            execute(() -> {
+                long value = counters.get(organizationId, this::loadCounters).get(event.getCounter());
+                send(organizationId, SseEmitter.event().name(COUNTER_EVENT).data(Map.of(
+                        "counter", event.getCounter().name(),
+                        "delta", event.getDelta(),
+                        "value", value)));
+            });
+        }
+        // Sinon personne n'écoute et rien en mémoire : le prochain accès rechargera les compteurs
+    }
+
+    /**
+     * Envoie un commentaire périodique pour maintenir les connexions ouvertes
+     * (proxys) et détecter les connexions fermées par le client.
+     */
+    void heartbeat() {
+        for (Long organizationId : emitters.keySet()) {
+            send(organizationId, SseEmitter.event().comment("ping"));
+        }
+    }
+
+    /**
+     * Recharge les compteurs d'une organisation modifiés par une autre instance
+     * et pousse l'état complet à ses utilisateurs connectés.
+     */
+    private void pushCounters(Long organizationId) {
+        if (!emitters.containsKey(organizationId)) {
+            return;
+        }
+        try {
+            send(organizationId, SseEmitter.event().name(COUNTERS_EVENT).data(getCounters(organizationId)));
+        } catch (Exception e) {
+            log.warn("Impossible de recharger les compteurs de l'organisation {}: {}", organizationId, e.getMessage());
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            sender.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Arrêt en cours : les connexions vont être fermées
+        }
+    }
+
+    private void send(Long organizationId, SseEmitter.SseEventBuilder event) {
+        Set<SseEmitter> organizationEmitters = emitters.get(organizationId);
+        if (organizationEmitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : organizationEmitters) {
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                // Client déconnecté
+                removeEmitter(organizationId, emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private void removeEmitter(Long organizationId, SseEmitter emitter) {
+        emitters.computeIfPresent(organizationId, (id, set) -> {
+            set.remove(emitter);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private CounterState loadCounters(Long organizationId) {
+        return new CounterState(
+                quotaAlertRepository.countByOrganizationIdAndIsReadFalse(organizationId),
+                invoiceRepository.countByOrganizationIdAndViewedAtIsNull(organizationId),
+                invoiceRepository.countByOrganizationIdAndStatus(organizationId, Invoice.InvoiceStatus.OVERDUE));
+    }
+
+    /**
+     * Valeurs courantes des compteurs d'une organisation (indexées par Counter.ordinal()).
+     */
+    private static class CounterState {
+        private final AtomicLong[] values = new AtomicLong[BadgeCounterChangedEvent.Counter.values().length];
+
+        private CounterState(long unreadAlerts, long newInvoices, long overdueInvoices) {
+            values[BadgeCounterChangedEvent.Counter.UNREAD_ALERTS.ordinal()] = new AtomicLong(unreadAlerts);
+            values[BadgeCounterChangedEvent.Counter.NEW_INVOICES.ordinal()] = new AtomicLong(newInvoices);
+            values[BadgeCounterChangedEvent.Counter.OVERDUE_INVOICES.ordinal()] = new AtomicLong(overdueInvoices);
+        }
+
+        private long get(BadgeCounterChangedEvent.Counter counter) {
+            return values[counter.ordinal()].get();
+        }
+
+        private long add(BadgeCounterChangedEvent.Counter counter, long delta) {
+            return values[counter.ordinal()].updateAndGet(v -> Math.max(0, v + delta));
+        }
+
+        private BadgeCounters toDto() {
+            return new BadgeCounters(
+                    get(BadgeCounterChangedEvent.Counter.UNREAD_ALERTS),
+                    get(BadgeCounterChangedEvent.Counter.NEW_INVOICES),
+                    get(BadgeCounterChangedEvent.Counter.OVERDUE_INVOICES));
+        }
+    }
+}
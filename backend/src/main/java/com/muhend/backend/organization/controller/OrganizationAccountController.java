@@ -2,6 +2,7 @@ package com.muhend.backend.organization.controller;
 
 import com.muhend.backend.auth.model.PendingRegistration;
 import com.muhend.backend.auth.service.KeycloakAdminService;
+import com.muhend.backend.auth.service.KeycloakUserDirectory;
 import com.muhend.backend.auth.service.PendingRegistrationService;
 import com.muhend.backend.organization.dto.CreateCollaboratorRequest;
 import com.muhend.backend.organization.dto.OrganizationDto;
@@ -32,7 +33,6 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.keycloak.representations.idm.UserRepresentation;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -331,29 +331,15 @@ public class OrganizationAccountController {
             List<UsageLog> logs = usageLogRepository.findByOrganizationIdAndTimestampBetween(
                     organization.getId(), startDateTime, endDateTime);
             
-            // Récupérer les informations des collaborateurs depuis Keycloak
+            // Récupérer les informations des collaborateurs depuis Keycloak (une seule lecture groupée)
+            Map<String, KeycloakUserDirectory.KeycloakUser> keycloakUsers = keycloakAdminService.getUsers(
+                    logs.stream().map(UsageLog::getKeycloakUserId).distinct().toList());
             Map<String, String> userNamesMap = new LinkedHashMap<>();
             for (UsageLog usageLog : logs) {
-                String keycloakUserId = usageLog.getKeycloakUserId();
-                if (!userNamesMap.containsKey(keycloakUserId)) {
-                    try {
-                        UserRepresentation user = keycloakAdminService.getUserRepresentation(keycloakUserId);
-                        if (user != null) {
-                            String firstName = user.getFirstName();
-                            String lastName = user.getLastName();
-                            String username = user.getUsername();
-                            String fullName = (firstName != null && lastName != null) 
-                                    ? firstName + " " + lastName 
-                                    : (firstName != null ? firstName : (lastName != null ? lastName : username));
-                            userNamesMap.put(keycloakUserId, fullName);
-                        } else {
-                            userNamesMap.put(keycloakUserId, "Utilisateur inconnu");
-                        }
-                    } catch (Exception e) {
-                        log.warn("Impossible de récupérer les informations de l'utilisateur {}: {}", keycloakUserId, e.getMessage());
-                        userNamesMap.put(keycloakUserId, "Utilisateur inconnu");
-                    }
-                }
+                userNamesMap.computeIfAbsent(usageLog.getKeycloakUserId(), keycloakUserId -> {
+                    KeycloakUserDirectory.KeycloakUser user = keycloakUsers.get(keycloakUserId);
+                    return user != null ? user.displayName() : "Utilisateur inconnu";
+                });
             }
             
             // Convertir les logs en Map avec les noms des collaborateurs
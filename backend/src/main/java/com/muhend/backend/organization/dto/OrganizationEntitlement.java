@@ -0,0 +1,70 @@
+package com.muhend.backend.organization.dto;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Instantané immuable des droits d'une organisation : tout ce qui est nécessaire pour autoriser
+ * et facturer une recherche, hors compteur d'utilisation.
+ * Mis en cache par OrganizationEntitlementService et invalidé à chaque modification.
+ */
+@Value
+@Builder
+public class OrganizationEntitlement {
+    
+    Long organizationId;
+    String organizationName;
+    boolean enabled;
+    String marketVersion;
+    
+    // Essai gratuit
+    LocalDateTime trialExpiresAt;
+    boolean trialPermanentlyExpired;
+    
+    // Plan tarifaire (plan null si absent ou introuvable)
+    Long pricingPlanId;
+    boolean planFound;
+    String planName;
+    BigDecimal pricePerRequest;
+    BigDecimal pricePerMonth;
+    String currency;
+    /**
+     * Quota défini par le plan tarifaire (utilisé pour les alertes de quota)
+     */
+    Integer planMonthlyQuota;
+    
+    // Quota (null = illimité) et cycle mensuel
+    Integer monthlyQuota;
+    LocalDate monthlyPlanStartDate;
+    LocalDate monthlyPlanEndDate;
+    
+    /**
+     * Prix par requête du plan Pay-per-Request du marché, appliqué en cas de dépassement du quota
+     */
+    BigDecimal payPerRequestFallbackPrice;
+    
+    LocalDateTime loadedAt;
+    
+    public boolean hasPricePerRequest() {
+        return planFound && pricePerRequest != null && pricePerRequest.compareTo(BigDecimal.ZERO) > 0;
+    }
+    
+    public boolean hasPricePerMonth() {
+        return planFound && pricePerMonth != null && pricePerMonth.compareTo(BigDecimal.ZERO) > 0;
+    }
+    
+    /**
+     * Plan pay-per-request : prix par requête sans abonnement mensuel
+     */
+    public boolean isPayPerRequestPlan() {
+        return hasPricePerRequest() && !hasPricePerMonth();
+    }
+    
+    public boolean isPaidPlan() {
+        return hasPricePerRequest() || hasPricePerMonth();
+    }
+}
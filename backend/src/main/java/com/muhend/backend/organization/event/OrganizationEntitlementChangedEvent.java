@@ -0,0 +1,25 @@
+package com.muhend.backend.organization.event;
+
+import lombok.Value;
+
+/**
+ * Événement publié lorsqu'une donnée entrant dans les droits d'une organisation change
+ * (activation, plan tarifaire, quota, cycle mensuel, essai, tarifs).
+ */
+@Value
+public class OrganizationEntitlementChangedEvent {
+    
+    /**
+     * ID de l'organisation concernée, ou null si toutes les organisations sont concernées
+     * (ex: modification d'un plan tarifaire)
+     */
+    Long organizationId;
+    
+    public static OrganizationEntitlementChangedEvent of(Long organizationId) {
+        return new OrganizationEntitlementChangedEvent(organizationId);
+    }
+    
+    public static OrganizationEntitlementChangedEvent all() {
+        return new OrganizationEntitlementChangedEvent(null);
+    }
+}
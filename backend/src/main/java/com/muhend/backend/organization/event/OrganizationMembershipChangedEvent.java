@@ -0,0 +1,29 @@
+package com.muhend.backend.organization.event;
+
+import lombok.Value;
+
+/**
+ * Événement publié lorsqu'une association utilisateur → organisation change
+ * (ajout, retrait ou suppression d'un collaborateur, suppression d'une organisation).
+ */
+@Value
+public class OrganizationMembershipChangedEvent {
+    
+    /**
+     * ID Keycloak de l'utilisateur concerné, ou null si tous les membres de l'organisation sont concernés
+     */
+    String keycloakUserId;
+    
+    /**
+     * ID de l'organisation concernée (peut être null si seul l'utilisateur est connu)
+     */
+    Long organizationId;
+    
+    public static OrganizationMembershipChangedEvent ofUser(String keycloakUserId) {
+        return new OrganizationMembershipChangedEvent(keycloakUserId, null);
+    }
+    
+    public static OrganizationMembershipChangedEvent ofOrganization(Long organizationId) {
+        return new OrganizationMembershipChangedEvent(null, organizationId);
+    }
+}
@@ -82,6 +82,9 @@ public class Organization {
     
     @Column(name = "pending_pay_per_request_change_date", nullable = true)
     private LocalDate pendingPayPerRequestChangeDate; // Date à laquelle le changement vers Pay-per-Request prendra effet (fin du cycle si quota non dépassé)
+    
+    @Column(name = "plan_cycle_processed_on", nullable = true)
+    private LocalDate planCycleProcessedOn; // Dernier jour où le cycle mensuel de l'organisation a été traité (reprise idempotente)
 
     @Column(name = "enabled", nullable = false)
     private Boolean enabled = true; // false = organisation désactivée (aucun collaborateur ne peut utiliser l'application)
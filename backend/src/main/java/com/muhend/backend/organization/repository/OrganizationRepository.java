@@ -1,6 +1,7 @@
 package com.muhend.backend.organization.repository;
 
 import com.muhend.backend.organization.model.Organization;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -9,6 +10,7 @@ import org.springframework.stereotype.Repository;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public interface OrganizationRepository extends JpaRepository<Organization, Long> {
@@ -44,21 +46,44 @@ public interface OrganizationRepository extends JpaRepository<Organization, Long
     Optional<Organization> findByKeycloakUserId(String keycloakUserId);
     
     /**
-     * Trouve les organisations avec un changement de plan en attente dont la date d'effet est arrivée ou passée.
+     * Trouve l'ID de l'organisation dont l'utilisateur est le compte organisation.
      */
-    @Query("SELECT o FROM Organization o WHERE o.pendingMonthlyPlanChangeDate IS NOT NULL AND o.pendingMonthlyPlanChangeDate <= :date")
-    List<Organization> findByPendingMonthlyPlanChangeDateLessThanEqual(@Param("date") LocalDate date);
+    @Query("SELECT o.id FROM Organization o WHERE o.keycloakUserId = :keycloakUserId")
+    Optional<Long> findIdByKeycloakUserId(@Param("keycloakUserId") String keycloakUserId);
     
     /**
-     * Trouve les organisations dont le cycle mensuel est expiré (endDate < date).
+     * Récupère les IDs de toutes les organisations (sans charger les entités).
      */
-    @Query("SELECT o FROM Organization o WHERE o.monthlyPlanEndDate IS NOT NULL AND o.monthlyPlanEndDate < :date")
-    List<Organization> findByMonthlyPlanEndDateLessThan(@Param("date") LocalDate date);
+    @Query("SELECT o.id FROM Organization o ORDER BY o.id")
+    List<Long> findAllIds();
     
     /**
-     * Trouve les organisations avec un changement vers Pay-per-Request en attente.
+     * IDs (après afterId, par ordre croissant) des organisations dont le cycle mensuel doit être traité à la date donnée
+     * et qui ne l'ont pas encore été ce jour-là : changement de plan arrivé à échéance, cycle expiré
+     * ou changement vers Pay-per-Request en attente. Les organisations en cours de suppression sont exclues.
      */
-    @Query("SELECT o FROM Organization o WHERE o.pendingPayPerRequestPlanId IS NOT NULL")
-    List<Organization> findByPendingPayPerRequestPlanIdIsNotNull();
+    @Query("SELECT o.id FROM Organization o WHERE o.id > :afterId " +
+           "AND (o.planCycleProcessedOn IS NULL OR o.planCycleProcessedOn < :date) " +
+           "AND ((o.pendingMonthlyPlanChangeDate IS NOT NULL AND o.pendingMonthlyPlanChangeDate <= :date) " +
+           "OR (o.monthlyPlanEndDate IS NOT NULL AND o.monthlyPlanEndDate < :date) " +
+           "OR o.pendingPayPerRequestPlanId IS NOT NULL) " +
+           "AND NOT EXISTS (SELECT j.id FROM OrganizationDeletionJob j WHERE j.organizationId = o.id " +
+           "AND j.status <> com.muhend.backend.admin.model.OrganizationDeletionJob.JobStatus.COMPLETED) " +
+           "ORDER BY o.id")
+    List<Long> findPlanCycleCandidateIds(@Param("date") LocalDate date, @Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * Indique si une suppression de l'organisation est en cours ou en échec : aucune ligne ne doit plus
+     * lui être ajoutée (factures, abonnements, paiements), sans quoi la suppression de l'organisation échouerait.
+     */
+    @Query("SELECT COUNT(j) > 0 FROM OrganizationDeletionJob j WHERE j.organizationId = :organizationId " +
+           "AND j.status <> com.muhend.backend.admin.model.OrganizationDeletionJob.JobStatus.COMPLETED")
+    boolean isDeletionPending(@Param("organizationId") Long organizationId);
+    
+    /**
+     * IDs des organisations dont une suppression est en cours ou en échec (voir {@link #isDeletionPending(Long)}).
+     */
+    @Query("SELECT DISTINCT j.organizationId FROM OrganizationDeletionJob j " +
+           "WHERE j.status <> com.muhend.backend.admin.model.OrganizationDeletionJob.JobStatus.COMPLETED")
+    Set<Long> findIdsWithPendingDeletion();
 }
-
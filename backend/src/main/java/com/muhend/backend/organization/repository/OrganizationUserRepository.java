@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +19,12 @@ public interface OrganizationUserRepository extends JpaRepository<OrganizationUs
      */
     List<OrganizationUser> findByKeycloakUserId(String keycloakUserId);
     
+    /**
+     * Trouve les IDs des organisations d'un utilisateur (sans charger les entités), par ordre d'association.
+     */
+    @Query("SELECT ou.organization.id FROM OrganizationUser ou WHERE ou.keycloakUserId = :keycloakUserId ORDER BY ou.id")
+    List<Long> findOrganizationIdsByKeycloakUserId(@Param("keycloakUserId") String keycloakUserId);
+    
     /**
      * Trouve l'association utilisateur-organisation spécifique.
      */
@@ -28,6 +35,12 @@ public interface OrganizationUserRepository extends JpaRepository<OrganizationUs
      */
     List<OrganizationUser> findByOrganizationId(Long organizationId);
     
+    /**
+     * Trouve les utilisateurs de plusieurs organisations : [ID organisation, ID Keycloak].
+     */
+    @Query("SELECT ou.organization.id, ou.keycloakUserId FROM OrganizationUser ou WHERE ou.organization.id IN :organizationIds")
+    List<Object[]> findKeycloakUserIdsByOrganizationIdIn(@Param("organizationIds") Collection<Long> organizationIds);
+    
     /**
      * Vérifie si un utilisateur appartient à une organisation.
      */
@@ -44,10 +57,26 @@ public interface OrganizationUserRepository extends JpaRepository<OrganizationUs
     long deleteByKeycloakUserId(String keycloakUserId);
     
     /**
-     * Supprime toutes les associations d'une organisation.
+     * Récupère les IDs des organisations dont au moins un des utilisateurs est membre.
+     */
+    @Query("SELECT DISTINCT ou.organization.id FROM OrganizationUser ou WHERE ou.keycloakUserId IN :keycloakUserIds")
+    List<Long> findOrganizationIdsByKeycloakUserIdIn(@Param("keycloakUserIds") Collection<String> keycloakUserIds);
+    
+    /**
+     * Supprime toutes les associations d'un ensemble d'utilisateurs.
+     */
+    @Modifying
+    @Query("DELETE FROM OrganizationUser ou WHERE ou.keycloakUserId IN :keycloakUserIds")
+    int deleteByKeycloakUserIdIn(@Param("keycloakUserIds") Collection<String> keycloakUserIds);
+    
+    /**
+     * Supprime un lot de lignes (au plus {@code batchSize}) parmi les associations d'une organisation.
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize}, pour borner la durée de chaque transaction.
      */
     @Modifying
-    @Query("DELETE FROM OrganizationUser ou WHERE ou.organization.id = :organizationId")
-    int deleteByOrganizationId(@Param("organizationId") Long organizationId);
+    @Query(value = "DELETE FROM organization_user WHERE id IN (" +
+                   "SELECT id FROM organization_user WHERE organization_id = :organizationId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
 }
 
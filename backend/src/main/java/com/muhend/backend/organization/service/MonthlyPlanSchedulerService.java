@@ -6,21 +6,35 @@ import com.muhend.backend.organization.model.Organization;
 import com.muhend.backend.organization.repository.OrganizationRepository;
 import com.muhend.backend.pricing.dto.PricingPlanDto;
 import com.muhend.backend.pricing.service.PricingPlanService;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service pour gérer les cycles mensuels des plans tarifaires.
  * S'exécute quotidiennement pour :
  * 1. Appliquer les changements de plan mensuel en attente
  * 2. Reconduire automatiquement les plans mensuels expirés
+ * 3. Appliquer les changements vers Pay-per-Request en attente
+ *
+ * Les organisations concernées sont lues par lots (pagination par clé sur l'ID) et traitées en parallèle
+ * sur un pool borné, chacune dans sa propre transaction : une organisation en échec n'annule pas les autres.
+ * La date du dernier traitement (plan_cycle_processed_on) est enregistrée dans la même transaction :
+ * un nouveau lancement le même jour ne retraite que les organisations en échec.
  */
 @Service
 @Slf4j
@@ -30,132 +44,148 @@ public class MonthlyPlanSchedulerService {
     private final OrganizationService organizationService;
     private final PricingPlanService pricingPlanService;
     private final InvoiceService invoiceService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService workers;
+    
+    @Value("${organization.plan-cycle.chunk-size:100}")
+    private int chunkSize;
     
     public MonthlyPlanSchedulerService(
             OrganizationRepository organizationRepository,
             @Lazy OrganizationService organizationService,
             PricingPlanService pricingPlanService,
-            InvoiceService invoiceService) {
+            InvoiceService invoiceService,
+            PlatformTransactionManager transactionManager,
+            @Value("${organization.plan-cycle.workers:4}") int workerCount) {
         this.organizationRepository = organizationRepository;
         this.organizationService = organizationService;
         this.pricingPlanService = pricingPlanService;
         this.invoiceService = invoiceService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount),
+                Thread.ofPlatform().name("plan-cycle-", 1).factory());
     }
     
     /**
-     * S'exécute tous les jours à minuit pour :
-     * 1. Appliquer les changements de plan mensuel en attente
-     * 2. Reconduire automatiquement les plans mensuels expirés
+     * S'exécute tous les jours à minuit (voir ScheduledJobs).
+     *
+     * @return Nombre d'organisations dont le plan a été changé ou reconduit
      */
-    @Scheduled(cron = "0 0 0 * * ?") // Tous les jours à minuit
-    @Transactional
-    public void processMonthlyPlanCycles() {
+    public int processMonthlyPlanCycles() {
         LocalDate today = LocalDate.now();
         log.info("🔄 Traitement des cycles mensuels des plans tarifaires pour la date: {}", today);
+        long startNanos = System.nanoTime();
         
-        // 1. Appliquer les changements de plan en attente
-        List<Organization> orgsWithPendingChanges = organizationRepository
-            .findByPendingMonthlyPlanChangeDateLessThanEqual(today);
-        
-        log.info("📋 Organisations avec changement de plan en attente: {}", orgsWithPendingChanges.size());
-        
-        for (Organization org : orgsWithPendingChanges) {
-            if (org.getPendingMonthlyPlanId() != null) {
-                try {
-                    PricingPlanDto newPlan = pricingPlanService.getPricingPlanById(org.getPendingMonthlyPlanId());
-                    applyPendingPlanChange(org, newPlan);
-                    log.info("✅ Changement de plan appliqué pour l'organisation {}: nouveau plan {}", 
-                            org.getId(), newPlan.getName());
-                } catch (Exception e) {
-                    log.error("❌ Erreur lors de l'application du changement de plan pour l'organisation {}: {}", 
-                            org.getId(), e.getMessage(), e);
-                }
+        AtomicInteger updated = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int processed = 0;
+        long afterId = 0L;
+        while (true) {
+            List<Long> chunk = organizationRepository.findPlanCycleCandidateIds(today, afterId, PageRequest.of(0, Math.max(1, chunkSize)));
+            if (chunk.isEmpty()) {
+                break;
             }
+            CompletableFuture.allOf(chunk.stream()
+                    .map(organizationId -> CompletableFuture.runAsync(() -> {
+                        try {
+                            Boolean changed = transactionTemplate.execute(status -> processOrganization(organizationId, today));
+                            if (Boolean.TRUE.equals(changed)) {
+                                updated.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            // Non marquée comme traitée : reprise au prochain lancement
+                            failed.incrementAndGet();
+                            log.error("❌ Erreur lors du traitement du cycle mensuel de l'organisation {}: {}",
+                                    organizationId, e.getMessage(), e);
+                        }
+                    }, workers))
+                    .toArray(CompletableFuture[]::new))
+                    .join();
+            processed += chunk.size();
+            afterId = chunk.get(chunk.size() - 1);
         }
         
-        // 2. Reconduire automatiquement les plans mensuels expirés
-        List<Organization> orgsWithExpiredCycles = organizationRepository
-            .findByMonthlyPlanEndDateLessThan(today)
-            .stream()
-            .filter(org -> {
-                // Vérifier que c'est un plan mensuel actif (pas de changement en attente)
-                return org.getPricingPlanId() != null 
-                    && org.getPendingMonthlyPlanId() == null
-                    && org.getMonthlyPlanEndDate() != null;
-            })
-            .collect(Collectors.toList());
+        log.info("✅ Traitement des cycles mensuels terminé: {} organisation(s) examinée(s), {} mise(s) à jour, {} erreur(s) en {} ms",
+                processed, updated.get(), failed.get(), Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+        return updated.get();
+    }
+    
+    /**
+     * Traite une organisation (dans la transaction de l'appelant) et la marque comme traitée pour la date.
+     *
+     * @return true si le plan de l'organisation a été changé ou reconduit
+     */
+    boolean processOrganization(Long organizationId, LocalDate today) {
+        Organization org = organizationRepository.findById(organizationId).orElse(null);
+        if (org == null || today.equals(org.getPlanCycleProcessedOn())) {
+            // Supprimée entre-temps, ou déjà traitée aujourd'hui
+            return false;
+        }
+        boolean changed = false;
         
-        log.info("📋 Organisations avec cycle mensuel expiré à reconduire: {}", orgsWithExpiredCycles.size());
+        // 1. Appliquer le changement de plan en attente
+        if (org.getPendingMonthlyPlanId() != null && org.getPendingMonthlyPlanChangeDate() != null
+                && !org.getPendingMonthlyPlanChangeDate().isAfter(today)) {
+            PricingPlanDto newPlan = pricingPlanService.getPricingPlanById(org.getPendingMonthlyPlanId());
+            applyPendingPlanChange(org, newPlan);
+            changed = true;
+            log.info("✅ Changement de plan appliqué pour l'organisation {}: nouveau plan {}", 
+                    org.getId(), newPlan.getName());
+        }
         
-        for (Organization org : orgsWithExpiredCycles) {
-            try {
-                PricingPlanDto currentPlan = pricingPlanService.getPricingPlanById(org.getPricingPlanId());
-                if (currentPlan.getPricePerMonth() != null && currentPlan.getPricePerMonth().compareTo(java.math.BigDecimal.ZERO) > 0) {
-                    // Reconduction tacite : réinitialiser le cycle avec le même plan
-                    renewMonthlyPlanCycle(org, currentPlan);
-                    log.info("✅ Plan mensuel reconduit automatiquement pour l'organisation {}: plan {}", 
-                            org.getId(), currentPlan.getName());
-                }
-            } catch (Exception e) {
-                log.error("❌ Erreur lors de la reconduction du plan pour l'organisation {}: {}", 
-                        org.getId(), e.getMessage(), e);
+        // 2. Reconduire automatiquement le plan mensuel expiré (plan actif, pas de changement en attente)
+        if (org.getPricingPlanId() != null && org.getPendingMonthlyPlanId() == null
+                && org.getMonthlyPlanEndDate() != null && org.getMonthlyPlanEndDate().isBefore(today)) {
+            PricingPlanDto currentPlan = pricingPlanService.getPricingPlanById(org.getPricingPlanId());
+            if (currentPlan.getPricePerMonth() != null && currentPlan.getPricePerMonth().compareTo(java.math.BigDecimal.ZERO) > 0) {
+                // Reconduction tacite : réinitialiser le cycle avec le même plan
+                renewMonthlyPlanCycle(org, currentPlan);
+                changed = true;
+                log.info("✅ Plan mensuel reconduit automatiquement pour l'organisation {}: plan {}", 
+                        org.getId(), currentPlan.getName());
             }
         }
         
-        // 3. Appliquer les changements vers Pay-per-Request en attente (si quota dépassé OU date d'effet arrivée)
-        List<Organization> orgsWithPendingPayPerRequest = organizationRepository
-            .findByPendingPayPerRequestPlanIdIsNotNull();
-        
-        log.info("📋 Organisations avec changement vers Pay-per-Request en attente: {}", orgsWithPendingPayPerRequest.size());
-        
-        for (Organization org : orgsWithPendingPayPerRequest) {
-            if (org.getPendingPayPerRequestPlanId() != null) {
-                try {
-                    // Vérifier si le quota est dépassé OU si la date d'effet est arrivée
-                    QuotaCheckResult quotaCheck = organizationService.checkQuotaWithResult(org.getId());
-                    boolean isQuotaExceeded = !quotaCheck.isQuotaOk();
-                    boolean isChangeDateReached = org.getPendingPayPerRequestChangeDate() != null 
-                            && !org.getPendingPayPerRequestChangeDate().isAfter(today);
-                    
-                    if (isQuotaExceeded || isChangeDateReached) {
-                        PricingPlanDto newPlan = pricingPlanService.getPricingPlanById(org.getPendingPayPerRequestPlanId());
-                        PricingPlanDto oldPlan = pricingPlanService.getPricingPlanById(org.getPricingPlanId());
-                        
-                        // Générer facture de clôture mensuelle
-                        if (org.getMonthlyPlanStartDate() != null && org.getMonthlyPlanEndDate() != null) {
-                            try {
-                                invoiceService.generateMonthlyPlanCycleClosureInvoice(
-                                    org.getId(), 
-                                    oldPlan, 
-                                    org.getMonthlyPlanStartDate(), 
-                                    org.getMonthlyPlanEndDate()
-                                );
-                            } catch (Exception e) {
-                                log.error("Erreur lors de la génération de la facture de clôture pour l'organisation {}: {}", 
-                                        org.getId(), e.getMessage(), e);
-                            }
-                        }
-                        
-                        // Appliquer le changement
-                        organizationService.applyPlanChangeImmediately(org, newPlan);
-                        org.setPendingPayPerRequestPlanId(null);
-                        org.setPendingPayPerRequestChangeDate(null);
-                        organizationRepository.save(org);
-                        
-                        log.info("✅ Changement vers Pay-per-Request appliqué pour l'organisation {}: quota dépassé={}, date atteinte={}", 
-                                org.getId(), isQuotaExceeded, isChangeDateReached);
-                    } else {
-                        log.debug("Changement vers Pay-per-Request toujours en attente pour l'organisation {}: quota OK, date d'effet: {}", 
-                                org.getId(), org.getPendingPayPerRequestChangeDate());
-                    }
-                } catch (Exception e) {
-                    log.error("❌ Erreur lors de l'application du changement vers Pay-per-Request pour l'organisation {}: {}", 
-                            org.getId(), e.getMessage(), e);
+        // 3. Appliquer le changement vers Pay-per-Request en attente (si quota dépassé OU date d'effet arrivée)
+        if (org.getPendingPayPerRequestPlanId() != null) {
+            QuotaCheckResult quotaCheck = organizationService.checkQuotaWithResult(org.getId());
+            boolean isQuotaExceeded = !quotaCheck.isQuotaOk();
+            boolean isChangeDateReached = org.getPendingPayPerRequestChangeDate() != null 
+                    && !org.getPendingPayPerRequestChangeDate().isAfter(today);
+            
+            if (isQuotaExceeded || isChangeDateReached) {
+                PricingPlanDto newPlan = pricingPlanService.getPricingPlanById(org.getPendingPayPerRequestPlanId());
+                PricingPlanDto oldPlan = pricingPlanService.getPricingPlanById(org.getPricingPlanId());
+                
+                // Générer facture de clôture mensuelle
+                if (org.getMonthlyPlanStartDate() != null && org.getMonthlyPlanEndDate() != null) {
+                    invoiceService.generateMonthlyPlanCycleClosureInvoice(
+                        org.getId(), 
+                        oldPlan, 
+                        org.getMonthlyPlanStartDate(), 
+                        org.getMonthlyPlanEndDate()
+                    );
                 }
+                
+                // Appliquer le changement
+                organizationService.applyPlanChangeImmediately(org, newPlan);
+                org.setPendingPayPerRequestPlanId(null);
+                org.setPendingPayPerRequestChangeDate(null);
+                organizationService.publishEntitlementChanged(org.getId());
+                changed = true;
+                
+                log.info("✅ Changement vers Pay-per-Request appliqué pour l'organisation {}: quota dépassé={}, date atteinte={}", 
+                        org.getId(), isQuotaExceeded, isChangeDateReached);
+            } else {
+                log.debug("Changement vers Pay-per-Request toujours en attente pour l'organisation {}: quota OK, date d'effet: {}", 
+                        org.getId(), org.getPendingPayPerRequestChangeDate());
             }
         }
         
-        log.info("✅ Traitement des cycles mensuels terminé");
+        org.setPlanCycleProcessedOn(today);
+        organizationRepository.save(org);
+        return changed;
     }
     
     /**
@@ -165,18 +195,13 @@ public class MonthlyPlanSchedulerService {
         // Générer facture de clôture pour l'ancien plan (cycle mensuel)
         PricingPlanDto oldPlan = pricingPlanService.getPricingPlanById(org.getPricingPlanId());
         if (oldPlan.getPricePerMonth() != null && org.getMonthlyPlanStartDate() != null) {
-            try {
-                // Facturer le cycle mensuel complet jusqu'à la fin
-                invoiceService.generateMonthlyPlanCycleClosureInvoice(
-                    org.getId(), 
-                    oldPlan, 
-                    org.getMonthlyPlanStartDate(), 
-                    org.getMonthlyPlanEndDate()
-                );
-            } catch (Exception e) {
-                log.error("Erreur lors de la génération de la facture de clôture pour l'organisation {}: {}", 
-                        org.getId(), e.getMessage(), e);
-            }
+            // Facturer le cycle mensuel complet jusqu'à la fin (en cas d'échec, le changement est annulé puis repris)
+            invoiceService.generateMonthlyPlanCycleClosureInvoice(
+                org.getId(), 
+                oldPlan, 
+                org.getMonthlyPlanStartDate(), 
+                org.getMonthlyPlanEndDate()
+            );
         }
         
         // Appliquer le nouveau plan
@@ -188,31 +213,26 @@ public class MonthlyPlanSchedulerService {
         org.setPendingMonthlyPlanId(null);
         org.setPendingMonthlyPlanChangeDate(null);
         
-        organizationRepository.save(org);
+        organizationService.publishEntitlementChanged(org.getId());
     }
     
     /**
      * Reconduit automatiquement un cycle mensuel avec le même plan.
      */
     private void renewMonthlyPlanCycle(Organization org, PricingPlanDto plan) {
-        // Générer facture pour le cycle expiré
+        // Générer facture pour le cycle expiré (en cas d'échec, la reconduction est annulée puis reprise)
         if (org.getMonthlyPlanStartDate() != null && org.getMonthlyPlanEndDate() != null) {
-            try {
-                invoiceService.generateMonthlyPlanCycleInvoice(
-                    org.getId(),
-                    plan,
-                    org.getMonthlyPlanStartDate(),
-                    org.getMonthlyPlanEndDate()
-                );
-            } catch (Exception e) {
-                log.error("Erreur lors de la génération de la facture de reconduction pour l'organisation {}: {}", 
-                        org.getId(), e.getMessage(), e);
-            }
+            invoiceService.generateMonthlyPlanCycleInvoice(
+                org.getId(),
+                plan,
+                org.getMonthlyPlanStartDate(),
+                org.getMonthlyPlanEndDate()
+            );
         }
         
         // Réinitialiser le cycle
         initializeMonthlyPlanCycle(org, plan);
-        organizationRepository.save(org);
+        organizationService.publishEntitlementChanged(org.getId());
     }
     
     /**
@@ -227,5 +247,9 @@ public class MonthlyPlanSchedulerService {
         org.setMonthlyPlanEndDate(endDate);
         org.setMonthlyQuota(plan.getMonthlyQuota());
     }
+    
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
 }
-
@@ -0,0 +1,293 @@
+package com.muhend.backend.organization.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.organization.dto.OrganizationEntitlement;
+import com.muhend.backend.organization.dto.QuotaCheckResult;
+import com.muhend.backend.organization.event.OrganizationEntitlementChangedEvent;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.pricing.dto.PricingPlanDto;
+import com.muhend.backend.pricing.service.PricingPlanService;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.LongSupplier;
+
+/**
+ * Service des droits d'organisation pour le chemin critique de la recherche.
+ *
+ * Les données qui changent rarement (activation, essai, plan, tarifs, quota, cycle mensuel,
+ * prix Pay-per-Request de repli) sont regroupées dans un instantané immuable {@link OrganizationEntitlement}
+ * conservé dans un cache Caffeine. Le cache est invalidé par {@link OrganizationEntitlementChangedEvent},
+ * publié par OrganizationService, PricingPlanService et MonthlyPlanSchedulerService après chaque modification,
+ * et sur les autres instances par {@link CacheInvalidationBus}.
+ *
+ * Avec un instantané en cache, une vérification ne coûte qu'un seul COUNT sur usage_log.
+ * Les règles appliquées sont celles de OrganizationService#canOrganizationMakeRequests
+ * et OrganizationService#checkQuotaWithResult.
+ */
+@Service
+@Slf4j
+public class OrganizationEntitlementService {
+
+    private final OrganizationRepository organizationRepository;
+    private final PricingPlanService pricingPlanService;
+    private final UsageLogRepository usageLogRepository;
+    private final OrganizationService organizationService;
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private final Cache<Long, OrganizationEntitlement> cache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            // Filet de sécurité : l'invalidation se fait normalement par événement
+            .expireAfterWrite(Duration.ofMinutes(15))
+            .build();
+
+    public OrganizationEntitlementService(OrganizationRepository organizationRepository,
+                                          PricingPlanService pricingPlanService,
+                                          UsageLogRepository usageLogRepository,
+                                          @Lazy OrganizationService organizationService,
+                                          CacheInvalidationBus cacheInvalidationBus) {
+        this.organizationRepository = organizationRepository;
+        this.pricingPlanService = pricingPlanService;
+        this.usageLogRepository = usageLogRepository;
+        this.organizationService = organizationService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
+    @PostConstruct
+    void registerCache() {
+        cacheInvalidationBus.register(CacheInvalidationBus.ORGANIZATION_ENTITLEMENTS, new CacheInvalidationBus.Handler() {
+            @Override
+            public void invalidate(String key) {
+                cache.invalidate(Long.valueOf(key));
+            }
+
+            @Override
+            public void invalidateAll() {
+                cache.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Récupère l'instantané des droits d'une organisation (depuis le cache si possible).
+     *
+     * @throws IllegalArgumentException si l'organisation n'existe pas
+     */
+    public OrganizationEntitlement getEntitlement(Long organizationId) {
+        if (organizationId == null) {
+            throw new IllegalArgumentException(
+                "Un utilisateur doit être associé à une organisation. organizationId ne peut pas être null."
+            );
+        }
+        return cache.get(organizationId, this::loadEntitlement);
+    }
+
+    /**
+     * Vérifie si une organisation peut effectuer une recherche et calcule l'état de son quota.
+     * Un seul COUNT est exécuté, et seulement si le quota ou l'essai l'exigent.
+     *
+     * @throws IllegalArgumentException si l'organisation n'existe pas
+     */
+    public SearchAccess checkSearchAccess(Long organizationId) {
+        OrganizationEntitlement entitlement = getEntitlement(organizationId);
+        LocalDateTime now = LocalDateTime.now();
+        QuotaWindow window = quotaWindow(entitlement, now);
+
+        // Compteur calculé au plus une fois
+        long[] usage = {-1};
+        LongSupplier usageSupplier = () -> {
+            if (usage[0] < 0) {
+                usage[0] = usageLogRepository.countByOrganizationIdAndTimestampBetween(
+                        organizationId, window.getStart(), window.getEnd());
+            }
+            return usage[0];
+        };
+
+        // Organisation désactivée par un administrateur
+        if (!entitlement.isEnabled()) {
+            log.debug("Organisation {} désactivée par un administrateur", organizationId);
+            return new SearchAccess(entitlement, false, entitlement.isTrialPermanentlyExpired(), null);
+        }
+
+        // Essai gratuit expiré
+        if (isTrialExpired(entitlement, now, usageSupplier)) {
+            boolean permanentlyExpired = entitlement.isTrialPermanentlyExpired();
+            if (!permanentlyExpired && entitlement.getMonthlyQuota() != null) {
+                // Quota de l'essai atteint : l'essai est définitivement terminé
+                organizationService.markTrialPermanentlyExpired(organizationId);
+                permanentlyExpired = true;
+            }
+            return new SearchAccess(entitlement, false, permanentlyExpired, null);
+        }
+
+        return new SearchAccess(entitlement, true, entitlement.isTrialPermanentlyExpired(),
+                checkQuota(entitlement, usageSupplier));
+    }
+
+    /**
+     * Invalide l'instantané d'une organisation (ou de toutes) une fois la transaction validée,
+     * sur cette instance puis sur les autres.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntitlementChanged(OrganizationEntitlementChangedEvent event) {
+        if (event.getOrganizationId() == null) {
+            cache.invalidateAll();
+            log.debug("Droits de toutes les organisations invalidés");
+        } else {
+            cache.invalidate(event.getOrganizationId());
+            log.debug("Droits de l'organisation {} invalidés", event.getOrganizationId());
+        }
+        cacheInvalidationBus.broadcast(CacheInvalidation.of(
+                CacheInvalidationBus.ORGANIZATION_ENTITLEMENTS, event.getOrganizationId()));
+    }
+
+    // ===================================================
+    // RÈGLES
+    // ===================================================
+
+    /**
+     * Essai expiré : voir OrganizationService#isTrialExpired.
+     */
+    private boolean isTrialExpired(OrganizationEntitlement entitlement, LocalDateTime now, LongSupplier usage) {
+        if (entitlement.getTrialExpiresAt() == null) {
+            return false;
+        }
+        // Un plan payant n'est jamais bloqué par l'essai
+        if (entitlement.isPaidPlan()) {
+            return false;
+        }
+        // Plan d'essai avec quota : expiré seulement quand le quota est atteint (mois calendaire)
+        if (entitlement.getMonthlyQuota() != null) {
+            return usage.getAsLong() >= entitlement.getMonthlyQuota();
+        }
+        // Sans quota : la date d'expiration est la seule limite
+        return entitlement.getTrialExpiresAt().isBefore(now);
+    }
+
+    /**
+     * État du quota : voir OrganizationService#checkQuotaWithResult.
+     */
+    private QuotaCheckResult checkQuota(OrganizationEntitlement entitlement, LongSupplier usage) {
+        // Plan pay-per-request ou quota null : quota illimité
+        if (entitlement.isPayPerRequestPlan() || entitlement.getMonthlyQuota() == null) {
+            return new QuotaCheckResult(true, false, null, 0, null);
+        }
+
+        long currentUsage = usage.getAsLong();
+        Integer monthlyQuota = entitlement.getMonthlyQuota();
+        if (currentUsage >= monthlyQuota) {
+            return new QuotaCheckResult(false, true, entitlement.getPayPerRequestFallbackPrice(), currentUsage, monthlyQuota);
+        }
+        return new QuotaCheckResult(true, false, null, currentUsage, monthlyQuota);
+    }
+
+    /**
+     * Période de comptage : cycle du plan mensuel (bornes incluses) ou mois calendaire.
+     * Pour un plan d'essai (non payant), c'est toujours le mois calendaire, comme pour isTrialExpired.
+     */
+    private QuotaWindow quotaWindow(OrganizationEntitlement entitlement, LocalDateTime now) {
+        if (entitlement.hasPricePerMonth()
+                && entitlement.getMonthlyPlanStartDate() != null && entitlement.getMonthlyPlanEndDate() != null) {
+            return new QuotaWindow(entitlement.getMonthlyPlanStartDate().atStartOfDay(),
+                    entitlement.getMonthlyPlanEndDate().atTime(23, 59, 59, 999999999));
+        }
+        return new QuotaWindow(
+                now.withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0),
+                now.withDayOfMonth(now.toLocalDate().lengthOfMonth())
+                        .withHour(23).withMinute(59).withSecond(59).withNano(999999999));
+    }
+
+    // ===================================================
+    // CHARGEMENT
+    // ===================================================
+
+    private OrganizationEntitlement loadEntitlement(Long organizationId) {
+        Organization organization = organizationRepository.findById(organizationId)
+                .orElseThrow(() -> new IllegalArgumentException("Organisation non trouvée avec l'ID: " + organizationId));
+
+        PricingPlanDto plan = null;
+        if (organization.getPricingPlanId() != null) {
+            try {
+                plan = pricingPlanService.getPricingPlanById(organization.getPricingPlanId());
+            } catch (Exception e) {
+                log.warn("Impossible de récupérer le plan {} de l'organisation {}: {}",
+                        organization.getPricingPlanId(), organizationId, e.getMessage());
+            }
+        }
+
+        OrganizationEntitlement.OrganizationEntitlementBuilder builder = OrganizationEntitlement.builder()
+                .organizationId(organization.getId())
+                .organizationName(organization.getName())
+                .enabled(Boolean.TRUE.equals(organization.getEnabled()))
+                .marketVersion(organization.getMarketVersion())
+                .trialExpiresAt(organization.getTrialExpiresAt())
+                .trialPermanentlyExpired(Boolean.TRUE.equals(organization.getTrialPermanentlyExpired()))
+                .pricingPlanId(organization.getPricingPlanId())
+                .planFound(plan != null)
+                .monthlyQuota(organization.getMonthlyQuota())
+                .monthlyPlanStartDate(organization.getMonthlyPlanStartDate())
+                .monthlyPlanEndDate(organization.getMonthlyPlanEndDate())
+                .loadedAt(LocalDateTime.now());
+        if (plan != null) {
+            builder.planName(plan.getName())
+                    .pricePerRequest(plan.getPricePerRequest())
+                    .pricePerMonth(plan.getPricePerMonth())
+                    .currency(plan.getCurrency())
+                    .planMonthlyQuota(plan.getMonthlyQuota());
+        }
+        OrganizationEntitlement entitlement = builder.build();
+
+        // Prix de repli en cas de dépassement, utile seulement pour un quota limité hors plan pay-per-request
+        if (entitlement.getMonthlyQuota() != null && !entitlement.isPayPerRequestPlan()) {
+            builder.payPerRequestFallbackPrice(findPayPerRequestPrice(organization.getMarketVersion()));
+            entitlement = builder.build();
+        }
+
+        log.debug("Droits chargés pour l'organisation {}: plan={}, quota={}", organizationId,
+                entitlement.getPricingPlanId(), entitlement.getMonthlyQuota());
+        return entitlement;
+    }
+
+    private BigDecimal findPayPerRequestPrice(String marketVersion) {
+        try {
+            return pricingPlanService.findPayPerRequestPlan(marketVersion)
+                    .map(PricingPlanDto::getPricePerRequest)
+                    .orElse(null);
+        } catch (Exception e) {
+            log.warn("Erreur lors de la recherche du plan Pay-per-Request pour le marché {}: {}", marketVersion, e.getMessage());
+            return null;
+        }
+    }
+
+    @Value
+    private static class QuotaWindow {
+        LocalDateTime start;
+        LocalDateTime end;
+    }
+
+    /**
+     * Résultat de la vérification d'accès d'une organisation à la recherche.
+     */
+    @Value
+    public static class SearchAccess {
+        OrganizationEntitlement entitlement;
+        boolean canMakeRequests;
+        boolean trialPermanentlyExpired;
+        /**
+         * État du quota (null si l'organisation ne peut pas effectuer de requêtes)
+         */
+        QuotaCheckResult quotaResult;
+    }
+}
@@ -0,0 +1,128 @@
+package com.muhend.backend.organization.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.organization.event.OrganizationMembershipChangedEvent;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.organization.repository.OrganizationUserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Résolution utilisateur Keycloak (sub du JWT) → organisation, en lecture seule et en cache.
+ *
+ * Les comptes organisation sont enregistrés comme membres à l'inscription
+ * (et rétroactivement par la migration V23) : la résolution n'écrit donc jamais en base.
+ * Le cache est local à l'instance ; en cas d'absence, la base de données fait foi.
+ * Il est invalidé par {@link OrganizationMembershipChangedEvent} après validation de la transaction,
+ * et sur les autres instances par {@link CacheInvalidationBus}.
+ */
+@Service
+@Slf4j
+public class OrganizationMembershipService {
+
+    private final OrganizationUserRepository organizationUserRepository;
+    private final OrganizationRepository organizationRepository;
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    /**
+     * Optional.empty() mémorise un utilisateur sans organisation, pour ne pas réinterroger la base à chaque requête
+     */
+    private final Cache<String, Optional<Long>> cache = Caffeine.newBuilder()
+            .maximumSize(50_000)
+            // Filet de sécurité : l'invalidation se fait normalement par événement
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+    public OrganizationMembershipService(OrganizationUserRepository organizationUserRepository,
+                                         OrganizationRepository organizationRepository,
+                                         CacheInvalidationBus cacheInvalidationBus) {
+        this.organizationUserRepository = organizationUserRepository;
+        this.organizationRepository = organizationRepository;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
+    @PostConstruct
+    void registerCache() {
+        cacheInvalidationBus.register(CacheInvalidationBus.MEMBERSHIPS_BY_USER, new CacheInvalidationBus.Handler() {
+            @Override
+            public void invalidate(String key) {
+                cache.invalidate(key);
+            }
+
+            @Override
+            public void invalidateAll() {
+                cache.invalidateAll();
+            }
+        });
+        cacheInvalidationBus.register(CacheInvalidationBus.MEMBERSHIPS_BY_ORGANIZATION, new CacheInvalidationBus.Handler() {
+            @Override
+            public void invalidate(String key) {
+                invalidateOrganization(Long.valueOf(key));
+            }
+
+            @Override
+            public void invalidateAll() {
+                cache.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Récupère l'ID de l'organisation d'un utilisateur (depuis le cache si possible).
+     *
+     * @return L'ID de l'organisation, ou Optional.empty() si l'utilisateur n'est associé à aucune organisation
+     */
+    public Optional<Long> findOrganizationId(String keycloakUserId) {
+        if (keycloakUserId == null) {
+            return Optional.empty();
+        }
+        return cache.get(keycloakUserId, this::loadOrganizationId);
+    }
+
+    /**
+     * Invalide les associations en cache d'un utilisateur ou de tous les membres d'une organisation,
+     * sur cette instance puis sur les autres.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMembershipChanged(OrganizationMembershipChangedEvent event) {
+        if (event.getKeycloakUserId() != null) {
+            cache.invalidate(event.getKeycloakUserId());
+            log.debug("Association de l'utilisateur {} invalidée", event.getKeycloakUserId());
+            cacheInvalidationBus.broadcast(CacheInvalidation.of(CacheInvalidationBus.MEMBERSHIPS_BY_USER, event.getKeycloakUserId()));
+        } else if (event.getOrganizationId() != null) {
+            invalidateOrganization(event.getOrganizationId());
+            cacheInvalidationBus.broadcast(CacheInvalidation.of(CacheInvalidationBus.MEMBERSHIPS_BY_ORGANIZATION, event.getOrganizationId()));
+        } else {
+            cache.invalidateAll();
+            cacheInvalidationBus.broadcast(CacheInvalidation.all(CacheInvalidationBus.MEMBERSHIPS_BY_USER));
+        }
+    }
+
+    private void invalidateOrganization(Long organizationId) {
+        cache.asMap().values().removeIf(cached -> cached.isPresent() && organizationId.equals(cached.get()));
+        log.debug("Associations de l'organisation {} invalidées", organizationId);
+    }
+
+    private Optional<Long> loadOrganizationId(String keycloakUserId) {
+        // Retourner la première organisation (on pourra améliorer cela plus tard)
+        List<Long> organizationIds = organizationUserRepository.findOrganizationIdsByKeycloakUserId(keycloakUserId);
+        if (!organizationIds.isEmpty()) {
+            return Optional.of(organizationIds.get(0));
+        }
+
+        // Compte organisation non encore enregistré comme membre (ne devrait plus arriver après V23)
+        Optional<Long> ownedOrganizationId = organizationRepository.findIdByKeycloakUserId(keycloakUserId);
+        ownedOrganizationId.ifPresent(id ->
+                log.warn("Compte organisation {} sans association organization_user (organisation {})", keycloakUserId, id));
+        return ownedOrganizationId;
+    }
+}
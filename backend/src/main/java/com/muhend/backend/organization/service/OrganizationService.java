@@ -1,6 +1,7 @@
 package com.muhend.backend.organization.service;
 
 import com.muhend.backend.auth.service.KeycloakAdminService;
+import com.muhend.backend.auth.service.KeycloakUserDirectory;
 import com.muhend.backend.email.service.EmailService;
 import com.muhend.backend.invoice.service.InvoiceService;
 import com.muhend.backend.organization.dto.CreateOrganizationRequest;
@@ -8,6 +9,8 @@ import com.muhend.backend.organization.dto.OrganizationDto;
 import com.muhend.backend.organization.dto.OrganizationUserDto;
 import com.muhend.backend.organization.dto.QuotaCheckResult;
 import com.muhend.backend.organization.dto.UpdateOrganizationRequest;
+import com.muhend.backend.organization.event.OrganizationEntitlementChangedEvent;
+import com.muhend.backend.organization.event.OrganizationMembershipChangedEvent;
 import com.muhend.backend.organization.exception.QuotaExceededException;
 import com.muhend.backend.organization.exception.UserNotAssociatedException;
 import com.muhend.backend.organization.model.Organization;
@@ -18,6 +21,7 @@ import com.muhend.backend.pricing.dto.PricingPlanDto;
 import com.muhend.backend.pricing.service.PricingPlanService;
 import com.muhend.backend.usage.repository.UsageLogRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -70,6 +74,8 @@ public class OrganizationService {
     private final PricingPlanService pricingPlanService;
     private final EmailService emailService;
     private final InvoiceService invoiceService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OrganizationMembershipService organizationMembershipService;
     
     public OrganizationService(OrganizationRepository organizationRepository,
                               OrganizationUserRepository organizationUserRepository,
@@ -77,7 +83,9 @@ public class OrganizationService {
                               KeycloakAdminService keycloakAdminService,
                               PricingPlanService pricingPlanService,
                               EmailService emailService,
-                              InvoiceService invoiceService) {
+                              InvoiceService invoiceService,
+                              ApplicationEventPublisher eventPublisher,
+                              OrganizationMembershipService organizationMembershipService) {
         this.organizationRepository = organizationRepository;
         this.organizationUserRepository = organizationUserRepository;
         this.usageLogRepository = usageLogRepository;
@@ -85,6 +93,8 @@ public class OrganizationService {
         this.pricingPlanService = pricingPlanService;
         this.emailService = emailService;
         this.invoiceService = invoiceService;
+        this.eventPublisher = eventPublisher;
+        this.organizationMembershipService = organizationMembershipService;
     }
     
     /**
@@ -140,6 +150,10 @@ public class OrganizationService {
         }
         
         organization = organizationRepository.save(organization);
+        if (organization.getKeycloakUserId() != null) {
+            // Compte propriétaire résolu vers cette organisation : une absence d'organisation en cache est périmée
+            publishMembershipChanged(OrganizationMembershipChangedEvent.ofUser(organization.getKeycloakUserId()));
+        }
         
         log.info("Organisation créée: id={}, name={}, email={}, pricingPlanId={}", 
             organization.getId(), organization.getName(), organization.getEmail(), organization.getPricingPlanId());
@@ -216,6 +230,7 @@ public class OrganizationService {
         }
         
         organization = organizationRepository.save(organization);
+        publishEntitlementChanged(id);
         log.info("Organisation mise à jour: id={}, name={}, email={}", organization.getId(), organization.getName(), organization.getEmail());
         return toDto(organization);
     }
@@ -247,9 +262,7 @@ public class OrganizationService {
     public List<OrganizationUserDto> getOrganizationUsersByKeycloakUserId(String keycloakUserId) {
         Organization organization = organizationRepository.findByKeycloakUserId(keycloakUserId)
                 .orElseThrow(() -> new IllegalArgumentException("Organisation non trouvée pour cet identifiant utilisateur."));
-        return organizationUserRepository.findByOrganizationId(organization.getId()).stream()
-                .map(this::toOrganizationUserDto)
-                .collect(Collectors.toList());
+        return toOrganizationUserDtos(organizationUserRepository.findByOrganizationId(organization.getId()));
     }
     
     /**
@@ -270,6 +283,7 @@ public class OrganizationService {
         organizationUser.setOrganization(organization);
         organizationUser.setKeycloakUserId(keycloakUserId);
         organizationUser = organizationUserRepository.save(organizationUser);
+        publishMembershipChanged(OrganizationMembershipChangedEvent.ofUser(keycloakUserId));
         
         log.info("Utilisateur {} ajouté à l'organisation {} ({})", 
                 keycloakUserId, organizationId, organization.getName());
@@ -287,6 +301,7 @@ public class OrganizationService {
         }
         
         organizationUserRepository.deleteByOrganizationIdAndKeycloakUserId(organizationId, keycloakUserId);
+        publishMembershipChanged(OrganizationMembershipChangedEvent.ofUser(keycloakUserId));
         log.info("Utilisateur {} retiré de l'organisation {}", keycloakUserId, organizationId);
     }
     
@@ -363,6 +378,7 @@ public class OrganizationService {
         
         // Retirer de l'organisation
         organizationUserRepository.deleteByOrganizationIdAndKeycloakUserId(organizationId, keycloakUserId);
+        publishMembershipChanged(OrganizationMembershipChangedEvent.ofUser(keycloakUserId));
         log.info("Collaborateur {} retiré de l'organisation {}", keycloakUserId, organizationId);
         
         // Supprimer le compte Keycloak (optionnel, selon la politique de l'application)
@@ -394,6 +410,7 @@ public class OrganizationService {
 
         organization.setEnabled(false);
         organization = organizationRepository.save(organization);
+        publishEntitlementChanged(organizationId);
 
         log.info("Organisation {} (ID: {}) désactivée par un administrateur", organization.getName(), organizationId);
 
@@ -417,6 +434,7 @@ public class OrganizationService {
 
         organization.setEnabled(true);
         organization = organizationRepository.save(organization);
+        publishEntitlementChanged(organizationId);
 
         log.info("Organisation {} (ID: {}) réactivée par un administrateur", organization.getName(), organizationId);
 
@@ -436,9 +454,7 @@ public class OrganizationService {
      * Récupère tous les utilisateurs d'une organisation.
      */
     public List<OrganizationUserDto> getUsersByOrganization(Long organizationId) {
-        return organizationUserRepository.findByOrganizationId(organizationId).stream()
-                .map(this::toOrganizationUserDto)
-                .collect(Collectors.toList());
+        return toOrganizationUserDtos(organizationUserRepository.findByOrganizationId(organizationId));
     }
     
     /**
@@ -451,34 +467,12 @@ public class OrganizationService {
      * @throws UserNotAssociatedException si l'utilisateur n'a pas d'organisation
      */
     public Long getOrganizationIdByUserId(String keycloakUserId) {
-        List<OrganizationUser> organizationUsers = organizationUserRepository.findByKeycloakUserId(keycloakUserId);
-        if (organizationUsers.isEmpty()) {
-            Optional<Organization> organizationByOwner = organizationRepository.findByKeycloakUserId(keycloakUserId);
-            if (organizationByOwner.isPresent()) {
-                Organization organization = organizationByOwner.get();
-                // S'assurer que le compte organisation est bien enregistré comme membre
-                if (!organizationUserRepository.existsByOrganizationIdAndKeycloakUserId(organization.getId(), keycloakUserId)) {
-                    OrganizationUser organizationUser = new OrganizationUser();
-                    organizationUser.setOrganization(organization);
-                    organizationUser.setKeycloakUserId(keycloakUserId);
-                    organizationUserRepository.save(organizationUser);
-                }
-                return organization.getId();
-            }
-            throw new UserNotAssociatedException(
-                    keycloakUserId,
-                    "L'utilisateur doit être associé à une organisation. Aucune organisation trouvée."
-            );
-        }
-        // Retourner la première organisation (on pourra améliorer cela plus tard)
-        Organization organization = organizationUsers.get(0).getOrganization();
-        if (organization == null) {
-            throw new UserNotAssociatedException(
-                keycloakUserId,
-                "L'organisation associée à l'utilisateur est invalide."
-            );
-        }
-        return organization.getId();
+        // Lecture seule : cache local, puis base de données en cas d'absence
+        return organizationMembershipService.findOrganizationId(keycloakUserId)
+                .orElseThrow(() -> new UserNotAssociatedException(
+                        keycloakUserId,
+                        "L'utilisateur doit être associé à une organisation. Aucune organisation trouvée."
+                ));
     }
     
     /**
@@ -540,6 +534,7 @@ public class OrganizationService {
                         organization.setMonthlyQuota(null);
                         organizationRepository.save(organization);
                         organizationRepository.flush();
+                        publishEntitlementChanged(organizationId);
                     }
                     return true;
                 }
@@ -698,14 +693,7 @@ public class OrganizationService {
             // Quota dépassé : chercher le plan Pay-per-Request correspondant au marché
             BigDecimal payPerRequestPrice = null;
             try {
-                List<PricingPlanDto> plans = pricingPlanService.getActivePricingPlans(marketVersion);
-                Optional<PricingPlanDto> payPerRequestPlan = plans.stream()
-                        .filter(p -> {
-                            boolean hasPricePerRequest = p.getPricePerRequest() != null && p.getPricePerRequest().compareTo(BigDecimal.ZERO) > 0;
-                            boolean hasPricePerMonth = p.getPricePerMonth() != null && p.getPricePerMonth().compareTo(BigDecimal.ZERO) > 0;
-                            return hasPricePerRequest && !hasPricePerMonth; // Plan pay-per-request
-                        })
-                        .findFirst();
+                Optional<PricingPlanDto> payPerRequestPlan = pricingPlanService.findPayPerRequestPlan(marketVersion);
                 
                 if (payPerRequestPlan.isPresent()) {
                     payPerRequestPrice = payPerRequestPlan.get().getPricePerRequest();
@@ -747,6 +735,7 @@ public class OrganizationService {
         
         organization.setMonthlyQuota(monthlyQuota);
         organization = organizationRepository.save(organization);
+        publishEntitlementChanged(organizationId);
         
         log.info("Quota mensuel mis à jour pour l'organisation {} (ID: {}): {} requêtes/mois", 
                 organization.getName(), organizationId, monthlyQuota != null ? monthlyQuota : "illimité");
@@ -887,6 +876,7 @@ public class OrganizationService {
         }
         
         organization = organizationRepository.save(organization);
+        publishEntitlementChanged(organizationId);
         log.info("💾 Plan tarifaire changé pour l'organisation {} (ID: {}): planId={}, nouveau quota={}", 
             organization.getName(), organizationId, pricingPlanId, organization.getMonthlyQuota());
         
@@ -1060,36 +1050,40 @@ public class OrganizationService {
         return dto;
     }
     
+    /**
+     * Convertit des OrganizationUser en DTO, avec une seule lecture groupée de l'annuaire Keycloak.
+     */
+    private List<OrganizationUserDto> toOrganizationUserDtos(List<OrganizationUser> organizationUsers) {
+        Map<String, KeycloakUserDirectory.KeycloakUser> keycloakUsers = keycloakAdminService.getUsers(
+                organizationUsers.stream().map(OrganizationUser::getKeycloakUserId).toList());
+        return organizationUsers.stream()
+                .map(ou -> toOrganizationUserDto(ou, keycloakUsers.get(ou.getKeycloakUserId())))
+                .collect(Collectors.toList());
+    }
+    
     /**
      * Convertit une OrganizationUser en DTO.
      */
     private OrganizationUserDto toOrganizationUserDto(OrganizationUser organizationUser) {
+        return toOrganizationUserDtos(List.of(organizationUser)).get(0);
+    }
+    
+    private OrganizationUserDto toOrganizationUserDto(OrganizationUser organizationUser,
+                                                      KeycloakUserDirectory.KeycloakUser keycloakUser) {
         OrganizationUserDto dto = new OrganizationUserDto();
         dto.setId(organizationUser.getId());
         dto.setOrganizationId(organizationUser.getOrganization().getId());
         dto.setOrganizationName(organizationUser.getOrganization().getName());
         dto.setKeycloakUserId(organizationUser.getKeycloakUserId());
         
-        // Récupérer le nom d'utilisateur depuis Keycloak
-        dto.setEmail(null);
-        dto.setFirstName(null);
-        dto.setLastName(null);
-        dto.setEnabled(null);
-        try {
-            var userRepresentation = keycloakAdminService.getUserRepresentation(organizationUser.getKeycloakUserId());
-            if (userRepresentation != null) {
-                dto.setUsername(userRepresentation.getUsername());
-                dto.setEmail(userRepresentation.getEmail());
-                dto.setFirstName(userRepresentation.getFirstName());
-                dto.setLastName(userRepresentation.getLastName());
-                dto.setEnabled(userRepresentation.isEnabled() != null && userRepresentation.isEnabled());
-            } else {
-                dto.setUsername("N/A");
-                dto.setEnabled(false);
-            }
-        } catch (Exception e) {
-            log.warn("Impossible de récupérer les informations utilisateur pour {}: {}", 
-                organizationUser.getKeycloakUserId(), e.getMessage());
+        // Informations utilisateur depuis l'annuaire Keycloak (null si introuvable ou Keycloak injoignable)
+        if (keycloakUser != null) {
+            dto.setUsername(keycloakUser.username());
+            dto.setEmail(keycloakUser.email());
+            dto.setFirstName(keycloakUser.firstName());
+            dto.setLastName(keycloakUser.lastName());
+            dto.setEnabled(keycloakUser.enabled());
+        } else {
             dto.setUsername("N/A");
             dto.setEnabled(false);
         }
@@ -1177,6 +1171,7 @@ public class OrganizationService {
             if (!Boolean.TRUE.equals(organization.getTrialPermanentlyExpired())) {
                 organization.setTrialPermanentlyExpired(true);
                 organizationRepository.save(organization);
+                publishEntitlementChanged(organization.getId());
                 log.info("Essai définitivement terminé pour l'organisation {}: quota atteint ({}/{})", 
                         organization.getId(), currentUsage, monthlyQuota);
             }
@@ -1209,6 +1204,38 @@ public class OrganizationService {
         return false;
     }
     
+    /**
+     * Marque l'essai gratuit d'une organisation comme définitivement terminé (quota de l'essai atteint).
+     * Utilisé par OrganizationEntitlementService, qui évalue l'essai à partir de l'instantané en cache.
+     *
+     * @param organizationId L'ID de l'organisation
+     */
+    @Transactional
+    public void markTrialPermanentlyExpired(Long organizationId) {
+        organizationRepository.findById(organizationId).ifPresent(organization -> {
+            if (!Boolean.TRUE.equals(organization.getTrialPermanentlyExpired())) {
+                organization.setTrialPermanentlyExpired(true);
+                organizationRepository.save(organization);
+                publishEntitlementChanged(organizationId);
+                log.info("Essai définitivement terminé pour l'organisation {}: quota atteint", organizationId);
+            }
+        });
+    }
+    
+    /**
+     * Publie l'invalidation des associations utilisateur → organisation en cache (effective après commit).
+     */
+    private void publishMembershipChanged(OrganizationMembershipChangedEvent event) {
+        eventPublisher.publishEvent(event);
+    }
+    
+    /**
+     * Publie l'invalidation des droits en cache d'une organisation (effective après commit).
+     */
+    public void publishEntitlementChanged(Long organizationId) {
+        eventPublisher.publishEvent(OrganizationEntitlementChangedEvent.of(organizationId));
+    }
+    
     /**
      * Vérifie si une organisation peut effectuer des requêtes.
      * Une organisation ne peut pas faire de requêtes si :
@@ -1398,6 +1425,7 @@ public class OrganizationService {
         organization.setPendingMonthlyPlanId(null);
         organization.setPendingMonthlyPlanChangeDate(null);
         organization = organizationRepository.save(organization);
+        publishEntitlementChanged(organizationId);
         
         log.info("Changement de plan mensuel annulé pour l'organisation {}", organizationId);
         return toDto(organization);
@@ -1418,6 +1446,7 @@ public class OrganizationService {
         organization.setPendingPayPerRequestPlanId(null);
         organization.setPendingPayPerRequestChangeDate(null);
         organization = organizationRepository.save(organization);
+        publishEntitlementChanged(organizationId);
         
         log.info("Changement vers Pay-per-Request annulé pour l'organisation {}", organizationId);
         return toDto(organization);
@@ -1,6 +1,8 @@
 package com.muhend.backend.payment.config;
 
+import com.stripe.Stripe;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,6 +12,7 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 @Getter
+@Slf4j
 public class StripeConfig {
     
     @Value("${stripe.secret-key:}")
@@ -24,6 +27,39 @@ public class StripeConfig {
     @Value("${stripe.currency:EUR}")
     private String currency;
     
+    /**
+     * URL de l'API Stripe (vide = API Stripe). Permet de pointer vers un bouchon local pour les tests.
+     */
+    @Value("${stripe.api-base:}")
+    private String apiBase;
+    
+    private volatile boolean clientInitialized;
+    
+    /**
+     * Initialise le SDK Stripe (clé secrète, URL de l'API) au premier appel à l'API plutôt qu'au démarrage.
+     * À appeler avant toute requête Stripe ; les appels suivants sont sans effet.
+     */
+    public void initializeClient() {
+        if (clientInitialized) {
+            return;
+        }
+        synchronized (this) {
+            if (clientInitialized) {
+                return;
+            }
+            if (apiBase != null && !apiBase.isEmpty()) {
+                Stripe.overrideApiBase(apiBase);
+            }
+            if (isConfigured()) {
+                Stripe.apiKey = secretKey;
+                log.info("Stripe initialisé avec succès");
+            } else {
+                log.warn("Stripe n'est pas configuré. Les clés API sont manquantes.");
+            }
+            clientInitialized = true;
+        }
+    }
+    
     /**
      * Vérifie si Stripe est configuré.
      */
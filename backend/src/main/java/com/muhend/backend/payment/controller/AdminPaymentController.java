@@ -3,7 +3,9 @@ package com.muhend.backend.payment.controller;
 import com.muhend.backend.payment.dto.PaymentDto;
 import com.muhend.backend.payment.dto.SubscriptionDto;
 import com.muhend.backend.payment.service.PaymentService;
+import com.muhend.backend.payment.model.StripeWebhookEvent;
 import com.muhend.backend.payment.service.StripeSyncService;
+import com.muhend.backend.payment.service.StripeWebhookInboxService;
 import com.muhend.backend.payment.service.SubscriptionService;
 import com.stripe.exception.StripeException;
 import io.swagger.v3.oas.annotations.Operation;
@@ -32,6 +34,7 @@ public class AdminPaymentController {
     private final PaymentService paymentService;
     private final SubscriptionService subscriptionService;
     private final StripeSyncService stripeSyncService;
+    private final StripeWebhookInboxService stripeWebhookInboxService;
     
     /**
      * Récupère tous les paiements (admin uniquement).
@@ -123,12 +126,14 @@ public class AdminPaymentController {
     @PostMapping("/sync/subscriptions")
     @Operation(
             summary = "Synchroniser tous les abonnements Stripe",
-            description = "Récupère tous les abonnements depuis Stripe et les synchronise avec la base de données locale. Nécessite le rôle ADMIN.",
+            description = "Synchronise avec la base de données locale les abonnements Stripe modifiés depuis la dernière synchronisation " +
+                    "(tous les abonnements si full=true ou si la dernière synchronisation est trop ancienne). Nécessite le rôle ADMIN.",
             security = @SecurityRequirement(name = "bearerAuth")
     )
-    public ResponseEntity<Map<String, Object>> syncAllSubscriptions() {
+    public ResponseEntity<Map<String, Object>> syncAllSubscriptions(
+            @RequestParam(defaultValue = "false") boolean full) {
         try {
-            int syncedCount = stripeSyncService.syncAllSubscriptions();
+            int syncedCount = stripeSyncService.syncAllSubscriptions(full);
             return ResponseEntity.ok(Map.of(
                     "message", "Synchronisation terminée",
                     "syncedCount", syncedCount
@@ -177,4 +182,54 @@ public class AdminPaymentController {
             ));
         }
     }
+    
+    /**
+     * Récupère les webhooks Stripe d'un statut, par défaut les événements abandonnés (admin uniquement).
+     */
+    @GetMapping("/webhook-events")
+    @Operation(
+            summary = "Récupérer les webhooks Stripe",
+            description = "Retourne les webhooks Stripe d'un statut (FAILED par défaut : événements abandonnés après le nombre maximal de tentatives), du plus récent au plus ancien. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<List<StripeWebhookEvent>> getWebhookEvents(
+            @RequestParam(defaultValue = "FAILED") StripeWebhookEvent.Status status,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(stripeWebhookInboxService.getEvents(status, limit));
+    }
+    
+    /**
+     * Nombre de webhooks Stripe par statut (admin uniquement).
+     */
+    @GetMapping("/webhook-events/stats")
+    @Operation(
+            summary = "Statistiques des webhooks Stripe",
+            description = "Retourne le nombre de webhooks Stripe en attente, en cours, traités et abandonnés. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<Map<String, Long>> getWebhookEventStats() {
+        return ResponseEntity.ok(stripeWebhookInboxService.getStats());
+    }
+    
+    /**
+     * Relance le traitement d'un webhook Stripe abandonné (admin uniquement).
+     */
+    @PostMapping("/webhook-events/{id}/retry")
+    @Operation(
+            summary = "Relancer un webhook Stripe abandonné",
+            description = "Remet en attente un webhook Stripe abandonné (FAILED) pour qu'il soit retraité. Nécessite le rôle ADMIN.",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<?> retryWebhookEvent(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(stripeWebhookInboxService.retry(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of(
+                    "error", "Relance impossible",
+                    "message", e.getMessage()
+            ));
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package com.muhend.backend.payment.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant l'avancement d'une synchronisation avec Stripe (point de reprise).
+ */
+@Entity
+@Table(name = "stripe_sync_state")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StripeSyncState {
+    
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;
+    
+    /**
+     * Horodatage Stripe (secondes Unix) jusqu'auquel les modifications ont été appliquées
+     */
+    @Column(name = "watermark")
+    private Long watermark;
+    
+    @Column(name = "last_full_sync_at")
+    private LocalDateTime lastFullSyncAt;
+    
+    @Column(name = "last_run_at")
+    private LocalDateTime lastRunAt;
+    
+    @Column(name = "last_synced_count", nullable = false)
+    private int lastSyncedCount;
+}
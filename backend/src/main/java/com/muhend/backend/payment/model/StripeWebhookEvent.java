@@ -0,0 +1,67 @@
+package com.muhend.backend.payment.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant un événement webhook Stripe reçu (file de réception).
+ */
+@Entity
+@Table(name = "stripe_webhook_event")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StripeWebhookEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "event_id", nullable = false, unique = true)
+    private String eventId;
+    
+    @Column(name = "event_type", nullable = false, length = 100)
+    private String eventType;
+    
+    @Column(name = "customer_id")
+    private String customerId;
+    
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.PENDING;
+    
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+    
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+    
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+    
+    @Column(name = "stripe_created_at", nullable = false)
+    private LocalDateTime stripeCreatedAt;
+    
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+    
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+    
+    public enum Status {
+        PENDING,     // À traiter (ou à retraiter après un échec temporaire)
+        PROCESSING,  // Réservé par une instance (jusqu'à locked_until)
+        PROCESSED,   // Traité
+        FAILED       // Abandonné après le nombre maximal de tentatives (à examiner puis relancer)
+    }
+}
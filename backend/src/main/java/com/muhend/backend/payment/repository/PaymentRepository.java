@@ -49,10 +49,15 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     List<Payment> findByOrganizationIdAndStatusOrderByCreatedAtDesc(Long organizationId, Payment.PaymentStatus status);
     
     /**
-     * Supprime tous les paiements d'une organisation.
+     * Supprime un lot de paiements (au plus {@code batchSize} lignes) d'une organisation.
+     * Les factures qui référencent ces paiements (invoice.payment_id) en sont détachées dans la même requête.
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize}, pour borner la durée de chaque transaction.
      */
     @Modifying
-    @Query("DELETE FROM Payment p WHERE p.organizationId = :organizationId")
-    int deleteByOrganizationId(@Param("organizationId") Long organizationId);
+    @Query(value = "WITH batch AS (SELECT id FROM payment WHERE organization_id = :organizationId LIMIT :batchSize), " +
+                   "detached AS (UPDATE invoice SET payment_id = NULL WHERE payment_id IN (SELECT id FROM batch)) " +
+                   "DELETE FROM payment WHERE id IN (SELECT id FROM batch)",
+           nativeQuery = true)
+    int deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
 }
 
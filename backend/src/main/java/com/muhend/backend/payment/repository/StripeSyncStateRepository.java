@@ -0,0 +1,9 @@
+package com.muhend.backend.payment.repository;
+
+import com.muhend.backend.payment.model.StripeSyncState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StripeSyncStateRepository extends JpaRepository<StripeSyncState, String> {
+}
@@ -0,0 +1,114 @@
+package com.muhend.backend.payment.repository;
+
+import com.muhend.backend.payment.model.StripeWebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StripeWebhookEventRepository extends JpaRepository<StripeWebhookEvent, Long> {
+
+    /**
+     * Enregistre un événement reçu, sauf s'il l'a déjà été (renvoi de Stripe).
+     *
+     * @return 1 si l'événement a été enregistré, 0 s'il était déjà connu
+     */
+    @Modifying
+    @Query(value = "INSERT INTO stripe_webhook_event " +
+                   "(event_id, event_type, customer_id, payload, status, attempts, next_attempt_at, stripe_created_at, received_at) " +
+                   "VALUES (:eventId, :eventType, :customerId, :payload, 'PENDING', 0, :receivedAt, :stripeCreatedAt, :receivedAt) " +
+                   "ON CONFLICT (event_id) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(
+            @Param("eventId") String eventId,
+            @Param("eventType") String eventType,
+            @Param("customerId") String customerId,
+            @Param("payload") String payload,
+            @Param("stripeCreatedAt") LocalDateTime stripeCreatedAt,
+            @Param("receivedAt") LocalDateTime receivedAt);
+
+    /**
+     * Réserve un lot d'événements à traiter (SKIP LOCKED : pas d'attente entre instances).
+     * Pour un client Stripe, seul l'événement en attente le plus ancien est réservé, et seulement si aucun
+     * autre événement de ce client n'est en cours : les événements d'un même client sont traités dans l'ordre,
+     * ceux de clients différents en parallèle. Un événement abandonné (FAILED) ne bloque plus son client.
+     *
+     * @return Les IDs des événements réservés
+     */
+    @Query(value = "UPDATE stripe_webhook_event SET status = 'PROCESSING', locked_until = :leaseUntil, attempts = attempts + 1 " +
+                   "WHERE id IN (SELECT e.id FROM stripe_webhook_event e " +
+                   "WHERE e.status = 'PENDING' AND e.next_attempt_at <= :now " +
+                   "AND (e.customer_id IS NULL OR NOT EXISTS (SELECT 1 FROM stripe_webhook_event p " +
+                   "WHERE p.customer_id = e.customer_id AND p.id <> e.id AND (p.status = 'PROCESSING' " +
+                   "OR (p.status = 'PENDING' AND (p.stripe_created_at < e.stripe_created_at " +
+                   "OR (p.stripe_created_at = e.stripe_created_at AND p.id < e.id)))))) " +
+                   "ORDER BY e.stripe_created_at, e.id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING id",
+           nativeQuery = true)
+    List<Long> claimBatch(
+            @Param("now") LocalDateTime now,
+            @Param("leaseUntil") LocalDateTime leaseUntil,
+            @Param("limit") int limit);
+
+    /**
+     * Remet en attente les événements dont le traitement a été interrompu (instance arrêtée avant la fin du bail).
+     */
+    @Modifying
+    @Query(value = "UPDATE stripe_webhook_event SET status = 'PENDING', locked_until = NULL " +
+                   "WHERE status = 'PROCESSING' AND locked_until < :now",
+           nativeQuery = true)
+    int releaseExpiredLeases(@Param("now") LocalDateTime now);
+
+    /**
+     * Marque un événement comme traité (dans la transaction de son traitement), s'il est toujours réservé
+     * pour cette tentative.
+     *
+     * @return 0 si le bail a expiré et l'événement a été remis en attente ou repris entre-temps
+     */
+    @Modifying
+    @Query(value = "UPDATE stripe_webhook_event SET status = 'PROCESSED', processed_at = :processedAt, " +
+                   "locked_until = NULL, last_error = NULL " +
+                   "WHERE id = :id AND status = 'PROCESSING' AND attempts = :attempt",
+           nativeQuery = true)
+    int markProcessed(@Param("id") Long id, @Param("attempt") int attempt, @Param("processedAt") LocalDateTime processedAt);
+
+    /**
+     * Enregistre l'échec d'une tentative (remise en attente ou abandon), si l'événement est toujours réservé
+     * pour cette tentative.
+     *
+     * @return 0 si le bail a expiré et l'événement a été remis en attente ou repris entre-temps
+     */
+    @Modifying
+    @Query(value = "UPDATE stripe_webhook_event SET status = :status, last_error = :lastError, " +
+                   "next_attempt_at = :nextAttemptAt, locked_until = NULL " +
+                   "WHERE id = :id AND status = 'PROCESSING' AND attempts = :attempt",
+           nativeQuery = true)
+    int completeAttempt(@Param("id") Long id, @Param("attempt") int attempt, @Param("status") String status,
+                        @Param("lastError") String lastError, @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    /**
+     * Événements d'un statut, du plus récent au plus ancien (file des événements abandonnés notamment).
+     */
+    List<StripeWebhookEvent> findByStatusOrderByReceivedAtDesc(StripeWebhookEvent.Status status, Pageable pageable);
+
+    /**
+     * Compte les événements par statut : [statut, nombre].
+     */
+    @Query("SELECT e.status, COUNT(e) FROM StripeWebhookEvent e GROUP BY e.status")
+    List<Object[]> countByStatus();
+
+    /**
+     * Supprime les événements traités avant la date donnée.
+     */
+    @Modifying
+    @Query("DELETE FROM StripeWebhookEvent e WHERE e.status = :status AND e.receivedAt < :before")
+    int deleteByStatusAndReceivedAtBefore(
+            @Param("status") StripeWebhookEvent.Status status,
+            @Param("before") LocalDateTime before);
+}
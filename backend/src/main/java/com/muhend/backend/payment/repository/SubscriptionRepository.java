@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,6 +29,11 @@ public interface SubscriptionRepository extends JpaRepository<Subscription, Long
      */
     Optional<Subscription> findByPaymentProviderSubscriptionId(String paymentProviderSubscriptionId);
     
+    /**
+     * Trouve les abonnements correspondant à un lot d'IDs chez le processeur de paiement.
+     */
+    List<Subscription> findByPaymentProviderSubscriptionIdIn(Collection<String> paymentProviderSubscriptionIds);
+    
     /**
      * Trouve tous les abonnements actifs.
      */
@@ -39,10 +45,13 @@ public interface SubscriptionRepository extends JpaRepository<Subscription, Long
     boolean existsByOrganizationIdAndStatus(Long organizationId, Subscription.SubscriptionStatus status);
     
     /**
-     * Supprime tous les abonnements d'une organisation.
+     * Supprime un lot de lignes (au plus {@code batchSize}) parmi les abonnements d'une organisation.
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize}, pour borner la durée de chaque transaction.
      */
     @Modifying
-    @Query("DELETE FROM Subscription s WHERE s.organizationId = :organizationId")
-    int deleteByOrganizationId(@Param("organizationId") Long organizationId);
+    @Query(value = "DELETE FROM subscription WHERE id IN (" +
+                   "SELECT id FROM subscription WHERE organization_id = :organizationId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
 }
 
@@ -10,7 +10,6 @@ import com.muhend.backend.payment.dto.CheckoutSessionResponse;
 import com.muhend.backend.payment.dto.CreateCheckoutSessionRequest;
 import com.muhend.backend.payment.repository.SubscriptionRepository;
 import com.muhend.backend.pricing.service.PricingPlanService;
-import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Customer;
 import com.stripe.model.checkout.Session;
@@ -54,14 +53,6 @@ public class StripeService {
         this.organizationRepository = organizationRepository;
         this.subscriptionRepository = subscriptionRepository;
         this.invoiceService = invoiceService;
-        
-        // Initialiser Stripe avec la clé secrète
-        if (stripeConfig.isConfigured()) {
-            Stripe.apiKey = stripeConfig.getSecretKey();
-            log.info("Stripe initialisé avec succès");
-        } else {
-            log.warn("Stripe n'est pas configuré. Les clés API sont manquantes.");
-        }
     }
     
     /**
@@ -74,6 +65,7 @@ public class StripeService {
         if (!stripeConfig.isConfigured()) {
             throw new IllegalStateException("Stripe n'est pas configuré. Veuillez configurer les clés API.");
         }
+        stripeConfig.initializeClient();
         
         // Récupérer le plan tarifaire
         var pricingPlan = pricingPlanService.getPricingPlanById(request.getPricingPlanId());
@@ -169,6 +161,7 @@ public class StripeService {
         if (!stripeConfig.isConfigured()) {
             throw new IllegalStateException("Stripe n'est pas configuré. Veuillez configurer les clés API.");
         }
+        stripeConfig.initializeClient();
         
         // Récupérer l'organisation et la facture
         var organization = organizationService.getOrganizationById(organizationId);
@@ -282,6 +275,7 @@ public class StripeService {
      * Récupère une session de checkout par son ID.
      */
     public Session getCheckoutSession(String sessionId) throws StripeException {
+        stripeConfig.initializeClient();
         return Session.retrieve(sessionId);
     }
     
@@ -302,6 +296,7 @@ public class StripeService {
         }
         
         // Récupérer l'abonnement Stripe
+        stripeConfig.initializeClient();
         com.stripe.model.Subscription stripeSubscription = 
                 com.stripe.model.Subscription.retrieve(subscription.getPaymentProviderSubscriptionId());
         
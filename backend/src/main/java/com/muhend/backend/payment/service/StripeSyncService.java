@@ -3,20 +3,38 @@ package com.muhend.backend.payment.service;
 import com.muhend.backend.organization.model.Organization;
 import com.muhend.backend.organization.repository.OrganizationRepository;
 import com.muhend.backend.payment.config.StripeConfig;
+import com.muhend.backend.payment.model.StripeSyncState;
 import com.muhend.backend.payment.model.Subscription;
+import com.muhend.backend.payment.repository.StripeSyncStateRepository;
 import com.muhend.backend.payment.repository.SubscriptionRepository;
-import com.stripe.Stripe;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.stripe.exception.EventDataObjectDeserializationException;
 import com.stripe.exception.StripeException;
-import com.stripe.model.Customer;
-import com.stripe.model.SubscriptionCollection;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.StripeObject;
+import com.stripe.param.EventListParams;
 import com.stripe.param.SubscriptionListParams;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Service pour synchroniser les données avec Stripe.
@@ -26,54 +44,230 @@ import java.time.ZoneId;
 @Slf4j
 public class StripeSyncService {
     
+    static final String SUBSCRIPTIONS_SYNC = "subscriptions";
+    private static final long PAGE_SIZE = 100L;
+    /**
+     * Stripe conserve les événements 30 jours : au-delà, une synchronisation complète est nécessaire
+     */
+    private static final long EVENT_RETENTION_SECONDS = Duration.ofDays(29).toSeconds();
+    
     private final StripeConfig stripeConfig;
     private final SubscriptionRepository subscriptionRepository;
     private final OrganizationRepository organizationRepository;
+    private final StripeSyncStateRepository stripeSyncStateRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${stripe.sync.batch-size:100}")
+    private int batchSize;
+    
+    /**
+     * Marge relue avant le point de reprise (événements horodatés à la seconde, légers décalages d'horloge)
+     */
+    @Value("${stripe.sync.overlap-seconds:300}")
+    private long overlapSeconds;
     
     public StripeSyncService(
             StripeConfig stripeConfig,
             SubscriptionRepository subscriptionRepository,
-            OrganizationRepository organizationRepository) {
+            OrganizationRepository organizationRepository,
+            StripeSyncStateRepository stripeSyncStateRepository,
+            PlatformTransactionManager transactionManager) {
         this.stripeConfig = stripeConfig;
         this.subscriptionRepository = subscriptionRepository;
         this.organizationRepository = organizationRepository;
-        
-        if (stripeConfig.isConfigured()) {
-            Stripe.apiKey = stripeConfig.getSecretKey();
-        }
+        this.stripeSyncStateRepository = stripeSyncStateRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
     
     /**
-     * Synchronise tous les abonnements Stripe avec la base de données locale.
-     * Récupère tous les abonnements actifs depuis Stripe et les met à jour dans la base de données.
+     * Synchronise les abonnements Stripe modifiés depuis la dernière synchronisation.
      */
-    @Transactional
     public int syncAllSubscriptions() throws StripeException {
+        return syncAllSubscriptions(false);
+    }
+    
+    /**
+     * Synchronise les abonnements Stripe avec la base de données locale.
+     *
+     * En mode incrémental, seuls les abonnements modifiés depuis le point de reprise sont relus, via les
+     * événements customer.subscription.* (le plus récent état de chaque abonnement est appliqué). Sans point
+     * de reprise, ou s'il est plus ancien que la rétention des événements Stripe, tous les abonnements sont
+     * relus (toutes les pages). Les mises à jour sont faites par lots, une transaction par lot ; le point
+     * de reprise n'avance que si la synchronisation est allée à son terme sans qu'aucun abonnement n'ait échoué
+     * (les abonnements en échec sont ainsi relus à la synchronisation suivante).
+     *
+     * @param full true pour relire tous les abonnements quel que soit le point de reprise
+     * @return Nombre d'abonnements synchronisés
+     */
+    public int syncAllSubscriptions(boolean full) throws StripeException {
         if (!stripeConfig.isConfigured()) {
             throw new IllegalStateException("Stripe n'est pas configuré");
         }
+        stripeConfig.initializeClient();
         
-        log.info("Démarrage de la synchronisation des abonnements Stripe...");
-        
-        int syncedCount = 0;
-        SubscriptionListParams params = SubscriptionListParams.builder()
-                .setLimit(100L) // Récupérer 100 abonnements à la fois
-                .build();
+        StripeSyncState state = stripeSyncStateRepository.findById(SUBSCRIPTIONS_SYNC)
+                .orElseGet(() -> {
+                    StripeSyncState newState = new StripeSyncState();
+                    newState.setName(SUBSCRIPTIONS_SYNC);
+                    return newState;
+                });
+        // Point de reprise de la prochaine synchronisation : les modifications postérieures au début de celle-ci
+        long runStartedAt = Instant.now().getEpochSecond();
+        boolean incremental = !full && state.getWatermark() != null
+                && runStartedAt - state.getWatermark() < EVENT_RETENTION_SECONDS;
         
-        SubscriptionCollection subscriptions = com.stripe.model.Subscription.list(params);
+        UpsertResult result;
+        try {
+            if (incremental) {
+                long since = state.getWatermark() - overlapSeconds;
+                log.info("Démarrage de la synchronisation incrémentale des abonnements Stripe (modifications depuis {})...",
+                        toLocalDateTime(since));
+                result = upsertInBatches(changedSubscriptionsSince(since));
+            } else {
+                log.info("Démarrage de la synchronisation complète des abonnements Stripe...");
+                SubscriptionListParams params = SubscriptionListParams.builder()
+                        .setStatus(SubscriptionListParams.Status.ALL)
+                        .setLimit(PAGE_SIZE)
+                        .build();
+                result = upsertInBatches(com.stripe.model.Subscription.list(params).autoPagingIterable());
+            }
+        } catch (RuntimeException e) {
+            // Erreur Stripe pendant la lecture d'une page suivante
+            if (e.getCause() instanceof StripeException stripeException) {
+                throw stripeException;
+            }
+            throw e;
+        }
         
-        for (com.stripe.model.Subscription stripeSubscription : subscriptions.getData()) {
-            try {
-                syncSubscription(stripeSubscription);
-                syncedCount++;
-            } catch (Exception e) {
-                log.error("Erreur lors de la synchronisation de l'abonnement Stripe: {}", 
-                        stripeSubscription.getId(), e);
+        LocalDateTime now = LocalDateTime.now();
+        state.setLastRunAt(now);
+        state.setLastSyncedCount(result.synced());
+        if (result.failed() == 0) {
+            state.setWatermark(runStartedAt);
+            if (!incremental) {
+                state.setLastFullSyncAt(now);
             }
         }
+        transactionTemplate.executeWithoutResult(status -> stripeSyncStateRepository.save(state));
         
-        log.info("Synchronisation terminée: {} abonnement(s) synchronisé(s)", syncedCount);
-        return syncedCount;
+        if (result.failed() > 0) {
+            log.error("Synchronisation {} terminée avec {} abonnement(s) en échec ({} synchronisé(s)) : " +
+                            "point de reprise conservé, ils seront relus à la prochaine synchronisation",
+                    incremental ? "incrémentale" : "complète", result.failed(), result.synced());
+        } else {
+            log.info("Synchronisation {} terminée: {} abonnement(s) synchronisé(s)",
+                    incremental ? "incrémentale" : "complète", result.synced());
+        }
+        return result.synced();
+    }
+    
+    /**
+     * Dernier état connu de chaque abonnement modifié depuis la date donnée (secondes Unix),
+     * d'après les événements Stripe (listés du plus récent au plus ancien). Aucun événement n'est ignoré :
+     * un abonnement illisible fait échouer la synchronisation, sans avancer le point de reprise.
+     */
+    private Collection<com.stripe.model.Subscription> changedSubscriptionsSince(long since) throws StripeException {
+        EventListParams params = EventListParams.builder()
+                .setType("customer.subscription.*")
+                .setCreated(EventListParams.Created.builder().setGte(since).build())
+                .setLimit(PAGE_SIZE)
+                .build();
+        Map<String, com.stripe.model.Subscription> latest = new LinkedHashMap<>();
+        for (Event event : Event.list(params).autoPagingIterable()) {
+            StripeObject object = event.getDataObjectDeserializer().getObject().orElse(null);
+            com.stripe.model.Subscription stripeSubscription = object instanceof com.stripe.model.Subscription subscription
+                    ? subscription
+                    : readSubscriptionWithOtherApiVersion(event);
+            latest.putIfAbsent(stripeSubscription.getId(), stripeSubscription);
+        }
+        return latest.values();
+    }
+    
+    /**
+     * Abonnement d'un événement émis avec une autre version d'API que celle du SDK : désérialisation non stricte,
+     * ou à défaut état actuel de l'abonnement relu chez Stripe.
+     *
+     * @throws IllegalStateException si l'événement ne contient pas d'abonnement identifiable
+     */
+    private com.stripe.model.Subscription readSubscriptionWithOtherApiVersion(Event event) throws StripeException {
+        EventDataObjectDeserializer deserializer = event.getDataObjectDeserializer();
+        try {
+            if (deserializer.deserializeUnsafe() instanceof com.stripe.model.Subscription subscription
+                    && subscription.getId() != null) {
+                log.debug("Événement Stripe {} (version d'API {}) lu sans vérification de version",
+                        event.getId(), event.getApiVersion());
+                return subscription;
+            }
+        } catch (EventDataObjectDeserializationException e) {
+            log.warn("Événement Stripe {} (version d'API {}) illisible, abonnement relu chez Stripe: {}",
+                    event.getId(), event.getApiVersion(), e.getMessage());
+        }
+        String subscriptionId = null;
+        if (deserializer.getRawJson() != null) {
+            JsonElement id = JsonParser.parseString(deserializer.getRawJson()).getAsJsonObject().get("id");
+            subscriptionId = id != null && !id.isJsonNull() ? id.getAsString() : null;
+        }
+        if (subscriptionId == null) {
+            throw new IllegalStateException("Événement Stripe " + event.getId() + " (" + event.getType()
+                    + ") sans abonnement identifiable");
+        }
+        return com.stripe.model.Subscription.retrieve(subscriptionId);
+    }
+    
+    /**
+     * Nombre d'abonnements enregistrés et d'abonnements en échec
+     */
+    private record UpsertResult(int synced, int failed) {
+        private UpsertResult plus(UpsertResult other) {
+            return new UpsertResult(synced + other.synced, failed + other.failed);
+        }
+    }
+    
+    /**
+     * Met à jour les abonnements par lots de batchSize, une transaction par lot.
+     */
+    private UpsertResult upsertInBatches(Iterable<com.stripe.model.Subscription> stripeSubscriptions) {
+        UpsertResult result = new UpsertResult(0, 0);
+        List<com.stripe.model.Subscription> batch = new ArrayList<>();
+        for (com.stripe.model.Subscription stripeSubscription : stripeSubscriptions) {
+            batch.add(stripeSubscription);
+            if (batch.size() >= Math.max(1, batchSize)) {
+                result = result.plus(upsertBatch(batch));
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            result = result.plus(upsertBatch(batch));
+        }
+        return result;
+    }
+    
+    private UpsertResult upsertBatch(List<com.stripe.model.Subscription> batch) {
+        UpsertResult result = transactionTemplate.execute(status -> {
+            Map<String, Subscription> existing = subscriptionRepository.findByPaymentProviderSubscriptionIdIn(
+                            batch.stream().map(com.stripe.model.Subscription::getId).toList()).stream()
+                    .collect(Collectors.toMap(Subscription::getPaymentProviderSubscriptionId, Function.identity(), (a, b) -> a));
+            Set<Long> organizationsBeingDeleted = organizationRepository.findIdsWithPendingDeletion();
+            List<Subscription> toSave = new ArrayList<>();
+            int failed = 0;
+            for (com.stripe.model.Subscription stripeSubscription : batch) {
+                try {
+                    Subscription subscription = applyStripeSubscription(
+                            existing.get(stripeSubscription.getId()), stripeSubscription, organizationsBeingDeleted);
+                    if (subscription != null) {
+                        toSave.add(subscription);
+                    }
+                } catch (Exception e) {
+                    log.error("Erreur lors de la synchronisation de l'abonnement Stripe: {}",
+                            stripeSubscription.getId(), e);
+                    failed++;
+                }
+            }
+            subscriptionRepository.saveAll(toSave);
+            return new UpsertResult(toSave.size(), failed);
+        });
+        log.debug("Lot de {} abonnement(s) Stripe synchronisé", batch.size());
+        return result != null ? result : new UpsertResult(0, 0);
     }
     
     /**
@@ -81,30 +275,50 @@ public class StripeSyncService {
      */
     @Transactional
     public Subscription syncSubscription(com.stripe.model.Subscription stripeSubscription) {
+        Subscription subscription = applyStripeSubscription(
+                subscriptionRepository.findByPaymentProviderSubscriptionId(stripeSubscription.getId()).orElse(null),
+                stripeSubscription, organizationRepository.findIdsWithPendingDeletion());
+        if (subscription == null) {
+            return null;
+        }
+        subscription = subscriptionRepository.save(subscription);
+        log.debug("Abonnement synchronisé: id={}, organizationId={}", subscription.getId(), subscription.getOrganizationId());
+        return subscription;
+    }
+    
+    /**
+     * Applique l'état d'un abonnement Stripe à l'abonnement local (créé s'il n'existe pas).
+     *
+     * @param organizationsBeingDeleted Organisations en cours de suppression, dont les abonnements sont ignorés
+     * @return L'abonnement à enregistrer, ou null si l'abonnement Stripe n'est pas rattaché à une organisation
+     *         (ou à une organisation en cours de suppression)
+     */
+    private Subscription applyStripeSubscription(Subscription existing, com.stripe.model.Subscription stripeSubscription,
+                                                 Set<Long> organizationsBeingDeleted) {
         // Récupérer les métadonnées
-        String organizationIdStr = stripeSubscription.getMetadata().get("organization_id");
-        String pricingPlanIdStr = stripeSubscription.getMetadata().get("pricing_plan_id");
+        Map<String, String> metadata = stripeSubscription.getMetadata() != null ? stripeSubscription.getMetadata() : Map.of();
+        String organizationIdStr = metadata.get("organization_id");
+        String pricingPlanIdStr = metadata.get("pricing_plan_id");
         
-        if (organizationIdStr == null) {
+        if (existing == null && organizationIdStr == null) {
             log.warn("Abonnement Stripe sans organization_id dans les métadonnées: {}", stripeSubscription.getId());
             return null;
         }
+        Long organizationId = existing != null ? existing.getOrganizationId() : Long.valueOf(organizationIdStr);
+        if (organizationsBeingDeleted.contains(organizationId)) {
+            log.info("Abonnement Stripe {} ignoré: organisation {} en cours de suppression", stripeSubscription.getId(), organizationId);
+            return null;
+        }
         
-        Long organizationId = Long.parseLong(organizationIdStr);
-        Long pricingPlanId = pricingPlanIdStr != null ? Long.parseLong(pricingPlanIdStr) : null;
-        
-        // Vérifier si l'abonnement existe déjà
-        Subscription subscription = subscriptionRepository
-                .findByPaymentProviderSubscriptionId(stripeSubscription.getId())
-                .orElseGet(() -> {
-                    Subscription newSubscription = new Subscription();
-                    newSubscription.setOrganizationId(organizationId);
-                    newSubscription.setPricingPlanId(pricingPlanId);
-                    newSubscription.setPaymentProvider("stripe");
-                    newSubscription.setPaymentProviderSubscriptionId(stripeSubscription.getId());
-                    newSubscription.setPaymentProviderCustomerId(stripeSubscription.getCustomer());
-                    return newSubscription;
-                });
+        Subscription subscription = existing;
+        if (subscription == null) {
+            subscription = new Subscription();
+            subscription.setOrganizationId(organizationId);
+            subscription.setPricingPlanId(pricingPlanIdStr != null ? Long.parseLong(pricingPlanIdStr) : null);
+            subscription.setPaymentProvider("stripe");
+            subscription.setPaymentProviderSubscriptionId(stripeSubscription.getId());
+            subscription.setPaymentProviderCustomerId(stripeSubscription.getCustomer());
+        }
         
         // Mettre à jour les informations
         subscription.setStatus(mapStripeSubscriptionStatus(stripeSubscription.getStatus()));
@@ -122,21 +336,17 @@ public class StripeSyncService {
         }
         
         subscription.setCancelAtPeriodEnd(stripeSubscription.getCancelAtPeriodEnd() != null && stripeSubscription.getCancelAtPeriodEnd());
-        
-        subscription = subscriptionRepository.save(subscription);
-        log.debug("Abonnement synchronisé: id={}, organizationId={}", subscription.getId(), organizationId);
-        
         return subscription;
     }
     
     /**
-     * Synchronise les abonnements d'une organisation spécifique.
+     * Synchronise les abonnements d'une organisation spécifique (toutes les pages).
      */
-    @Transactional
     public int syncOrganizationSubscriptions(Long organizationId) throws StripeException {
         if (!stripeConfig.isConfigured()) {
             throw new IllegalStateException("Stripe n'est pas configuré");
         }
+        stripeConfig.initializeClient();
         
         Organization organization = organizationRepository.findById(organizationId)
                 .orElseThrow(() -> new IllegalArgumentException("Organisation introuvable: " + organizationId));
@@ -146,32 +356,19 @@ public class StripeSyncService {
             return 0;
         }
         
-        // Récupérer le client Stripe
-        Customer customer = Customer.retrieve(organization.getStripeCustomerId());
-        
         // Récupérer les abonnements du client
         SubscriptionListParams params = SubscriptionListParams.builder()
-                .setCustomer(customer.getId())
-                .setLimit(100L)
+                .setCustomer(organization.getStripeCustomerId())
+                .setStatus(SubscriptionListParams.Status.ALL)
+                .setLimit(PAGE_SIZE)
                 .build();
         
-        SubscriptionCollection subscriptions = com.stripe.model.Subscription.list(params);
-        
-        int syncedCount = 0;
-        for (com.stripe.model.Subscription stripeSubscription : subscriptions.getData()) {
-            try {
-                syncSubscription(stripeSubscription);
-                syncedCount++;
-            } catch (Exception e) {
-                log.error("Erreur lors de la synchronisation de l'abonnement: {}", 
-                        stripeSubscription.getId(), e);
-            }
-        }
+        UpsertResult result = upsertInBatches(com.stripe.model.Subscription.list(params).autoPagingIterable());
         
-        log.info("Synchronisation terminée pour l'organisation {}: {} abonnement(s) synchronisé(s)", 
-                organizationId, syncedCount);
+        log.info("Synchronisation terminée pour l'organisation {}: {} abonnement(s) synchronisé(s), {} en échec", 
+                organizationId, result.synced(), result.failed());
         
-        return syncedCount;
+        return result.synced();
     }
     
     /**
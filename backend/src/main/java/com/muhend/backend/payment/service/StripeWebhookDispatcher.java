@@ -0,0 +1,246 @@
+package com.muhend.backend.payment.service;
+
+import com.muhend.backend.payment.model.StripeWebhookEvent;
+import com.muhend.backend.payment.repository.StripeWebhookEventRepository;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import com.stripe.net.ApiResource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Traitement en arrière-plan des webhooks Stripe enregistrés dans la file de réception.
+ *
+ * Les événements sont réservés par lots (bail en base, compatible avec plusieurs instances) : au plus un
+ * événement par client Stripe, le plus ancien, si bien que les événements d'un même client sont traités
+ * dans l'ordre et ceux de clients différents en parallèle sur un pool borné. Le traitement métier et le
+ * passage à PROCESSED sont validés dans la même transaction : un événement n'a d'effet qu'une fois.
+ * Un événement en échec est retenté avec un délai exponentiel (son client attend), puis abandonné (FAILED).
+ *
+ * La fin d'un traitement (PROCESSED, échec) n'est enregistrée que si l'événement est toujours réservé
+ * pour la même tentative : si son bail a expiré et qu'il a été repris entre-temps, le traitement tardif est annulé
+ * (sa transaction n'est pas validée) et n'a donc aucun effet. La scrutation ne fait que confier le traitement
+ * au thread de coordination, sans occuper le planificateur Spring.
+ */
+@Service
+@Slf4j
+public class StripeWebhookDispatcher {
+
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 1000;
+
+    private final StripeWebhookEventRepository stripeWebhookEventRepository;
+    private final StripeWebhookEventHandler stripeWebhookEventHandler;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile boolean wakeUp;
+
+    @Value("${stripe.webhook-inbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${stripe.webhook-inbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${stripe.webhook-inbox.initial-backoff-ms:30000}")
+    private long initialBackoffMs;
+
+    @Value("${stripe.webhook-inbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    /**
+     * Durée de réservation d'un événement : au-delà, un traitement non confirmé (instance arrêtée) est repris
+     */
+    @Value("${stripe.webhook-inbox.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${stripe.webhook-inbox.retention-days:30}")
+    private int retentionDays;
+
+    public StripeWebhookDispatcher(StripeWebhookEventRepository stripeWebhookEventRepository,
+                                   StripeWebhookEventHandler stripeWebhookEventHandler,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${stripe.webhook-inbox.workers:4}") int workerCount) {
+        this.stripeWebhookEventRepository = stripeWebhookEventRepository;
+        this.stripeWebhookEventHandler = stripeWebhookEventHandler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.coordinator = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("stripe-webhook").factory());
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount),
+                Thread.ofPlatform().name("stripe-webhook-", 1).factory());
+    }
+
+    /**
+     * Demande un traitement immédiat (après la réception d'un webhook), sans attendre la prochaine scrutation.
+     */
+    public void trigger() {
+        wakeUp = true;
+        dispatch();
+    }
+
+    /**
+     * Lance le traitement des événements en attente sur le thread de coordination (sans effet s'il est en cours).
+     */
+    @Scheduled(fixedDelayString = "${stripe.webhook-inbox.poll-interval-ms:5000}")
+    public void dispatch() {
+        if (!running.get()) {
+            try {
+                coordinator.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Arrêt en cours : la prochaine instance reprendra l'événement
+            }
+        }
+    }
+
+    /**
+     * Traite les événements en attente, lot par lot, jusqu'à épuisement de la file.
+     */
+    void drain() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            do {
+                wakeUp = false;
+                while (dispatchBatch() > 0) {
+                    // Des événements d'un même client peuvent être devenus disponibles
+                }
+            } while (wakeUp);
+        } catch (Exception e) {
+            log.error("Erreur lors du traitement des webhooks Stripe en attente: {}", e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Réserve un lot d'événements et les traite en parallèle (au plus un par client).
+     *
+     * @return Nombre d'événements traités
+     */
+    int dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<StripeWebhookEvent> batch = transactionTemplate.execute(status -> {
+            int released = stripeWebhookEventRepository.releaseExpiredLeases(now);
+            if (released > 0) {
+                log.warn("{} webhook(s) Stripe dont le traitement a été interrompu remis en attente", released);
+            }
+            List<Long> ids = stripeWebhookEventRepository.claimBatch(now, now.plusNanos(leaseMs * 1_000_000), batchSize);
+            return ids.isEmpty() ? List.<StripeWebhookEvent>of() : stripeWebhookEventRepository.findAllById(ids).stream()
+                    .sorted(Comparator.comparing(StripeWebhookEvent::getStripeCreatedAt).thenComparing(StripeWebhookEvent::getId))
+                    .toList();
+        });
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        List<CompletableFuture<Void>> processing = batch.stream()
+                .map(event -> CompletableFuture.runAsync(() -> process(event), workers))
+                .toList();
+        CompletableFuture.allOf(processing.toArray(CompletableFuture[]::new)).join();
+        return batch.size();
+    }
+
+    void process(StripeWebhookEvent webhookEvent) {
+        long start = System.currentTimeMillis();
+        try {
+            Event event = StripeObject.deserializeStripeObject(
+                    webhookEvent.getPayload(), Event.class, ApiResource.getGlobalResponseGetter());
+            transactionTemplate.executeWithoutResult(status -> {
+                stripeWebhookEventHandler.handle(event);
+                if (stripeWebhookEventRepository.markProcessed(
+                        webhookEvent.getId(), webhookEvent.getAttempts(), LocalDateTime.now()) == 0) {
+                    // Annule les effets du traitement : l'événement est traité par la tentative qui l'a repris
+                    throw new LeaseLostException();
+                }
+            });
+            log.info("Webhook Stripe traité: type={}, id={} en {} ms",
+                    webhookEvent.getEventType(), webhookEvent.getEventId(), System.currentTimeMillis() - start);
+        } catch (LeaseLostException e) {
+            log.warn("Webhook Stripe {} ({}) repris après l'expiration de son bail (tentative {}): traitement annulé",
+                    webhookEvent.getEventId(), webhookEvent.getEventType(), webhookEvent.getAttempts());
+        } catch (Exception e) {
+            markFailed(webhookEvent, e);
+        }
+    }
+
+    private void markFailed(StripeWebhookEvent webhookEvent, Exception failure) {
+        String error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getName();
+        webhookEvent.setLastError(error.length() > ERROR_MESSAGE_MAX_LENGTH ? error.substring(0, ERROR_MESSAGE_MAX_LENGTH) : error);
+        webhookEvent.setLockedUntil(null);
+        if (webhookEvent.getAttempts() >= maxAttempts) {
+            webhookEvent.setStatus(StripeWebhookEvent.Status.FAILED);
+            log.error("Webhook Stripe {} ({}) abandonné après {} tentative(s): {}",
+                    webhookEvent.getEventId(), webhookEvent.getEventType(), webhookEvent.getAttempts(), error, failure);
+        } else {
+            webhookEvent.setStatus(StripeWebhookEvent.Status.PENDING);
+            webhookEvent.setNextAttemptAt(LocalDateTime.now().plusNanos(backoffMs(webhookEvent.getAttempts()) * 1_000_000));
+            log.warn("Échec du traitement du webhook Stripe {} ({}) (tentative {}), nouvelle tentative à {}: {}",
+                    webhookEvent.getEventId(), webhookEvent.getEventType(), webhookEvent.getAttempts(),
+                    webhookEvent.getNextAttemptAt(), error);
+        }
+        try {
+            Integer updated = transactionTemplate.execute(status -> stripeWebhookEventRepository.completeAttempt(
+                    webhookEvent.getId(), webhookEvent.getAttempts(), webhookEvent.getStatus().name(),
+                    webhookEvent.getLastError(), webhookEvent.getNextAttemptAt()));
+            if (updated == null || updated == 0) {
+                log.warn("Échec du webhook Stripe {} non enregistré: repris après l'expiration de son bail",
+                        webhookEvent.getEventId());
+            }
+        } catch (Exception e) {
+            // L'événement reste réservé : il sera repris à la fin du bail
+            log.error("Impossible d'enregistrer l'échec du webhook Stripe {}: {}", webhookEvent.getEventId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Délai avant la tentative suivante : doublé à chaque échec, borné par maxBackoffMs.
+     */
+    long backoffMs(int attempts) {
+        int exponent = Math.max(0, Math.min(attempts - 1, 30));
+        return Math.min(maxBackoffMs, initialBackoffMs * (1L << exponent));
+    }
+
+    /**
+     * Supprime les événements traités depuis plus de retentionDays jours.
+     * Tâche planifiée chaque nuit à 3h50 (voir ScheduledJobs).
+     *
+     * @return Nombre d'événements supprimés
+     */
+    public int purgeProcessedEvents() {
+        Integer deleted = transactionTemplate.execute(status -> stripeWebhookEventRepository.deleteByStatusAndReceivedAtBefore(
+                StripeWebhookEvent.Status.PROCESSED, LocalDateTime.now().minusDays(retentionDays)));
+        if (deleted != null && deleted > 0) {
+            log.info("{} webhook(s) Stripe traité(s) supprimé(s) de la file de réception", deleted);
+        }
+        return deleted != null ? deleted : 0;
+    }
+
+    /**
+     * Bail de l'événement expiré et repris par une autre tentative pendant son traitement
+     */
+    private static final class LeaseLostException extends RuntimeException {
+        private LeaseLostException() {
+            super(null, null, false, false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+}
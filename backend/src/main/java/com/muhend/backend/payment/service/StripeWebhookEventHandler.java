@@ -0,0 +1,469 @@
+package com.muhend.backend.payment.service;
+
+import com.muhend.backend.invoice.model.Invoice;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.notification.event.BadgeCounterChangedEvent;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.payment.model.Payment;
+import com.muhend.backend.payment.model.Subscription;
+import com.muhend.backend.payment.repository.PaymentRepository;
+import com.muhend.backend.payment.repository.SubscriptionRepository;
+import com.stripe.model.Event;
+import com.stripe.model.PaymentIntent;
+import com.stripe.model.checkout.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+
+/**
+ * Traitement métier des événements webhook Stripe (abonnements, paiements, factures).
+ * Appelé par StripeWebhookDispatcher, dans la transaction qui marque l'événement comme traité.
+ */
+@Service
+@Slf4j
+public class StripeWebhookEventHandler {
+    
+    private final SubscriptionRepository subscriptionRepository;
+    private final PaymentRepository paymentRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final OrganizationRepository organizationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    public StripeWebhookEventHandler(
+            SubscriptionRepository subscriptionRepository,
+            PaymentRepository paymentRepository,
+            InvoiceRepository invoiceRepository,
+            OrganizationRepository organizationRepository,
+            ApplicationEventPublisher eventPublisher) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.paymentRepository = paymentRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.organizationRepository = organizationRepository;
+        this.eventPublisher = eventPublisher;
+    }
+    
+    /**
+     * Traite un événement Stripe selon son type (les types non gérés sont ignorés).
+     */
+    public void handle(Event event) {
+        switch (event.getType()) {
+            case "checkout.session.completed":
+                handleCheckoutSessionCompleted(event);
+                break;
+            case "customer.subscription.created":
+            case "customer.subscription.updated":
+                handleSubscriptionUpdated(event);
+                break;
+            case "customer.subscription.deleted":
+                handleSubscriptionDeleted(event);
+                break;
+            case "invoice.payment_succeeded":
+                handleInvoicePaymentSucceeded(event);
+                break;
+            case "invoice.payment_failed":
+                handleInvoicePaymentFailed(event);
+                break;
+            case "payment_intent.succeeded":
+                handlePaymentIntentSucceeded(event);
+                break;
+            case "payment_intent.payment_failed":
+                handlePaymentIntentFailed(event);
+                break;
+            default:
+                log.debug("Événement Stripe non géré: {}", event.getType());
+        }
+    }
+    
+    /**
+     * Gère l'événement checkout.session.completed.
+     * Se déclenche quand un utilisateur complète le checkout.
+     */
+    private void handleCheckoutSessionCompleted(Event event) {
+        Session session = (Session) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (session == null) {
+            log.warn("Session null dans checkout.session.completed");
+            return;
+        }
+        
+        log.info("Checkout session complétée: sessionId={}, customerId={}, subscriptionId={}",
+                session.getId(), session.getCustomer(), session.getSubscription());
+        
+        // Si c'est un abonnement, il sera créé/mis à jour par l'événement customer.subscription.created/updated
+        // Si c'est un paiement ponctuel, il sera géré par payment_intent.succeeded
+    }
+    
+    /**
+     * Gère les événements customer.subscription.created et customer.subscription.updated.
+     */
+    private void handleSubscriptionUpdated(Event event) {
+        com.stripe.model.Subscription stripeSubscription = 
+                (com.stripe.model.Subscription) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (stripeSubscription == null) {
+            log.warn("Subscription null dans customer.subscription.updated");
+            return;
+        }
+        
+        log.info("Abonnement Stripe créé/mis à jour: subscriptionId={}, status={}",
+                stripeSubscription.getId(), stripeSubscription.getStatus());
+        
+        // Récupérer les métadonnées
+        Map<String, String> metadata = stripeSubscription.getMetadata();
+        String organizationIdStr = metadata.get("organization_id");
+        String pricingPlanIdStr = metadata.get("pricing_plan_id");
+        
+        if (organizationIdStr == null || pricingPlanIdStr == null) {
+            log.warn("Métadonnées manquantes dans l'abonnement Stripe: organizationId={}, pricingPlanId={}",
+                    organizationIdStr, pricingPlanIdStr);
+            return;
+        }
+        
+        Long organizationId = Long.parseLong(organizationIdStr);
+        Long pricingPlanId = Long.parseLong(pricingPlanIdStr);
+        if (isBeingDeleted(organizationId, event)) {
+            return;
+        }
+        
+        // Vérifier si l'abonnement existe déjà
+        Subscription subscription = subscriptionRepository
+                .findByPaymentProviderSubscriptionId(stripeSubscription.getId())
+                .orElse(null);
+        
+        if (subscription == null) {
+            // Créer un nouvel abonnement
+            subscription = new Subscription();
+            subscription.setOrganizationId(organizationId);
+            subscription.setPricingPlanId(pricingPlanId);
+            subscription.setPaymentProvider("stripe");
+            subscription.setPaymentProviderSubscriptionId(stripeSubscription.getId());
+            subscription.setPaymentProviderCustomerId(stripeSubscription.getCustomer());
+        }
+        
+        // Mettre à jour les informations
+        subscription.setStatus(mapStripeSubscriptionStatus(stripeSubscription.getStatus()));
+        subscription.setCurrentPeriodStart(toLocalDateTime(stripeSubscription.getCurrentPeriodStart()));
+        subscription.setCurrentPeriodEnd(toLocalDateTime(stripeSubscription.getCurrentPeriodEnd()));
+        
+        if (stripeSubscription.getTrialEnd() != null) {
+            subscription.setTrialStart(toLocalDateTime(stripeSubscription.getTrialStart()));
+            subscription.setTrialEnd(toLocalDateTime(stripeSubscription.getTrialEnd()));
+        }
+        
+        if (stripeSubscription.getCanceledAt() != null) {
+            subscription.setCanceledAt(toLocalDateTime(stripeSubscription.getCanceledAt()));
+        }
+        
+        subscription.setCancelAtPeriodEnd(stripeSubscription.getCancelAtPeriodEnd() != null && stripeSubscription.getCancelAtPeriodEnd());
+        
+        subscriptionRepository.save(subscription);
+        log.info("Abonnement sauvegardé: id={}, organizationId={}", subscription.getId(), organizationId);
+    }
+    
+    /**
+     * Gère l'événement customer.subscription.deleted.
+     */
+    private void handleSubscriptionDeleted(Event event) {
+        com.stripe.model.Subscription stripeSubscription = 
+                (com.stripe.model.Subscription) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (stripeSubscription == null) {
+            return;
+        }
+        
+        subscriptionRepository.findByPaymentProviderSubscriptionId(stripeSubscription.getId())
+                .ifPresent(subscription -> {
+                    if (isBeingDeleted(subscription.getOrganizationId(), event)) {
+                        return;
+                    }
+                    subscription.setStatus(Subscription.SubscriptionStatus.CANCELED);
+                    subscription.setCanceledAt(LocalDateTime.now());
+                    subscriptionRepository.save(subscription);
+                    log.info("Abonnement annulé: id={}", subscription.getId());
+                });
+    }
+    
+    /**
+     * Gère l'événement invoice.payment_succeeded.
+     */
+    private void handleInvoicePaymentSucceeded(Event event) {
+        com.stripe.model.Invoice stripeInvoice = 
+                (com.stripe.model.Invoice) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (stripeInvoice == null) {
+            return;
+        }
+        
+        log.info("Paiement de facture réussi: invoiceId={}, amount={}, subscriptionId={}",
+                stripeInvoice.getId(), stripeInvoice.getAmountPaid(), stripeInvoice.getSubscription());
+        
+        // Récupérer l'organisation via le customer
+        String customerId = stripeInvoice.getCustomer();
+        Organization organization = organizationRepository.findByStripeCustomerId(customerId)
+                .orElse(null);
+        
+        if (organization == null) {
+            log.warn("Organisation introuvable pour le client Stripe: {}", customerId);
+            return;
+        }
+        if (isBeingDeleted(organization.getId(), event)) {
+            return;
+        }
+        
+        // Récupérer ou créer le paiement
+        Payment payment = paymentRepository
+                .findByPaymentProviderPaymentId(stripeInvoice.getCharge())
+                .orElseGet(() -> {
+                    Payment newPayment = new Payment();
+                    newPayment.setOrganizationId(organization.getId());
+                    newPayment.setPaymentProvider("stripe");
+                    newPayment.setCurrency(stripeInvoice.getCurrency().toUpperCase());
+                    return newPayment;
+                });
+        
+        // Mettre à jour les informations du paiement
+        payment.setAmount(BigDecimal.valueOf(stripeInvoice.getAmountPaid()).divide(BigDecimal.valueOf(100))); // Convertir de centimes
+        payment.setStatus(Payment.PaymentStatus.SUCCEEDED);
+        payment.setPaymentProviderPaymentId(stripeInvoice.getCharge() != null ? stripeInvoice.getCharge() : "");
+        payment.setPaymentProviderPaymentIntentId(stripeInvoice.getPaymentIntent() != null ? stripeInvoice.getPaymentIntent() : "");
+        payment.setDescription("Paiement d'abonnement - " + stripeInvoice.getNumber());
+        payment.setInvoiceUrl(stripeInvoice.getHostedInvoiceUrl());
+        // Note: getReceiptUrl() n'existe pas dans l'API Stripe Invoice, on utilise hostedInvoiceUrl à la place
+        payment.setReceiptUrl(stripeInvoice.getHostedInvoiceUrl());
+        if (stripeInvoice.getStatusTransitions() != null && stripeInvoice.getStatusTransitions().getPaidAt() != null) {
+            payment.setPaidAt(toLocalDateTime(stripeInvoice.getStatusTransitions().getPaidAt()));
+        } else {
+            payment.setPaidAt(LocalDateTime.now());
+        }
+        
+        // Lier à l'abonnement si disponible
+        if (stripeInvoice.getSubscription() != null) {
+            subscriptionRepository.findByPaymentProviderSubscriptionId(stripeInvoice.getSubscription())
+                    .ifPresent(sub -> payment.setSubscriptionId(sub.getId()));
+        }
+        
+        paymentRepository.save(payment);
+        log.info("Paiement enregistré: id={}, organizationId={}, amount={}", 
+                payment.getId(), organization.getId(), payment.getAmount());
+        
+        // Mettre à jour le statut de la facture locale si elle existe
+        if (stripeInvoice.getMetadata() != null && stripeInvoice.getMetadata().containsKey("invoice_id")) {
+            try {
+                Long invoiceId = Long.parseLong(stripeInvoice.getMetadata().get("invoice_id"));
+                invoiceRepository.findById(invoiceId).ifPresent(invoice -> {
+                    boolean wasOverdue = invoice.getStatus() == Invoice.InvoiceStatus.OVERDUE;
+                    invoice.setStatus(Invoice.InvoiceStatus.PAID);
+                    invoice.setPaidAt(LocalDateTime.now());
+                    invoice.setPaymentId(payment.getId());
+                    invoice.setPaymentProvider("stripe");
+                    invoice.setPaymentProviderInvoiceId(stripeInvoice.getId());
+                    invoiceRepository.save(invoice);
+                    if (wasOverdue) {
+                        eventPublisher.publishEvent(BadgeCounterChangedEvent.of(
+                                invoice.getOrganizationId(), BadgeCounterChangedEvent.Counter.OVERDUE_INVOICES, -1));
+                    }
+                    log.info("Facture locale mise à jour: invoiceId={}", invoiceId);
+                });
+            } catch (NumberFormatException e) {
+                log.warn("Impossible de parser invoice_id depuis les métadonnées Stripe", e);
+            }
+        }
+    }
+    
+    /**
+     * Gère l'événement invoice.payment_failed.
+     */
+    private void handleInvoicePaymentFailed(Event event) {
+        com.stripe.model.Invoice stripeInvoice = 
+                (com.stripe.model.Invoice) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (stripeInvoice == null) {
+            return;
+        }
+        
+        log.warn("Échec du paiement de facture: invoiceId={}, subscriptionId={}", 
+                stripeInvoice.getId(), stripeInvoice.getSubscription());
+        
+        String customerId = stripeInvoice.getCustomer();
+        Organization organization = organizationRepository.findByStripeCustomerId(customerId)
+                .orElse(null);
+        if (organization != null && isBeingDeleted(organization.getId(), event)) {
+            return;
+        }
+        
+        // Mettre à jour le statut de l'abonnement en PAST_DUE
+        if (stripeInvoice.getSubscription() != null) {
+            subscriptionRepository.findByPaymentProviderSubscriptionId(stripeInvoice.getSubscription())
+                    .ifPresent(subscription -> {
+                        subscription.setStatus(Subscription.SubscriptionStatus.PAST_DUE);
+                        subscriptionRepository.save(subscription);
+                        log.info("Abonnement mis à jour en PAST_DUE: subscriptionId={}", subscription.getId());
+                    });
+        }
+        
+        // Enregistrer l'échec du paiement
+        if (organization != null) {
+            Payment payment = new Payment();
+            payment.setOrganizationId(organization.getId());
+            payment.setAmount(BigDecimal.valueOf(stripeInvoice.getAmountDue()).divide(BigDecimal.valueOf(100)));
+            payment.setCurrency(stripeInvoice.getCurrency().toUpperCase());
+            payment.setStatus(Payment.PaymentStatus.FAILED);
+            payment.setPaymentProvider("stripe");
+            payment.setDescription("Échec du paiement - " + stripeInvoice.getNumber());
+            // Note: getLastPaymentError() n'existe pas dans l'API Stripe Invoice
+            // On peut utiliser attemptCount ou d'autres informations disponibles
+            payment.setFailureReason("Paiement échoué pour la facture " + stripeInvoice.getNumber());
+            
+            if (stripeInvoice.getSubscription() != null) {
+                subscriptionRepository.findByPaymentProviderSubscriptionId(stripeInvoice.getSubscription())
+                        .ifPresent(sub -> payment.setSubscriptionId(sub.getId()));
+            }
+            
+            paymentRepository.save(payment);
+            log.info("Échec de paiement enregistré: id={}, organizationId={}", 
+                    payment.getId(), organization.getId());
+        }
+        
+        // TODO: Notifier l'organisation par email
+    }
+    
+    /**
+     * Gère l'événement payment_intent.succeeded.
+     */
+    private void handlePaymentIntentSucceeded(Event event) {
+        PaymentIntent paymentIntent = 
+                (PaymentIntent) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (paymentIntent == null) {
+            return;
+        }
+        
+        log.info("Paiement réussi: paymentIntentId={}, amount={}, customerId={}",
+                paymentIntent.getId(), paymentIntent.getAmount(), paymentIntent.getCustomer());
+        
+        // Récupérer l'organisation via le customer
+        String customerId = paymentIntent.getCustomer();
+        if (customerId == null) {
+            log.warn("Customer ID manquant dans payment_intent.succeeded");
+            return;
+        }
+        
+        Organization organization = organizationRepository.findByStripeCustomerId(customerId)
+                .orElse(null);
+        
+        if (organization == null) {
+            log.warn("Organisation introuvable pour le client Stripe: {}", customerId);
+            return;
+        }
+        if (isBeingDeleted(organization.getId(), event)) {
+            return;
+        }
+        
+        // Récupérer ou créer le paiement
+        Payment payment = paymentRepository
+                .findByPaymentProviderPaymentIntentId(paymentIntent.getId())
+                .orElseGet(() -> {
+                    Payment newPayment = new Payment();
+                    newPayment.setOrganizationId(organization.getId());
+                    newPayment.setPaymentProvider("stripe");
+                    newPayment.setCurrency(paymentIntent.getCurrency().toUpperCase());
+                    return newPayment;
+                });
+        
+        // Mettre à jour les informations du paiement
+        payment.setAmount(BigDecimal.valueOf(paymentIntent.getAmount()).divide(BigDecimal.valueOf(100))); // Convertir de centimes
+        payment.setStatus(Payment.PaymentStatus.SUCCEEDED);
+        payment.setPaymentProviderPaymentIntentId(paymentIntent.getId());
+        payment.setPaymentMethod(paymentIntent.getPaymentMethod() != null ? paymentIntent.getPaymentMethod() : "card");
+        payment.setDescription(paymentIntent.getDescription() != null ? paymentIntent.getDescription() : "Paiement ponctuel");
+        payment.setPaidAt(LocalDateTime.now());
+        
+        paymentRepository.save(payment);
+        log.info("Paiement enregistré: id={}, organizationId={}, amount={}", 
+                payment.getId(), organization.getId(), payment.getAmount());
+    }
+    
+    /**
+     * Gère l'événement payment_intent.payment_failed.
+     */
+    private void handlePaymentIntentFailed(Event event) {
+        PaymentIntent paymentIntent = 
+                (PaymentIntent) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (paymentIntent == null) {
+            return;
+        }
+        
+        log.warn("Échec du paiement: paymentIntentId={}, customerId={}", 
+                paymentIntent.getId(), paymentIntent.getCustomer());
+        
+        // Récupérer l'organisation via le customer
+        String customerId = paymentIntent.getCustomer();
+        if (customerId == null) {
+            return;
+        }
+        
+        Organization organization = organizationRepository.findByStripeCustomerId(customerId)
+                .orElse(null);
+        
+        if (organization == null || isBeingDeleted(organization.getId(), event)) {
+            return;
+        }
+        
+        // Enregistrer l'échec du paiement
+        Payment payment = new Payment();
+        payment.setOrganizationId(organization.getId());
+        payment.setAmount(BigDecimal.valueOf(paymentIntent.getAmount()).divide(BigDecimal.valueOf(100)));
+        payment.setCurrency(paymentIntent.getCurrency().toUpperCase());
+        payment.setStatus(Payment.PaymentStatus.FAILED);
+        payment.setPaymentProvider("stripe");
+        payment.setPaymentProviderPaymentIntentId(paymentIntent.getId());
+        payment.setDescription("Échec du paiement");
+        payment.setFailureReason(paymentIntent.getLastPaymentError() != null ? 
+                paymentIntent.getLastPaymentError().getMessage() : "Paiement échoué");
+        
+        paymentRepository.save(payment);
+        log.info("Échec de paiement enregistré: id={}, organizationId={}", 
+                payment.getId(), organization.getId());
+    }
+    
+    /**
+     * Indique si l'organisation est en cours de suppression : l'événement est alors ignoré, aucune ligne
+     * ne devant plus lui être ajoutée ou réenregistrée.
+     */
+    private boolean isBeingDeleted(Long organizationId, Event event) {
+        if (!organizationRepository.isDeletionPending(organizationId)) {
+            return false;
+        }
+        log.info("Événement Stripe {} ({}) ignoré: organisation {} en cours de suppression",
+                event.getId(), event.getType(), organizationId);
+        return true;
+    }
+    
+    /**
+     * Convertit un statut d'abonnement Stripe en statut local.
+     */
+    private Subscription.SubscriptionStatus mapStripeSubscriptionStatus(String stripeStatus) {
+        return switch (stripeStatus) {
+            case "trialing" -> Subscription.SubscriptionStatus.TRIALING;
+            case "active" -> Subscription.SubscriptionStatus.ACTIVE;
+            case "past_due" -> Subscription.SubscriptionStatus.PAST_DUE;
+            case "canceled", "unpaid" -> Subscription.SubscriptionStatus.CANCELED;
+            case "incomplete" -> Subscription.SubscriptionStatus.INCOMPLETE;
+            case "incomplete_expired" -> Subscription.SubscriptionStatus.INCOMPLETE_EXPIRED;
+            case "paused" -> Subscription.SubscriptionStatus.PAUSED;
+            default -> Subscription.SubscriptionStatus.UNPAID;
+        };
+    }
+    
+    /**
+     * Convertit un timestamp Unix en LocalDateTime.
+     */
+    private LocalDateTime toLocalDateTime(Long timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(timestamp), ZoneId.systemDefault());
+    }
+}
+
@@ -0,0 +1,155 @@
+package com.muhend.backend.payment.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muhend.backend.payment.config.StripeConfig;
+import com.muhend.backend.payment.model.StripeWebhookEvent;
+import com.muhend.backend.payment.repository.StripeWebhookEventRepository;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File de réception des webhooks Stripe.
+ *
+ * Un webhook dont la signature est valide est enregistré (une seule fois par identifiant d'événement :
+ * les renvois de Stripe sont ignorés) puis acquitté immédiatement ; le traitement métier est fait
+ * en arrière-plan par {@link StripeWebhookDispatcher}.
+ */
+@Service
+@Slf4j
+public class StripeWebhookInboxService {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final StripeConfig stripeConfig;
+    private final StripeWebhookEventRepository stripeWebhookEventRepository;
+    private final StripeWebhookDispatcher stripeWebhookDispatcher;
+    private final TransactionTemplate transactionTemplate;
+
+    public StripeWebhookInboxService(StripeConfig stripeConfig,
+                                     StripeWebhookEventRepository stripeWebhookEventRepository,
+                                     StripeWebhookDispatcher stripeWebhookDispatcher,
+                                     PlatformTransactionManager transactionManager) {
+        this.stripeConfig = stripeConfig;
+        this.stripeWebhookEventRepository = stripeWebhookEventRepository;
+        this.stripeWebhookDispatcher = stripeWebhookDispatcher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Vérifie la signature du webhook et enregistre l'événement.
+     *
+     * @return true si l'événement est nouveau, false s'il avait déjà été reçu
+     * @throws SignatureVerificationException si la signature est invalide
+     * @throws IllegalStateException si le secret du webhook n'est pas configuré
+     */
+    public boolean receive(String payload, String sigHeader) throws SignatureVerificationException {
+        if (!stripeConfig.isConfigured() || stripeConfig.getWebhookSecret().isEmpty()) {
+            throw new IllegalStateException("Stripe webhook secret n'est pas configuré");
+        }
+        Event event = Webhook.constructEvent(payload, sigHeader, stripeConfig.getWebhookSecret());
+
+        String customerId = extractCustomerId(event);
+        LocalDateTime stripeCreatedAt = event.getCreated() != null
+                ? LocalDateTime.ofInstant(Instant.ofEpochSecond(event.getCreated()), ZoneId.systemDefault())
+                : LocalDateTime.now();
+        Integer inserted = transactionTemplate.execute(status -> stripeWebhookEventRepository.insertIfAbsent(
+                event.getId(), event.getType(), customerId, payload, stripeCreatedAt, LocalDateTime.now()));
+
+        if (inserted == null || inserted == 0) {
+            log.info("Webhook Stripe déjà reçu, ignoré: type={}, id={}", event.getType(), event.getId());
+            return false;
+        }
+        log.info("Webhook Stripe enregistré: type={}, id={}, customerId={}", event.getType(), event.getId(), customerId);
+        stripeWebhookDispatcher.trigger();
+        return true;
+    }
+
+    /**
+     * Client Stripe concerné par l'événement : champ "customer" de l'objet, ou l'objet lui-même s'il s'agit d'un client.
+     */
+    static String extractCustomerId(Event event) {
+        if (event.getDataObjectDeserializer() == null || event.getDataObjectDeserializer().getRawJson() == null) {
+            return null;
+        }
+        try {
+            JsonNode object = OBJECT_MAPPER.readTree(event.getDataObjectDeserializer().getRawJson());
+            JsonNode customer = object.path("customer");
+            if (customer.isTextual()) {
+                return customer.asText();
+            }
+            if (customer.path("id").isTextual()) {
+                return customer.path("id").asText();
+            }
+            if ("customer".equals(object.path("object").asText()) && object.path("id").isTextual()) {
+                return object.path("id").asText();
+            }
+            return null;
+        } catch (JsonProcessingException e) {
+            log.warn("Impossible de lire le client de l'événement Stripe {}: {}", event.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Événements d'un statut (les plus récents d'abord), par exemple les événements abandonnés (FAILED).
+     */
+    public List<StripeWebhookEvent> getEvents(StripeWebhookEvent.Status status, int limit) {
+        return stripeWebhookEventRepository.findByStatusOrderByReceivedAtDesc(
+                status, PageRequest.of(0, Math.max(1, Math.min(limit, 500))));
+    }
+
+    /**
+     * Remet en attente un événement abandonné, avec un nouveau crédit de tentatives.
+     *
+     * @throws IllegalArgumentException si l'événement n'existe pas
+     * @throws IllegalStateException si l'événement n'est pas abandonné
+     */
+    public StripeWebhookEvent retry(Long id) {
+        StripeWebhookEvent event = transactionTemplate.execute(status -> {
+            StripeWebhookEvent failed = stripeWebhookEventRepository.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Événement webhook introuvable: " + id));
+            if (failed.getStatus() != StripeWebhookEvent.Status.FAILED) {
+                throw new IllegalStateException("Seul un événement abandonné (FAILED) peut être relancé");
+            }
+            failed.setStatus(StripeWebhookEvent.Status.PENDING);
+            failed.setAttempts(0);
+            failed.setNextAttemptAt(LocalDateTime.now());
+            return stripeWebhookEventRepository.save(failed);
+        });
+        log.info("Webhook Stripe {} ({}) relancé", event.getEventId(), event.getEventType());
+        stripeWebhookDispatcher.trigger();
+        return event;
+    }
+
+    /**
+     * Nombre d'événements par statut.
+     */
+    public Map<String, Long> getStats() {
+        Map<StripeWebhookEvent.Status, Long> byStatus = new EnumMap<>(StripeWebhookEvent.Status.class);
+        for (StripeWebhookEvent.Status status : StripeWebhookEvent.Status.values()) {
+            byStatus.put(status, 0L);
+        }
+        for (Object[] row : stripeWebhookEventRepository.countByStatus()) {
+            byStatus.put((StripeWebhookEvent.Status) row[0], ((Number) row[1]).longValue());
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        byStatus.forEach((status, count) -> stats.put(status.name().toLowerCase(), count));
+        return stats;
+    }
+}
@@ -1,7 +1,9 @@
 package com.muhend.backend.pricing.controller;
 
+import com.muhend.backend.pricing.dto.PricingCatalog;
 import com.muhend.backend.pricing.dto.PricingPlanDto;
 import com.muhend.backend.pricing.dto.UpdatePricingPlanRequest;
+import com.muhend.backend.pricing.service.PricingCatalogService;
 import com.muhend.backend.pricing.service.PricingPlanService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -16,6 +18,8 @@ import java.util.List;
 
 /**
  * Controller pour gérer les plans tarifaires.
+ * Les réponses publiques portent l'ETag de la version du catalogue : une requête conditionnelle
+ * (If-None-Match) reçoit une réponse 304 tant que le catalogue n'a pas changé.
  */
 @RestController
 @RequestMapping("/pricing-plans")
@@ -25,6 +29,7 @@ import java.util.List;
 public class PricingPlanController {
     
     private final PricingPlanService pricingPlanService;
+    private final PricingCatalogService pricingCatalogService;
     
     @GetMapping
     @Operation(
@@ -36,19 +41,16 @@ public class PricingPlanController {
     public ResponseEntity<List<PricingPlanDto>> getActivePricingPlans(
             @RequestParam(required = false) String marketVersion) {
         try {
-            log.info("📥 Requête GET /pricing-plans");
-            log.info("📥 Paramètre marketVersion reçu: '{}'", marketVersion);
-            log.info("📥 Type de marketVersion: {}", marketVersion != null ? marketVersion.getClass().getName() : "null");
-            log.info("📥 marketVersion est null? {}", marketVersion == null);
-            log.info("📥 marketVersion est vide? {}", marketVersion != null && marketVersion.isEmpty());
+            log.debug("📥 Requête GET /pricing-plans - marketVersion: '{}'", marketVersion);
             
+            // Version lue avant les plans : l'ETag ne peut pas désigner un contenu plus récent que le corps
+            PricingCatalog catalog = pricingCatalogService.getCatalog();
             List<PricingPlanDto> plans = pricingPlanService.getActivePricingPlans(marketVersion);
-            log.info("📤 Réponse: {} plan(s) retourné(s)", plans.size());
-            if (!plans.isEmpty()) {
-                log.info("📤 Market versions des plans retournés: {}", 
-                    plans.stream().map(p -> p.getName() + "=" + p.getMarketVersion()).collect(java.util.stream.Collectors.joining(", ")));
-            }
-            return ResponseEntity.ok(plans);
+            log.debug("📤 Réponse: {} plan(s) retourné(s)", plans.size());
+            return ResponseEntity.ok()
+                    .eTag(catalog.getETag())
+                    .cacheControl(pricingCatalogService.getCacheControl())
+                    .body(plans);
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des plans tarifaires actifs", e);
             // Retourner une liste vide plutôt que de faire échouer la requête
@@ -88,8 +90,12 @@ public class PricingPlanController {
         description = "Retourne les détails d'un plan tarifaire spécifique (seulement si actif)."
     )
     public ResponseEntity<PricingPlanDto> getPricingPlanById(@PathVariable Long id) {
+        PricingCatalog catalog = pricingCatalogService.getCatalog();
         PricingPlanDto plan = pricingPlanService.getPricingPlanById(id);
-        return ResponseEntity.ok(plan);
+        return ResponseEntity.ok()
+                .eTag(catalog.getETag())
+                .cacheControl(pricingCatalogService.getCacheControl())
+                .body(plan);
     }
     
     @PutMapping("/{id}")
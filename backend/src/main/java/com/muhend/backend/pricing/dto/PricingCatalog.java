@@ -0,0 +1,263 @@
+package com.muhend.backend.pricing.dto;
+
+import com.muhend.backend.market.dto.MarketProfileDto;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Instantané immuable du catalogue : plans tarifaires et profils de marché, indexés par ID,
+ * version de marché et type de plan.
+ *
+ * Les DTO renvoyés sont des copies : l'appelant peut les modifier sans altérer l'instantané.
+ * La version est une empreinte du contenu ; elle sert d'ETag aux endpoints publics du catalogue.
+ */
+public final class PricingCatalog {
+
+    /**
+     * Type d'un plan, selon ses tarifs (mêmes règles que OrganizationService).
+     */
+    public enum PlanType {
+        MONTHLY,
+        PAY_PER_REQUEST,
+        TRIAL,
+        FREE
+    }
+
+    private static final Comparator<PricingPlanDto> PLAN_ORDER = Comparator
+            .comparing(PricingPlanDto::getDisplayOrder, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(PricingPlanDto::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private static final Comparator<MarketProfileDto> PROFILE_ORDER = Comparator
+            .comparing(MarketProfileDto::getDisplayOrder, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(MarketProfileDto::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final String version;
+    private final LocalDateTime loadedAt;
+
+    private final List<PricingPlanDto> plans;
+    private final List<PricingPlanDto> activePlans;
+    private final Map<Long, PricingPlanDto> plansById;
+    private final Map<String, List<PricingPlanDto>> activeStandardPlansByMarket;
+    private final Map<Long, List<PricingPlanDto>> activeCustomPlansByOrganization;
+    private final Map<PlanType, List<PricingPlanDto>> activePlansByType;
+    private final Map<String, Map<PlanType, List<PricingPlanDto>>> activeStandardPlansByMarketAndType;
+
+    private final List<MarketProfileDto> marketProfiles;
+    private final List<MarketProfileDto> activeMarketProfiles;
+    private final Map<Long, MarketProfileDto> marketProfilesById;
+    private final Map<String, MarketProfileDto> marketProfilesByVersion;
+    private final Map<String, MarketProfileDto> marketProfilesByCountryCode;
+
+    private PricingCatalog(List<PricingPlanDto> plans, List<MarketProfileDto> marketProfiles) {
+        this.loadedAt = LocalDateTime.now();
+        this.plans = plans.stream().map(PricingCatalog::copy).sorted(PLAN_ORDER).toList();
+        this.activePlans = this.plans.stream().filter(plan -> Boolean.TRUE.equals(plan.getIsActive())).toList();
+        this.plansById = index(this.plans, PricingPlanDto::getId);
+        this.activeStandardPlansByMarket = Map.copyOf(activePlans.stream()
+                .filter(plan -> !Boolean.TRUE.equals(plan.getIsCustom()) && plan.getMarketVersion() != null)
+                .collect(Collectors.groupingBy(PricingPlanDto::getMarketVersion, Collectors.toUnmodifiableList())));
+        this.activeCustomPlansByOrganization = Map.copyOf(activePlans.stream()
+                .filter(plan -> plan.getOrganizationId() != null)
+                .collect(Collectors.groupingBy(PricingPlanDto::getOrganizationId, Collectors.toUnmodifiableList())));
+        this.activePlansByType = byType(activePlans);
+        this.activeStandardPlansByMarketAndType = activeStandardPlansByMarket.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> byType(entry.getValue())));
+
+        this.marketProfiles = marketProfiles.stream().map(PricingCatalog::copy).sorted(PROFILE_ORDER).toList();
+        this.activeMarketProfiles = this.marketProfiles.stream()
+                .filter(profile -> Boolean.TRUE.equals(profile.getIsActive()))
+                .toList();
+        this.marketProfilesById = index(this.marketProfiles, MarketProfileDto::getId);
+        this.marketProfilesByVersion = index(this.marketProfiles, MarketProfileDto::getMarketVersion);
+        this.marketProfilesByCountryCode = index(this.marketProfiles, MarketProfileDto::getCountryCodeIsoAlpha2);
+
+        this.version = fingerprint(this.plans, this.marketProfiles);
+    }
+
+    public static PricingCatalog of(List<PricingPlanDto> plans, List<MarketProfileDto> marketProfiles) {
+        return new PricingCatalog(plans, marketProfiles);
+    }
+
+    /**
+     * Empreinte du contenu du catalogue
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * ETag fort des réponses construites à partir de cet instantané
+     */
+    public String getETag() {
+        return "\"" + version + "\"";
+    }
+
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    // ===================================================
+    // PLANS TARIFAIRES
+    // ===================================================
+
+    /**
+     * Tous les plans (actifs et inactifs), par ordre d'affichage.
+     */
+    public List<PricingPlanDto> getPlans() {
+        return copyAll(plans);
+    }
+
+    /**
+     * Plan par ID (actif ou inactif).
+     */
+    public Optional<PricingPlanDto> findPlan(Long id) {
+        return Optional.ofNullable(id != null ? plansById.get(id) : null).map(PricingCatalog::copy);
+    }
+
+    /**
+     * Plans actifs standards (non personnalisés) d'une version de marché,
+     * ou tous les plans actifs si la version n'est pas fournie.
+     */
+    public List<PricingPlanDto> getActivePlans(String marketVersion) {
+        if (marketVersion == null || marketVersion.isBlank()) {
+            return copyAll(activePlans);
+        }
+        return copyAll(activeStandardPlansByMarket.getOrDefault(marketVersion.trim(), List.of()));
+    }
+
+    /**
+     * Plans actifs d'un type, avec le même périmètre que {@link #getActivePlans(String)}.
+     */
+    public List<PricingPlanDto> getActivePlans(String marketVersion, PlanType type) {
+        if (marketVersion == null || marketVersion.isBlank()) {
+            return copyAll(activePlansByType.getOrDefault(type, List.of()));
+        }
+        return copyAll(activeStandardPlansByMarketAndType.getOrDefault(marketVersion.trim(), Map.of())
+                .getOrDefault(type, List.of()));
+    }
+
+    /**
+     * Plans personnalisés actifs d'une organisation.
+     */
+    public List<PricingPlanDto> getActiveCustomPlans(Long organizationId) {
+        return copyAll(activeCustomPlansByOrganization.getOrDefault(organizationId, List.of()));
+    }
+
+    public static PlanType planType(PricingPlanDto plan) {
+        boolean hasPricePerMonth = isPositive(plan.getPricePerMonth());
+        if (isPositive(plan.getPricePerRequest()) && !hasPricePerMonth) {
+            return PlanType.PAY_PER_REQUEST;
+        }
+        if (hasPricePerMonth) {
+            return PlanType.MONTHLY;
+        }
+        if (plan.getTrialPeriodDays() != null && plan.getTrialPeriodDays() > 0) {
+            return PlanType.TRIAL;
+        }
+        return PlanType.FREE;
+    }
+
+    // ===================================================
+    // PROFILS DE MARCHÉ
+    // ===================================================
+
+    /**
+     * Tous les profils de marché (actifs et inactifs), par ordre d'affichage.
+     */
+    public List<MarketProfileDto> getMarketProfiles() {
+        return copyAll(marketProfiles, PricingCatalog::copy);
+    }
+
+    public List<MarketProfileDto> getActiveMarketProfiles() {
+        return copyAll(activeMarketProfiles, PricingCatalog::copy);
+    }
+
+    public Optional<MarketProfileDto> findMarketProfile(Long id) {
+        return Optional.ofNullable(id != null ? marketProfilesById.get(id) : null).map(PricingCatalog::copy);
+    }
+
+    public Optional<MarketProfileDto> findMarketProfileByVersion(String marketVersion) {
+        return Optional.ofNullable(marketVersion != null ? marketProfilesByVersion.get(marketVersion) : null)
+                .map(PricingCatalog::copy);
+    }
+
+    public Optional<MarketProfileDto> findMarketProfileByCountryCode(String countryCode) {
+        return Optional.ofNullable(countryCode != null ? marketProfilesByCountryCode.get(countryCode) : null)
+                .map(PricingCatalog::copy);
+    }
+
+    // ===================================================
+    // CONSTRUCTION
+    // ===================================================
+
+    private static Map<PlanType, List<PricingPlanDto>> byType(List<PricingPlanDto> plans) {
+        Map<PlanType, List<PricingPlanDto>> byType = new EnumMap<>(PlanType.class);
+        plans.stream()
+                .collect(Collectors.groupingBy(PricingCatalog::planType, Collectors.toUnmodifiableList()))
+                .forEach(byType::put);
+        return Map.copyOf(byType);
+    }
+
+    private static <T, K> Map<K, T> index(List<T> values, Function<T, K> key) {
+        Map<K, T> index = new LinkedHashMap<>();
+        for (T value : values) {
+            K k = key.apply(value);
+            if (k != null) {
+                index.putIfAbsent(k, value);
+            }
+        }
+        return Map.copyOf(index);
+    }
+
+    private static boolean isPositive(BigDecimal value) {
+        return value != null && value.compareTo(BigDecimal.ZERO) > 0;
+    }
+
+    private static String fingerprint(List<PricingPlanDto> plans, List<MarketProfileDto> marketProfiles) {
+        StringBuilder content = new StringBuilder();
+        plans.forEach(plan -> content.append(plan).append('\n'));
+        marketProfiles.forEach(profile -> content.append(profile).append('\n'));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    private static List<PricingPlanDto> copyAll(List<PricingPlanDto> plans) {
+        return copyAll(plans, PricingCatalog::copy);
+    }
+
+    private static <T> List<T> copyAll(List<T> values, Function<T, T> copy) {
+        return values.stream().map(copy).collect(Collectors.toList());
+    }
+
+    private static PricingPlanDto copy(PricingPlanDto plan) {
+        return new PricingPlanDto(plan.getId(), plan.getName(), plan.getDescription(), plan.getPricePerMonth(),
+                plan.getPricePerRequest(), plan.getMonthlyQuota(), plan.getTrialPeriodDays(), plan.getFeatures(),
+                plan.getIsActive(), plan.getDisplayOrder(), plan.getMarketVersion(), plan.getCurrency(),
+                plan.getIsCustom(), plan.getOrganizationId());
+    }
+
+    private static MarketProfileDto copy(MarketProfileDto profile) {
+        return new MarketProfileDto(profile.getId(), profile.getMarketVersion(), profile.getCountryCodeIsoAlpha2(),
+                profile.getCountryCodeIsoAlpha3(), profile.getCountryName(), profile.getCountryNameNative(),
+                profile.getPhonePrefix(), profile.getCurrencyCode(), profile.getCurrencySymbol(), profile.getTimezone(),
+                profile.getLocale(), profile.getLanguageCode(), profile.getIsActive(), profile.getDisplayOrder(),
+                profile.getDescription(), profile.getCreatedAt(), profile.getUpdatedAt());
+    }
+}
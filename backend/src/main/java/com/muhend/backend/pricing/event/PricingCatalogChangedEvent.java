@@ -0,0 +1,19 @@
+package com.muhend.backend.pricing.event;
+
+import lombok.Value;
+
+/**
+ * Événement publié lorsqu'un plan tarifaire ou un profil de marché est créé, modifié ou supprimé.
+ */
+@Value
+public class PricingCatalogChangedEvent {
+    
+    /**
+     * Origine de la modification (pour les logs)
+     */
+    String source;
+    
+    public static PricingCatalogChangedEvent of(String source) {
+        return new PricingCatalogChangedEvent(source);
+    }
+}
@@ -16,10 +16,13 @@ public interface QuoteRequestRepository extends JpaRepository<QuoteRequest, Long
     List<QuoteRequest> findByStatusOrderByCreatedAtDesc(QuoteRequest.QuoteStatus status);
     
     /**
-     * Supprime toutes les demandes de devis d'une organisation.
+     * Supprime un lot de lignes (au plus {@code batchSize}) parmi les demandes de devis d'une organisation.
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize}, pour borner la durée de chaque transaction.
      */
     @Modifying
-    @Query("DELETE FROM QuoteRequest q WHERE q.organizationId = :organizationId")
-    int deleteByOrganizationId(@Param("organizationId") Long organizationId);
+    @Query(value = "DELETE FROM quote_request WHERE id IN (" +
+                   "SELECT id FROM quote_request WHERE organization_id = :organizationId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
 }
 
@@ -0,0 +1,129 @@
+package com.muhend.backend.pricing.service;
+
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.market.repository.MarketProfileRepository;
+import com.muhend.backend.market.service.MarketProfileService;
+import com.muhend.backend.pricing.dto.PricingCatalog;
+import com.muhend.backend.pricing.event.PricingCatalogChangedEvent;
+import com.muhend.backend.pricing.repository.PricingPlanRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Catalogue en mémoire des plans tarifaires et des profils de marché.
+ *
+ * Le catalogue est chargé en entier (deux requêtes) dans un instantané immuable {@link PricingCatalog},
+ * puis rechargé à la demande après chaque modification ({@link PricingCatalogChangedEvent}, une fois la transaction
+ * validée), après une modification sur une autre instance ({@link CacheInvalidationBus}), et par sécurité
+ * au-delà de pricing.catalog.refresh-seconds.
+ */
+@Service
+@Slf4j
+public class PricingCatalogService {
+
+    private final PricingPlanRepository pricingPlanRepository;
+    private final MarketProfileRepository marketProfileRepository;
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private volatile PricingCatalog catalog;
+    /**
+     * Incrémenté à chaque invalidation : un chargement commencé avant n'est pas conservé
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Value("${pricing.catalog.refresh-seconds:900}")
+    private long refreshSeconds;
+
+    /**
+     * Durée pendant laquelle navigateurs et proxys réutilisent une réponse publique sans la revalider
+     */
+    @Value("${pricing.catalog.max-age-seconds:60}")
+    private long maxAgeSeconds;
+
+    public PricingCatalogService(PricingPlanRepository pricingPlanRepository,
+                                 MarketProfileRepository marketProfileRepository,
+                                 CacheInvalidationBus cacheInvalidationBus) {
+        this.pricingPlanRepository = pricingPlanRepository;
+        this.marketProfileRepository = marketProfileRepository;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+    }
+
+    @PostConstruct
+    void registerCache() {
+        cacheInvalidationBus.register(CacheInvalidationBus.PRICING_CATALOG, new CacheInvalidationBus.Handler() {
+            @Override
+            public void invalidate(String key) {
+                PricingCatalogService.this.invalidate();
+            }
+
+            @Override
+            public void invalidateAll() {
+                PricingCatalogService.this.invalidate();
+            }
+        });
+    }
+
+    /**
+     * Instantané courant du catalogue (chargé s'il est absent ou trop ancien).
+     */
+    public PricingCatalog getCatalog() {
+        PricingCatalog current = catalog;
+        if (isFresh(current)) {
+            return current;
+        }
+        synchronized (this) {
+            current = catalog;
+            if (isFresh(current)) {
+                return current;
+            }
+            long loadGeneration = generation.get();
+            PricingCatalog loaded = PricingCatalog.of(
+                    pricingPlanRepository.findAllByOrderByDisplayOrderAsc().stream().map(PricingPlanService::toDto).toList(),
+                    marketProfileRepository.findAll().stream().map(MarketProfileService::toDto).toList());
+            if (generation.get() == loadGeneration) {
+                catalog = loaded;
+            }
+            log.debug("Catalogue tarifaire chargé: {} plan(s), {} profil(s) de marché, version {}",
+                    loaded.getPlans().size(), loaded.getMarketProfiles().size(), loaded.getVersion());
+            return loaded;
+        }
+    }
+
+    /**
+     * En-tête Cache-Control des réponses publiques du catalogue (revalidées ensuite par ETag).
+     */
+    public CacheControl getCacheControl() {
+        return CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic();
+    }
+
+    /**
+     * Oublie l'instantané courant ; le suivant est chargé à la première lecture.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        catalog = null;
+    }
+
+    /**
+     * Recharge le catalogue une fois la transaction validée, sur cette instance puis sur les autres.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(PricingCatalogChangedEvent event) {
+        invalidate();
+        log.debug("Catalogue tarifaire invalidé ({})", event.getSource());
+        cacheInvalidationBus.broadcast(CacheInvalidation.all(CacheInvalidationBus.PRICING_CATALOG));
+    }
+
+    private boolean isFresh(PricingCatalog current) {
+        return current != null && current.getLoadedAt().isAfter(LocalDateTime.now().minusSeconds(refreshSeconds));
+    }
+}
@@ -1,10 +1,12 @@
 package com.muhend.backend.pricing.service;
 
+import com.muhend.backend.pricing.event.PricingCatalogChangedEvent;
 import com.muhend.backend.pricing.model.PricingPlan;
 import com.muhend.backend.pricing.repository.PricingPlanRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
@@ -24,6 +26,9 @@ public class PricingPlanInitializationService {
     @Autowired
     private PricingPlanRepository pricingPlanRepository;
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     @EventListener(ApplicationReadyEvent.class)
     @Transactional
     public void initializePricingPlans() {
@@ -109,6 +114,8 @@ public class PricingPlanInitializationService {
             log.info("Plan 'Enterprise' créé");
         }
         
+        // Un plan a pu être créé après le premier chargement du catalogue
+        eventPublisher.publishEvent(PricingCatalogChangedEvent.of("initialisation des plans"));
         log.info("Vérification des plans tarifaires terminée");
     }
 }
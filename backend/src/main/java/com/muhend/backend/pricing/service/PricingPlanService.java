@@ -1,12 +1,16 @@
 package com.muhend.backend.pricing.service;
 
+import com.muhend.backend.organization.event.OrganizationEntitlementChangedEvent;
 import com.muhend.backend.organization.model.Organization;
 import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.pricing.dto.PricingCatalog;
 import com.muhend.backend.pricing.dto.PricingPlanDto;
 import com.muhend.backend.pricing.dto.UpdatePricingPlanRequest;
+import com.muhend.backend.pricing.event.PricingCatalogChangedEvent;
 import com.muhend.backend.pricing.model.PricingPlan;
 import com.muhend.backend.pricing.repository.PricingPlanRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,6 +21,7 @@ import java.util.stream.Collectors;
 
 /**
  * Service pour gérer les plans tarifaires.
+ * Les lectures sont servies par le catalogue en mémoire ({@link PricingCatalogService}).
  */
 @Service
 @Slf4j
@@ -24,68 +29,48 @@ public class PricingPlanService {
     
     private final PricingPlanRepository pricingPlanRepository;
     private final OrganizationRepository organizationRepository;
+    private final PricingCatalogService pricingCatalogService;
+    private final ApplicationEventPublisher eventPublisher;
     
     public PricingPlanService(PricingPlanRepository pricingPlanRepository,
-                             OrganizationRepository organizationRepository) {
+                             OrganizationRepository organizationRepository,
+                             PricingCatalogService pricingCatalogService,
+                             ApplicationEventPublisher eventPublisher) {
         this.pricingPlanRepository = pricingPlanRepository;
         this.organizationRepository = organizationRepository;
+        this.pricingCatalogService = pricingCatalogService;
+        this.eventPublisher = eventPublisher;
     }
     
     /**
      * Récupère tous les plans tarifaires actifs, triés par ordre d'affichage.
-     * Si marketVersion est fourni, filtre par version de marché.
+     * Si marketVersion est fourni, filtre par version de marché (plans standards uniquement, pas les plans personnalisés).
      */
-    @Transactional(readOnly = true)
     public List<PricingPlanDto> getActivePricingPlans(String marketVersion) {
-        try {
-            List<PricingPlan> plans;
-            log.info("🔍 Récupération des plans tarifaires - marketVersion reçu: '{}'", marketVersion);
-            if (marketVersion != null && !marketVersion.isEmpty() && !marketVersion.trim().isEmpty()) {
-                String trimmedVersion = marketVersion.trim();
-                log.info("🔍 Utilisation de marketVersion trim: '{}'", trimmedVersion);
-                
-                // Filtrer par version de marché (plans standards uniquement, pas les plans personnalisés)
-                plans = pricingPlanRepository.findByMarketVersionAndIsActiveTrueAndIsCustomFalseOrderByDisplayOrderAsc(trimmedVersion);
-                log.info("✅ {} plan(s) trouvé(s) pour marketVersion='{}'", plans.size(), trimmedVersion);
-                
-                if (plans.isEmpty()) {
-                    log.warn("⚠️ Aucun plan trouvé pour marketVersion='{}'. Vérifiez que les plans ont bien market_version='{}' en base de données.", trimmedVersion, trimmedVersion);
-                    // Log tous les plans actifs pour déboguer
-                    List<PricingPlan> allActivePlans = pricingPlanRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
-                    log.warn("⚠️ Plans actifs disponibles en base: {}", 
-                        allActivePlans.stream()
-                            .map(p -> String.format("%s (market_version='%s', is_custom=%s)", 
-                                p.getName(), p.getMarketVersion(), p.getIsCustom()))
-                            .collect(Collectors.joining(", ")));
-                } else {
-                    log.info("✅ Plans trouvés: {}", 
-                        plans.stream()
-                            .map(p -> String.format("%s (market_version='%s')", p.getName(), p.getMarketVersion()))
-                            .collect(Collectors.joining(", ")));
-                }
-            } else {
-                // Par défaut, récupérer tous les plans actifs (comportement existant)
-                plans = pricingPlanRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
-                log.warn("⚠️ marketVersion non fourni ou vide - Récupération de tous les plans actifs: {}", plans.size());
-            }
-            return plans.stream()
-                    .map(this::toDto)
-                    .collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("Erreur lors de la récupération des plans tarifaires actifs depuis la base de données", e);
-            throw e; // Re-lancer l'exception pour que le controller puisse la gérer
+        List<PricingPlanDto> plans = pricingCatalogService.getCatalog().getActivePlans(marketVersion);
+        if (plans.isEmpty() && marketVersion != null && !marketVersion.isBlank()) {
+            log.warn("⚠️ Aucun plan trouvé pour marketVersion='{}'. Vérifiez que les plans ont bien market_version='{}' en base de données.",
+                    marketVersion.trim(), marketVersion.trim());
         }
+        return plans;
+    }
+    
+    /**
+     * Récupère le plan Pay-per-Request actif d'une version de marché
+     * (premier dans l'ordre d'affichage, parmi tous les plans actifs si la version n'est pas fournie).
+     */
+    public Optional<PricingPlanDto> findPayPerRequestPlan(String marketVersion) {
+        return pricingCatalogService.getCatalog()
+                .getActivePlans(marketVersion, PricingCatalog.PlanType.PAY_PER_REQUEST)
+                .stream()
+                .findFirst();
     }
     
     /**
      * Récupère les plans personnalisés d'une organisation.
      */
-    @Transactional(readOnly = true)
     public List<PricingPlanDto> getCustomPricingPlansForOrganization(Long organizationId) {
-        List<PricingPlan> plans = pricingPlanRepository.findByOrganizationIdAndIsActiveTrueOrderByDisplayOrderAsc(organizationId);
-        return plans.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        return pricingCatalogService.getCatalog().getActiveCustomPlans(organizationId);
     }
     
     /**
@@ -98,17 +83,9 @@ public class PricingPlanService {
      */
     @Transactional(readOnly = true)
     public List<PricingPlanDto> getAvailablePricingPlansForOrganization(String marketVersion, Long organizationId) {
-        List<PricingPlan> plans;
-        
         // Récupérer les plans selon la version de marché
-        if (marketVersion != null && !marketVersion.trim().isEmpty()) {
-            String trimmedVersion = marketVersion.trim();
-            plans = pricingPlanRepository.findByMarketVersionAndIsActiveTrueAndIsCustomFalseOrderByDisplayOrderAsc(trimmedVersion);
-            log.info("🔍 Récupération des plans pour marketVersion='{}': {} plan(s) trouvé(s)", trimmedVersion, plans.size());
-        } else {
-            plans = pricingPlanRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
-            log.info("🔍 Récupération de tous les plans actifs: {} plan(s) trouvé(s)", plans.size());
-        }
+        List<PricingPlanDto> plans = pricingCatalogService.getCatalog().getActivePlans(marketVersion);
+        log.debug("🔍 Récupération des plans pour marketVersion='{}': {} plan(s) trouvé(s)", marketVersion, plans.size());
         
         // Si une organisation est spécifiée, vérifier si elle a déjà utilisé l'essai gratuit
         if (organizationId != null) {
@@ -166,29 +143,22 @@ public class PricingPlanService {
             }
         }
         
-        return plans.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        return plans;
     }
     
     /**
      * Récupère tous les plans tarifaires (actifs et inactifs), triés par ordre d'affichage.
      */
-    @Transactional(readOnly = true)
     public List<PricingPlanDto> getAllPricingPlans() {
-        List<PricingPlan> plans = pricingPlanRepository.findAllByOrderByDisplayOrderAsc();
-        return plans.stream()
-                .map(this::toDto)
-                .collect(Collectors.toList());
+        return pricingCatalogService.getCatalog().getPlans();
     }
     
     /**
      * Récupère un plan tarifaire par son ID (seulement si actif).
      */
-    @Transactional(readOnly = true)
     public PricingPlanDto getPricingPlanById(Long id) {
-        return pricingPlanRepository.findByIdAndIsActiveTrue(id)
-                .map(this::toDto)
+        return pricingCatalogService.getCatalog().findPlan(id)
+                .filter(plan -> Boolean.TRUE.equals(plan.getIsActive()))
                 .orElseThrow(() -> new IllegalArgumentException("Plan tarifaire introuvable ou inactif: " + id));
     }
     
@@ -196,10 +166,8 @@ public class PricingPlanService {
      * Récupère un plan tarifaire par son ID (actif ou inactif).
      * Utilisé pour les opérations de mise à jour.
      */
-    @Transactional(readOnly = true)
     public PricingPlanDto getPricingPlanByIdForUpdate(Long id) {
-        return pricingPlanRepository.findById(id)
-                .map(this::toDto)
+        return pricingCatalogService.getCatalog().findPlan(id)
                 .orElseThrow(() -> new IllegalArgumentException("Plan tarifaire introuvable: " + id));
     }
     
@@ -250,6 +218,9 @@ public class PricingPlanService {
         // Les champs updatedAt sont mis à jour automatiquement par @PreUpdate
         PricingPlan updatedPlan = pricingPlanRepository.save(plan);
         log.info("Plan tarifaire mis à jour: id={}, name={}", updatedPlan.getId(), updatedPlan.getName());
+        eventPublisher.publishEvent(PricingCatalogChangedEvent.of("plan tarifaire " + updatedPlan.getId()));
+        // Les tarifs et quotas en cache de toutes les organisations peuvent dépendre de ce plan
+        eventPublisher.publishEvent(OrganizationEntitlementChangedEvent.all());
         
         return toDto(updatedPlan);
     }
@@ -257,7 +228,7 @@ public class PricingPlanService {
     /**
      * Convertit un PricingPlan en DTO.
      */
-    private PricingPlanDto toDto(PricingPlan plan) {
+    static PricingPlanDto toDto(PricingPlan plan) {
         PricingPlanDto dto = new PricingPlanDto();
         dto.setId(plan.getId());
         dto.setName(plan.getName());
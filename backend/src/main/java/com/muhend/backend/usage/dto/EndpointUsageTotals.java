@@ -0,0 +1,9 @@
+package com.muhend.backend.usage.dto;
+
+/**
+ * Agrégats d'utilisation groupés par endpoint (lignes de facture).
+ */
+public interface EndpointUsageTotals extends UsageTotals {
+    
+    String getEndpoint();
+}
@@ -0,0 +1,9 @@
+package com.muhend.backend.usage.dto;
+
+/**
+ * Agrégats d'utilisation groupés par organisation.
+ */
+public interface OrganizationUsageTotals extends UsageTotals {
+    
+    Long getOrganizationId();
+}
@@ -0,0 +1,66 @@
+package com.muhend.backend.usage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index d'un segment d'archive des logs d'utilisation.
+ * Le segment est une suite de membres gzip (un par organisation) contenant des lignes NDJSON
+ * triées par (timestamp, id). L'index donne la position de chaque membre pour permettre
+ * une relecture ciblée sans décompresser tout le segment.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageArchiveIndex {
+    
+    /**
+     * Nom du fichier de données du segment (ex: usage-20250101-033000.ndjson.gz)
+     */
+    private String segment;
+    
+    private LocalDateTime createdAt;
+    
+    /**
+     * Date de coupure : tous les logs archivés sont strictement antérieurs
+     */
+    private LocalDateTime cutoff;
+    
+    /**
+     * Empreinte SHA-256 (hexadécimal) du fichier de données
+     */
+    private String sha256;
+    
+    private long sizeBytes;
+    
+    private long rowCount;
+    
+    /**
+     * true une fois les lignes supprimées de la base de données
+     */
+    private boolean purged;
+    
+    private List<OrganizationEntry> organizations = new ArrayList<>();
+    
+    /**
+     * Position et bornes d'un membre gzip (une organisation) dans le segment.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class OrganizationEntry {
+        private Long organizationId;  // null = logs sans organisation
+        private long offset;
+        private long length;
+        private long rowCount;
+        private Long minId;
+        private Long maxId;
+        private LocalDateTime minTimestamp;
+        private LocalDateTime maxTimestamp;
+    }
+}
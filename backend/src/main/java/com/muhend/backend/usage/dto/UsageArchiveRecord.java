@@ -0,0 +1,40 @@
+package com.muhend.backend.usage.dto;
+
+import com.muhend.backend.usage.model.UsageLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Ligne d'un segment d'archive (une ligne NDJSON par log d'utilisation archivé).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageArchiveRecord {
+    
+    private Long id;
+    private String keycloakUserId;
+    private Long organizationId;
+    private String endpoint;
+    private String searchTerm;
+    private Integer tokensUsed;
+    private BigDecimal costUsd;
+    private LocalDateTime timestamp;
+    
+    public static UsageArchiveRecord from(UsageLog log) {
+        return new UsageArchiveRecord(
+                log.getId(),
+                log.getKeycloakUserId(),
+                log.getOrganizationId(),
+                log.getEndpoint(),
+                log.getSearchTerm(),
+                log.getTokensUsed(),
+                log.getCostUsd(),
+                log.getTimestamp()
+        );
+    }
+}
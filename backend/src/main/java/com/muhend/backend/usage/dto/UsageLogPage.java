@@ -0,0 +1,26 @@
+package com.muhend.backend.usage.dto;
+
+import com.muhend.backend.usage.model.UsageLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page de logs d'utilisation (du plus récent au plus ancien) avec pagination par curseur.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageLogPage {
+    
+    private List<UsageLog> items;
+    
+    /**
+     * Curseur opaque à renvoyer pour obtenir la page suivante (null s'il n'y a plus de résultats)
+     */
+    private String nextCursor;
+    
+    private boolean hasMore;
+}
@@ -0,0 +1,55 @@
+package com.muhend.backend.usage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * État de consommation poussé sur le flux d'utilisation d'une organisation :
+ * mêmes valeurs que /user/quota, complétées des dernières recherches de l'organisation.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageStreamSnapshot {
+    private Long organizationId;
+    /**
+     * Quota mensuel (null = illimité)
+     */
+    private Integer monthlyQuota;
+    /**
+     * Usage total de l'organisation sur le mois en cours
+     */
+    private long currentUsage;
+    /**
+     * Usage personnel de l'utilisateur abonné sur le mois en cours
+     */
+    private long personalUsage;
+    /**
+     * Requêtes restantes (-1 = illimité)
+     */
+    private long remaining;
+    private double percentageUsed;
+    private boolean unlimited;
+    private List<RecentSearch> recentUsage;
+    private String generatedAt;
+
+    /**
+     * Recherche récente de l'organisation
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RecentSearch {
+        private Long id;
+        private String endpoint;
+        private String searchTerm;
+        private Integer tokensUsed;
+        private Double costUsd;
+        private String timestamp;
+    }
+}
@@ -0,0 +1,16 @@
+package com.muhend.backend.usage.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Projection des agrégats d'utilisation calculés en SQL (COUNT / SUM).
+ * Les sommes sont null lorsqu'aucun log ne correspond.
+ */
+public interface UsageTotals {
+    
+    long getRequestCount();
+    
+    BigDecimal getTotalCostUsd();
+    
+    Long getTotalTokens();
+}
@@ -0,0 +1,9 @@
+package com.muhend.backend.usage.dto;
+
+/**
+ * Agrégats d'utilisation groupés par utilisateur.
+ */
+public interface UserUsageTotals extends UsageTotals {
+    
+    String getKeycloakUserId();
+}
@@ -0,0 +1,17 @@
+package com.muhend.backend.usage.event;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Événement publié après l'enregistrement d'un log d'utilisation.
+ */
+@Value
+public class UsageRecordedEvent {
+    
+    Long organizationId;
+    String keycloakUserId;
+    String endpoint;
+    LocalDateTime timestamp;
+}
@@ -1,14 +1,27 @@
 package com.muhend.backend.usage.repository;
 
+import com.muhend.backend.usage.dto.EndpointUsageTotals;
+import com.muhend.backend.usage.dto.OrganizationUsageTotals;
+import com.muhend.backend.usage.dto.UsageTotals;
+import com.muhend.backend.usage.dto.UserUsageTotals;
 import com.muhend.backend.usage.model.UsageLog;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface UsageLogRepository extends JpaRepository<UsageLog, Long> {
@@ -50,6 +63,23 @@ public interface UsageLogRepository extends JpaRepository<UsageLog, Long> {
         LocalDateTime end
     );
     
+    /**
+     * Parcourt les logs d'une organisation entre deux dates via un curseur JDBC (lecture seule, par lots).
+     * Doit être consommé dans une transaction et fermé par l'appelant.
+     */
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT u FROM UsageLog u WHERE u.organizationId = :organizationId " +
+           "AND u.timestamp BETWEEN :start AND :end ORDER BY u.timestamp ASC, u.id ASC")
+    Stream<UsageLog> streamByOrganizationIdAndTimestampBetween(
+        @Param("organizationId") Long organizationId,
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
     /**
      * Compte le nombre de logs d'une organisation entre deux dates.
      */
@@ -59,16 +89,235 @@ public interface UsageLogRepository extends JpaRepository<UsageLog, Long> {
         LocalDateTime end
     );
     
+    /**
+     * Indique si une organisation a au moins un log entre deux dates (sans compter toutes les lignes).
+     */
+    boolean existsByOrganizationIdAndTimestampBetween(
+        Long organizationId,
+        LocalDateTime start,
+        LocalDateTime end
+    );
+    
+    /**
+     * Compte le nombre de logs d'un utilisateur dans une organisation entre deux dates.
+     */
+    long countByOrganizationIdAndKeycloakUserIdAndTimestampBetween(
+        Long organizationId,
+        String keycloakUserId,
+        LocalDateTime start,
+        LocalDateTime end
+    );
+    
+    // ===================================================
+    // AGRÉGATS (calculés en SQL)
+    // ===================================================
+    
+    @Query("SELECT COUNT(u) AS requestCount, SUM(u.costUsd) AS totalCostUsd, SUM(u.tokensUsed) AS totalTokens " +
+           "FROM UsageLog u WHERE u.timestamp BETWEEN :start AND :end")
+    UsageTotals sumByTimestampBetween(
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
+    @Query("SELECT COUNT(u) AS requestCount, SUM(u.costUsd) AS totalCostUsd, SUM(u.tokensUsed) AS totalTokens " +
+           "FROM UsageLog u WHERE u.organizationId = :organizationId AND u.timestamp BETWEEN :start AND :end")
+    UsageTotals sumByOrganizationIdAndTimestampBetween(
+        @Param("organizationId") Long organizationId,
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
+    @Query("SELECT COUNT(u) AS requestCount, SUM(u.costUsd) AS totalCostUsd, SUM(u.tokensUsed) AS totalTokens " +
+           "FROM UsageLog u WHERE u.organizationId = :organizationId AND u.keycloakUserId = :keycloakUserId " +
+           "AND u.timestamp BETWEEN :start AND :end")
+    UsageTotals sumByOrganizationIdAndKeycloakUserIdAndTimestampBetween(
+        @Param("organizationId") Long organizationId,
+        @Param("keycloakUserId") String keycloakUserId,
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
+    @Query("SELECT u.organizationId AS organizationId, COUNT(u) AS requestCount, " +
+           "SUM(u.costUsd) AS totalCostUsd, SUM(u.tokensUsed) AS totalTokens " +
+           "FROM UsageLog u WHERE u.organizationId IS NOT NULL AND u.timestamp BETWEEN :start AND :end " +
+           "GROUP BY u.organizationId")
+    List<OrganizationUsageTotals> sumGroupedByOrganization(
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
+    @Query("SELECT u.keycloakUserId AS keycloakUserId, COUNT(u) AS requestCount, " +
+           "SUM(u.costUsd) AS totalCostUsd, SUM(u.tokensUsed) AS totalTokens " +
+           "FROM UsageLog u WHERE u.timestamp BETWEEN :start AND :end " +
+           "GROUP BY u.keycloakUserId")
+    List<UserUsageTotals> sumGroupedByUser(
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
+    @Query("SELECT u.keycloakUserId AS keycloakUserId, COUNT(u) AS requestCount, " +
+           "SUM(u.costUsd) AS totalCostUsd, SUM(u.tokensUsed) AS totalTokens " +
+           "FROM UsageLog u WHERE u.organizationId = :organizationId AND u.timestamp BETWEEN :start AND :end " +
+           "GROUP BY u.keycloakUserId")
+    List<UserUsageTotals> sumGroupedByUserForOrganization(
+        @Param("organizationId") Long organizationId,
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
+    @Query("SELECT u.endpoint AS endpoint, COUNT(u) AS requestCount, " +
+           "SUM(u.costUsd) AS totalCostUsd, SUM(u.tokensUsed) AS totalTokens " +
+           "FROM UsageLog u WHERE u.organizationId = :organizationId AND u.timestamp BETWEEN :start AND :end " +
+           "GROUP BY u.endpoint ORDER BY u.endpoint")
+    List<EndpointUsageTotals> sumGroupedByEndpointForOrganization(
+        @Param("organizationId") Long organizationId,
+        @Param("start") LocalDateTime start,
+        @Param("end") LocalDateTime end
+    );
+    
+    // ===================================================
+    // PAGINATION PAR CLÉ (timestamp DESC, id DESC)
+    // ===================================================
+    
+    /**
+     * Logs antérieurs au curseur (beforeTimestamp, beforeId) et postérieurs ou égaux à start.
+     */
+    @Query("SELECT u FROM UsageLog u WHERE u.timestamp >= :start " +
+           "AND (u.timestamp < :beforeTimestamp OR (u.timestamp = :beforeTimestamp AND u.id < :beforeId)) " +
+           "ORDER BY u.timestamp DESC, u.id DESC")
+    List<UsageLog> findPageBefore(
+        @Param("start") LocalDateTime start,
+        @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+        @Param("beforeId") Long beforeId,
+        Pageable pageable
+    );
+    
+    @Query("SELECT u FROM UsageLog u WHERE u.organizationId = :organizationId AND u.timestamp >= :start " +
+           "AND (u.timestamp < :beforeTimestamp OR (u.timestamp = :beforeTimestamp AND u.id < :beforeId)) " +
+           "ORDER BY u.timestamp DESC, u.id DESC")
+    List<UsageLog> findPageByOrganizationBefore(
+        @Param("organizationId") Long organizationId,
+        @Param("start") LocalDateTime start,
+        @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+        @Param("beforeId") Long beforeId,
+        Pageable pageable
+    );
+    
+    @Query("SELECT u FROM UsageLog u WHERE u.organizationId = :organizationId AND u.keycloakUserId = :keycloakUserId " +
+           "AND u.timestamp >= :start " +
+           "AND (u.timestamp < :beforeTimestamp OR (u.timestamp = :beforeTimestamp AND u.id < :beforeId)) " +
+           "ORDER BY u.timestamp DESC, u.id DESC")
+    List<UsageLog> findPageByOrganizationAndUserBefore(
+        @Param("organizationId") Long organizationId,
+        @Param("keycloakUserId") String keycloakUserId,
+        @Param("start") LocalDateTime start,
+        @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+        @Param("beforeId") Long beforeId,
+        Pageable pageable
+    );
+    
     /**
      * Supprime tous les logs d'un utilisateur.
      */
     long deleteByKeycloakUserId(String keycloakUserId);
     
     /**
-     * Supprime tous les logs d'une organisation.
+     * Supprime un lot de logs (au plus {@code batchSize} lignes) d'un ensemble d'utilisateurs.
+     * À appeler jusqu'à ce qu'il retourne 0, pour borner la durée de chaque transaction.
      */
     @Modifying
-    @Query("DELETE FROM UsageLog u WHERE u.organizationId = :organizationId")
-    int deleteByOrganizationId(@Param("organizationId") Long organizationId);
+    @Query(value = "DELETE FROM usage_log WHERE id IN (" +
+                   "SELECT id FROM usage_log WHERE keycloak_user_id IN (:keycloakUserIds) LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByKeycloakUserIdIn(
+        @Param("keycloakUserIds") Collection<String> keycloakUserIds,
+        @Param("batchSize") int batchSize
+    );
+    
+    /**
+     * Supprime un lot de lignes (au plus {@code batchSize}) parmi les logs d'une organisation.
+     * À appeler jusqu'à ce qu'il retourne moins de {@code batchSize}, pour borner la durée de chaque transaction.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM usage_log WHERE id IN (" +
+                   "SELECT id FROM usage_log WHERE organization_id = :organizationId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteBatchByOrganizationId(@Param("organizationId") Long organizationId, @Param("batchSize") int batchSize);
+    
+    /**
+     * Liste les organisations ayant enregistré une utilisation depuis la date donnée.
+     */
+    @Query("SELECT DISTINCT u.organizationId FROM UsageLog u WHERE u.timestamp >= :since AND u.organizationId IS NOT NULL")
+    List<Long> findDistinctOrganizationIdsSince(@Param("since") LocalDateTime since);
+    
+    // ===================================================
+    // ARCHIVAGE À FROID
+    // ===================================================
+    
+    /**
+     * Liste les organisations possédant des logs antérieurs à la date de coupure
+     * (null = logs sans organisation).
+     */
+    @Query("SELECT DISTINCT u.organizationId FROM UsageLog u WHERE u.timestamp < :cutoff")
+    List<Long> findDistinctOrganizationIdsBefore(@Param("cutoff") LocalDateTime cutoff);
+    
+    /**
+     * Page suivante (pagination par clé sur timestamp, id) des logs d'une organisation
+     * antérieurs à la date de coupure.
+     */
+    @Query("SELECT u FROM UsageLog u WHERE u.organizationId = :organizationId AND u.timestamp < :cutoff " +
+           "AND (u.timestamp > :afterTimestamp OR (u.timestamp = :afterTimestamp AND u.id > :afterId)) " +
+           "ORDER BY u.timestamp ASC, u.id ASC")
+    List<UsageLog> findArchivablePageByOrganization(
+        @Param("organizationId") Long organizationId,
+        @Param("cutoff") LocalDateTime cutoff,
+        @Param("afterTimestamp") LocalDateTime afterTimestamp,
+        @Param("afterId") Long afterId,
+        Pageable pageable
+    );
+    
+    /**
+     * Variante de {@link #findArchivablePageByOrganization} pour les logs sans organisation.
+     */
+    @Query("SELECT u FROM UsageLog u WHERE u.organizationId IS NULL AND u.timestamp < :cutoff " +
+           "AND (u.timestamp > :afterTimestamp OR (u.timestamp = :afterTimestamp AND u.id > :afterId)) " +
+           "ORDER BY u.timestamp ASC, u.id ASC")
+    List<UsageLog> findArchivablePageWithoutOrganization(
+        @Param("cutoff") LocalDateTime cutoff,
+        @Param("afterTimestamp") LocalDateTime afterTimestamp,
+        @Param("afterId") Long afterId,
+        Pageable pageable
+    );
+    
+    /**
+     * Supprime un lot de logs archivés d'une organisation (au plus {@code batchSize} lignes).
+     * Les bornes d'id limitent la suppression aux lignes effectivement écrites dans le segment.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM usage_log WHERE id IN (" +
+                   "SELECT id FROM usage_log WHERE organization_id = :organizationId AND timestamp < :cutoff " +
+                   "AND id BETWEEN :minId AND :maxId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteArchivedBatchByOrganization(
+        @Param("organizationId") Long organizationId,
+        @Param("cutoff") LocalDateTime cutoff,
+        @Param("minId") Long minId,
+        @Param("maxId") Long maxId,
+        @Param("batchSize") int batchSize
+    );
+    
+    /**
+     * Variante de {@link #deleteArchivedBatchByOrganization} pour les logs sans organisation.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM usage_log WHERE id IN (" +
+                   "SELECT id FROM usage_log WHERE organization_id IS NULL AND timestamp < :cutoff " +
+                   "AND id BETWEEN :minId AND :maxId LIMIT :batchSize)",
+           nativeQuery = true)
+    int deleteArchivedBatchWithoutOrganization(
+        @Param("cutoff") LocalDateTime cutoff,
+        @Param("minId") Long minId,
+        @Param("maxId") Long maxId,
+        @Param("batchSize") int batchSize
+    );
 }
-
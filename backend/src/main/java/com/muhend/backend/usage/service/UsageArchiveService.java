@@ -0,0 +1,525 @@
+package com.muhend.backend.usage.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muhend.backend.usage.dto.UsageArchiveIndex;
+import com.muhend.backend.usage.dto.UsageArchiveRecord;
+import com.muhend.backend.usage.model.UsageLog;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service d'archivage à froid des logs d'utilisation.
+ *
+ * Les logs plus anciens que la période de rétention sont écrits dans des segments compressés
+ * sur disque local (un membre gzip NDJSON par organisation, trié par timestamp puis id),
+ * accompagnés d'un fichier d'index (position de chaque organisation, empreinte SHA-256).
+ * Une fois le segment relu et vérifié, les lignes sont supprimées de PostgreSQL par lots.
+ *
+ * Un segment sans index est considéré comme incomplet et ignoré ; un index non purgé
+ * est repris au lancement suivant (la suppression en base est idempotente).
+ */
+@Service
+@Slf4j
+public class UsageArchiveService {
+
+    private static final String DATA_SUFFIX = ".ndjson.gz";
+    private static final String INDEX_SUFFIX = ".index.json";
+    private static final String PART_SUFFIX = ".part";
+    private static final DateTimeFormatter SEGMENT_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // Borne basse pour la première page de la pagination par clé (timestamp, id)
+    private static final LocalDateTime KEYSET_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final UsageLogRepository usageLogRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Value("${usage.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${usage.archive.directory:./data/usage-archive}")
+    private String directory;
+
+    @Value("${usage.archive.retention-months:12}")
+    private int retentionMonths;
+
+    @Value("${usage.archive.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${usage.archive.max-rows-per-segment:500000}")
+    private long maxRowsPerSegment;
+
+    public UsageArchiveService(UsageLogRepository usageLogRepository,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager) {
+        this.usageLogRepository = usageLogRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Archivage planifié (par défaut le 1er de chaque mois à 3h30, voir ScheduledJobs).
+     * Désactivé tant que usage.archive.enabled n'est pas à true.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Archive les logs antérieurs au début du mois courant moins la période de rétention.
+     *
+     * @return Résultat de l'archivage
+     * @throws IllegalStateException si un archivage est déjà en cours
+     */
+    public ArchiveResult archiveOldUsageLogs() throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Un archivage des logs d'utilisation est déjà en cours");
+        }
+        try {
+            Path archiveDir = getArchiveDirectory();
+            LocalDateTime cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths).atStartOfDay();
+            log.info("Archivage des logs d'utilisation antérieurs au {} vers {}", cutoff, archiveDir);
+
+            ArchiveResult result = new ArchiveResult();
+            result.setCutoff(cutoff);
+
+            // Reprise : segments écrits mais dont la purge n'a pas abouti
+            for (UsageArchiveIndex index : listSegments()) {
+                if (!index.isPurged()) {
+                    log.warn("Reprise de la purge du segment {}", index.getSegment());
+                    verifySegment(index);
+                    result.setDeletedRows(result.getDeletedRows() + purgeSegment(index));
+                }
+            }
+
+            List<Long> organizationIds = new ArrayList<>(usageLogRepository.findDistinctOrganizationIdsBefore(cutoff));
+            organizationIds.sort(Comparator.nullsLast(Comparator.naturalOrder()));
+
+            SegmentWriter writer = null;
+            try {
+                for (Long organizationId : organizationIds) {
+                    if (writer != null && writer.index.getRowCount() >= maxRowsPerSegment) {
+                        result.addSegment(completeSegment(writer));
+                        writer = null;
+                    }
+                    if (writer == null) {
+                        writer = new SegmentWriter(archiveDir, cutoff);
+                    }
+                    writeOrganization(writer, organizationId, cutoff);
+                }
+                if (writer != null) {
+                    result.addSegment(completeSegment(writer));
+                    writer = null;
+                }
+            } finally {
+                if (writer != null) {
+                    writer.abort();
+                }
+            }
+
+            for (UsageArchiveIndex index : result.getSegments()) {
+                result.setArchivedRows(result.getArchivedRows() + index.getRowCount());
+                result.setDeletedRows(result.getDeletedRows() + purgeSegment(index));
+            }
+
+            log.info("Archivage terminé: {} segment(s), {} log(s) archivé(s), {} log(s) supprimé(s) de la base",
+                    result.getSegments().size(), result.getArchivedRows(), result.getDeletedRows());
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Liste les index des segments complets, du plus ancien au plus récent.
+     */
+    public List<UsageArchiveIndex> listSegments() throws IOException {
+        Path archiveDir = getArchiveDirectory();
+        List<UsageArchiveIndex> indexes = new ArrayList<>();
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(INDEX_SUFFIX)).sorted().toList()) {
+                indexes.add(objectMapper.readValue(file.toFile(), UsageArchiveIndex.class));
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Vérifie l'intégrité d'un segment : empreinte SHA-256 du fichier et nombre de lignes de chaque organisation.
+     *
+     * @throws IllegalStateException si le segment est corrompu
+     */
+    public void verifySegment(UsageArchiveIndex index) throws IOException {
+        Path dataFile = resolveSegmentFile(index.getSegment());
+        MessageDigest digest = newSha256();
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(Files.newInputStream(dataFile)), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        if (!sha256.equals(index.getSha256())) {
+            throw new IllegalStateException("Empreinte SHA-256 invalide pour le segment " + index.getSegment());
+        }
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            for (UsageArchiveIndex.OrganizationEntry entry : index.getOrganizations()) {
+                long lines;
+                try (BufferedReader reader = openEntry(channel, entry)) {
+                    lines = reader.lines().count();
+                }
+                if (lines != entry.getRowCount()) {
+                    throw new IllegalStateException("Nombre de lignes invalide pour l'organisation "
+                            + entry.getOrganizationId() + " dans le segment " + index.getSegment()
+                            + " (attendu: " + entry.getRowCount() + ", lu: " + lines + ")");
+                }
+            }
+        }
+    }
+
+    /**
+     * Recherche un segment par son nom et vérifie son intégrité.
+     *
+     * @throws IllegalArgumentException si le segment n'existe pas
+     */
+    public UsageArchiveIndex verifySegment(String segment) throws IOException {
+        UsageArchiveIndex index = listSegments().stream()
+                .filter(i -> i.getSegment().equals(segment))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Segment d'archive introuvable: " + segment));
+        verifySegment(index);
+        return index;
+    }
+
+    /**
+     * Relit les logs archivés d'une organisation sur une période et les écrit en NDJSON,
+     * sans les recharger en base. Seuls les membres gzip de l'organisation sont décompressés.
+     *
+     * @return Nombre de lignes écrites
+     */
+    public long streamOrganizationUsage(Long organizationId, LocalDateTime start, LocalDateTime end,
+                                        OutputStream out) throws IOException {
+        long written = 0;
+        for (UsageArchiveIndex index : listSegments()) {
+            List<UsageArchiveIndex.OrganizationEntry> entries = index.getOrganizations().stream()
+                    .filter(e -> organizationId.equals(e.getOrganizationId()))
+                    .filter(e -> !e.getMaxTimestamp().isBefore(start) && !e.getMinTimestamp().isAfter(end))
+                    .toList();
+            if (entries.isEmpty()) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(resolveSegmentFile(index.getSegment()), StandardOpenOption.READ)) {
+                for (UsageArchiveIndex.OrganizationEntry entry : entries) {
+                    try (BufferedReader reader = openEntry(channel, entry)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            LocalDateTime timestamp = objectMapper.readValue(line, UsageArchiveRecord.class).getTimestamp();
+                            if (timestamp.isAfter(end)) {
+                                break;  // Lignes triées par timestamp dans un membre
+                            }
+                            if (!timestamp.isBefore(start)) {
+                                out.write(line.getBytes(StandardCharsets.UTF_8));
+                                out.write('\n');
+                                written++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        out.flush();
+        return written;
+    }
+
+    // ===================================================
+    // ÉCRITURE DES SEGMENTS
+    // ===================================================
+
+    private void writeOrganization(SegmentWriter writer, Long organizationId, LocalDateTime cutoff) throws IOException {
+        UsageArchiveIndex.OrganizationEntry entry = writer.beginOrganization(organizationId);
+        LocalDateTime afterTimestamp = KEYSET_START;
+        Long afterId = 0L;
+
+        while (true) {
+            PageRequest page = PageRequest.of(0, batchSize);
+            List<UsageLog> logs = organizationId != null
+                    ? usageLogRepository.findArchivablePageByOrganization(organizationId, cutoff, afterTimestamp, afterId, page)
+                    : usageLogRepository.findArchivablePageWithoutOrganization(cutoff, afterTimestamp, afterId, page);
+            for (UsageLog usageLog : logs) {
+                writer.write(entry, UsageArchiveRecord.from(usageLog));
+            }
+            if (logs.size() < batchSize) {
+                break;
+            }
+            UsageLog last = logs.get(logs.size() - 1);
+            afterTimestamp = last.getTimestamp();
+            afterId = last.getId();
+        }
+
+        writer.endOrganization(entry);
+        log.debug("Organisation {} : {} log(s) écrit(s) dans le segment {}",
+                organizationId, entry.getRowCount(), writer.index.getSegment());
+    }
+
+    /**
+     * Ferme le fichier de données, le publie, écrit l'index puis vérifie le segment relu depuis le disque.
+     */
+    private UsageArchiveIndex completeSegment(SegmentWriter writer) throws IOException {
+        UsageArchiveIndex index = writer.close();
+        Path dataFile = writer.dataFile;
+        Files.move(writer.partFile, dataFile, StandardCopyOption.ATOMIC_MOVE);
+        index.setSizeBytes(Files.size(dataFile));
+        writeIndex(index);
+        verifySegment(index);
+        log.info("Segment {} écrit: {} log(s), {} octet(s)", index.getSegment(), index.getRowCount(), index.getSizeBytes());
+        return index;
+    }
+
+    private void writeIndex(UsageArchiveIndex index) throws IOException {
+        Path indexFile = getArchiveDirectory().resolve(baseName(index.getSegment()) + INDEX_SUFFIX);
+        Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + PART_SUFFIX);
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmpFile.toFile(), index);
+        Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Supprime de la base les lignes d'un segment vérifié, par lots (une transaction par lot).
+     */
+    private long purgeSegment(UsageArchiveIndex index) throws IOException {
+        long deleted = 0;
+        for (UsageArchiveIndex.OrganizationEntry entry : index.getOrganizations()) {
+            if (entry.getRowCount() == 0) {
+                continue;
+            }
+            int batchDeleted;
+            do {
+                batchDeleted = Objects.requireNonNull(transactionTemplate.execute(status -> entry.getOrganizationId() != null
+                        ? usageLogRepository.deleteArchivedBatchByOrganization(entry.getOrganizationId(), index.getCutoff(),
+                                entry.getMinId(), entry.getMaxId(), batchSize)
+                        : usageLogRepository.deleteArchivedBatchWithoutOrganization(index.getCutoff(),
+                                entry.getMinId(), entry.getMaxId(), batchSize)));
+                deleted += batchDeleted;
+            } while (batchDeleted > 0);
+        }
+        index.setPurged(true);
+        writeIndex(index);
+        return deleted;
+    }
+
+    // ===================================================
+    // OUTILS
+    // ===================================================
+
+    private Path getArchiveDirectory() throws IOException {
+        Path archiveDir = Paths.get(directory).toAbsolutePath().normalize();
+        Files.createDirectories(archiveDir);
+        return archiveDir;
+    }
+
+    private Path resolveSegmentFile(String segment) throws IOException {
+        Path archiveDir = getArchiveDirectory();
+        Path dataFile = archiveDir.resolve(segment).normalize();
+        if (!dataFile.getParent().equals(archiveDir) || !segment.endsWith(DATA_SUFFIX)) {
+            throw new IllegalArgumentException("Nom de segment invalide: " + segment);
+        }
+        return dataFile;
+    }
+
+    private BufferedReader openEntry(FileChannel channel, UsageArchiveIndex.OrganizationEntry entry) throws IOException {
+        InputStream member = new BoundedInputStream(Channels.newInputStream(channel.position(entry.getOffset())), entry.getLength());
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(member, 64 * 1024), StandardCharsets.UTF_8));
+    }
+
+    private static String baseName(String segment) {
+        return segment.substring(0, segment.length() - DATA_SUFFIX.length());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Algorithme SHA-256 indisponible", e);
+        }
+    }
+
+    /**
+     * Écriture d'un segment : un membre gzip par organisation, concaténés dans un fichier temporaire.
+     */
+    private class SegmentWriter {
+        private final Path partFile;
+        private final Path dataFile;
+        private final MessageDigest digest = newSha256();
+        private final CountingOutputStream fileOut;
+        private final UsageArchiveIndex index = new UsageArchiveIndex();
+        private OutputStream memberOut;
+
+        SegmentWriter(Path archiveDir, LocalDateTime cutoff) throws IOException {
+            String name = "usage-" + LocalDateTime.now().format(SEGMENT_NAME_FORMAT);
+            Path candidate = archiveDir.resolve(name + DATA_SUFFIX);
+            for (int suffix = 1; Files.exists(candidate); suffix++) {
+                candidate = archiveDir.resolve(name + "-" + suffix + DATA_SUFFIX);
+            }
+            this.dataFile = candidate;
+            this.partFile = candidate.resolveSibling(candidate.getFileName() + PART_SUFFIX);
+            this.fileOut = new CountingOutputStream(new DigestOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(partFile), 64 * 1024), digest));
+            index.setSegment(dataFile.getFileName().toString());
+            index.setCreatedAt(LocalDateTime.now());
+            index.setCutoff(cutoff);
+        }
+
+        UsageArchiveIndex.OrganizationEntry beginOrganization(Long organizationId) throws IOException {
+            UsageArchiveIndex.OrganizationEntry entry = new UsageArchiveIndex.OrganizationEntry();
+            entry.setOrganizationId(organizationId);
+            entry.setOffset(fileOut.count);
+            // Le membre gzip ne doit pas fermer le fichier sous-jacent
+            memberOut = new BufferedOutputStream(new GZIPOutputStream(new FilterOutputStream(fileOut) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            }, 64 * 1024), 64 * 1024);
+            return entry;
+        }
+
+        void write(UsageArchiveIndex.OrganizationEntry entry, UsageArchiveRecord record) throws IOException {
+            memberOut.write(objectMapper.writeValueAsBytes(record));
+            memberOut.write('\n');
+            entry.setRowCount(entry.getRowCount() + 1);
+            if (entry.getMinId() == null || record.getId() < entry.getMinId()) {
+                entry.setMinId(record.getId());
+            }
+            if (entry.getMaxId() == null || record.getId() > entry.getMaxId()) {
+                entry.setMaxId(record.getId());
+            }
+            if (entry.getMinTimestamp() == null) {
+                entry.setMinTimestamp(record.getTimestamp());
+            }
+            entry.setMaxTimestamp(record.getTimestamp());
+        }
+
+        void endOrganization(UsageArchiveIndex.OrganizationEntry entry) throws IOException {
+            memberOut.close();
+            memberOut = null;
+            entry.setLength(fileOut.count - entry.getOffset());
+            if (entry.getRowCount() > 0) {
+                index.getOrganizations().add(entry);
+                index.setRowCount(index.getRowCount() + entry.getRowCount());
+            }
+        }
+
+        UsageArchiveIndex close() throws IOException {
+            fileOut.close();
+            index.setSha256(HexFormat.of().formatHex(digest.digest()));
+            return index;
+        }
+
+        void abort() {
+            try {
+                fileOut.close();
+                Files.deleteIfExists(partFile);
+            } catch (IOException e) {
+                log.warn("Impossible de supprimer le segment incomplet {}: {}", partFile, e.getMessage());
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // Le canal est fermé par l'appelant
+        }
+    }
+
+    /**
+     * Résultat d'une exécution de l'archivage.
+     */
+    @Data
+    public static class ArchiveResult {
+        private LocalDateTime cutoff;
+        private long archivedRows;
+        private long deletedRows;
+        private List<UsageArchiveIndex> segments = new ArrayList<>();
+
+        void addSegment(UsageArchiveIndex index) {
+            segments.add(index);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.muhend.backend.usage.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muhend.backend.usage.dto.UsageArchiveRecord;
+import com.muhend.backend.usage.model.UsageLog;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Service d'export brut des logs d'utilisation (CSV ou NDJSON).
+ *
+ * Les lignes sont lues via un curseur JDBC en lecture seule et écrites au fil de l'eau :
+ * le résultat n'est jamais chargé en mémoire, quelle que soit la période exportée.
+ * Le format NDJSON est identique à celui des segments d'archive ({@link UsageArchiveService}).
+ */
+@Service
+@Slf4j
+public class UsageExportService {
+
+    /**
+     * Formats d'export disponibles.
+     */
+    public enum ExportFormat {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        ExportFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final String CSV_HEADER =
+            "id,timestamp,organization_id,keycloak_user_id,endpoint,search_term,tokens_used,cost_usd";
+
+    private final UsageLogRepository usageLogRepository;
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UsageExportService(UsageLogRepository usageLogRepository, ObjectMapper objectMapper) {
+        this.usageLogRepository = usageLogRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Écrit les logs d'une organisation sur une période dans le flux de sortie.
+     * Le flux n'est pas fermé par cette méthode.
+     *
+     * @return Nombre de lignes exportées
+     */
+    @Transactional(readOnly = true)
+    public long exportOrganizationUsage(Long organizationId, LocalDateTime start, LocalDateTime end,
+                                        ExportFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        long count = 0;
+
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        try (Stream<UsageLog> logs = usageLogRepository.streamByOrganizationIdAndTimestampBetween(organizationId, start, end)) {
+            for (UsageLog usageLog : (Iterable<UsageLog>) logs::iterator) {
+                if (format == ExportFormat.CSV) {
+                    writeCsvLine(writer, usageLog);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(UsageArchiveRecord.from(usageLog)));
+                    writer.write('\n');
+                }
+                // Évite l'accumulation des entités dans le contexte de persistance
+                entityManager.detach(usageLog);
+                count++;
+            }
+        }
+
+        writer.flush();
+        log.info("Export {} de {} log(s) pour l'organisation {} ({} - {})", format, count, organizationId, start, end);
+        return count;
+    }
+
+    private static void writeCsvLine(Writer writer, UsageLog usageLog) throws IOException {
+        writer.write(String.valueOf(usageLog.getId()));
+        writer.write(',');
+        writer.write(usageLog.getTimestamp().toString());
+        writer.write(',');
+        writer.write(usageLog.getOrganizationId() != null ? usageLog.getOrganizationId().toString() : "");
+        writer.write(',');
+        writer.write(csvEscape(usageLog.getKeycloakUserId()));
+        writer.write(',');
+        writer.write(csvEscape(usageLog.getEndpoint()));
+        writer.write(',');
+        writer.write(csvEscape(usageLog.getSearchTerm()));
+        writer.write(',');
+        writer.write(usageLog.getTokensUsed() != null ? usageLog.getTokensUsed().toString() : "");
+        writer.write(',');
+        writer.write(usageLog.getCostUsd() != null ? usageLog.getCostUsd().toPlainString() : "");
+        writer.write('\n');
+    }
+
+    /**
+     * Échappe une valeur CSV (RFC 4180) : guillemets si la valeur contient une virgule, un guillemet ou un saut de ligne.
+     */
+    private static String csvEscape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
@@ -1,12 +1,21 @@
 package com.muhend.backend.usage.service;
 
+import com.muhend.backend.usage.dto.OrganizationUsageTotals;
+import com.muhend.backend.usage.dto.UsageLogPage;
+import com.muhend.backend.usage.dto.UsageTotals;
+import com.muhend.backend.usage.dto.UserUsageTotals;
+import com.muhend.backend.usage.event.UsageRecordedEvent;
 import com.muhend.backend.usage.model.UsageLog;
 import com.muhend.backend.usage.repository.UsageLogRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
 
 /**
@@ -17,10 +26,17 @@ import java.util.List;
 @Slf4j
 public class UsageLogService {
     
+    /**
+     * Taille maximale d'une page de logs
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+    
     private final UsageLogRepository repository;
+    private final ApplicationEventPublisher eventPublisher;
     
-    public UsageLogService(UsageLogRepository repository) {
+    public UsageLogService(UsageLogRepository repository, ApplicationEventPublisher eventPublisher) {
         this.repository = repository;
+        this.eventPublisher = eventPublisher;
     }
     
     /**
@@ -60,6 +76,10 @@ public class UsageLogService {
             repository.save(usageLog);
             log.debug("Usage log enregistré pour l'utilisateur: {}, endpoint: {}, coût: {} EUR", 
                      keycloakUserId, endpoint, costUsd != null ? costUsd : BigDecimal.ZERO);
+            
+            // Détection des seuils de quota (alertes) en temps réel, traitée de manière asynchrone
+            eventPublisher.publishEvent(new UsageRecordedEvent(
+                    organizationId, keycloakUserId, endpoint, usageLog.getTimestamp()));
         } catch (org.springframework.dao.DataAccessException e) {
             // Erreur de base de données (table absente, connexion, etc.) - non bloquant
             log.warn("Impossible d'enregistrer le log d'utilisation en base de données (table peut-être absente ou erreur DB): {}", 
@@ -71,51 +91,116 @@ public class UsageLogService {
     }
     
     /**
-     * Récupère tous les logs d'un utilisateur.
+     * Récupère une page de logs (du plus récent au plus ancien) par pagination par clé sur (timestamp, id).
+     * Le coût d'une page est indépendant de sa position, contrairement à une pagination par offset.
+     *
+     * @param organizationId ID de l'organisation (null = toutes les organisations)
+     * @param keycloakUserId ID de l'utilisateur (optionnel, nécessite organizationId)
+     * @param start Début de la période (inclus)
+     * @param end Fin de la période (incluse)
+     * @param cursor Curseur renvoyé par la page précédente (null pour la première page)
+     * @param limit Taille de la page (bornée à {@value #MAX_PAGE_SIZE})
+     * @throws IllegalArgumentException si le curseur est invalide
      */
-    public List<UsageLog> getUsageLogsByUser(String keycloakUserId) {
-        return repository.findByKeycloakUserId(keycloakUserId);
+    public UsageLogPage getUsageLogsPage(Long organizationId, String keycloakUserId,
+                                         LocalDateTime start, LocalDateTime end,
+                                         String cursor, int limit) {
+        if (keycloakUserId != null && organizationId == null) {
+            throw new IllegalArgumentException("Le filtre par utilisateur nécessite une organisation");
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        
+        // Première page : tout ce qui est <= end
+        LocalDateTime beforeTimestamp = end;
+        Long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] decoded = decodeCursor(cursor);
+            LocalDateTime cursorTimestamp = LocalDateTime.parse(decoded[0]);
+            beforeTimestamp = cursorTimestamp.isAfter(end) ? end : cursorTimestamp;
+            beforeId = Long.parseLong(decoded[1]);
+        }
+        
+        // Une ligne de plus pour savoir s'il reste des résultats
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<UsageLog> logs;
+        if (organizationId == null) {
+            logs = repository.findPageBefore(start, beforeTimestamp, beforeId, page);
+        } else if (keycloakUserId == null) {
+            logs = repository.findPageByOrganizationBefore(organizationId, start, beforeTimestamp, beforeId, page);
+        } else {
+            logs = repository.findPageByOrganizationAndUserBefore(organizationId, keycloakUserId, start,
+                    beforeTimestamp, beforeId, page);
+        }
+        
+        boolean hasMore = logs.size() > pageSize;
+        List<UsageLog> items = hasMore ? logs.subList(0, pageSize) : logs;
+        String nextCursor = hasMore ? encodeCursor(items.get(items.size() - 1)) : null;
+        return new UsageLogPage(items, nextCursor, hasMore);
     }
     
     /**
-     * Récupère les logs entre deux dates.
+     * Récupère les logs les plus récents d'une période (première page de la pagination par clé).
      */
-    public List<UsageLog> getUsageLogsByDateRange(LocalDateTime start, LocalDateTime end) {
-        return repository.findByTimestampBetween(start, end);
+    public List<UsageLog> getRecentUsageLogs(Long organizationId, String keycloakUserId,
+                                             LocalDateTime start, LocalDateTime end, int limit) {
+        return getUsageLogsPage(organizationId, keycloakUserId, start, end, null, limit).getItems();
     }
     
     /**
-     * Récupère les logs d'un utilisateur entre deux dates.
+     * Calcule en SQL le nombre de requêtes, le coût total et les tokens totaux d'une période.
+     *
+     * @param organizationId ID de l'organisation (null = toutes les organisations)
+     * @param keycloakUserId ID de l'utilisateur (optionnel, nécessite organizationId)
      */
-    public List<UsageLog> getUsageLogsByUserAndDateRange(String keycloakUserId, 
-                                                          LocalDateTime start, 
-                                                          LocalDateTime end) {
-        return repository.findByKeycloakUserIdAndTimestampBetween(keycloakUserId, start, end);
+    public UsageTotals getUsageTotals(Long organizationId, String keycloakUserId,
+                                      LocalDateTime start, LocalDateTime end) {
+        if (organizationId == null) {
+            if (keycloakUserId != null) {
+                throw new IllegalArgumentException("Le filtre par utilisateur nécessite une organisation");
+            }
+            return repository.sumByTimestampBetween(start, end);
+        }
+        if (keycloakUserId == null) {
+            return repository.sumByOrganizationIdAndTimestampBetween(organizationId, start, end);
+        }
+        return repository.sumByOrganizationIdAndKeycloakUserIdAndTimestampBetween(organizationId, keycloakUserId, start, end);
     }
     
     /**
-     * Récupère tous les logs (pour l'admin).
+     * Agrégats d'utilisation par organisation sur une période (GROUP BY en SQL).
      */
-    public List<UsageLog> getAllUsageLogs() {
-        return repository.findAll();
+    public List<OrganizationUsageTotals> getUsageTotalsByOrganization(LocalDateTime start, LocalDateTime end) {
+        return repository.sumGroupedByOrganization(start, end);
     }
     
     /**
-     * Récupère les logs d'une organisation entre deux dates.
+     * Agrégats d'utilisation par utilisateur sur une période (GROUP BY en SQL).
+     *
+     * @param organizationId ID de l'organisation (null = toutes les organisations)
      */
-    public List<UsageLog> getUsageLogsByOrganizationAndDateRange(Long organizationId, 
-                                                                  LocalDateTime start, 
-                                                                  LocalDateTime end) {
-        return repository.findByOrganizationIdAndTimestampBetween(organizationId, start, end);
+    public List<UserUsageTotals> getUsageTotalsByUser(Long organizationId, LocalDateTime start, LocalDateTime end) {
+        return organizationId == null
+                ? repository.sumGroupedByUser(start, end)
+                : repository.sumGroupedByUserForOrganization(organizationId, start, end);
     }
     
-    /**
-     * Récupère les logs d'une organisation.
-     */
-    public List<UsageLog> getUsageLogsByOrganization(Long organizationId) {
-        return repository.findAll().stream()
-                .filter(log -> log.getOrganizationId() != null && log.getOrganizationId().equals(organizationId))
-                .collect(java.util.stream.Collectors.toList());
+    private static String encodeCursor(UsageLog last) {
+        String raw = last.getTimestamp() + "_" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("_", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Curseur invalide");
+            }
+            LocalDateTime.parse(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Curseur invalide: " + cursor);
+        }
     }
 }
-
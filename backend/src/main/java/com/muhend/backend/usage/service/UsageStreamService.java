@@ -0,0 +1,336 @@
+package com.muhend.backend.usage.service;
+
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.organization.dto.OrganizationEntitlement;
+import com.muhend.backend.organization.service.OrganizationEntitlementService;
+import com.muhend.backend.usage.dto.UsageStreamSnapshot;
+import com.muhend.backend.usage.event.UsageRecordedEvent;
+import com.muhend.backend.usage.model.UsageLog;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Flux d'utilisation en temps réel par organisation (tableaux de bord).
+ *
+ * Chaque recherche enregistrée ({@link UsageRecordedEvent}) marque les abonnés de l'organisation
+ * comme « à rafraîchir ». Un envoi groupé périodique pousse alors un instantané (usage du mois,
+ * quota restant, usage personnel, dernières recherches) au plus une fois par seconde et par abonné :
+ * une rafale de recherches ne produit qu'un envoi. L'état commun de l'organisation est calculé
+ * une seule fois par envoi, quel que soit le nombre d'abonnés.
+ *
+ * Les recherches des autres instances arrivent par le bus d'invalidation ({@link CacheInvalidationBus#USAGE_STREAM}) :
+ * un abonné est rafraîchi quelle que soit l'instance qui a servi la recherche. Les envois (requêtes SQL et
+ * écritures SSE) se font sur un thread dédié, pas sur le pool @Scheduled partagé.
+ */
+@Service
+@Slf4j
+public class UsageStreamService {
+
+    private static final String USAGE_EVENT = "usage";
+    public static final int DEFAULT_RECENT_LIMIT = 10;
+    public static final int MAX_RECENT_LIMIT = 50;
+
+    private final UsageLogRepository usageLogRepository;
+    private final UsageLogService usageLogService;
+    private final OrganizationEntitlementService entitlementService;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final ScheduledExecutorService executor;
+
+    @Value("${notifications.sse.timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    /**
+     * Intervalle minimal entre deux envois à un même abonné
+     */
+    @Value("${usage.stream.min-interval-ms:1000}")
+    private long minIntervalMs;
+
+    @Value("${usage.stream.flush-interval-ms:250}")
+    private long flushIntervalMs;
+
+    @Value("${usage.stream.heartbeat-interval-ms:25000}")
+    private long heartbeatIntervalMs;
+
+    /**
+     * Abonnés par organisation
+     */
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    public UsageStreamService(UsageLogRepository usageLogRepository,
+                              UsageLogService usageLogService,
+                              OrganizationEntitlementService entitlementService,
+                              CacheInvalidationBus cacheInvalidationBus) {
+        this.usageLogRepository = usageLogRepository;
+        this.usageLogService = usageLogService;
+        this.entitlementService = entitlementService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.executor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("usage-stream").factory());
+    }
+
+    @PostConstruct
+    void start() {
+        cacheInvalidationBus.register(CacheInvalidationBus.USAGE_STREAM, new CacheInvalidationBus.Handler() {
+            @Override
+            public void invalidate(String key) {
+                String[] parts = key.split(":", 2);
+                markDirty(Long.valueOf(parts[0]), parts.length > 1 ? parts[1] : null);
+            }
+
+            @Override
+            public void invalidateAll() {
+                // Messages éventuellement perdus : tous les abonnés sont rafraîchis
+                subscribers.values().forEach(set -> set.forEach(subscriber -> {
+                    subscriber.personalDirty = true;
+                    subscriber.dirty.set(true);
+                }));
+            }
+        });
+        executor.scheduleWithFixedDelay(() -> runSafely("envoi", this::flush),
+                flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        executor.scheduleAtFixedRate(() -> runSafely("heartbeat", this::heartbeat),
+                heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Une exception non rattrapée annulerait les exécutions suivantes de la tâche périodique.
+     */
+    private static void runSafely(String task, Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            log.warn("Erreur du flux d'utilisation ({}): {}", task, e.getMessage());
+        }
+    }
+
+    /**
+     * Ouvre un flux SSE d'utilisation pour un utilisateur de l'organisation.
+     * Un premier instantané est envoyé immédiatement, puis un nouveau après chaque recherche de l'organisation.
+     *
+     * @param recentLimit Nombre de recherches récentes à inclure (borné à {@value #MAX_RECENT_LIMIT})
+     */
+    public SseEmitter subscribe(Long organizationId, String keycloakUserId, int recentLimit) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, keycloakUserId,
+                Math.max(1, Math.min(recentLimit, MAX_RECENT_LIMIT)));
+        Set<Subscriber> organizationSubscribers = subscribers.computeIfAbsent(organizationId, id -> ConcurrentHashMap.newKeySet());
+        organizationSubscribers.add(subscriber);
+
+        Runnable remove = () -> removeSubscriber(organizationId, subscriber);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        try {
+            send(organizationId, subscriber, loadOrganizationState(organizationId, subscriber.recentLimit));
+        } catch (Exception e) {
+            log.warn("Impossible de construire l'état d'utilisation de l'organisation {}: {}", organizationId, e.getMessage());
+            removeSubscriber(organizationId, subscriber);
+            emitter.completeWithError(e);
+        }
+        log.debug("Flux d'utilisation ouvert pour l'utilisateur {} (organisation {}, {} abonné(s))",
+                keycloakUserId, organizationId, organizationSubscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Marque les abonnés de l'organisation comme à rafraîchir (l'envoi est différé et regroupé),
+     * ici et sur les autres instances.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUsageRecorded(UsageRecordedEvent event) {
+        if (event.getOrganizationId() == null) {
+            return;
+        }
+        markDirty(event.getOrganizationId(), event.getKeycloakUserId());
+        cacheInvalidationBus.broadcast(CacheInvalidation.of(CacheInvalidationBus.USAGE_STREAM,
+                event.getKeycloakUserId() != null
+                        ? event.getOrganizationId() + ":" + event.getKeycloakUserId()
+                        : event.getOrganizationId()));
+    }
+
+    private void markDirty(Long organizationId, String keycloakUserId) {
+        Set<Subscriber> organizationSubscribers = subscribers.get(organizationId);
+        if (organizationSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : organizationSubscribers) {
+            if (subscriber.keycloakUserId.equals(keycloakUserId)) {
+                subscriber.personalDirty = true;
+            }
+            subscriber.dirty.set(true);
+        }
+    }
+
+    /**
+     * Pousse un instantané aux abonnés à rafraîchir dont le dernier envoi date d'au moins minIntervalMs.
+     */
+    void flush() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Set<Subscriber>> entry : subscribers.entrySet()) {
+            Long organizationId = entry.getKey();
+            List<Subscriber> due = new ArrayList<>();
+            int recentLimit = 0;
+            for (Subscriber subscriber : entry.getValue()) {
+                if (subscriber.dirty.get() && now - subscriber.lastSentAt >= minIntervalMs
+                        && subscriber.dirty.compareAndSet(true, false)) {
+                    due.add(subscriber);
+                    recentLimit = Math.max(recentLimit, subscriber.recentLimit);
+                }
+            }
+            if (due.isEmpty()) {
+                continue;
+            }
+
+            OrganizationState state;
+            try {
+                state = loadOrganizationState(organizationId, recentLimit);
+            } catch (Exception e) {
+                log.warn("Impossible de construire l'état d'utilisation de l'organisation {}: {}", organizationId, e.getMessage());
+                due.forEach(subscriber -> subscriber.dirty.set(true));
+                continue;
+            }
+            for (Subscriber subscriber : due) {
+                send(organizationId, subscriber, state);
+            }
+        }
+    }
+
+    /**
+     * Envoie un commentaire périodique pour maintenir les connexions ouvertes
+     * (proxys) et détecter les connexions fermées par le client.
+     */
+    void heartbeat() {
+        for (Map.Entry<Long, Set<Subscriber>> entry : subscribers.entrySet()) {
+            for (Subscriber subscriber : entry.getValue()) {
+                try {
+                    subscriber.emitter.send(SseEmitter.event().comment("ping"));
+                } catch (IOException | IllegalStateException e) {
+                    removeSubscriber(entry.getKey(), subscriber);
+                    subscriber.emitter.completeWithError(e);
+                }
+            }
+        }
+    }
+
+    private void send(Long organizationId, Subscriber subscriber, OrganizationState state) {
+        try {
+            if (subscriber.personalDirty || !state.start.equals(subscriber.personalPeriodStart)) {
+                subscriber.personalDirty = false;
+                subscriber.personalPeriodStart = state.start;
+                subscriber.personalUsage = usageLogRepository.countByOrganizationIdAndKeycloakUserIdAndTimestampBetween(
+                        organizationId, subscriber.keycloakUserId, state.start, state.end);
+            }
+            subscriber.lastSentAt = System.currentTimeMillis();
+            subscriber.emitter.send(SseEmitter.event().name(USAGE_EVENT).data(state.toSnapshot(
+                    organizationId, subscriber.personalUsage, subscriber.recentLimit)));
+        } catch (IOException | IllegalStateException e) {
+            // Client déconnecté
+            removeSubscriber(organizationId, subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private void removeSubscriber(Long organizationId, Subscriber subscriber) {
+        subscribers.computeIfPresent(organizationId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * État commun de l'organisation sur le mois en cours (mêmes règles que /user/quota) :
+     * un COUNT et une page de logs, partagés par tous les abonnés.
+     */
+    private OrganizationState loadOrganizationState(Long organizationId, int recentLimit) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime startOfMonth = now.withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
+        LocalDateTime endOfMonth = now.withDayOfMonth(now.toLocalDate().lengthOfMonth())
+                .withHour(23).withMinute(59).withSecond(59).withNano(999999999);
+
+        // Valeur actuelle du quota depuis le plan tarifaire, sinon celle stockée dans l'organisation
+        OrganizationEntitlement entitlement = entitlementService.getEntitlement(organizationId);
+        Integer monthlyQuota = entitlement.isPlanFound() ? entitlement.getPlanMonthlyQuota() : entitlement.getMonthlyQuota();
+
+        long currentUsage = usageLogRepository.countByOrganizationIdAndTimestampBetween(organizationId, startOfMonth, endOfMonth);
+        List<UsageStreamSnapshot.RecentSearch> recentUsage = usageLogService
+                .getRecentUsageLogs(organizationId, null, startOfMonth, endOfMonth, recentLimit)
+                .stream()
+                .map(UsageStreamService::toRecentSearch)
+                .toList();
+        return new OrganizationState(startOfMonth, endOfMonth, monthlyQuota, currentUsage, recentUsage);
+    }
+
+    private static UsageStreamSnapshot.RecentSearch toRecentSearch(UsageLog usageLog) {
+        return new UsageStreamSnapshot.RecentSearch(
+                usageLog.getId(),
+                usageLog.getEndpoint(),
+                usageLog.getSearchTerm(),
+                usageLog.getTokensUsed(),
+                usageLog.getCostUsd() != null ? usageLog.getCostUsd().doubleValue() : null,
+                usageLog.getTimestamp().toString());
+    }
+
+    private record OrganizationState(LocalDateTime start, LocalDateTime end, Integer monthlyQuota,
+                                     long currentUsage, List<UsageStreamSnapshot.RecentSearch> recentUsage) {
+
+        private UsageStreamSnapshot toSnapshot(Long organizationId, long personalUsage, int recentLimit) {
+            return UsageStreamSnapshot.builder()
+                    .organizationId(organizationId)
+                    .monthlyQuota(monthlyQuota)
+                    .currentUsage(currentUsage)
+                    .personalUsage(personalUsage)
+                    .remaining(monthlyQuota != null ? Math.max(0, monthlyQuota - currentUsage) : -1)
+                    .percentageUsed(monthlyQuota != null && monthlyQuota > 0
+                            ? (double) currentUsage / monthlyQuota * 100
+                            : 0.0)
+                    .unlimited(monthlyQuota == null)
+                    .recentUsage(recentUsage.size() > recentLimit ? recentUsage.subList(0, recentLimit) : recentUsage)
+                    .generatedAt(LocalDateTime.now().toString())
+                    .build();
+        }
+    }
+
+    /**
+     * Connexion SSE d'un utilisateur et son état de regroupement
+     */
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final String keycloakUserId;
+        private final int recentLimit;
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        private volatile long lastSentAt;
+        private volatile boolean personalDirty = true;
+        private volatile LocalDateTime personalPeriodStart;
+        private volatile long personalUsage;
+
+        private Subscriber(SseEmitter emitter, String keycloakUserId, int recentLimit) {
+            this.emitter = emitter;
+            this.keycloakUserId = keycloakUserId;
+            this.recentLimit = recentLimit;
+        }
+    }
+}
@@ -6,9 +6,14 @@ import com.muhend.backend.organization.exception.UserNotAssociatedException;
 import com.muhend.backend.organization.service.OrganizationService;
 import com.muhend.backend.pricing.dto.PricingPlanDto;
 import com.muhend.backend.pricing.service.PricingPlanService;
+import com.muhend.backend.usage.dto.UsageLogPage;
+import com.muhend.backend.usage.dto.UsageTotals;
 import com.muhend.backend.usage.model.UsageLog;
 import com.muhend.backend.usage.repository.UsageLogRepository;
+import com.muhend.backend.usage.service.UsageLogService;
+import com.muhend.backend.usage.service.UsageStreamService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import jakarta.validation.Valid;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -26,6 +31,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.FileWriter;
@@ -73,7 +79,9 @@ public class UserController {
 
     private final OrganizationService organizationService;
     private final UsageLogRepository usageLogRepository;
+    private final UsageLogService usageLogService;
     private final PricingPlanService pricingPlanService;
+    private final UsageStreamService usageStreamService;
 
     /**
      * Récupère l'organisation de l'utilisateur connecté.
@@ -144,40 +152,26 @@ public class UserController {
                         .withHour(23).withMinute(59).withSecond(59).withNano(999999999);
             }
 
-            // Récupérer les logs de l'utilisateur (filtrer par organisation ET utilisateur)
-            List<UsageLog> userLogs = usageLogRepository.findByOrganizationIdAndTimestampBetween(organizationId, startDateTime, endDateTime)
+            // Agrégats de l'utilisateur dans son organisation (calculés en SQL)
+            UsageTotals userTotals = usageLogService.getUsageTotals(organizationId, userId, startDateTime, endDateTime);
+            long totalRequests = userTotals.getRequestCount();
+            BigDecimal totalCost = userTotals.getTotalCostUsd() != null ? userTotals.getTotalCostUsd() : BigDecimal.ZERO;
+            long totalTokens = userTotals.getTotalTokens() != null ? userTotals.getTotalTokens() : 0L;
+
+            // Utilisations récentes (10 dernières)
+            List<Map<String, Object>> recentUsage = usageLogService
+                    .getRecentUsageLogs(organizationId, userId, startDateTime, endDateTime, 10)
                     .stream()
-                    .filter(log -> userId.equals(log.getKeycloakUserId()))
+                    .map(this::toUsageLogMap)
                     .toList();
 
-        // Calculer les statistiques
-        long totalRequests = userLogs.size();
-        BigDecimal totalCost = userLogs.stream()
-                .filter(log -> log.getCostUsd() != null)
-                .map(UsageLog::getCostUsd)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        long totalTokens = userLogs.stream()
-                .filter(log -> log.getTokensUsed() != null)
-                .mapToLong(UsageLog::getTokensUsed)
-                .sum();
-
-        // Utilisations récentes (10 dernières)
-        List<Map<String, Object>> recentUsage = userLogs.stream()
-                .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                .limit(10)
-                .map(this::toUsageLogMap)
-                .toList();
-
             // Statistiques du mois en cours (pour l'affichage du quota)
             LocalDateTime startOfMonth = LocalDateTime.now().withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
             LocalDateTime endOfMonth = LocalDateTime.now().withDayOfMonth(LocalDateTime.now().toLocalDate().lengthOfMonth())
                     .withHour(23).withMinute(59).withSecond(59).withNano(999999999);
             
-            List<UsageLog> monthlyLogs = usageLogRepository.findByOrganizationIdAndTimestampBetween(organizationId, startOfMonth, endOfMonth)
-                    .stream()
-                    .filter(log -> userId.equals(log.getKeycloakUserId()))
-                    .toList();
-            long monthlyRequests = monthlyLogs.size();
+            long monthlyRequests = usageLogRepository.countByOrganizationIdAndKeycloakUserIdAndTimestampBetween(
+                    organizationId, userId, startOfMonth, endOfMonth);
 
             Map<String, Object> stats = new LinkedHashMap<>();
             stats.put("totalRequests", totalRequests);
@@ -234,6 +228,80 @@ public class UserController {
         }
     }
 
+    /**
+     * Parcourt les logs d'utilisation de l'utilisateur connecté par pagination par curseur.
+     */
+    @GetMapping("/usage/logs")
+    @Operation(
+        summary = "Parcourir mes logs d'utilisation",
+        description = "Retourne une page de logs d'utilisation de l'utilisateur connecté, du plus récent au plus ancien. " +
+                     "Renvoyer le champ nextCursor dans ?cursor=... pour obtenir la page suivante. " +
+                     "Paramètres optionnels: ?startDate=... et ?endDate=... (format: yyyy-MM-dd), ?limit=... (défaut 50, max 500).",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<Map<String, Object>> getMyUsageLogs(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        String userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            Long organizationId = organizationService.getOrganizationIdByUserId(userId);
+            LocalDateTime startDateTime = startDate != null ? startDate.atStartOfDay() : LocalDateTime.of(1970, 1, 1, 0, 0);
+            LocalDateTime endDateTime = endDate != null ? endDate.atTime(LocalTime.MAX) : LocalDateTime.now();
+
+            UsageLogPage page = usageLogService.getUsageLogsPage(organizationId, userId, startDateTime, endDateTime, cursor, limit);
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("items", page.getItems().stream().map(this::toUsageLogMap).toList());
+            response.put("nextCursor", page.getNextCursor());
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
+        } catch (UserNotAssociatedException e) {
+            log.error("Utilisateur {} non associé à une organisation", userId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("error", "Vous devez être associé à une organisation pour consulter vos statistiques."));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Ouvre un flux Server-Sent Events de l'utilisation de l'organisation de l'utilisateur connecté.
+     * Événement "usage" : état complet à la connexion, puis après chaque recherche de l'organisation
+     * (au plus un envoi par seconde).
+     */
+    @GetMapping(value = "/usage/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+        summary = "Flux de mon utilisation en temps réel",
+        description = "Flux SSE de l'usage du mois de l'organisation, du quota restant, de l'usage personnel " +
+                     "et des dernières recherches de l'organisation, mis à jour au plus une fois par seconde. " +
+                     "Remplace l'interrogation répétée de /user/usage/stats et /user/quota. " +
+                     "Paramètre optionnel: ?recent=... (nombre de recherches récentes, défaut 10, max 50).",
+        security = @SecurityRequirement(name = "bearerAuth")
+    )
+    public ResponseEntity<SseEmitter> streamMyUsage(
+            @RequestParam(defaultValue = "" + UsageStreamService.DEFAULT_RECENT_LIMIT) int recent) {
+        String userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            Long organizationId = organizationService.getOrganizationIdByUserId(userId);
+            return ResponseEntity.ok()
+                    .header("Cache-Control", "no-cache")
+                    .header("X-Accel-Buffering", "no") // Désactive la mise en tampon des proxys (nginx)
+                    .body(usageStreamService.subscribe(organizationId, userId, recent));
+        } catch (UserNotAssociatedException e) {
+            log.error("Utilisateur {} non associé à une organisation", userId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
     /**
      * Récupère l'état du quota de l'utilisateur connecté.
      * Un utilisateur DOIT toujours être associé à une organisation.
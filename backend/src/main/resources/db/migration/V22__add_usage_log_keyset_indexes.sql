@@ -0,0 +1,7 @@
+-- Migration pour ajouter les index de pagination par clé sur usage_log
+-- Les requêtes paginées trient par (timestamp DESC, id DESC) : l'id en dernière colonne
+-- permet de reprendre exactement après le curseur sans tri supplémentaire.
+
+CREATE INDEX IF NOT EXISTS idx_usage_log_timestamp_id ON usage_log(timestamp, id);
+CREATE INDEX IF NOT EXISTS idx_usage_log_org_timestamp_id ON usage_log(organization_id, timestamp, id);
+CREATE INDEX IF NOT EXISTS idx_usage_log_org_user_timestamp_id ON usage_log(organization_id, keycloak_user_id, timestamp, id);
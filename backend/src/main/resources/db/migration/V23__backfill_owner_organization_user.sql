@@ -0,0 +1,12 @@
+-- Migration pour enregistrer les comptes organisation (propriétaires) comme membres
+-- Jusqu'ici, getOrganizationIdByUserId créait cette association à la volée lors d'une lecture.
+-- Après cette réparation unique, la résolution utilisateur → organisation ne fait plus aucune écriture.
+
+INSERT INTO organization_user (organization_id, keycloak_user_id, joined_at)
+SELECT o.id, o.keycloak_user_id, COALESCE(o.created_at, CURRENT_TIMESTAMP)
+FROM organization o
+WHERE o.keycloak_user_id IS NOT NULL
+  AND NOT EXISTS (
+      SELECT 1 FROM organization_user ou
+      WHERE ou.keycloak_user_id = o.keycloak_user_id
+  );
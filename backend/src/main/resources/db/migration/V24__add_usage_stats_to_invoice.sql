@@ -0,0 +1,22 @@
+-- Migration pour figer les statistiques d'utilisation de la période sur la facture
+-- Auparavant recalculées à partir de usage_log à chaque conversion en DTO (une lecture complète par facture listée).
+-- NULL = statistiques pas encore figées (période non terminée ou facture antérieure à cette migration) :
+-- elles sont calculées par InvoiceUsageStatsBackfillService.
+
+ALTER TABLE invoice ADD COLUMN IF NOT EXISTS total_requests BIGINT;
+ALTER TABLE invoice ADD COLUMN IF NOT EXISTS total_tokens BIGINT;
+ALTER TABLE invoice ADD COLUMN IF NOT EXISTS total_cost_usd NUMERIC(12, 2);
+
+COMMENT ON COLUMN invoice.total_requests IS 'Nombre de requêtes de la période (figé à la fin de la période)';
+COMMENT ON COLUMN invoice.total_tokens IS 'Tokens consommés sur la période (figé à la fin de la période)';
+COMMENT ON COLUMN invoice.total_cost_usd IS 'Coût des requêtes de la période (figé à la fin de la période)';
+
+-- Factures à figer (index partiel, vide en régime établi)
+CREATE INDEX IF NOT EXISTS idx_invoice_usage_stats_pending ON invoice(id) WHERE total_requests IS NULL;
+
+-- Pagination par clé des listes de factures (created_at DESC, id DESC)
+CREATE INDEX IF NOT EXISTS idx_invoice_created_at_id ON invoice(created_at, id);
+CREATE INDEX IF NOT EXISTS idx_invoice_org_created_at_id ON invoice(organization_id, created_at, id);
+
+-- Chargement groupé des lignes de plusieurs factures
+CREATE INDEX IF NOT EXISTS idx_invoice_item_invoice_id ON invoice_item(invoice_id, id);
@@ -0,0 +1,37 @@
+-- Migration pour créer les tables de suivi des traitements de facturation en masse
+-- (factures mensuelles de toutes les organisations, factures bihebdomadaires Pay-per-Request).
+-- Une ligne billing_job_item par organisation : elle est mise à jour dans la même transaction
+-- que la génération de la facture, ce qui permet de reprendre un traitement interrompu là où il s'est arrêté.
+
+CREATE TABLE IF NOT EXISTS billing_job (
+    id BIGSERIAL PRIMARY KEY,
+    job_type VARCHAR(30) NOT NULL,
+    period_start DATE NOT NULL,
+    period_end DATE NOT NULL,
+    status VARCHAR(30) NOT NULL,
+    total_items INTEGER NOT NULL DEFAULT 0,
+    generated_count INTEGER NOT NULL DEFAULT 0,
+    skipped_count INTEGER NOT NULL DEFAULT 0,
+    failed_count INTEGER NOT NULL DEFAULT 0,
+    started_at TIMESTAMP NOT NULL,
+    last_checkpoint_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    -- Un seul traitement par type et par période (idempotence)
+    CONSTRAINT uk_billing_job_type_period UNIQUE (job_type, period_start, period_end)
+);
+
+CREATE TABLE IF NOT EXISTS billing_job_item (
+    id BIGSERIAL PRIMARY KEY,
+    job_id BIGINT NOT NULL,
+    organization_id BIGINT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    invoice_id BIGINT,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    error_message VARCHAR(1000),
+    processed_at TIMESTAMP,
+    CONSTRAINT fk_billing_job_item_job FOREIGN KEY (job_id) REFERENCES billing_job(id) ON DELETE CASCADE,
+    CONSTRAINT uk_billing_job_item_organization UNIQUE (job_id, organization_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_billing_job_status ON billing_job(status);
+CREATE INDEX IF NOT EXISTS idx_billing_job_item_job_status ON billing_job_item(job_id, status, id);
@@ -0,0 +1,23 @@
+-- Migration pour créer la file d'envoi des emails (outbox transactionnelle).
+-- Les emails sont enregistrés dans la transaction de l'appelant (annulés avec elle),
+-- puis envoyés en arrière-plan par lots sur une même connexion SMTP, avec nouvelles tentatives.
+
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    message_type VARCHAR(50) NOT NULL,
+    recipient VARCHAR(320) NOT NULL,
+    subject VARCHAR(500) NOT NULL,
+    -- Vidé après l'envoi (peut contenir des informations sensibles, ex: mot de passe temporaire)
+    body TEXT,
+    html BOOLEAN NOT NULL DEFAULT TRUE,
+    status VARCHAR(20) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL,
+    last_error VARCHAR(1000),
+    created_at TIMESTAMP NOT NULL,
+    sent_at TIMESTAMP
+);
+
+-- Sélection des messages à envoyer
+CREATE INDEX IF NOT EXISTS idx_email_outbox_pending ON email_outbox(next_attempt_at, id) WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_email_outbox_status ON email_outbox(status);
@@ -0,0 +1,27 @@
+-- Migration pour créer la file de réception des webhooks Stripe (inbox).
+-- L'événement vérifié est enregistré puis acquitté immédiatement ; il est traité en arrière-plan,
+-- une seule fois par identifiant d'événement et dans l'ordre pour un même client Stripe.
+
+CREATE TABLE IF NOT EXISTS stripe_webhook_event (
+    id BIGSERIAL PRIMARY KEY,
+    -- Identifiant de l'événement Stripe (evt_...) : les renvois de Stripe sont ignorés
+    event_id VARCHAR(255) NOT NULL UNIQUE,
+    event_type VARCHAR(100) NOT NULL,
+    -- Client Stripe concerné (null si l'événement n'en porte pas) : les événements d'un même client sont traités dans l'ordre
+    customer_id VARCHAR(255),
+    payload TEXT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL,
+    locked_until TIMESTAMP,
+    last_error VARCHAR(1000),
+    -- Date de création de l'événement chez Stripe
+    stripe_created_at TIMESTAMP NOT NULL,
+    received_at TIMESTAMP NOT NULL,
+    processed_at TIMESTAMP
+);
+
+-- Sélection des événements à traiter et vérification de l'ordre par client
+CREATE INDEX IF NOT EXISTS idx_stripe_webhook_event_pending ON stripe_webhook_event(next_attempt_at, stripe_created_at, id) WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_stripe_webhook_event_customer_open ON stripe_webhook_event(customer_id, stripe_created_at, id) WHERE status IN ('PENDING', 'PROCESSING');
+CREATE INDEX IF NOT EXISTS idx_stripe_webhook_event_status ON stripe_webhook_event(status, received_at);
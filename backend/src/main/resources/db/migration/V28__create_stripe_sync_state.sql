@@ -0,0 +1,12 @@
+-- Migration pour mémoriser l'avancement des synchronisations avec Stripe.
+-- Le point de reprise (watermark) permet de ne relire que les objets modifiés depuis la dernière synchronisation.
+
+CREATE TABLE IF NOT EXISTS stripe_sync_state (
+    -- Objet synchronisé (ex: subscriptions)
+    name VARCHAR(50) PRIMARY KEY,
+    -- Horodatage Stripe (secondes Unix) jusqu'auquel les modifications ont été appliquées
+    watermark BIGINT,
+    last_full_sync_at TIMESTAMP,
+    last_run_at TIMESTAMP,
+    last_synced_count INTEGER NOT NULL DEFAULT 0
+);
@@ -0,0 +1,31 @@
+-- Migration pour coordonner les tâches planifiées entre plusieurs instances du backend.
+-- Une tâche n'est exécutée que par l'instance qui détient son bail (job_lock) ; chaque exécution
+-- est historisée (job_run).
+
+CREATE TABLE IF NOT EXISTS job_lock (
+    -- Nom de la tâche (ou du traitement) protégé
+    name VARCHAR(100) PRIMARY KEY,
+    -- Instance détentrice du bail
+    locked_by VARCHAR(255) NOT NULL,
+    locked_at TIMESTAMP NOT NULL,
+    -- Fin du bail : au-delà, une autre instance peut le prendre (instance arrêtée pendant la tâche)
+    locked_until TIMESTAMP NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS job_run (
+    id BIGSERIAL PRIMARY KEY,
+    job_name VARCHAR(100) NOT NULL,
+    instance_id VARCHAR(255) NOT NULL,
+    -- SCHEDULED (planification) ou MANUAL (déclenchement par un administrateur)
+    trigger_type VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    started_at TIMESTAMP NOT NULL,
+    finished_at TIMESTAMP,
+    duration_ms BIGINT,
+    items_processed INTEGER,
+    error_message VARCHAR(1000)
+);
+
+CREATE INDEX IF NOT EXISTS idx_job_run_job_name ON job_run(job_name, started_at DESC);
+CREATE INDEX IF NOT EXISTS idx_job_run_running ON job_run(job_name) WHERE status = 'RUNNING';
+CREATE INDEX IF NOT EXISTS idx_job_run_started_at ON job_run(started_at);
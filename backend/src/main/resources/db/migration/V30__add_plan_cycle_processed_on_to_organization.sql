@@ -0,0 +1,7 @@
+-- Migration pour ajouter la date du dernier traitement du cycle mensuel des plans
+-- Le traitement quotidien est fait organisation par organisation (une transaction chacune) :
+-- une organisation déjà traitée le jour même est ignorée si le traitement est relancé.
+
+ALTER TABLE organization ADD COLUMN IF NOT EXISTS plan_cycle_processed_on DATE;
+
+COMMENT ON COLUMN organization.plan_cycle_processed_on IS 'Dernier jour où le cycle mensuel du plan a été traité';
@@ -0,0 +1,29 @@
+-- Migration pour créer la table de suivi des suppressions d'organisations.
+-- Une suppression est exécutée en arrière-plan, table par table et par lots (une transaction par lot) :
+-- l'étape courante et les compteurs sont mis à jour dans la transaction de chaque lot,
+-- ce qui permet de reprendre une suppression interrompue là où elle s'est arrêtée.
+
+CREATE TABLE IF NOT EXISTS organization_deletion_job (
+    id BIGSERIAL PRIMARY KEY,
+    organization_id BIGINT NOT NULL,
+    organization_name VARCHAR(255),
+    status VARCHAR(20) NOT NULL,
+    step VARCHAR(30) NOT NULL,
+    deleted_invoice_items BIGINT NOT NULL DEFAULT 0,
+    deleted_payments BIGINT NOT NULL DEFAULT 0,
+    deleted_invoices BIGINT NOT NULL DEFAULT 0,
+    deleted_subscriptions BIGINT NOT NULL DEFAULT 0,
+    deleted_quote_requests BIGINT NOT NULL DEFAULT 0,
+    deleted_usage_logs BIGINT NOT NULL DEFAULT 0,
+    deleted_quota_alerts BIGINT NOT NULL DEFAULT 0,
+    deleted_organization_users BIGINT NOT NULL DEFAULT 0,
+    error_message VARCHAR(1000),
+    started_at TIMESTAMP NOT NULL,
+    last_checkpoint_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+-- Une seule suppression non terminée par organisation
+CREATE UNIQUE INDEX IF NOT EXISTS uk_organization_deletion_job_active
+    ON organization_deletion_job(organization_id) WHERE status <> 'COMPLETED';
+CREATE INDEX IF NOT EXISTS idx_organization_deletion_job_status ON organization_deletion_job(status);
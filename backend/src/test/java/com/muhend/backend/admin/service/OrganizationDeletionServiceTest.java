@@ -0,0 +1,204 @@
+package com.muhend.backend.admin.service;
+
+import com.muhend.backend.admin.dto.OrganizationDeletionJobDto;
+import com.muhend.backend.admin.model.OrganizationDeletionJob;
+import com.muhend.backend.admin.repository.OrganizationDeletionJobRepository;
+import com.muhend.backend.alert.repository.QuotaAlertRepository;
+import com.muhend.backend.invoice.repository.InvoiceItemRepository;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.invoice.service.InvoicePdfCacheService;
+import com.muhend.backend.job.service.JobLockService;
+import com.muhend.backend.organization.event.OrganizationEntitlementChangedEvent;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.organization.repository.OrganizationUserRepository;
+import com.muhend.backend.payment.repository.PaymentRepository;
+import com.muhend.backend.payment.repository.SubscriptionRepository;
+import com.muhend.backend.pricing.repository.QuoteRequestRepository;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour OrganizationDeletionService
+ */
+@ExtendWith(MockitoExtension.class)
+class OrganizationDeletionServiceTest {
+
+    @Mock
+    private OrganizationDeletionJobRepository jobRepository;
+
+    @Mock
+    private OrganizationRepository organizationRepository;
+
+    @Mock
+    private UsageLogRepository usageLogRepository;
+
+    @Mock
+    private QuotaAlertRepository quotaAlertRepository;
+
+    @Mock
+    private OrganizationUserRepository organizationUserRepository;
+
+    @Mock
+    private QuoteRequestRepository quoteRequestRepository;
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private InvoiceItemRepository invoiceItemRepository;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+
+    @Mock
+    private InvoicePdfCacheService invoicePdfCacheService;
+
+    @Mock
+    private JobLockService jobLockService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OrganizationDeletionService deletionService;
+
+    @BeforeEach
+    void setUp() {
+        deletionService = new OrganizationDeletionService(jobRepository, organizationRepository, usageLogRepository,
+                quotaAlertRepository, organizationUserRepository, quoteRequestRepository, invoiceRepository,
+                invoiceItemRepository, paymentRepository, subscriptionRepository, invoicePdfCacheService, jobLockService, eventPublisher,
+                transactionManager);
+        ReflectionTestUtils.setField(deletionService, "chunkSize", 2);
+        ReflectionTestUtils.setField(deletionService, "leaseMs", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deletionService.shutdown();
+    }
+
+    @Test
+    void testRun_ShouldDeleteEachTableInChunksThenTheOrganization() {
+        OrganizationDeletionJob job = job(OrganizationDeletionJob.Step.INVOICE_ITEMS);
+        Organization organization = new Organization();
+        organization.setId(5L);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(jobRepository.save(any(OrganizationDeletionJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobLockService.extend(eq("organization-deletion-1"), any(Duration.class))).thenReturn(true);
+        when(usageLogRepository.deleteBatchByOrganizationId(5L, 2)).thenReturn(2, 2, 1, 0);
+        when(invoiceItemRepository.deleteBatchByOrganizationId(5L, 2)).thenReturn(1, 0);
+        when(invoiceRepository.deleteBatchByOrganizationId(5L, 2)).thenReturn(List.of(10L, 11L), List.of(12L), List.of());
+        when(organizationRepository.findById(5L)).thenReturn(Optional.of(organization));
+
+        deletionService.run(1L, "organization-deletion-1");
+
+        assertEquals(OrganizationDeletionJob.JobStatus.COMPLETED, job.getStatus());
+        assertEquals(OrganizationDeletionJob.Step.ORGANIZATION, job.getStep());
+        assertEquals(5, job.getDeletedUsageLogs());
+        assertEquals(1, job.getDeletedInvoiceItems());
+        assertEquals(3, job.getDeletedInvoices());
+        assertNotNull(job.getFinishedAt());
+        // PDF en cache des factures supprimées
+        verify(invoicePdfCacheService).delete(10L);
+        verify(invoicePdfCacheService).delete(11L);
+        verify(invoicePdfCacheService).delete(12L);
+        // 3 lots pour l'étape, puis le dernier passage avant l'organisation
+        verify(usageLogRepository, times(4)).deleteBatchByOrganizationId(5L, 2);
+        verify(organizationRepository).delete(organization);
+        verify(eventPublisher).publishEvent(any(OrganizationEntitlementChangedEvent.class));
+    }
+
+    @Test
+    void testRun_RowsAddedAfterTheirStep_ShouldRestartFromFirstStepBeforeDeletingOrganization() {
+        OrganizationDeletionJob job = job(OrganizationDeletionJob.Step.ORGANIZATION);
+        Organization organization = new Organization();
+        organization.setId(5L);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(jobRepository.save(any(OrganizationDeletionJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobLockService.extend(eq("organization-deletion-1"), any(Duration.class))).thenReturn(true);
+        // Paiement et abonnement enregistrés (webhook Stripe) après le passage de leur étape
+        when(paymentRepository.deleteBatchByOrganizationId(5L, 2)).thenReturn(1, 0);
+        when(subscriptionRepository.deleteBatchByOrganizationId(5L, 2)).thenReturn(1, 0);
+        when(organizationRepository.findById(5L)).thenReturn(Optional.of(organization));
+
+        deletionService.run(1L, "organization-deletion-1");
+
+        assertEquals(OrganizationDeletionJob.JobStatus.COMPLETED, job.getStatus());
+        assertEquals(1, job.getDeletedPayments());
+        assertEquals(1, job.getDeletedSubscriptions());
+        verify(organizationRepository, times(1)).delete(organization);
+        // Lignes supprimées avant l'organisation, puis un passage complet sans rien trouver
+        InOrder order = inOrder(paymentRepository, subscriptionRepository, organizationRepository);
+        order.verify(paymentRepository).deleteBatchByOrganizationId(5L, 2);
+        order.verify(subscriptionRepository).deleteBatchByOrganizationId(5L, 2);
+        order.verify(organizationRepository).delete(organization);
+        verify(invoiceItemRepository, atLeast(2)).deleteBatchByOrganizationId(5L, 2);
+    }
+
+    @Test
+    void testStartDeletion_FailedJob_ShouldRestartFromFirstStep() {
+        OrganizationDeletionJob job = job(OrganizationDeletionJob.Step.ORGANIZATION);
+        job.setStatus(OrganizationDeletionJob.JobStatus.FAILED);
+        job.setErrorMessage("violates foreign key constraint");
+        when(jobRepository.findUnfinishedByOrganizationId(5L)).thenReturn(Optional.of(job));
+        when(jobRepository.save(any(OrganizationDeletionJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        // Exécution en arrière-plan : bail détenu ailleurs, rien n'est supprimé
+        lenient().when(jobLockService.tryLock(anyString(), any(Duration.class))).thenReturn(false);
+
+        OrganizationDeletionJobDto started = deletionService.startDeletion(5L);
+
+        assertEquals(OrganizationDeletionJob.JobStatus.RUNNING, started.getStatus());
+        assertEquals(OrganizationDeletionJob.Step.INVOICE_ITEMS, started.getStep());
+        assertNull(started.getErrorMessage());
+    }
+
+    @Test
+    void testRun_ShouldResumeFromRecordedStepAndStopWhenLeaseIsLost() {
+        OrganizationDeletionJob job = job(OrganizationDeletionJob.Step.QUOTA_ALERTS);
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(jobRepository.save(any(OrganizationDeletionJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobLockService.extend(eq("organization-deletion-1"), any(Duration.class))).thenReturn(false);
+        when(quotaAlertRepository.deleteBatchByOrganizationId(5L, 2)).thenReturn(2);
+
+        deletionService.run(1L, "organization-deletion-1");
+
+        assertEquals(OrganizationDeletionJob.JobStatus.RUNNING, job.getStatus());
+        assertEquals(OrganizationDeletionJob.Step.QUOTA_ALERTS, job.getStep());
+        assertEquals(2, job.getDeletedQuotaAlerts());
+        verifyNoInteractions(invoiceItemRepository, paymentRepository, invoiceRepository, usageLogRepository);
+        verify(organizationRepository, never()).delete(any());
+    }
+
+    private static OrganizationDeletionJob job(OrganizationDeletionJob.Step step) {
+        OrganizationDeletionJob job = new OrganizationDeletionJob();
+        job.setId(1L);
+        job.setOrganizationId(5L);
+        job.setOrganizationName("Acme");
+        job.setStatus(OrganizationDeletionJob.JobStatus.RUNNING);
+        job.setStep(step);
+        return job;
+    }
+}
@@ -0,0 +1,127 @@
+package com.muhend.backend.alert.service;
+
+import com.muhend.backend.alert.model.QuotaAlert;
+import com.muhend.backend.alert.repository.QuotaAlertRepository;
+import com.muhend.backend.organization.dto.OrganizationEntitlement;
+import com.muhend.backend.organization.service.OrganizationEntitlementService;
+import com.muhend.backend.organization.service.OrganizationService;
+import com.muhend.backend.pricing.service.PricingPlanService;
+import com.muhend.backend.usage.event.UsageRecordedEvent;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour QuotaAlertService : compteurs d'utilisation en mémoire et réconciliation
+ */
+@ExtendWith(MockitoExtension.class)
+class QuotaAlertServiceTest {
+
+    private static final Long ORGANIZATION_ID = 4L;
+    private static final LocalDateTime START_OF_MONTH = LocalDateTime.of(2026, 10, 1, 0, 0);
+
+    @Mock
+    private QuotaAlertRepository quotaAlertRepository;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private UsageLogRepository usageLogRepository;
+
+    @Mock
+    private PricingPlanService pricingPlanService;
+
+    @Mock
+    private OrganizationEntitlementService organizationEntitlementService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private QuotaAlertService quotaAlertService;
+
+    @BeforeEach
+    void setUp() {
+        quotaAlertService = new QuotaAlertService(quotaAlertRepository, organizationService, usageLogRepository,
+                pricingPlanService, organizationEntitlementService, eventPublisher);
+        when(organizationEntitlementService.getEntitlement(ORGANIZATION_ID)).thenReturn(OrganizationEntitlement.builder()
+                .organizationId(ORGANIZATION_ID)
+                .organizationName("Acme")
+                .planFound(true)
+                .planMonthlyQuota(10)
+                .build());
+    }
+
+    @Test
+    void testOnUsageRecorded_LateEventAlreadyCountedBySeed_ShouldNotBeCountedTwice() {
+        LocalDateTime seededAt = LocalDateTime.of(2026, 10, 19, 10, 0, 5);
+        // Le COUNT d'initialisation inclut déjà la recherche de 10:00:03, dont l'événement arrive en retard
+        when(usageLogRepository.countByOrganizationIdAndTimestampBetween(ORGANIZATION_ID, START_OF_MONTH, seededAt))
+                .thenReturn(7L);
+
+        quotaAlertService.onUsageRecorded(event(seededAt));
+        quotaAlertService.onUsageRecorded(event(seededAt.minusSeconds(2)));
+
+        verify(quotaAlertRepository, never()).save(any());
+
+        // 8/10 : seuil d'avertissement franchi par la recherche suivante
+        when(quotaAlertRepository.findByOrganizationIdAndIsReadFalseOrderByCreatedAtDesc(ORGANIZATION_ID)).thenReturn(List.of());
+        quotaAlertService.onUsageRecorded(event(seededAt.plusSeconds(1)));
+
+        ArgumentCaptor<QuotaAlert> alert = ArgumentCaptor.forClass(QuotaAlert.class);
+        verify(quotaAlertRepository).save(alert.capture());
+        assertEquals(QuotaAlert.AlertType.WARNING, alert.getValue().getAlertType());
+        assertEquals(8L, alert.getValue().getCurrentUsage());
+        verify(usageLogRepository, times(1)).countByOrganizationIdAndTimestampBetween(anyLong(), any(), any());
+    }
+
+    @Test
+    void testOnUsageRecorded_EventFromPreviousMonth_ShouldNotResetCurrentCounter() {
+        LocalDateTime seededAt = LocalDateTime.of(2026, 10, 19, 10, 0, 0);
+        when(usageLogRepository.countByOrganizationIdAndTimestampBetween(ORGANIZATION_ID, START_OF_MONTH, seededAt))
+                .thenReturn(7L);
+        quotaAlertService.onUsageRecorded(event(seededAt));
+
+        quotaAlertService.onUsageRecorded(event(LocalDateTime.of(2026, 9, 30, 23, 59, 59)));
+
+        // Ni recompté ni compté dans le mois courant
+        verify(usageLogRepository, times(1)).countByOrganizationIdAndTimestampBetween(anyLong(), any(), any());
+        when(quotaAlertRepository.findByOrganizationIdAndIsReadFalseOrderByCreatedAtDesc(ORGANIZATION_ID)).thenReturn(List.of());
+        quotaAlertService.onUsageRecorded(event(seededAt.plusSeconds(1)));
+
+        ArgumentCaptor<QuotaAlert> alert = ArgumentCaptor.forClass(QuotaAlert.class);
+        verify(quotaAlertRepository).save(alert.capture());
+        assertEquals(8L, alert.getValue().getCurrentUsage());
+    }
+
+    @Test
+    void testReconcileActiveOrganizations_ShouldRecountOrganizationsActiveOnAnyInstance() {
+        when(usageLogRepository.findDistinctOrganizationIdsSince(any(LocalDateTime.class))).thenReturn(List.of(ORGANIZATION_ID));
+        when(usageLogRepository.countByOrganizationIdAndTimestampBetween(eq(ORGANIZATION_ID), any(), any())).thenReturn(10L);
+        when(quotaAlertRepository.findByOrganizationIdAndIsReadFalseOrderByCreatedAtDesc(ORGANIZATION_ID)).thenReturn(List.of());
+
+        int checked = quotaAlertService.reconcileActiveOrganizations(Duration.ofMinutes(90));
+
+        assertEquals(1, checked);
+        ArgumentCaptor<QuotaAlert> alert = ArgumentCaptor.forClass(QuotaAlert.class);
+        verify(quotaAlertRepository).save(alert.capture());
+        assertEquals(QuotaAlert.AlertType.CRITICAL, alert.getValue().getAlertType());
+    }
+
+    private static UsageRecordedEvent event(LocalDateTime timestamp) {
+        return new UsageRecordedEvent(ORGANIZATION_ID, "user-1", "/recherche/sections", timestamp);
+    }
+}
@@ -0,0 +1,197 @@
+package com.muhend.backend.auth.service;
+
+import jakarta.ws.rs.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RoleMappingResource;
+import org.keycloak.admin.client.resource.RoleScopeResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests unitaires pour KeycloakUserDirectory, avec un Keycloak simulé en mémoire
+ */
+class KeycloakUserDirectoryTest {
+
+    private static final String REALM = "test-realm";
+
+    private StandInKeycloak keycloak;
+    private KeycloakUserDirectory directory;
+
+    @BeforeEach
+    void setUp() {
+        keycloak = new StandInKeycloak();
+        keycloak.addUser("u1", "alice", "alice@example.com", true, "USER");
+        keycloak.addUser("u2", "bob", "bob@example.com", true, "USER", "COLLABORATOR");
+        keycloak.addUser("u3", "carol", null, false);
+        directory = new KeycloakUserDirectory(() -> keycloak.client, 4, 1_000, 300_000L, 3_600_000L);
+        ReflectionTestUtils.setField(directory, "realm", REALM);
+    }
+
+    @AfterEach
+    void tearDown() {
+        directory.shutdown();
+    }
+
+    @Test
+    void testGetUser_ShouldCacheProfileAndRoles() {
+        KeycloakUserDirectory.KeycloakUser user = directory.getUser("u2").orElseThrow();
+        directory.getUser("u2");
+
+        assertEquals("bob", user.username());
+        assertEquals("bob@example.com", user.email());
+        assertTrue(user.enabled());
+        assertEquals(Set.of("USER", "COLLABORATOR"), user.realmRoles());
+        assertEquals(1, keycloak.reads.get());
+    }
+
+    @Test
+    void testGetUsers_ShouldOnlyFetchMissingUsers() {
+        directory.getUser("u1");
+
+        Map<String, KeycloakUserDirectory.KeycloakUser> users = directory.getUsers(List.of("u1", "u2", "u3", "unknown"));
+
+        assertEquals(List.of("u1", "u2", "u3"), List.copyOf(users.keySet()));
+        // u1 déjà en cache : seuls u2, u3 et l'inexistant sont demandés
+        assertEquals(4, keycloak.reads.get());
+    }
+
+    @Test
+    void testGetUser_UnknownUser_ShouldBeRememberedAsMissing() {
+        assertEquals(Optional.empty(), directory.getUser("unknown"));
+        assertEquals(Optional.empty(), directory.getUser("unknown"));
+        assertEquals(1, keycloak.reads.get());
+    }
+
+    @Test
+    void testGetEmails_ShouldSkipUsersWithoutEmailAndDuplicates() {
+        keycloak.addUser("u4", "alice2", "alice@example.com", true);
+
+        assertEquals(List.of("alice@example.com", "bob@example.com"),
+                directory.getEmails(List.of("u1", "u2", "u3", "u4")));
+    }
+
+    @Test
+    void testGetUsers_KeycloakError_ShouldOmitOnlyFailingUserAndNotCacheIt() {
+        keycloak.failingUsers.add("u2");
+
+        Map<String, KeycloakUserDirectory.KeycloakUser> users = directory.getUsers(List.of("u1", "u2"));
+        assertEquals(Set.of("u1"), users.keySet());
+
+        keycloak.failingUsers.clear();
+        assertTrue(directory.getUser("u2").isPresent());
+    }
+
+    @Test
+    void testInvalidate_ShouldReloadAfterOwnChange() {
+        assertTrue(directory.getUser("u1").orElseThrow().enabled());
+
+        keycloak.users.get("u1").setEnabled(false);
+        assertTrue(directory.getUser("u1").orElseThrow().enabled());
+
+        directory.invalidate("u1");
+        assertFalse(directory.getUser("u1").orElseThrow().enabled());
+    }
+
+    @Test
+    void testKeycloakAdminService_DisableUser_ShouldInvalidateDirectory() {
+        KeycloakAdminService keycloakAdminService = new KeycloakAdminService(() -> keycloak.client, directory);
+        ReflectionTestUtils.setField(keycloakAdminService, "realm", REALM);
+        assertTrue(keycloakAdminService.isUserEnabled("u1"));
+
+        keycloakAdminService.disableUser("u1");
+
+        assertFalse(keycloakAdminService.isUserEnabled("u1"));
+    }
+
+    /**
+     * Keycloak simulé : utilisateurs et rôles du realm en mémoire, lectures comptées
+     */
+    private static final class StandInKeycloak {
+        private final Map<String, UserRepresentation> users = new ConcurrentHashMap<>();
+        private final Map<String, List<RoleRepresentation>> roles = new ConcurrentHashMap<>();
+        private final Set<String> failingUsers = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger reads = new AtomicInteger();
+        private final Keycloak client = mock(Keycloak.class);
+
+        private StandInKeycloak() {
+            RealmResource realmResource = mock(RealmResource.class);
+            UsersResource usersResource = mock(UsersResource.class);
+            when(client.realm(REALM)).thenReturn(realmResource);
+            when(realmResource.users()).thenReturn(usersResource);
+            when(usersResource.get(anyString())).thenAnswer(invocation -> userResource(invocation.getArgument(0)));
+        }
+
+        private void addUser(String id, String username, String email, boolean enabled, String... roleNames) {
+            UserRepresentation user = new UserRepresentation();
+            user.setId(id);
+            user.setUsername(username);
+            user.setEmail(email);
+            user.setEnabled(enabled);
+            users.put(id, user);
+            roles.put(id, Arrays.stream(roleNames).map(name -> {
+                RoleRepresentation role = new RoleRepresentation();
+                role.setName(name);
+                return role;
+            }).toList());
+        }
+
+        private UserResource userResource(String id) {
+            UserResource userResource = mock(UserResource.class);
+            when(userResource.toRepresentation()).thenAnswer(invocation -> {
+                reads.incrementAndGet();
+                if (failingUsers.contains(id)) {
+                    throw new IllegalStateException("Keycloak indisponible");
+                }
+                UserRepresentation user = users.get(id);
+                if (user == null) {
+                    throw new NotFoundException();
+                }
+                return copy(user);
+            });
+            when(userResource.roles()).thenAnswer(invocation -> {
+                RoleMappingResource roleMapping = mock(RoleMappingResource.class);
+                RoleScopeResource realmLevel = mock(RoleScopeResource.class);
+                when(roleMapping.realmLevel()).thenReturn(realmLevel);
+                when(realmLevel.listAll()).thenReturn(roles.getOrDefault(id, List.of()));
+                return roleMapping;
+            });
+            doAnswer(invocation -> {
+                UserRepresentation update = invocation.getArgument(0);
+                users.get(id).setEnabled(update.isEnabled());
+                return null;
+            }).when(userResource).update(any(UserRepresentation.class));
+            return userResource;
+        }
+
+        private static UserRepresentation copy(UserRepresentation user) {
+            UserRepresentation copy = new UserRepresentation();
+            copy.setId(user.getId());
+            copy.setUsername(user.getUsername());
+            copy.setEmail(user.getEmail());
+            copy.setEnabled(user.isEnabled());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.muhend.backend.cache.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests unitaires pour CacheInvalidationBus (regroupement, découpage et application des messages)
+ */
+class CacheInvalidationBusTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CacheInvalidationBus bus;
+    private final List<String> invalidated = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        bus = new CacheInvalidationBus(null, objectMapper);
+        bus.register("entitlements", new CacheInvalidationBus.Handler() {
+            @Override
+            public void invalidate(String key) {
+                invalidated.add(key);
+            }
+
+            @Override
+            public void invalidateAll() {
+                invalidated.add("*");
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        bus.shutdown();
+    }
+
+    @Test
+    void testCoalesce_ShouldDeduplicateAndCollapseToFullFlush() {
+        Set<CacheInvalidation> invalidations = new LinkedHashSet<>();
+        invalidations.add(CacheInvalidation.of("entitlements", 1L));
+        invalidations.add(CacheInvalidation.of("entitlements", 1L));
+        invalidations.add(CacheInvalidation.of("entitlements", 2L));
+        invalidations.add(CacheInvalidation.of("memberships", "user-1"));
+        invalidations.add(CacheInvalidation.all("memberships"));
+        IntStream.range(0, 5).forEach(i -> invalidations.add(CacheInvalidation.of("plans", i)));
+
+        List<CacheInvalidation> coalesced = CacheInvalidationBus.coalesce(invalidations, 3);
+
+        assertEquals(List.of(
+                CacheInvalidation.of("entitlements", 1L),
+                CacheInvalidation.of("entitlements", 2L),
+                CacheInvalidation.all("memberships"),
+                CacheInvalidation.all("plans")), coalesced);
+    }
+
+    @Test
+    void testToPayloads_ShouldStayUnderNotifyLimit() throws Exception {
+        List<CacheInvalidation> invalidations = IntStream.range(0, 2000)
+                .mapToObj(i -> CacheInvalidation.of("entitlements", 1_000_000L + i))
+                .toList();
+
+        List<String> payloads = bus.toPayloads(invalidations);
+
+        assertTrue(payloads.size() > 1);
+        int received = 0;
+        for (String payload : payloads) {
+            assertTrue(payload.getBytes(StandardCharsets.UTF_8).length <= CacheInvalidationBus.MAX_PAYLOAD_BYTES);
+            received += objectMapper.readValue(payload, CacheInvalidationBus.Notification.class).invalidations().size();
+        }
+        assertEquals(invalidations.size(), received);
+    }
+
+    @Test
+    void testReceive_ShouldApplyRemoteInvalidationsOnly() throws Exception {
+        String remote = objectMapper.writeValueAsString(new CacheInvalidationBus.Notification("other-instance", List.of(
+                CacheInvalidation.of("entitlements", 7L),
+                CacheInvalidation.all("entitlements"),
+                CacheInvalidation.of("unknown-cache", 1L))));
+        String own = bus.toPayloads(List.of(CacheInvalidation.of("entitlements", 8L))).get(0);
+
+        bus.receive(remote);
+        bus.receive(own);
+        bus.receive("not json");
+
+        assertEquals(List.of("7", "*"), invalidated);
+    }
+}
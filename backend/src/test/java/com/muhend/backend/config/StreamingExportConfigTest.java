@@ -0,0 +1,76 @@
+package com.muhend.backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests unitaires pour StreamingExportConfig : les réponses en flux ont leur propre délai,
+ * les autres requêtes asynchrones gardent le délai global
+ */
+class StreamingExportConfigTest {
+
+    private static final long GLOBAL_TIMEOUT_MS = 600_000L;
+    private static final long STREAMING_TIMEOUT_MS = 7_200_000L;
+
+    @SuppressWarnings("unused")
+    static class Handlers {
+        ResponseEntity<StreamingResponseBody> export() {
+            return null;
+        }
+
+        StreamingResponseBody stream() {
+            return null;
+        }
+
+        Callable<String> other() {
+            return null;
+        }
+    }
+
+    @Test
+    void testStreamingHandler_ShouldUseStreamingTimeout() throws Exception {
+        assertEquals(STREAMING_TIMEOUT_MS, startAsync("export"));
+        assertEquals(STREAMING_TIMEOUT_MS, startAsync("stream"));
+    }
+
+    @Test
+    void testOtherAsyncHandler_ShouldKeepGlobalTimeout() throws Exception {
+        assertEquals(GLOBAL_TIMEOUT_MS, startAsync("other"));
+    }
+
+    /**
+     * Démarre un traitement asynchrone comme le fait Spring MVC pour la méthode donnée
+     *
+     * @return Délai appliqué au contexte asynchrone
+     */
+    private static long startAsync(String methodName) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE,
+                new HandlerMethod(new Handlers(), Handlers.class.getDeclaredMethod(methodName)));
+        StandardServletAsyncWebRequest asyncWebRequest =
+                new StandardServletAsyncWebRequest(request, new MockHttpServletResponse());
+        asyncWebRequest.setTimeout(GLOBAL_TIMEOUT_MS);
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(asyncWebRequest);
+        asyncManager.registerCallableInterceptor("streaming-timeout",
+                new StreamingExportConfig.StreamingTimeoutInterceptor(STREAMING_TIMEOUT_MS));
+
+        asyncManager.startCallableProcessing(() -> null);
+
+        return ((MockAsyncContext) request.getAsyncContext()).getTimeout();
+    }
+}
@@ -0,0 +1,261 @@
+package com.muhend.backend.email.service;
+
+import com.muhend.backend.email.model.EmailOutboxMessage;
+import com.muhend.backend.email.repository.EmailOutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour EmailOutboxDispatcher, avec un serveur SMTP minimal embarqué
+ */
+@ExtendWith(MockitoExtension.class)
+class EmailOutboxDispatcherTest {
+
+    @Mock
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FakeSmtpServer smtpServer;
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtpServer = new FakeSmtpServer();
+
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtpServer.getPort());
+
+        dispatcher = new EmailOutboxDispatcher(emailOutboxRepository, mailSender, transactionManager);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 50);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 3_600_000L);
+        ReflectionTestUtils.setField(dispatcher, "leaseMs", 300_000L);
+        ReflectionTestUtils.setField(dispatcher, "fromEmail", "noreply@example.com");
+        ReflectionTestUtils.setField(dispatcher, "fromName", "Test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        dispatcher.shutdown();
+        smtpServer.close();
+    }
+
+    @Test
+    void testDispatch_ShouldSendOnDedicatedThread() {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(emailOutboxRepository.claimBatch(any(LocalDateTime.class), any(LocalDateTime.class), eq(50)))
+                .thenAnswer(invocation -> {
+                    threads.add(Thread.currentThread().getName());
+                    return List.of();
+                });
+
+        dispatcher.dispatch();
+
+        verify(emailOutboxRepository, timeout(5000)).claimBatch(any(LocalDateTime.class), any(LocalDateTime.class), eq(50));
+        assertEquals(List.of("email-outbox"), threads);
+    }
+
+    @Test
+    void testDispatchBatch_ShouldSendAllMessagesOverOneConnection() {
+        List<EmailOutboxMessage> batch = List.of(
+                message(1L, "a@example.com", 1),
+                message(2L, "b@example.com", 1),
+                message(3L, "c@example.com", 1));
+        givenClaimedBatch(batch);
+
+        assertEquals(3, dispatcher.dispatchBatch());
+
+        assertEquals(1, smtpServer.connections.get());
+        assertEquals(3, smtpServer.delivered.get());
+        for (EmailOutboxMessage message : savedMessages()) {
+            assertEquals(EmailOutboxMessage.Status.SENT, message.getStatus());
+            assertNotNull(message.getSentAt());
+            assertNull(message.getBody());
+        }
+    }
+
+    @Test
+    void testDispatchBatch_RejectedRecipient_ShouldRetryOnlyThatMessageWithBackoff() {
+        smtpServer.rejectedRecipients.add("refused@example.com");
+        List<EmailOutboxMessage> batch = List.of(
+                message(1L, "a@example.com", 1),
+                message(2L, "refused@example.com", 2));
+        givenClaimedBatch(batch);
+        LocalDateTime before = LocalDateTime.now();
+
+        dispatcher.dispatchBatch();
+
+        List<EmailOutboxMessage> saved = savedMessages();
+        assertEquals(EmailOutboxMessage.Status.SENT, saved.get(0).getStatus());
+        EmailOutboxMessage retried = saved.get(1);
+        assertEquals(EmailOutboxMessage.Status.PENDING, retried.getStatus());
+        assertNotNull(retried.getLastError());
+        assertNotNull(retried.getBody());
+        // 2e tentative : délai doublé (2 min)
+        assertFalse(retried.getNextAttemptAt().isBefore(before.plusMinutes(2)));
+    }
+
+    @Test
+    void testDispatchBatch_MaxAttemptsReached_ShouldAbandonMessage() {
+        smtpServer.rejectedRecipients.add("refused@example.com");
+        givenClaimedBatch(List.of(message(1L, "refused@example.com", 3)));
+
+        dispatcher.dispatchBatch();
+
+        assertEquals(EmailOutboxMessage.Status.FAILED, savedMessages().get(0).getStatus());
+        assertNull(savedMessages().get(0).getBody());
+    }
+
+    @Test
+    void testDispatchBatch_ServerUnavailable_ShouldKeepMessagesPending() throws IOException {
+        smtpServer.close();
+        givenClaimedBatch(List.of(message(1L, "a@example.com", 1), message(2L, "b@example.com", 1)));
+
+        dispatcher.dispatchBatch();
+
+        for (EmailOutboxMessage message : savedMessages()) {
+            assertEquals(EmailOutboxMessage.Status.PENDING, message.getStatus());
+            assertNotNull(message.getLastError());
+        }
+    }
+
+    @Test
+    void testBackoff_ShouldDoubleUntilMaximum() {
+        assertEquals(60_000L, dispatcher.backoffMs(1));
+        assertEquals(120_000L, dispatcher.backoffMs(2));
+        assertEquals(240_000L, dispatcher.backoffMs(3));
+        assertEquals(3_600_000L, dispatcher.backoffMs(20));
+    }
+
+    private void givenClaimedBatch(List<EmailOutboxMessage> batch) {
+        List<Long> ids = batch.stream().map(EmailOutboxMessage::getId).toList();
+        when(emailOutboxRepository.claimBatch(any(LocalDateTime.class), any(LocalDateTime.class), eq(50))).thenReturn(ids);
+        when(emailOutboxRepository.findAllById(ids)).thenReturn(batch);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EmailOutboxMessage> savedMessages() {
+        ArgumentCaptor<Iterable<EmailOutboxMessage>> captor = ArgumentCaptor.forClass(Iterable.class);
+        verify(emailOutboxRepository).saveAll(captor.capture());
+        List<EmailOutboxMessage> saved = new ArrayList<>();
+        captor.getValue().forEach(saved::add);
+        return saved;
+    }
+
+    private static EmailOutboxMessage message(Long id, String recipient, int attempts) {
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setId(id);
+        message.setMessageType("TEST");
+        message.setRecipient(recipient);
+        message.setSubject("Sujet " + id);
+        message.setBody("<p>Message " + id + "</p>");
+        message.setHtml(true);
+        message.setStatus(EmailOutboxMessage.Status.PENDING);
+        message.setAttempts(attempts);
+        message.setNextAttemptAt(LocalDateTime.now());
+        message.setCreatedAt(LocalDateTime.now());
+        return message;
+    }
+
+    /**
+     * Serveur SMTP minimal : accepte les messages (sauf destinataires refusés) et compte connexions et livraisons
+     */
+    private static final class FakeSmtpServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger delivered = new AtomicInteger();
+        private final Set<String> rejectedRecipients = ConcurrentHashMap.newKeySet();
+
+        private FakeSmtpServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread thread = new Thread(this::acceptLoop, "fake-smtp");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    connections.incrementAndGet();
+                    handle(socket);
+                } catch (IOException e) {
+                    // Serveur arrêté
+                }
+            }
+        }
+
+        private void handle(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            reply(out, "220 localhost ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                    reply(out, "250 localhost");
+                } else if (command.startsWith("RCPT TO")) {
+                    boolean rejected = rejectedRecipients.stream().anyMatch(line::contains);
+                    reply(out, rejected ? "550 Mailbox unavailable" : "250 OK");
+                } else if (command.startsWith("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        // Contenu du message ignoré
+                    }
+                    delivered.incrementAndGet();
+                    reply(out, "250 OK");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    // MAIL FROM, RSET, NOOP
+                    reply(out, "250 OK");
+                }
+            }
+        }
+
+        private static void reply(PrintWriter out, String response) {
+            out.print(response + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.invoice.dto.InvoiceDto;
+import com.muhend.backend.invoice.model.BillingJob;
+import com.muhend.backend.invoice.model.BillingJobItem;
+import com.muhend.backend.invoice.repository.BillingJobItemRepository;
+import com.muhend.backend.invoice.repository.BillingJobRepository;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.job.service.JobLockService;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.organization.service.OrganizationService;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour BillingJobService
+ */
+@ExtendWith(MockitoExtension.class)
+class BillingJobServiceTest {
+
+    private static final String LOCK_NAME = "billing-job-1";
+    private static final List<BillingJobItem.ItemStatus> TO_PROCESS =
+            List.of(BillingJobItem.ItemStatus.PENDING, BillingJobItem.ItemStatus.FAILED);
+
+    @Mock
+    private BillingJobRepository jobRepository;
+
+    @Mock
+    private BillingJobItemRepository itemRepository;
+
+    @Mock
+    private InvoiceService invoiceService;
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private UsageLogRepository usageLogRepository;
+
+    @Mock
+    private OrganizationRepository organizationRepository;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private JobLockService jobLockService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BillingJobService billingJobService;
+
+    @BeforeEach
+    void setUp() {
+        billingJobService = new BillingJobService(jobRepository, itemRepository, invoiceService, invoiceRepository,
+                usageLogRepository, organizationRepository, organizationService, jobLockService, transactionManager, 2);
+        ReflectionTestUtils.setField(billingJobService, "chunkSize", 2);
+        ReflectionTestUtils.setField(billingJobService, "leaseMs", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        billingJobService.shutdown();
+    }
+
+    @Test
+    void testStartMonthlyJob_ShouldProcessEveryChunkAndSkipOrganizationsBeingDeleted() {
+        BillingJob job = monthlyJob();
+        job.setId(1L);
+        when(jobRepository.findByJobTypeAndPeriodStartAndPeriodEnd(BillingJob.JobType.MONTHLY,
+                job.getPeriodStart(), job.getPeriodEnd())).thenReturn(Optional.of(job));
+        when(jobRepository.save(any(BillingJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(jobLockService.tryLock(eq(LOCK_NAME), any(Duration.class))).thenReturn(true);
+        when(jobLockService.extend(eq(LOCK_NAME), any(Duration.class))).thenReturn(true);
+        when(organizationRepository.findAllIds()).thenReturn(List.of(1L, 2L, 3L));
+        when(itemRepository.findOrganizationIdsByJobId(1L)).thenReturn(List.of());
+        BillingJobItem item1 = item(11L, 1L, BillingJobItem.ItemStatus.PENDING);
+        BillingJobItem item2 = item(12L, 2L, BillingJobItem.ItemStatus.PENDING);
+        BillingJobItem item3 = item(13L, 3L, BillingJobItem.ItemStatus.PENDING);
+        when(itemRepository.findChunk(1L, TO_PROCESS, 0L, PageRequest.of(0, 2))).thenReturn(List.of(item1, item2));
+        when(itemRepository.findChunk(1L, TO_PROCESS, 12L, PageRequest.of(0, 2))).thenReturn(List.of(item3));
+        when(itemRepository.findChunk(1L, TO_PROCESS, 13L, PageRequest.of(0, 2))).thenReturn(List.of());
+        when(itemRepository.countByStatus(1L)).thenReturn(List.of(
+                new Object[]{BillingJobItem.ItemStatus.GENERATED, 2L},
+                new Object[]{BillingJobItem.ItemStatus.SKIPPED, 1L}));
+        // Organisation 2 en cours de suppression
+        when(organizationRepository.isDeletionPending(anyLong())).thenAnswer(invocation -> invocation.<Long>getArgument(0) == 2L);
+        when(usageLogRepository.existsByOrganizationIdAndTimestampBetween(anyLong(), any(LocalDateTime.class),
+                any(LocalDateTime.class))).thenReturn(true);
+        when(invoiceService.generateMonthlyInvoice(anyLong(), eq(2026), eq(9))).thenAnswer(invocation -> {
+            InvoiceDto invoice = new InvoiceDto();
+            invoice.setId(100L + invocation.<Long>getArgument(0));
+            return invoice;
+        });
+
+        billingJobService.startMonthlyJob(2026, 9);
+
+        verify(jobLockService, timeout(5000)).unlock(eq(LOCK_NAME), any(LocalDateTime.class), eq(Duration.ZERO));
+        ArgumentCaptor<List<BillingJobItem>> seeded = ArgumentCaptor.captor();
+        verify(itemRepository).saveAll(seeded.capture());
+        assertEquals(List.of(1L, 2L, 3L), seeded.getValue().stream().map(BillingJobItem::getOrganizationId).toList());
+        assertEquals(BillingJobItem.ItemStatus.GENERATED, item1.getStatus());
+        assertEquals(101L, item1.getInvoiceId());
+        assertEquals(BillingJobItem.ItemStatus.SKIPPED, item2.getStatus());
+        assertNull(item2.getInvoiceId());
+        assertEquals(BillingJobItem.ItemStatus.GENERATED, item3.getStatus());
+        verify(invoiceService, never()).generateMonthlyInvoice(eq(2L), anyInt(), anyInt());
+        // Bail prolongé après chaque lot
+        verify(jobLockService, times(2)).extend(eq(LOCK_NAME), any(Duration.class));
+        assertEquals(BillingJob.JobStatus.COMPLETED, job.getStatus());
+        assertEquals(2, job.getGeneratedCount());
+        assertEquals(1, job.getSkippedCount());
+        assertEquals(3, job.getTotalItems());
+        assertNotNull(job.getFinishedAt());
+    }
+
+    @Test
+    void testResumeInterruptedJobs_ShouldOnlyProcessPendingAndFailedOrganizations() {
+        BillingJob job = monthlyJob();
+        job.setId(1L);
+        when(jobRepository.findByStatusOrderByIdAsc(BillingJob.JobStatus.RUNNING)).thenReturn(List.of(job));
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(jobRepository.save(any(BillingJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobLockService.tryLock(eq(LOCK_NAME), any(Duration.class))).thenReturn(true);
+        when(jobLockService.extend(eq(LOCK_NAME), any(Duration.class))).thenReturn(true);
+        // Point de reprise : organisation 1 facturée, organisation 2 en échec, organisation 3 créée depuis
+        when(organizationRepository.findAllIds()).thenReturn(List.of(1L, 2L, 3L));
+        when(itemRepository.findOrganizationIdsByJobId(1L)).thenReturn(List.of(1L, 2L));
+        BillingJobItem failed = item(12L, 2L, BillingJobItem.ItemStatus.FAILED);
+        failed.setAttempts(1);
+        failed.setErrorMessage("Base indisponible");
+        BillingJobItem added = item(13L, 3L, BillingJobItem.ItemStatus.PENDING);
+        when(itemRepository.findChunk(1L, TO_PROCESS, 0L, PageRequest.of(0, 2))).thenReturn(List.of(failed, added));
+        when(itemRepository.findChunk(1L, TO_PROCESS, 13L, PageRequest.of(0, 2))).thenReturn(List.of());
+        when(itemRepository.countByStatus(1L)).thenReturn(List.<Object[]>of(
+                new Object[]{BillingJobItem.ItemStatus.GENERATED, 1L},
+                new Object[]{BillingJobItem.ItemStatus.SKIPPED, 2L}));
+
+        billingJobService.resumeInterruptedJobs();
+
+        verify(jobLockService, timeout(5000)).unlock(eq(LOCK_NAME), any(LocalDateTime.class), eq(Duration.ZERO));
+        ArgumentCaptor<List<BillingJobItem>> seeded = ArgumentCaptor.captor();
+        verify(itemRepository).saveAll(seeded.capture());
+        assertEquals(List.of(3L), seeded.getValue().stream().map(BillingJobItem::getOrganizationId).toList());
+        // Aucune utilisation : ignorées, l'échec précédent est effacé
+        assertEquals(BillingJobItem.ItemStatus.SKIPPED, failed.getStatus());
+        assertEquals(2, failed.getAttempts());
+        assertNull(failed.getErrorMessage());
+        assertEquals(BillingJobItem.ItemStatus.SKIPPED, added.getStatus());
+        verify(usageLogRepository, never()).existsByOrganizationIdAndTimestampBetween(eq(1L), any(), any());
+        verifyNoInteractions(invoiceService);
+        assertEquals(BillingJob.JobStatus.COMPLETED, job.getStatus());
+    }
+
+    @Test
+    void testRun_LeaseLostAfterChunk_ShouldStopWithoutFinishingJob() {
+        BillingJob job = monthlyJob();
+        job.setId(1L);
+        when(jobRepository.findByStatusOrderByIdAsc(BillingJob.JobStatus.RUNNING)).thenReturn(List.of(job));
+        when(jobRepository.findById(1L)).thenReturn(Optional.of(job));
+        when(jobRepository.save(any(BillingJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jobLockService.tryLock(eq(LOCK_NAME), any(Duration.class))).thenReturn(true);
+        // Bail repris par une autre instance pendant le premier lot
+        when(jobLockService.extend(eq(LOCK_NAME), any(Duration.class))).thenReturn(false);
+        when(organizationRepository.findAllIds()).thenReturn(List.of(1L, 2L, 3L));
+        when(itemRepository.findOrganizationIdsByJobId(1L)).thenReturn(List.of(1L, 2L, 3L));
+        when(itemRepository.findChunk(1L, TO_PROCESS, 0L, PageRequest.of(0, 2))).thenReturn(List.of(
+                item(11L, 1L, BillingJobItem.ItemStatus.PENDING), item(12L, 2L, BillingJobItem.ItemStatus.PENDING)));
+        when(itemRepository.countByStatus(1L)).thenReturn(List.<Object[]>of(
+                new Object[]{BillingJobItem.ItemStatus.SKIPPED, 2L},
+                new Object[]{BillingJobItem.ItemStatus.PENDING, 1L}));
+
+        billingJobService.resumeInterruptedJobs();
+
+        verify(jobLockService, timeout(5000)).unlock(eq(LOCK_NAME), any(LocalDateTime.class), eq(Duration.ZERO));
+        verify(itemRepository, times(1)).findChunk(anyLong(), anyCollection(), anyLong(), any());
+        assertEquals(BillingJob.JobStatus.RUNNING, job.getStatus());
+        assertEquals(3, job.getTotalItems());
+        assertNull(job.getFinishedAt());
+    }
+
+    @Test
+    void testResumeInterruptedJobs_LeaseHeldElsewhere_ShouldNotProcessAnything() {
+        BillingJob job = monthlyJob();
+        job.setId(1L);
+        when(jobRepository.findByStatusOrderByIdAsc(BillingJob.JobStatus.RUNNING)).thenReturn(List.of(job));
+        when(jobLockService.tryLock(eq(LOCK_NAME), any(Duration.class))).thenReturn(false);
+
+        billingJobService.resumeInterruptedJobs();
+
+        verify(jobLockService, timeout(5000)).tryLock(eq(LOCK_NAME), any(Duration.class));
+        verify(jobLockService, after(200).never()).unlock(anyString(), any(), any());
+        verifyNoInteractions(itemRepository, invoiceService);
+    }
+
+    @Test
+    void testStartMonthlyJob_CompletedJob_ShouldNotRunAgain() {
+        BillingJob job = monthlyJob();
+        job.setId(1L);
+        job.setStatus(BillingJob.JobStatus.COMPLETED);
+        when(jobRepository.findByJobTypeAndPeriodStartAndPeriodEnd(BillingJob.JobType.MONTHLY,
+                job.getPeriodStart(), job.getPeriodEnd())).thenReturn(Optional.of(job));
+        when(jobRepository.save(job)).thenReturn(job);
+
+        assertEquals(BillingJob.JobStatus.COMPLETED, billingJobService.startMonthlyJob(2026, 9).getStatus());
+
+        verifyNoInteractions(jobLockService, itemRepository);
+    }
+
+    private static BillingJob monthlyJob() {
+        BillingJob job = new BillingJob();
+        job.setJobType(BillingJob.JobType.MONTHLY);
+        job.setPeriodStart(LocalDate.of(2026, 9, 1));
+        job.setPeriodEnd(LocalDate.of(2026, 9, 30));
+        job.setStartedAt(LocalDateTime.now());
+        return job;
+    }
+
+    private static BillingJobItem item(Long id, Long organizationId, BillingJobItem.ItemStatus status) {
+        BillingJobItem item = new BillingJobItem();
+        item.setId(id);
+        item.setJobId(1L);
+        item.setOrganizationId(organizationId);
+        item.setStatus(status);
+        return item;
+    }
+}
@@ -0,0 +1,187 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.auth.service.KeycloakAdminService;
+import com.muhend.backend.email.service.EmailService;
+import com.muhend.backend.invoice.dto.OverdueInvoice;
+import com.muhend.backend.invoice.event.InvoicesOverdueEvent;
+import com.muhend.backend.invoice.model.Invoice;
+import com.muhend.backend.invoice.repository.InvoiceItemRepository;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.organization.repository.OrganizationUserRepository;
+import com.muhend.backend.organization.service.OrganizationService;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires du passage en retard des factures : chaque facture n'est passée en retard qu'une fois
+ * et ne reçoit qu'un seul rappel, même si la tâche est exécutée plusieurs fois ou par plusieurs instances.
+ *
+ * La requête UPDATE ... WHERE status = 'PENDING' RETURNING est simulée par une mise à jour atomique
+ * des statuts : seules les lignes effectivement modifiées sont renvoyées.
+ */
+@ExtendWith(MockitoExtension.class)
+class InvoiceOverdueReminderTest {
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private InvoiceItemRepository invoiceItemRepository;
+
+    @Mock
+    private UsageLogRepository usageLogRepository;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private KeycloakAdminService keycloakAdminService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private OrganizationRepository organizationRepository;
+
+    @Mock
+    private OrganizationUserRepository organizationUserRepository;
+
+    private InvoiceService invoiceService;
+    private InvoiceReminderService reminderService;
+
+    /**
+     * Table invoice simulée : ID -> statut
+     */
+    private final Map<Long, Invoice.InvoiceStatus> statuses = new ConcurrentHashMap<>();
+    private final Map<Long, OverdueInvoice> rows = new ConcurrentHashMap<>();
+
+    private record OverdueRow(Long id, Long organizationId, String invoiceNumber, LocalDate periodStart,
+                              LocalDate periodEnd, LocalDate dueDate, BigDecimal totalAmount) implements OverdueInvoice {
+        public Long getId() { return id; }
+        public Long getOrganizationId() { return organizationId; }
+        public String getInvoiceNumber() { return invoiceNumber; }
+        public LocalDate getPeriodStart() { return periodStart; }
+        public LocalDate getPeriodEnd() { return periodEnd; }
+        public LocalDate getDueDate() { return dueDate; }
+        public BigDecimal getTotalAmount() { return totalAmount; }
+    }
+
+    @BeforeEach
+    void setUp() {
+        invoiceService = new InvoiceService(invoiceRepository, invoiceItemRepository, usageLogRepository,
+                organizationService, emailService, keycloakAdminService, eventPublisher);
+        reminderService = new InvoiceReminderService(organizationRepository, organizationUserRepository,
+                keycloakAdminService, emailService);
+
+        LocalDate dueDate = LocalDate.now().minusDays(3);
+        for (long id = 1; id <= 6; id++) {
+            long organizationId = id % 2 == 0 ? 10L : 20L;
+            statuses.put(id, Invoice.InvoiceStatus.PENDING);
+            rows.put(id, new OverdueRow(id, organizationId, "INV-" + id, dueDate.minusDays(30),
+                    dueDate.minusDays(1), dueDate, new BigDecimal("12.50")));
+        }
+        // Facture déjà payée : jamais passée en retard
+        statuses.put(7L, Invoice.InvoiceStatus.PAID);
+        rows.put(7L, new OverdueRow(7L, 10L, "INV-7", dueDate.minusDays(30), dueDate.minusDays(1), dueDate,
+                new BigDecimal("12.50")));
+
+        when(invoiceRepository.markPendingAsOverdue(any(LocalDate.class))).thenAnswer(invocation -> {
+            LocalDate today = invocation.getArgument(0);
+            List<OverdueInvoice> updated = new ArrayList<>();
+            synchronized (statuses) {
+                for (Map.Entry<Long, Invoice.InvoiceStatus> entry : statuses.entrySet()) {
+                    OverdueInvoice row = rows.get(entry.getKey());
+                    if (entry.getValue() == Invoice.InvoiceStatus.PENDING && row.getDueDate().isBefore(today)) {
+                        entry.setValue(Invoice.InvoiceStatus.OVERDUE);
+                        updated.add(row);
+                    }
+                }
+            }
+            return updated;
+        });
+        // Rappels envoyés à la validation de la transaction
+        lenient().doAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof InvoicesOverdueEvent event) {
+                reminderService.onInvoicesOverdue(event);
+            }
+            return null;
+        }).when(eventPublisher).publishEvent(any(Object.class));
+        lenient().when(organizationRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> {
+                Organization organization = new Organization();
+                organization.setId(id);
+                organization.setName("Organisation " + id);
+                organization.setEmail("billing-" + id + "@example.com");
+                return organization;
+            }).toList();
+        });
+        lenient().when(organizationUserRepository.findKeycloakUserIdsByOrganizationIdIn(anyCollection())).thenReturn(List.of());
+        lenient().when(keycloakAdminService.getUsers(anyCollection())).thenReturn(Map.of());
+    }
+
+    @Test
+    void testMarkOverdueInvoices_ConcurrentAndRepeatedRuns_ShouldFlipAndRemindEachInvoiceOnce() throws Exception {
+        // Deux instances déclenchent la tâche en même temps, puis elle est relancée
+        CountDownLatch start = new CountDownLatch(1);
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> awaitThenMark(start));
+        CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> awaitThenMark(start));
+        start.countDown();
+        int marked = first.get() + second.get() + invoiceService.markOverdueInvoices();
+
+        assertEquals(6, marked);
+        for (long id = 1; id <= 6; id++) {
+            assertEquals(Invoice.InvoiceStatus.OVERDUE, statuses.get(id));
+            verify(emailService, times(1)).sendOverdueInvoiceReminderEmailToMultiple(
+                    anyList(), anyString(), eq("INV-" + id), anyString(), anyString(), anyString(), anyString(),
+                    eq(3L), eq(id));
+        }
+        assertEquals(Invoice.InvoiceStatus.PAID, statuses.get(7L));
+        verify(emailService, never()).sendOverdueInvoiceReminderEmailToMultiple(
+                anyList(), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyLong(), eq(7L));
+        verify(eventPublisher, atMost(2)).publishEvent(any(InvoicesOverdueEvent.class));
+    }
+
+    @Test
+    void testMarkOverdueInvoices_NothingPending_ShouldNotSendReminders() {
+        statuses.replaceAll((id, status) -> Invoice.InvoiceStatus.PAID);
+
+        assertEquals(0, invoiceService.markOverdueInvoices());
+
+        verifyNoInteractions(emailService, eventPublisher);
+    }
+
+    private int awaitThenMark(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return invoiceService.markOverdueInvoices();
+    }
+}
@@ -0,0 +1,177 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.invoice.dto.InvoiceDto;
+import com.muhend.backend.invoice.model.Invoice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour InvoicePdfCacheService : réutilisation du cache, invalidation par empreinte
+ * et suppression différée des versions remplacées
+ */
+@ExtendWith(MockitoExtension.class)
+class InvoicePdfCacheServiceTest {
+
+    private static final long GRACE_PERIOD_MS = 300;
+
+    @Mock
+    private InvoicePdfService invoicePdfService;
+
+    @TempDir
+    Path cacheDirectory;
+
+    private InvoicePdfCacheService cacheService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cacheService = new InvoicePdfCacheService(invoicePdfService);
+        ReflectionTestUtils.setField(cacheService, "directory", cacheDirectory.toString());
+        ReflectionTestUtils.setField(cacheService, "gracePeriodMs", GRACE_PERIOD_MS);
+        lenient().when(invoicePdfService.generatePdf(any(InvoiceDto.class))).thenAnswer(invocation -> {
+            InvoiceDto invoice = invocation.getArgument(0);
+            return ("%PDF " + invoice.getInvoiceNumber() + " " + invoice.getStatus()).getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheService.shutdown();
+    }
+
+    @Test
+    void testGetOrRender_SameContent_ShouldServeCachedFile() throws IOException {
+        InvoiceDto invoice = invoice(Invoice.InvoiceStatus.PENDING);
+
+        InvoicePdfCacheService.CachedPdf first = cacheService.getOrRender(invoice);
+        InvoicePdfCacheService.CachedPdf second = cacheService.getOrRender(invoice);
+
+        assertEquals(first.file(), second.file());
+        assertEquals(first.fingerprint(), second.fingerprint());
+        assertEquals(Files.size(first.file()), second.size());
+        verify(invoicePdfService, times(1)).generatePdf(any(InvoiceDto.class));
+    }
+
+    @Test
+    void testGetOrRender_ChangedInvoice_ShouldRenderNewVersionAndDeleteOldOneAfterGracePeriod() throws Exception {
+        InvoicePdfCacheService.CachedPdf pending = cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PENDING));
+        Thread.sleep(5);
+
+        InvoicePdfCacheService.CachedPdf paid = cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PAID));
+
+        assertNotEquals(pending.fingerprint(), paid.fingerprint());
+        assertEquals("%PDF INV-1 PAID", Files.readString(paid.file()));
+        verify(invoicePdfService, times(2)).generatePdf(any(InvoiceDto.class));
+        // L'ancienne version peut encore être en cours de téléchargement
+        assertTrue(Files.exists(pending.file()));
+
+        awaitDeleted(pending.file());
+        assertTrue(Files.exists(paid.file()));
+    }
+
+    @Test
+    void testGetOrRender_OpenReader_ShouldKeepReadingReplacedVersion() throws Exception {
+        InvoicePdfCacheService.CachedPdf pending = cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PENDING));
+        try (InputStream in = Files.newInputStream(pending.file())) {
+            Thread.sleep(5);
+            cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PAID));
+            awaitDeleted(pending.file());
+
+            // Fichier ouvert avant sa suppression : lecture complète
+            assertEquals("%PDF INV-1 PENDING", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testGetOrRender_VersionServedAgainAfterReplacement_ShouldNotBeDeleted() throws Exception {
+        cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PENDING));
+        Thread.sleep(5);
+        InvoicePdfCacheService.CachedPdf paid = cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PAID));
+        Thread.sleep(5);
+
+        // Retour à l'état précédent : l'ancienne version est resservie, donc conservée
+        InvoicePdfCacheService.CachedPdf pendingAgain = cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PENDING));
+        Thread.sleep(GRACE_PERIOD_MS * 3);
+
+        assertTrue(Files.exists(pendingAgain.file()));
+        assertTrue(Files.exists(paid.file()));
+        verify(invoicePdfService, times(2)).generatePdf(any(InvoiceDto.class));
+    }
+
+    @Test
+    void testGetOrRender_ConcurrentRequests_ShouldAllGetACompleteFile() throws Exception {
+        InvoiceDto invoice = invoice(Invoice.InvoiceStatus.PENDING);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<String>> downloads = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                downloads.add(() -> Files.readString(cacheService.getOrRender(invoice).file()));
+            }
+            for (Future<String> download : executor.invokeAll(downloads)) {
+                assertEquals("%PDF INV-1 PENDING", download.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        try (var files = Files.list(cacheDirectory.resolve("1"))) {
+            // Aucun fichier temporaire restant, une seule version
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testDelete_ShouldRemoveInvoiceDirectoryImmediately() throws IOException {
+        InvoicePdfCacheService.CachedPdf pdf = cacheService.getOrRender(invoice(Invoice.InvoiceStatus.PENDING));
+
+        cacheService.delete(1L);
+
+        assertFalse(Files.exists(pdf.file()));
+        assertFalse(Files.exists(cacheDirectory.resolve("1")));
+    }
+
+    private static void awaitDeleted(Path file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.exists(file) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(Files.exists(file), "La version remplacée aurait dû être supprimée après le délai de grâce");
+    }
+
+    private static InvoiceDto invoice(Invoice.InvoiceStatus status) {
+        InvoiceDto invoice = new InvoiceDto();
+        invoice.setId(1L);
+        invoice.setInvoiceNumber("INV-1");
+        invoice.setOrganizationName("Acme");
+        invoice.setPeriodStart(LocalDate.of(2026, 9, 1));
+        invoice.setPeriodEnd(LocalDate.of(2026, 9, 30));
+        invoice.setCreatedAt(LocalDateTime.of(2026, 10, 1, 0, 0));
+        invoice.setDueDate(LocalDate.of(2026, 10, 31));
+        invoice.setTotalAmount(new BigDecimal("12.50"));
+        invoice.setStatus(status);
+        return invoice;
+    }
+}
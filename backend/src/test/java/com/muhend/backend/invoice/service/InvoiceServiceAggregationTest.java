@@ -0,0 +1,231 @@
+package com.muhend.backend.invoice.service;
+
+import com.muhend.backend.auth.service.KeycloakAdminService;
+import com.muhend.backend.email.service.EmailService;
+import com.muhend.backend.invoice.dto.InvoiceDto;
+import com.muhend.backend.invoice.model.Invoice;
+import com.muhend.backend.invoice.model.InvoiceItem;
+import com.muhend.backend.invoice.repository.InvoiceItemRepository;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.organization.dto.OrganizationDto;
+import com.muhend.backend.organization.service.OrganizationService;
+import com.muhend.backend.usage.dto.EndpointUsageTotals;
+import com.muhend.backend.usage.model.UsageLog;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour InvoiceService : les factures générées à partir des agrégats SQL par endpoint
+ * doivent être identiques à celles calculées à partir de tous les logs d'utilisation
+ */
+@ExtendWith(MockitoExtension.class)
+class InvoiceServiceAggregationTest {
+
+    private static final String[] ENDPOINTS = {
+        "/recherche/sections", "/recherche/chapitres", "/recherche/positions4", "/recherche/positions6", "/autre"
+    };
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private InvoiceItemRepository invoiceItemRepository;
+
+    @Mock
+    private UsageLogRepository usageLogRepository;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private KeycloakAdminService keycloakAdminService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private InvoiceService invoiceService;
+
+    @Test
+    void testGenerateMonthlyInvoice_ShouldMatchPerLogComputation() {
+        for (long seed = 1; seed <= 20; seed++) {
+            reset(invoiceRepository, invoiceItemRepository, usageLogRepository, organizationService);
+            assertSameInvoice(generateLogs(new Random(seed), 1 + (int) (seed * 397 % 5000)));
+        }
+    }
+
+    @Test
+    void testGenerateMonthlyInvoice_WithoutCostsNorTokens_ShouldMatchPerLogComputation() {
+        List<UsageLog> logs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            logs.add(usageLog(ENDPOINTS[i % 2], null, null));
+        }
+        assertSameInvoice(logs);
+    }
+
+    private void assertSameInvoice(List<UsageLog> logs) {
+        OrganizationDto organization = new OrganizationDto();
+        organization.setId(1L);
+        organization.setName("Test Organization");
+        when(organizationService.getOrganizationById(1L)).thenReturn(organization);
+        when(invoiceRepository.save(any(Invoice.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(usageLogRepository.sumGroupedByEndpointForOrganization(eq(1L), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(groupByEndpoint(logs));
+
+        InvoiceDto invoice = invoiceService.generateMonthlyInvoice(1L, 2025, 1);
+
+        assertEquals(0, legacyTotal(logs).compareTo(invoice.getTotalAmount()));
+        assertEquals(legacyTotal(logs).scale(), invoice.getTotalAmount().scale());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<InvoiceItem>> captor = ArgumentCaptor.forClass(List.class);
+        verify(invoiceItemRepository).saveAll(captor.capture());
+        List<InvoiceItem> expected = legacyItems(logs);
+        List<InvoiceItem> actual = captor.getValue();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getItemType(), actual.get(i).getItemType());
+            assertEquals(expected.get(i).getQuantity(), actual.get(i).getQuantity());
+            assertEquals(expected.get(i).getUnitPrice(), actual.get(i).getUnitPrice());
+            assertEquals(expected.get(i).getTotalPrice(), actual.get(i).getTotalPrice());
+            assertNotNull(actual.get(i).getDescription());
+        }
+    }
+
+    // ===================================================
+    // RÉFÉRENCE : calcul à partir de tous les logs (ancienne implémentation)
+    // ===================================================
+
+    private static BigDecimal legacyTotal(List<UsageLog> logs) {
+        return logs.stream()
+                .map(UsageLog::getCostUsd)
+                .filter(Objects::nonNull)
+                .reduce(BigDecimal.ZERO, BigDecimal::add)
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Lignes par endpoint (dans l'ordre des endpoints) puis ligne des tokens
+     */
+    private static List<InvoiceItem> legacyItems(List<UsageLog> logs) {
+        List<InvoiceItem> items = new ArrayList<>();
+        Map<String, List<UsageLog>> byEndpoint = logs.stream()
+                .collect(Collectors.groupingBy(UsageLog::getEndpoint, TreeMap::new, Collectors.toList()));
+        for (List<UsageLog> endpointLogs : byEndpoint.values()) {
+            BigDecimal totalCost = legacyTotal(endpointLogs);
+            items.add(item("API_REQUEST", endpointLogs.size(),
+                    totalCost.divide(BigDecimal.valueOf(endpointLogs.size()), 6, RoundingMode.HALF_UP), totalCost));
+        }
+        long totalTokens = logs.stream()
+                .filter(log -> log.getTokensUsed() != null)
+                .mapToLong(UsageLog::getTokensUsed)
+                .sum();
+        if (totalTokens > 0) {
+            BigDecimal totalCost = legacyTotal(logs);
+            items.add(item("TOKEN_USAGE", totalTokens,
+                    totalCost.divide(BigDecimal.valueOf(totalTokens), 6, RoundingMode.HALF_UP), totalCost));
+        }
+        return items;
+    }
+
+    // ===================================================
+    // DONNÉES
+    // ===================================================
+
+    /**
+     * Équivalent de la requête GROUP BY endpoint ORDER BY endpoint (SUM ignore les NULL, NULL si aucune valeur)
+     */
+    private static List<EndpointUsageTotals> groupByEndpoint(List<UsageLog> logs) {
+        Map<String, List<UsageLog>> byEndpoint = logs.stream()
+                .collect(Collectors.groupingBy(UsageLog::getEndpoint, TreeMap::new, Collectors.toList()));
+        List<EndpointUsageTotals> totals = new ArrayList<>();
+        byEndpoint.forEach((endpoint, endpointLogs) -> {
+            List<BigDecimal> costs = endpointLogs.stream().map(UsageLog::getCostUsd).filter(Objects::nonNull).toList();
+            List<Integer> tokens = endpointLogs.stream().map(UsageLog::getTokensUsed).filter(Objects::nonNull).toList();
+            totals.add(new Totals(endpoint, endpointLogs.size(),
+                    costs.isEmpty() ? null : costs.stream().reduce(BigDecimal.ZERO, BigDecimal::add),
+                    tokens.isEmpty() ? null : tokens.stream().mapToLong(Integer::longValue).sum()));
+        });
+        return totals;
+    }
+
+    private static List<UsageLog> generateLogs(Random random, int count) {
+        List<UsageLog> logs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String endpoint = ENDPOINTS[random.nextInt(ENDPOINTS.length)];
+            BigDecimal cost = random.nextInt(10) == 0 ? null : BigDecimal.valueOf(random.nextInt(50_000), 6);
+            Integer tokens = random.nextInt(10) == 0 ? null : random.nextInt(4_000);
+            logs.add(usageLog(endpoint, cost, tokens));
+        }
+        return logs;
+    }
+
+    private static UsageLog usageLog(String endpoint, BigDecimal cost, Integer tokens) {
+        UsageLog log = new UsageLog();
+        log.setOrganizationId(1L);
+        log.setKeycloakUserId("user-1");
+        log.setEndpoint(endpoint);
+        log.setCostUsd(cost);
+        log.setTokensUsed(tokens);
+        log.setTimestamp(LocalDateTime.of(2025, 1, 15, 10, 0));
+        return log;
+    }
+
+    private static InvoiceItem item(String itemType, long quantity, BigDecimal unitPrice, BigDecimal totalPrice) {
+        InvoiceItem item = new InvoiceItem();
+        item.setItemType(itemType);
+        item.setQuantity((int) quantity);
+        item.setUnitPrice(unitPrice);
+        item.setTotalPrice(totalPrice);
+        return item;
+    }
+
+    private record Totals(String endpoint, long requestCount, BigDecimal totalCostUsd, Long totalTokens)
+            implements EndpointUsageTotals {
+
+        @Override
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        @Override
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        @Override
+        public BigDecimal getTotalCostUsd() {
+            return totalCostUsd;
+        }
+
+        @Override
+        public Long getTotalTokens() {
+            return totalTokens;
+        }
+    }
+}
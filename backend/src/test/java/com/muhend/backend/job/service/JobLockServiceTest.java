@@ -0,0 +1,134 @@
+package com.muhend.backend.job.service;
+
+import com.muhend.backend.job.model.JobLock;
+import com.muhend.backend.job.repository.JobLockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour JobLockService (deux instances partageant la table job_lock, simulée en mémoire
+ * avec les mêmes conditions que les requêtes de JobLockRepository)
+ */
+@ExtendWith(MockitoExtension.class)
+class JobLockServiceTest {
+
+    private static final Duration LEASE = Duration.ofMinutes(10);
+
+    @Mock
+    private JobLockRepository jobLockRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<String, JobLock> table = new HashMap<>();
+    private JobLockService instanceA;
+    private JobLockService instanceB;
+
+    @BeforeEach
+    void setUp() {
+        // INSERT ... ON CONFLICT DO UPDATE ... WHERE locked_until <= :now
+        lenient().when(jobLockRepository.tryAcquire(anyString(), anyString(), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    String name = invocation.getArgument(0);
+                    LocalDateTime now = invocation.getArgument(2);
+                    JobLock lock = table.get(name);
+                    if (lock != null && lock.getLockedUntil().isAfter(now)) {
+                        return 0;
+                    }
+                    table.put(name, new JobLock(name, invocation.getArgument(1), now, invocation.getArgument(3)));
+                    return 1;
+                });
+        // UPDATE ... WHERE locked_by = :owner AND locked_until > :now
+        lenient().when(jobLockRepository.extend(anyString(), anyString(), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    JobLock lock = table.get(invocation.<String>getArgument(0));
+                    LocalDateTime now = invocation.getArgument(2);
+                    if (lock == null || !lock.getLockedBy().equals(invocation.getArgument(1)) || !lock.getLockedUntil().isAfter(now)) {
+                        return 0;
+                    }
+                    lock.setLockedUntil(invocation.getArgument(3));
+                    return 1;
+                });
+        // UPDATE ... WHERE locked_by = :owner
+        lenient().when(jobLockRepository.release(anyString(), anyString(), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    JobLock lock = table.get(invocation.<String>getArgument(0));
+                    if (lock == null || !lock.getLockedBy().equals(invocation.getArgument(1))) {
+                        return 0;
+                    }
+                    lock.setLockedUntil(invocation.getArgument(2));
+                    return 1;
+                });
+        instanceA = new JobLockService(jobLockRepository, transactionManager, "instance-a");
+        instanceB = new JobLockService(jobLockRepository, transactionManager, "instance-b");
+    }
+
+    @Test
+    void testTryLock_ShouldBeExclusiveUntilReleased() {
+        assertTrue(instanceA.tryLock("job", LEASE));
+        assertFalse(instanceB.tryLock("job", LEASE));
+        assertFalse(instanceA.tryLock("job", LEASE));
+        assertEquals("instance-a", table.get("job").getLockedBy());
+
+        instanceA.unlock("job", LocalDateTime.now(), Duration.ZERO);
+
+        assertTrue(instanceB.tryLock("job", LEASE));
+        assertEquals("instance-b", table.get("job").getLockedBy());
+    }
+
+    @Test
+    void testTryLock_ExpiredLease_ShouldBeTakenByAnotherInstance() {
+        assertTrue(instanceA.tryLock("job", Duration.ZERO));
+
+        assertTrue(instanceB.tryLock("job", LEASE));
+        assertEquals("instance-b", table.get("job").getLockedBy());
+        // L'ancienne détentrice ne peut plus ni le prolonger ni le libérer
+        assertFalse(instanceA.extend("job", LEASE));
+        instanceA.unlock("job", LocalDateTime.now(), Duration.ZERO);
+        assertFalse(instanceA.tryLock("job", LEASE));
+    }
+
+    @Test
+    void testExtend_ShouldPushBackExpiry() {
+        assertTrue(instanceA.tryLock("job", Duration.ofMinutes(1)));
+        LocalDateTime before = table.get("job").getLockedUntil();
+
+        assertTrue(instanceA.extend("job", LEASE));
+
+        assertTrue(table.get("job").getLockedUntil().isAfter(before.plusMinutes(5)));
+        assertFalse(instanceB.extend("job", LEASE));
+        assertFalse(instanceB.tryLock("job", LEASE));
+    }
+
+    @Test
+    void testUnlock_ShouldKeepLeaseForLockAtLeastFor() {
+        LocalDateTime lockedAt = LocalDateTime.now();
+        assertTrue(instanceA.tryLock("job", LEASE));
+
+        instanceA.unlock("job", lockedAt, Duration.ofMinutes(1));
+
+        assertEquals(lockedAt.plusMinutes(1), table.get("job").getLockedUntil());
+        assertFalse(instanceB.tryLock("job", LEASE));
+    }
+
+    @Test
+    void testUnlock_DatabaseError_ShouldNotPropagate() {
+        when(jobLockRepository.release(anyString(), anyString(), any(LocalDateTime.class)))
+                .thenThrow(new IllegalStateException("Base indisponible"));
+
+        assertDoesNotThrow(() -> instanceA.unlock("job", LocalDateTime.now(), Duration.ZERO));
+    }
+}
@@ -0,0 +1,185 @@
+package com.muhend.backend.job.service;
+
+import com.muhend.backend.job.model.JobRun;
+import com.muhend.backend.job.repository.JobRunRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour ScheduledJobService
+ */
+@ExtendWith(MockitoExtension.class)
+class ScheduledJobServiceTest {
+
+    private static final Duration LOCK_AT_MOST_FOR = Duration.ofMinutes(30);
+    private static final Duration LOCK_AT_LEAST_FOR = Duration.ofMinutes(1);
+
+    @Mock
+    private JobLockService jobLockService;
+
+    @Mock
+    private JobRunRepository jobRunRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ScheduledJobService scheduledJobService;
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        scheduledJobService = new ScheduledJobService(jobLockService, jobRunRepository, transactionManager);
+        lenient().when(jobLockService.getInstanceId()).thenReturn("instance-a");
+        lenient().when(jobRunRepository.save(any(JobRun.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        scheduledJobService.register(new ScheduledJobService.JobDefinition("test-job", "Tâche de test", "0 0 9 * * ?",
+                LOCK_AT_MOST_FOR, LOCK_AT_LEAST_FOR, () -> {
+                    executions.incrementAndGet();
+                    return 42;
+                }));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduledJobService.shutdown();
+    }
+
+    @Test
+    void testRun_LockAcquired_ShouldExecuteAndRecordRun() {
+        when(jobLockService.tryLock("test-job", LOCK_AT_MOST_FOR)).thenReturn(true);
+
+        Optional<JobRun> run = scheduledJobService.run("test-job", JobRun.Trigger.SCHEDULED);
+
+        assertTrue(run.isPresent());
+        verify(jobLockService, timeout(5000)).unlock("test-job", run.get().getStartedAt(), LOCK_AT_LEAST_FOR);
+        assertEquals(1, executions.get());
+        assertEquals(JobRun.Status.SUCCEEDED, run.get().getStatus());
+        assertEquals(42, run.get().getItemsProcessed());
+        assertEquals("instance-a", run.get().getInstanceId());
+        assertNotNull(run.get().getFinishedAt());
+        assertNotNull(run.get().getDurationMs());
+        verify(jobRunRepository).markAbandoned(eq("test-job"), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testRun_ShouldNotBlockTheCallingThread() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduledJobService.register(new ScheduledJobService.JobDefinition("slow-job", "Tâche longue", null,
+                LOCK_AT_MOST_FOR, Duration.ZERO, () -> {
+                    release.await();
+                    return 1;
+                }));
+        when(jobLockService.tryLock("slow-job", LOCK_AT_MOST_FOR)).thenReturn(true);
+
+        JobRun run = scheduledJobService.run("slow-job", JobRun.Trigger.SCHEDULED).orElseThrow();
+
+        assertEquals(JobRun.Status.RUNNING, run.getStatus());
+        release.countDown();
+        verify(jobLockService, timeout(5000)).unlock("slow-job", run.getStartedAt(), Duration.ZERO);
+        assertEquals(JobRun.Status.SUCCEEDED, run.getStatus());
+    }
+
+    @Test
+    void testRun_LongTask_ShouldExtendLeaseUntilFinished() throws InterruptedException {
+        Duration lease = Duration.ofMillis(30);
+        CountDownLatch extended = new CountDownLatch(3);
+        when(jobLockService.extend("long-job", lease)).thenAnswer(invocation -> {
+            extended.countDown();
+            return true;
+        });
+        scheduledJobService.register(new ScheduledJobService.JobDefinition("long-job", "Tâche plus longue que son bail", null,
+                lease, Duration.ZERO, () -> {
+                    assertTrue(extended.await(5, TimeUnit.SECONDS));
+                    return 1;
+                }));
+        when(jobLockService.tryLock("long-job", lease)).thenReturn(true);
+
+        JobRun run = scheduledJobService.run("long-job", JobRun.Trigger.SCHEDULED).orElseThrow();
+
+        verify(jobLockService, timeout(5000)).unlock("long-job", run.getStartedAt(), Duration.ZERO);
+        assertEquals(JobRun.Status.SUCCEEDED, run.getStatus());
+        // Plus aucune prolongation après la libération du bail
+        clearInvocations(jobLockService);
+        Thread.sleep(100);
+        verify(jobLockService, never()).extend(anyString(), any(Duration.class));
+    }
+
+    @Test
+    void testRun_LeaseLost_ShouldStopExtendingAndRecordFailure() throws InterruptedException {
+        Duration lease = Duration.ofMillis(30);
+        CountDownLatch lost = new CountDownLatch(1);
+        // Bail expiré et pris par une autre instance
+        when(jobLockService.extend("lost-job", lease)).thenAnswer(invocation -> {
+            lost.countDown();
+            return false;
+        });
+        scheduledJobService.register(new ScheduledJobService.JobDefinition("lost-job", "Tâche dont le bail est perdu", null,
+                lease, Duration.ZERO, () -> {
+                    assertTrue(lost.await(5, TimeUnit.SECONDS));
+                    Thread.sleep(100);
+                    return 7;
+                }));
+        when(jobLockService.tryLock("lost-job", lease)).thenReturn(true);
+
+        JobRun run = scheduledJobService.run("lost-job", JobRun.Trigger.SCHEDULED).orElseThrow();
+
+        verify(jobLockService, timeout(5000)).unlock("lost-job", run.getStartedAt(), Duration.ZERO);
+        assertEquals(JobRun.Status.FAILED, run.getStatus());
+        assertTrue(run.getErrorMessage().startsWith("Bail perdu"));
+        assertEquals(7, run.getItemsProcessed());
+        // Une seule tentative de prolongation : le bail n'est pas disputé à l'autre instance
+        verify(jobLockService, times(1)).extend("lost-job", lease);
+    }
+
+    @Test
+    void testRun_LockHeldByAnotherInstance_ShouldSkip() {
+        when(jobLockService.tryLock("test-job", LOCK_AT_MOST_FOR)).thenReturn(false);
+
+        Optional<JobRun> run = scheduledJobService.run("test-job", JobRun.Trigger.SCHEDULED);
+
+        assertTrue(run.isEmpty());
+        assertEquals(0, executions.get());
+        verifyNoInteractions(jobRunRepository);
+        verify(jobLockService, never()).unlock(anyString(), any(), any());
+    }
+
+    @Test
+    void testRun_TaskFailure_ShouldRecordErrorAndReleaseLock() {
+        scheduledJobService.register(new ScheduledJobService.JobDefinition("failing-job", "Tâche en échec", null,
+                LOCK_AT_MOST_FOR, Duration.ZERO, () -> {
+                    throw new IllegalStateException("Base indisponible");
+                }));
+        when(jobLockService.tryLock("failing-job", LOCK_AT_MOST_FOR)).thenReturn(true);
+
+        JobRun run = scheduledJobService.trigger("failing-job");
+
+        verify(jobLockService, timeout(5000)).unlock("failing-job", run.getStartedAt(), Duration.ZERO);
+        assertEquals(JobRun.Status.FAILED, run.getStatus());
+        assertEquals("Base indisponible", run.getErrorMessage());
+        assertEquals(JobRun.Trigger.MANUAL, run.getTriggerType());
+    }
+
+    @Test
+    void testTrigger_JobRunningElsewhere_ShouldFail() {
+        when(jobLockService.tryLock("test-job", LOCK_AT_MOST_FOR)).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> scheduledJobService.trigger("test-job"));
+        assertThrows(IllegalArgumentException.class, () -> scheduledJobService.trigger("unknown-job"));
+        assertEquals(0, executions.get());
+    }
+}
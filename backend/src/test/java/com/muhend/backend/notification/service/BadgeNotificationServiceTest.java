@@ -0,0 +1,107 @@
+package com.muhend.backend.notification.service;
+
+import com.muhend.backend.alert.repository.QuotaAlertRepository;
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.invoice.model.Invoice;
+import com.muhend.backend.invoice.repository.InvoiceRepository;
+import com.muhend.backend.notification.event.BadgeCounterChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour BadgeNotificationService : envois sur un thread dédié
+ * et cohérence des compteurs entre instances
+ */
+@ExtendWith(MockitoExtension.class)
+class BadgeNotificationServiceTest {
+
+    private static final Long ORGANIZATION_ID = 3L;
+
+    @Mock
+    private QuotaAlertRepository quotaAlertRepository;
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    private BadgeNotificationService badgeNotificationService;
+    private CacheInvalidationBus.Handler busHandler;
+
+    @BeforeEach
+    void setUp() {
+        badgeNotificationService = new BadgeNotificationService(quotaAlertRepository, invoiceRepository, cacheInvalidationBus);
+        ReflectionTestUtils.setField(badgeNotificationService, "emitterTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(badgeNotificationService, "heartbeatIntervalMs", 60_000L);
+        badgeNotificationService.start();
+
+        ArgumentCaptor<CacheInvalidationBus.Handler> handler = ArgumentCaptor.forClass(CacheInvalidationBus.Handler.class);
+        verify(cacheInvalidationBus).register(eq(CacheInvalidationBus.BADGE_COUNTERS), handler.capture());
+        busHandler = handler.getValue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        badgeNotificationService.shutdown();
+    }
+
+    @Test
+    void testOnCounterChanged_ShouldApplyDeltaAndBroadcast() {
+        when(quotaAlertRepository.countByOrganizationIdAndIsReadFalse(ORGANIZATION_ID)).thenReturn(2L);
+        badgeNotificationService.getCounters(ORGANIZATION_ID);
+
+        badgeNotificationService.onCounterChanged(
+                new BadgeCounterChangedEvent(ORGANIZATION_ID, BadgeCounterChangedEvent.Counter.UNREAD_ALERTS, 1));
+
+        assertEquals(3L, badgeNotificationService.getCounters(ORGANIZATION_ID).getUnreadAlerts());
+        verify(cacheInvalidationBus).broadcast(CacheInvalidation.of(CacheInvalidationBus.BADGE_COUNTERS, ORGANIZATION_ID));
+        verify(quotaAlertRepository, times(1)).countByOrganizationIdAndIsReadFalse(ORGANIZATION_ID);
+    }
+
+    @Test
+    void testRemoteChange_ShouldReloadCountersAndPushOnDedicatedThread() {
+        when(quotaAlertRepository.countByOrganizationIdAndIsReadFalse(ORGANIZATION_ID)).thenReturn(2L);
+        badgeNotificationService.subscribe(ORGANIZATION_ID, "user-1");
+
+        // Une autre instance a marqué une facture en retard
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(invoiceRepository.countByOrganizationIdAndStatus(ORGANIZATION_ID, Invoice.InvoiceStatus.OVERDUE))
+                .thenAnswer(invocation -> {
+                    threads.add(Thread.currentThread().getName());
+                    return 1L;
+                });
+        busHandler.invalidate(ORGANIZATION_ID.toString());
+
+        verify(invoiceRepository, timeout(5000).times(2))
+                .countByOrganizationIdAndStatus(ORGANIZATION_ID, Invoice.InvoiceStatus.OVERDUE);
+        assertEquals(List.of("badge-notifications"), threads);
+        assertEquals(1L, badgeNotificationService.getCounters(ORGANIZATION_ID).getOverdueInvoices());
+        verify(cacheInvalidationBus, never()).broadcast(any());
+    }
+
+    @Test
+    void testRemoteChange_WithoutSubscriber_ShouldOnlyForgetCounters() {
+        badgeNotificationService.getCounters(ORGANIZATION_ID);
+
+        busHandler.invalidate(ORGANIZATION_ID.toString());
+        badgeNotificationService.getCounters(ORGANIZATION_ID);
+
+        // Rechargé au prochain accès seulement
+        verify(quotaAlertRepository, times(2)).countByOrganizationIdAndIsReadFalse(ORGANIZATION_ID);
+    }
+}
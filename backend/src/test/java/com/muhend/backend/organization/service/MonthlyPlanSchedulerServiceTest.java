@@ -0,0 +1,123 @@
+package com.muhend.backend.organization.service;
+
+import com.muhend.backend.invoice.service.InvoiceService;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.pricing.dto.PricingPlanDto;
+import com.muhend.backend.pricing.service.PricingPlanService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour MonthlyPlanSchedulerService
+ */
+@ExtendWith(MockitoExtension.class)
+class MonthlyPlanSchedulerServiceTest {
+
+    @Mock
+    private OrganizationRepository organizationRepository;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private PricingPlanService pricingPlanService;
+
+    @Mock
+    private InvoiceService invoiceService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MonthlyPlanSchedulerService schedulerService;
+
+    @BeforeEach
+    void setUp() {
+        schedulerService = new MonthlyPlanSchedulerService(organizationRepository, organizationService,
+                pricingPlanService, invoiceService, transactionManager, 2);
+        ReflectionTestUtils.setField(schedulerService, "chunkSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        schedulerService.shutdown();
+    }
+
+    @Test
+    void testProcessMonthlyPlanCycles_ShouldRenewEveryChunkAndIsolateFailures() {
+        LocalDate today = LocalDate.now();
+        when(organizationRepository.findPlanCycleCandidateIds(eq(today), eq(0L), any(Pageable.class))).thenReturn(List.of(1L, 2L));
+        when(organizationRepository.findPlanCycleCandidateIds(eq(today), eq(2L), any(Pageable.class))).thenReturn(List.of(3L));
+        when(organizationRepository.findPlanCycleCandidateIds(eq(today), eq(3L), any(Pageable.class))).thenReturn(List.of());
+        Organization org1 = expiredOrganization(1L);
+        Organization org2 = expiredOrganization(2L);
+        Organization org3 = expiredOrganization(3L);
+        when(organizationRepository.findById(1L)).thenReturn(Optional.of(org1));
+        when(organizationRepository.findById(2L)).thenReturn(Optional.of(org2));
+        when(organizationRepository.findById(3L)).thenReturn(Optional.of(org3));
+        when(pricingPlanService.getPricingPlanById(10L)).thenReturn(monthlyPlan());
+        when(invoiceService.generateMonthlyPlanCycleInvoice(anyLong(), any(), any(), any())).thenAnswer(invocation -> {
+            if (invocation.<Long>getArgument(0) == 2L) {
+                throw new IllegalStateException("Base indisponible");
+            }
+            return null;
+        });
+
+        int updated = schedulerService.processMonthlyPlanCycles();
+
+        assertEquals(2, updated);
+        assertEquals(today, org1.getPlanCycleProcessedOn());
+        assertEquals(today, org3.getPlanCycleProcessedOn());
+        assertEquals(today, org1.getMonthlyPlanStartDate());
+        // Organisation en échec : non marquée, reprise au prochain lancement
+        assertNull(org2.getPlanCycleProcessedOn());
+        verify(organizationRepository, never()).save(org2);
+    }
+
+    @Test
+    void testProcessOrganization_AlreadyProcessedToday_ShouldBeSkipped() {
+        LocalDate today = LocalDate.now();
+        Organization org = expiredOrganization(1L);
+        org.setPlanCycleProcessedOn(today);
+        when(organizationRepository.findById(1L)).thenReturn(Optional.of(org));
+
+        assertFalse(schedulerService.processOrganization(1L, today));
+
+        verifyNoInteractions(invoiceService, pricingPlanService);
+        verify(organizationRepository, never()).save(any());
+    }
+
+    private static Organization expiredOrganization(Long id) {
+        Organization org = new Organization();
+        org.setId(id);
+        org.setPricingPlanId(10L);
+        org.setMonthlyPlanStartDate(LocalDate.now().minusMonths(1).minusDays(1));
+        org.setMonthlyPlanEndDate(LocalDate.now().minusDays(2));
+        return org;
+    }
+
+    private static PricingPlanDto monthlyPlan() {
+        PricingPlanDto plan = new PricingPlanDto();
+        plan.setId(10L);
+        plan.setName("Pro");
+        plan.setPricePerMonth(new BigDecimal("29.00"));
+        plan.setMonthlyQuota(1000);
+        return plan;
+    }
+}
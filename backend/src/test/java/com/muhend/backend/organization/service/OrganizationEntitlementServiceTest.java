@@ -0,0 +1,105 @@
+package com.muhend.backend.organization.service;
+
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.organization.event.OrganizationEntitlementChangedEvent;
+import com.muhend.backend.organization.model.Organization;
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.pricing.service.PricingPlanService;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour OrganizationEntitlementService : cache des droits et vérification d'accès
+ */
+@ExtendWith(MockitoExtension.class)
+class OrganizationEntitlementServiceTest {
+
+    @Mock
+    private OrganizationRepository organizationRepository;
+
+    @Mock
+    private PricingPlanService pricingPlanService;
+
+    @Mock
+    private UsageLogRepository usageLogRepository;
+
+    @Mock
+    private OrganizationService organizationService;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @InjectMocks
+    private OrganizationEntitlementService entitlementService;
+
+    private Organization organization;
+
+    @BeforeEach
+    void setUp() {
+        organization = new Organization();
+        organization.setId(1L);
+        organization.setName("Test Organization");
+        organization.setEnabled(true);
+        organization.setCreatedAt(LocalDateTime.now());
+    }
+
+    @Test
+    void testCheckSearchAccess_ShouldLoadOrganizationOnlyOnce() {
+        organization.setMonthlyQuota(100);
+        when(organizationRepository.findById(1L)).thenReturn(Optional.of(organization));
+        when(usageLogRepository.countByOrganizationIdAndTimestampBetween(eq(1L), any(), any())).thenReturn(10L);
+
+        entitlementService.checkSearchAccess(1L);
+        var access = entitlementService.checkSearchAccess(1L);
+
+        assertTrue(access.isCanMakeRequests());
+        assertTrue(access.getQuotaResult().isQuotaOk());
+        assertEquals(10L, access.getQuotaResult().getCurrentUsage());
+        verify(organizationRepository, times(1)).findById(1L);
+        // Un seul COUNT par vérification
+        verify(usageLogRepository, times(2)).countByOrganizationIdAndTimestampBetween(eq(1L), any(), any());
+    }
+
+    @Test
+    void testCheckSearchAccess_WhenTrialQuotaReached_ShouldMarkTrialExpired() {
+        organization.setMonthlyQuota(100);
+        organization.setTrialExpiresAt(LocalDateTime.now().plusDays(10));
+        when(organizationRepository.findById(1L)).thenReturn(Optional.of(organization));
+        when(usageLogRepository.countByOrganizationIdAndTimestampBetween(eq(1L), any(), any())).thenReturn(100L);
+
+        var access = entitlementService.checkSearchAccess(1L);
+
+        assertFalse(access.isCanMakeRequests());
+        assertTrue(access.isTrialPermanentlyExpired());
+        verify(organizationService).markTrialPermanentlyExpired(1L);
+        verify(usageLogRepository, times(1)).countByOrganizationIdAndTimestampBetween(eq(1L), any(), any());
+    }
+
+    @Test
+    void testOnEntitlementChanged_ShouldReloadOrganization() {
+        when(organizationRepository.findById(1L)).thenReturn(Optional.of(organization));
+
+        assertTrue(entitlementService.getEntitlement(1L).isEnabled());
+        organization.setEnabled(false);
+        entitlementService.onEntitlementChanged(OrganizationEntitlementChangedEvent.of(1L));
+
+        assertFalse(entitlementService.getEntitlement(1L).isEnabled());
+        verify(organizationRepository, times(2)).findById(1L);
+        // Invalidation diffusée aux autres instances
+        verify(cacheInvalidationBus).broadcast(CacheInvalidation.of(CacheInvalidationBus.ORGANIZATION_ENTITLEMENTS, 1L));
+    }
+}
@@ -1,5 +1,7 @@
 package com.muhend.backend.organization.service;
 
+import com.muhend.backend.organization.dto.CreateOrganizationRequest;
+import com.muhend.backend.organization.event.OrganizationMembershipChangedEvent;
 import com.muhend.backend.organization.exception.QuotaExceededException;
 import com.muhend.backend.organization.model.Organization;
 import com.muhend.backend.organization.repository.OrganizationRepository;
@@ -11,6 +13,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -35,6 +38,9 @@ class OrganizationServiceTest {
     @Mock
     private UsageLogRepository usageLogRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private OrganizationService organizationService;
 
@@ -172,5 +178,24 @@ class OrganizationServiceTest {
         verify(organizationRepository).findById(1L);
         verify(organizationRepository, never()).save(any());
     }
-}
 
+    @Test
+    void testCreateOrganization_WithOwner_ShouldInvalidateOwnerMembership() {
+        CreateOrganizationRequest request = new CreateOrganizationRequest();
+        request.setName("Acme");
+        request.setEmail("contact@acme.test");
+        request.setAddress("1 rue de la Paix");
+        request.setCountry("fr");
+        request.setPhone("0102030405");
+        request.setKeycloakUserId("owner-1");
+        when(organizationRepository.save(any(Organization.class))).thenAnswer(invocation -> {
+            Organization saved = invocation.getArgument(0);
+            saved.setId(7L);
+            return saved;
+        });
+
+        organizationService.createOrganization(request);
+
+        verify(eventPublisher).publishEvent(OrganizationMembershipChangedEvent.ofUser("owner-1"));
+    }
+}
@@ -0,0 +1,269 @@
+package com.muhend.backend.payment.service;
+
+import com.muhend.backend.organization.repository.OrganizationRepository;
+import com.muhend.backend.payment.config.StripeConfig;
+import com.muhend.backend.payment.model.StripeSyncState;
+import com.muhend.backend.payment.model.Subscription;
+import com.muhend.backend.payment.repository.StripeSyncStateRepository;
+import com.muhend.backend.payment.repository.SubscriptionRepository;
+import com.stripe.Stripe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour StripeSyncService, contre une API Stripe simulée localement
+ */
+@ExtendWith(MockitoExtension.class)
+class StripeSyncServiceTest {
+
+    private static final int SUBSCRIPTION_COUNT = 250;
+
+    @Mock
+    private StripeConfig stripeConfig;
+
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+
+    @Mock
+    private OrganizationRepository organizationRepository;
+
+    @Mock
+    private StripeSyncStateRepository stripeSyncStateRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private HttpServer stripeStub;
+    private final List<Map<String, String>> eventQueries = new ArrayList<>();
+    private String eventsPage = "{\"object\":\"list\",\"data\":[],\"has_more\":false}";
+
+    private StripeSyncService stripeSyncService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stripeStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stripeStub.createContext("/v1/subscriptions", this::listSubscriptions);
+        stripeStub.createContext("/v1/events", exchange -> {
+            eventQueries.add(query(exchange));
+            respond(exchange, eventsPage);
+        });
+        stripeStub.start();
+        Stripe.overrideApiBase("http://localhost:" + stripeStub.getAddress().getPort());
+
+        when(stripeConfig.isConfigured()).thenReturn(true);
+        Stripe.apiKey = "sk_test_local";
+        stripeSyncService = new StripeSyncService(stripeConfig, subscriptionRepository, organizationRepository,
+                stripeSyncStateRepository, transactionManager);
+        ReflectionTestUtils.setField(stripeSyncService, "batchSize", 100);
+        ReflectionTestUtils.setField(stripeSyncService, "overlapSeconds", 300L);
+        lenient().when(subscriptionRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+        stripeStub.stop(0);
+    }
+
+    @Test
+    void testSyncAllSubscriptions_NoWatermark_ShouldReadEveryPage() throws Exception {
+        when(stripeSyncStateRepository.findById(StripeSyncService.SUBSCRIPTIONS_SYNC)).thenReturn(Optional.empty());
+        long before = Instant.now().getEpochSecond();
+
+        int synced = stripeSyncService.syncAllSubscriptions();
+
+        assertEquals(SUBSCRIPTION_COUNT, synced);
+        // Une transaction par lot de 100
+        verify(subscriptionRepository, times(3)).saveAll(anyList());
+        verify(subscriptionRepository, times(3)).findByPaymentProviderSubscriptionIdIn(anyCollection());
+        assertTrue(eventQueries.isEmpty());
+
+        ArgumentCaptor<StripeSyncState> state = ArgumentCaptor.forClass(StripeSyncState.class);
+        verify(stripeSyncStateRepository).save(state.capture());
+        assertTrue(state.getValue().getWatermark() >= before);
+        assertNotNull(state.getValue().getLastFullSyncAt());
+        assertEquals(SUBSCRIPTION_COUNT, state.getValue().getLastSyncedCount());
+    }
+
+    @Test
+    void testSyncAllSubscriptions_RecentWatermark_ShouldApplyLatestStateOfChangedSubscriptions() throws Exception {
+        long watermark = Instant.now().getEpochSecond() - 3600;
+        StripeSyncState state = new StripeSyncState(StripeSyncService.SUBSCRIPTIONS_SYNC, watermark, null, null, 0);
+        when(stripeSyncStateRepository.findById(StripeSyncService.SUBSCRIPTIONS_SYNC)).thenReturn(Optional.of(state));
+        // Du plus récent au plus ancien, comme l'API Stripe
+        eventsPage = "{\"object\":\"list\",\"has_more\":false,\"data\":[" +
+                subscriptionEvent("evt_3", "customer.subscription.deleted", subscription(1, "canceled")) + "," +
+                subscriptionEvent("evt_2", "customer.subscription.created", subscription(2, "active")) + "," +
+                subscriptionEvent("evt_1", "customer.subscription.updated", subscription(1, "active")) + "]}";
+
+        int synced = stripeSyncService.syncAllSubscriptions();
+
+        assertEquals(2, synced);
+        assertEquals(String.valueOf(watermark - 300), eventQueries.get(0).get("created[gte]"));
+        assertEquals("customer.subscription.*", eventQueries.get(0).get("type"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Subscription>> saved = ArgumentCaptor.forClass(List.class);
+        verify(subscriptionRepository).saveAll(saved.capture());
+        Map<String, Subscription.SubscriptionStatus> statuses = saved.getValue().stream()
+                .collect(Collectors.toMap(Subscription::getPaymentProviderSubscriptionId, Subscription::getStatus));
+        assertEquals(Subscription.SubscriptionStatus.CANCELED, statuses.get("sub_1"));
+        assertEquals(Subscription.SubscriptionStatus.ACTIVE, statuses.get("sub_2"));
+
+        verify(stripeSyncStateRepository).save(state);
+        assertTrue(state.getWatermark() > watermark);
+        assertNull(state.getLastFullSyncAt());
+    }
+
+    @Test
+    void testSyncAllSubscriptions_EventsWithOtherApiVersion_ShouldStillApplyThem() throws Exception {
+        long watermark = Instant.now().getEpochSecond() - 3600;
+        StripeSyncState state = new StripeSyncState(StripeSyncService.SUBSCRIPTIONS_SYNC, watermark, null, null, 0);
+        when(stripeSyncStateRepository.findById(StripeSyncService.SUBSCRIPTIONS_SYNC)).thenReturn(Optional.of(state));
+        // Événements émis avec la version d'API du compte, antérieure à celle du SDK
+        eventsPage = "{\"object\":\"list\",\"has_more\":false,\"data\":[" +
+                subscriptionEvent("evt_2", "customer.subscription.updated", "2020-08-27", subscription(3, "past_due")) + "," +
+                subscriptionEvent("evt_1", "customer.subscription.created", "2020-08-27", subscription(4, "active")) + "]}";
+
+        int synced = stripeSyncService.syncAllSubscriptions();
+
+        assertEquals(2, synced);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Subscription>> saved = ArgumentCaptor.forClass(List.class);
+        verify(subscriptionRepository).saveAll(saved.capture());
+        Map<String, Subscription.SubscriptionStatus> statuses = saved.getValue().stream()
+                .collect(Collectors.toMap(Subscription::getPaymentProviderSubscriptionId, Subscription::getStatus));
+        assertEquals(Subscription.SubscriptionStatus.PAST_DUE, statuses.get("sub_3"));
+        assertEquals(Subscription.SubscriptionStatus.ACTIVE, statuses.get("sub_4"));
+        assertTrue(state.getWatermark() > watermark);
+    }
+
+    @Test
+    void testSyncAllSubscriptions_UnreadableEvent_ShouldFailWithoutAdvancingWatermark() {
+        long watermark = Instant.now().getEpochSecond() - 3600;
+        StripeSyncState state = new StripeSyncState(StripeSyncService.SUBSCRIPTIONS_SYNC, watermark, null, null, 0);
+        when(stripeSyncStateRepository.findById(StripeSyncService.SUBSCRIPTIONS_SYNC)).thenReturn(Optional.of(state));
+        eventsPage = "{\"object\":\"list\",\"has_more\":false,\"data\":[" +
+                subscriptionEvent("evt_1", "customer.subscription.updated", "2020-08-27", "{\"object\":\"subscription\"}") + "]}";
+
+        assertThrows(IllegalStateException.class, () -> stripeSyncService.syncAllSubscriptions());
+
+        assertEquals(watermark, state.getWatermark());
+        verify(stripeSyncStateRepository, never()).save(any());
+    }
+
+    @Test
+    void testSyncAllSubscriptions_SubscriptionFailure_ShouldSaveOthersWithoutAdvancingWatermark() throws Exception {
+        long watermark = Instant.now().getEpochSecond() - 3600;
+        StripeSyncState state = new StripeSyncState(StripeSyncService.SUBSCRIPTIONS_SYNC, watermark, null, null, 0);
+        when(stripeSyncStateRepository.findById(StripeSyncService.SUBSCRIPTIONS_SYNC)).thenReturn(Optional.of(state));
+        // Métadonnées invalides : l'abonnement ne peut pas être rattaché à une organisation
+        String invalid = subscription(6, "active").replace("\"organization_id\":\"6\"", "\"organization_id\":\"org-6\"");
+        eventsPage = "{\"object\":\"list\",\"has_more\":false,\"data\":[" +
+                subscriptionEvent("evt_2", "customer.subscription.updated", invalid) + "," +
+                subscriptionEvent("evt_1", "customer.subscription.created", subscription(5, "active")) + "]}";
+
+        int synced = stripeSyncService.syncAllSubscriptions();
+
+        assertEquals(1, synced);
+        // Point de reprise conservé : l'abonnement en échec sera relu à la prochaine synchronisation
+        verify(stripeSyncStateRepository).save(state);
+        assertEquals(watermark, state.getWatermark());
+        assertNotNull(state.getLastRunAt());
+        assertEquals(1, state.getLastSyncedCount());
+    }
+
+    @Test
+    void testSyncAllSubscriptions_WatermarkBeyondEventRetention_ShouldRunFullSync() throws Exception {
+        long watermark = Instant.now().getEpochSecond() - 40L * 24 * 3600;
+        StripeSyncState state = new StripeSyncState(StripeSyncService.SUBSCRIPTIONS_SYNC, watermark, null, null, 0);
+        when(stripeSyncStateRepository.findById(StripeSyncService.SUBSCRIPTIONS_SYNC)).thenReturn(Optional.of(state));
+
+        assertEquals(SUBSCRIPTION_COUNT, stripeSyncService.syncAllSubscriptions());
+
+        assertTrue(eventQueries.isEmpty());
+        assertNotNull(state.getLastFullSyncAt());
+    }
+
+    /**
+     * Liste paginée des abonnements (100 par page, curseur starting_after)
+     */
+    private void listSubscriptions(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        int limit = Integer.parseInt(query.getOrDefault("limit", "10"));
+        int first = query.containsKey("starting_after")
+                ? Integer.parseInt(query.get("starting_after").substring("sub_".length())) + 1
+                : 1;
+        int last = Math.min(SUBSCRIPTION_COUNT, first + limit - 1);
+        StringBuilder data = new StringBuilder();
+        for (int i = first; i <= last; i++) {
+            data.append(i > first ? "," : "").append(subscription(i, "active"));
+        }
+        respond(exchange, "{\"object\":\"list\",\"url\":\"/v1/subscriptions\",\"has_more\":" + (last < SUBSCRIPTION_COUNT) +
+                ",\"data\":[" + data + "]}");
+    }
+
+    private static String subscription(int i, String status) {
+        return "{\"id\":\"sub_" + i + "\",\"object\":\"subscription\",\"status\":\"" + status + "\"," +
+               "\"customer\":\"cus_" + i + "\",\"current_period_start\":1700000000,\"current_period_end\":1702592000," +
+               "\"cancel_at_period_end\":false,\"metadata\":{\"organization_id\":\"" + i + "\",\"pricing_plan_id\":\"1\"}}";
+    }
+
+    private static String subscriptionEvent(String id, String type, String subscription) {
+        return subscriptionEvent(id, type, Stripe.API_VERSION, subscription);
+    }
+
+    private static String subscriptionEvent(String id, String type, String apiVersion, String subscription) {
+        return "{\"id\":\"" + id + "\",\"object\":\"event\",\"api_version\":\"" + apiVersion + "\"," +
+               "\"created\":1700000000,\"type\":\"" + type + "\",\"data\":{\"object\":" + subscription + "}}";
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery == null) {
+            return Map.of();
+        }
+        return Arrays.stream(rawQuery.split("&"))
+                .map(param -> param.split("=", 2))
+                .collect(Collectors.toMap(
+                        param -> URLDecoder.decode(param[0], StandardCharsets.UTF_8),
+                        param -> param.length > 1 ? URLDecoder.decode(param[1], StandardCharsets.UTF_8) : "",
+                        (a, b) -> b, LinkedHashMap::new));
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.muhend.backend.payment.service;
+
+import com.muhend.backend.payment.model.StripeWebhookEvent;
+import com.muhend.backend.payment.repository.StripeWebhookEventRepository;
+import com.stripe.model.Event;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour StripeWebhookDispatcher
+ */
+@ExtendWith(MockitoExtension.class)
+class StripeWebhookDispatcherTest {
+
+    @Mock
+    private StripeWebhookEventRepository stripeWebhookEventRepository;
+
+    @Mock
+    private StripeWebhookEventHandler stripeWebhookEventHandler;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StripeWebhookDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new StripeWebhookDispatcher(stripeWebhookEventRepository, stripeWebhookEventHandler, transactionManager, 2);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 30_000L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 3_600_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testProcess_ShouldHandleEventAndMarkItProcessed() {
+        when(stripeWebhookEventRepository.markProcessed(eq(10L), eq(1), any(LocalDateTime.class))).thenReturn(1);
+
+        dispatcher.process(webhookEvent(1));
+
+        ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
+        verify(stripeWebhookEventHandler).handle(captor.capture());
+        assertEquals("evt_1", captor.getValue().getId());
+        assertEquals("invoice.payment_succeeded", captor.getValue().getType());
+        verify(stripeWebhookEventRepository, never()).completeAttempt(anyLong(), anyInt(), anyString(), any(), any());
+    }
+
+    @Test
+    void testProcess_LeaseExpiredAndEventReclaimed_ShouldRollBackWithoutRecordingAnything() {
+        // Tentative 1 dépassant son bail : l'événement a été repris (tentative 2) pendant le traitement
+        when(stripeWebhookEventRepository.markProcessed(eq(10L), eq(1), any(LocalDateTime.class))).thenReturn(0);
+
+        dispatcher.process(webhookEvent(1));
+
+        verify(stripeWebhookEventHandler).handle(any(Event.class));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(stripeWebhookEventRepository, never()).completeAttempt(anyLong(), anyInt(), anyString(), any(), any());
+    }
+
+    @Test
+    void testDispatch_ShouldProcessOnCoordinatorThread() {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(stripeWebhookEventRepository.claimBatch(any(LocalDateTime.class), any(LocalDateTime.class), anyInt()))
+                .thenAnswer(invocation -> {
+                    threads.add(Thread.currentThread().getName());
+                    return List.of();
+                });
+
+        dispatcher.dispatch();
+
+        verify(stripeWebhookEventRepository, timeout(5000)).claimBatch(any(LocalDateTime.class), any(LocalDateTime.class), anyInt());
+        assertEquals(List.of("stripe-webhook"), threads);
+    }
+
+    @Test
+    void testProcess_HandlerFailure_ShouldRetryWithBackoff() {
+        doThrow(new IllegalStateException("Base indisponible")).when(stripeWebhookEventHandler).handle(any(Event.class));
+        StripeWebhookEvent webhookEvent = webhookEvent(2);
+        LocalDateTime before = LocalDateTime.now();
+
+        dispatcher.process(webhookEvent);
+
+        verify(stripeWebhookEventRepository, never()).markProcessed(anyLong(), anyInt(), any());
+        verify(stripeWebhookEventRepository).completeAttempt(eq(10L), eq(2), eq("PENDING"), eq("Base indisponible"),
+                eq(webhookEvent.getNextAttemptAt()));
+        assertEquals(StripeWebhookEvent.Status.PENDING, webhookEvent.getStatus());
+        assertEquals("Base indisponible", webhookEvent.getLastError());
+        // 2e tentative : délai doublé (1 min)
+        assertFalse(webhookEvent.getNextAttemptAt().isBefore(before.plusMinutes(1)));
+    }
+
+    @Test
+    void testProcess_MaxAttemptsReached_ShouldMoveEventToDeadLetter() {
+        doThrow(new IllegalStateException("Erreur")).when(stripeWebhookEventHandler).handle(any(Event.class));
+        StripeWebhookEvent webhookEvent = webhookEvent(3);
+
+        dispatcher.process(webhookEvent);
+
+        assertEquals(StripeWebhookEvent.Status.FAILED, webhookEvent.getStatus());
+        assertNull(webhookEvent.getLockedUntil());
+        verify(stripeWebhookEventRepository).completeAttempt(eq(10L), eq(3), eq("FAILED"), eq("Erreur"), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testBackoff_ShouldDoubleUntilMaximum() {
+        assertEquals(30_000L, dispatcher.backoffMs(1));
+        assertEquals(60_000L, dispatcher.backoffMs(2));
+        assertEquals(3_600_000L, dispatcher.backoffMs(20));
+    }
+
+    private static StripeWebhookEvent webhookEvent(int attempts) {
+        StripeWebhookEvent webhookEvent = new StripeWebhookEvent();
+        webhookEvent.setId(10L);
+        webhookEvent.setEventId("evt_1");
+        webhookEvent.setEventType("invoice.payment_succeeded");
+        webhookEvent.setCustomerId("cus_42");
+        webhookEvent.setPayload("{\"id\":\"evt_1\",\"object\":\"event\",\"created\":1700000000," +
+                "\"type\":\"invoice.payment_succeeded\",\"data\":{\"object\":{\"id\":\"in_1\",\"object\":\"invoice\",\"customer\":\"cus_42\"}}}");
+        webhookEvent.setStatus(StripeWebhookEvent.Status.PROCESSING);
+        webhookEvent.setAttempts(attempts);
+        webhookEvent.setNextAttemptAt(LocalDateTime.now());
+        webhookEvent.setLockedUntil(LocalDateTime.now().plusMinutes(5));
+        webhookEvent.setStripeCreatedAt(LocalDateTime.now());
+        webhookEvent.setReceivedAt(LocalDateTime.now());
+        return webhookEvent;
+    }
+}
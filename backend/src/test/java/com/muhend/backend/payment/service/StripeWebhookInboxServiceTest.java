@@ -0,0 +1,112 @@
+package com.muhend.backend.payment.service;
+
+import com.muhend.backend.payment.config.StripeConfig;
+import com.muhend.backend.payment.repository.StripeWebhookEventRepository;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.net.Webhook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour StripeWebhookInboxService : les webhooks sont signés localement puis rejoués,
+ * comme le ferait Stripe en cas de traitement lent
+ */
+@ExtendWith(MockitoExtension.class)
+class StripeWebhookInboxServiceTest {
+
+    private static final String WEBHOOK_SECRET = "whsec_test";
+
+    @Mock
+    private StripeConfig stripeConfig;
+
+    @Mock
+    private StripeWebhookEventRepository stripeWebhookEventRepository;
+
+    @Mock
+    private StripeWebhookDispatcher stripeWebhookDispatcher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private StripeWebhookInboxService inboxService;
+
+    @BeforeEach
+    void setUp() {
+        inboxService = new StripeWebhookInboxService(stripeConfig, stripeWebhookEventRepository,
+                stripeWebhookDispatcher, transactionManager);
+        lenient().when(stripeConfig.isConfigured()).thenReturn(true);
+        lenient().when(stripeConfig.getWebhookSecret()).thenReturn(WEBHOOK_SECRET);
+
+        // Contrainte d'unicité sur event_id, comme en base
+        Set<String> storedEventIds = ConcurrentHashMap.newKeySet();
+        lenient().when(stripeWebhookEventRepository.insertIfAbsent(anyString(), anyString(), any(), anyString(),
+                any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> storedEventIds.add(invocation.getArgument(0)) ? 1 : 0);
+    }
+
+    @Test
+    void testReceive_ReplayedEvent_ShouldBeStoredOnce() throws Exception {
+        String payload = eventPayload("evt_1", "invoice.payment_succeeded", "{\"id\":\"in_1\",\"object\":\"invoice\",\"customer\":\"cus_42\"}");
+
+        assertTrue(inboxService.receive(payload, sign(payload)));
+        assertFalse(inboxService.receive(payload, sign(payload)));
+        assertFalse(inboxService.receive(payload, sign(payload)));
+
+        verify(stripeWebhookEventRepository, times(3)).insertIfAbsent(eq("evt_1"), eq("invoice.payment_succeeded"),
+                eq("cus_42"), eq(payload), any(LocalDateTime.class), any(LocalDateTime.class));
+        // Seul le premier envoi déclenche le traitement
+        verify(stripeWebhookDispatcher, times(1)).trigger();
+    }
+
+    @Test
+    void testReceive_InvalidSignature_ShouldNotStoreEvent() {
+        String payload = eventPayload("evt_2", "invoice.payment_failed", "{\"id\":\"in_2\",\"object\":\"invoice\"}");
+
+        assertThrows(SignatureVerificationException.class,
+                () -> inboxService.receive(payload, "t=" + Webhook.Util.getTimeNow() + ",v1=invalid"));
+
+        verifyNoInteractions(stripeWebhookEventRepository, stripeWebhookDispatcher);
+    }
+
+    @Test
+    void testReceive_WebhookSecretMissing_ShouldFail() {
+        when(stripeConfig.getWebhookSecret()).thenReturn("");
+
+        assertThrows(IllegalStateException.class, () -> inboxService.receive("{}", "t=1,v1=x"));
+    }
+
+    @Test
+    void testReceive_CustomerEvent_ShouldUseCustomerIdForOrdering() throws Exception {
+        String payload = eventPayload("evt_3", "customer.updated", "{\"id\":\"cus_7\",\"object\":\"customer\"}");
+
+        inboxService.receive(payload, sign(payload));
+
+        verify(stripeWebhookEventRepository).insertIfAbsent(eq("evt_3"), eq("customer.updated"), eq("cus_7"),
+                eq(payload), any(LocalDateTime.class), any(LocalDateTime.class));
+    }
+
+    private static String eventPayload(String eventId, String type, String object) {
+        return "{\"id\":\"" + eventId + "\",\"object\":\"event\",\"api_version\":\"2024-06-20\",\"created\":1700000000," +
+               "\"type\":\"" + type + "\",\"data\":{\"object\":" + object + "}}";
+    }
+
+    /**
+     * En-tête Stripe-Signature calculé comme le fait Stripe
+     */
+    private static String sign(String payload) throws Exception {
+        long timestamp = Webhook.Util.getTimeNow();
+        return "t=" + timestamp + ",v1=" + Webhook.Util.computeHmacSha256(WEBHOOK_SECRET, timestamp + "." + payload);
+    }
+}
@@ -0,0 +1,128 @@
+package com.muhend.backend.pricing.service;
+
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.market.model.MarketProfile;
+import com.muhend.backend.market.repository.MarketProfileRepository;
+import com.muhend.backend.pricing.dto.PricingCatalog;
+import com.muhend.backend.pricing.dto.PricingPlanDto;
+import com.muhend.backend.pricing.event.PricingCatalogChangedEvent;
+import com.muhend.backend.pricing.model.PricingPlan;
+import com.muhend.backend.pricing.repository.PricingPlanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour PricingCatalogService et l'instantané PricingCatalog
+ */
+@ExtendWith(MockitoExtension.class)
+class PricingCatalogServiceTest {
+
+    @Mock
+    private PricingPlanRepository pricingPlanRepository;
+
+    @Mock
+    private MarketProfileRepository marketProfileRepository;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    private final List<PricingPlan> plans = new ArrayList<>();
+
+    private PricingCatalogService catalogService;
+
+    @BeforeEach
+    void setUp() {
+        catalogService = new PricingCatalogService(pricingPlanRepository, marketProfileRepository, cacheInvalidationBus);
+        ReflectionTestUtils.setField(catalogService, "refreshSeconds", 900L);
+        plans.add(plan(1L, "Essai gratuit", "DEFAULT", BigDecimal.ZERO, null, 7, true, 0));
+        plans.add(plan(2L, "Pay-per-Request", "DEFAULT", null, new BigDecimal("0.05"), null, true, 1));
+        plans.add(plan(3L, "Starter", "DEFAULT", new BigDecimal("19.99"), null, null, true, 2));
+        plans.add(plan(4L, "Starter DZ", "DZ", new BigDecimal("2500"), null, null, true, 2));
+        plans.add(plan(5L, "Ancien plan", "DEFAULT", new BigDecimal("9.99"), null, null, false, 3));
+        lenient().when(pricingPlanRepository.findAllByOrderByDisplayOrderAsc()).thenAnswer(invocation -> List.copyOf(plans));
+        lenient().when(marketProfileRepository.findAll()).thenReturn(List.of(marketProfile(1L, "DEFAULT", "FR"), marketProfile(2L, "DZ", "DZ")));
+    }
+
+    @Test
+    void testGetCatalog_ShouldIndexPlansAndLoadOnce() {
+        PricingCatalog catalog = catalogService.getCatalog();
+
+        assertEquals(List.of(1L, 2L, 3L), catalog.getActivePlans("DEFAULT").stream().map(PricingPlanDto::getId).toList());
+        assertEquals(List.of(4L), catalog.getActivePlans(" DZ ").stream().map(PricingPlanDto::getId).toList());
+        assertEquals(4, catalog.getActivePlans(null).size());
+        assertEquals(List.of(2L), catalog.getActivePlans("DEFAULT", PricingCatalog.PlanType.PAY_PER_REQUEST)
+                .stream().map(PricingPlanDto::getId).toList());
+        assertEquals(PricingCatalog.PlanType.TRIAL, PricingCatalog.planType(catalog.findPlan(1L).orElseThrow()));
+        assertTrue(catalog.findPlan(5L).isPresent());
+        assertEquals("DZ", catalog.findMarketProfileByCountryCode("DZ").orElseThrow().getMarketVersion());
+
+        assertSame(catalog, catalogService.getCatalog());
+        verify(pricingPlanRepository, times(1)).findAllByOrderByDisplayOrderAsc();
+    }
+
+    @Test
+    void testGetCatalog_ReturnedPlansAreCopies() {
+        PricingCatalog catalog = catalogService.getCatalog();
+
+        catalog.findPlan(3L).orElseThrow().setName("Modifié");
+        catalog.getActivePlans("DEFAULT").get(0).setIsActive(false);
+
+        assertEquals("Starter", catalog.findPlan(3L).orElseThrow().getName());
+        assertTrue(catalog.findPlan(1L).orElseThrow().getIsActive());
+    }
+
+    @Test
+    void testOnCatalogChanged_ShouldReloadWithNewVersionAndBroadcast() {
+        PricingCatalog before = catalogService.getCatalog();
+        plans.get(2).setPricePerMonth(new BigDecimal("24.99"));
+
+        catalogService.onCatalogChanged(PricingCatalogChangedEvent.of("test"));
+        PricingCatalog after = catalogService.getCatalog();
+
+        assertNotEquals(before.getETag(), after.getETag());
+        assertEquals(new BigDecimal("24.99"), after.findPlan(3L).orElseThrow().getPricePerMonth());
+        verify(cacheInvalidationBus).broadcast(argThat(invalidation ->
+                CacheInvalidationBus.PRICING_CATALOG.equals(invalidation.cache()) && invalidation.isAll()));
+
+        // Contenu identique : même version, donc même ETag
+        catalogService.invalidate();
+        assertEquals(after.getETag(), catalogService.getCatalog().getETag());
+    }
+
+    private static PricingPlan plan(Long id, String name, String marketVersion, BigDecimal pricePerMonth,
+                                    BigDecimal pricePerRequest, Integer trialPeriodDays, boolean active, int displayOrder) {
+        PricingPlan plan = new PricingPlan();
+        plan.setId(id);
+        plan.setName(name);
+        plan.setMarketVersion(marketVersion);
+        plan.setPricePerMonth(pricePerMonth);
+        plan.setPricePerRequest(pricePerRequest);
+        plan.setTrialPeriodDays(trialPeriodDays);
+        plan.setIsActive(active);
+        plan.setIsCustom(false);
+        plan.setDisplayOrder(displayOrder);
+        return plan;
+    }
+
+    private static MarketProfile marketProfile(Long id, String marketVersion, String countryCode) {
+        MarketProfile profile = new MarketProfile();
+        profile.setId(id);
+        profile.setMarketVersion(marketVersion);
+        profile.setCountryCodeIsoAlpha2(countryCode);
+        profile.setIsActive(true);
+        profile.setDisplayOrder(id.intValue());
+        return profile;
+    }
+}
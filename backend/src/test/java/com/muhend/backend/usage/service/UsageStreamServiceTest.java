@@ -0,0 +1,108 @@
+package com.muhend.backend.usage.service;
+
+import com.muhend.backend.cache.dto.CacheInvalidation;
+import com.muhend.backend.cache.service.CacheInvalidationBus;
+import com.muhend.backend.organization.dto.OrganizationEntitlement;
+import com.muhend.backend.organization.service.OrganizationEntitlementService;
+import com.muhend.backend.usage.event.UsageRecordedEvent;
+import com.muhend.backend.usage.repository.UsageLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests unitaires pour UsageStreamService : rafraîchissement des abonnés sur un thread dédié,
+ * y compris pour les recherches servies par une autre instance
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UsageStreamServiceTest {
+
+    private static final Long ORGANIZATION_ID = 7L;
+    private static final String USER_ID = "user-1";
+
+    @Mock
+    private UsageLogRepository usageLogRepository;
+
+    @Mock
+    private UsageLogService usageLogService;
+
+    @Mock
+    private OrganizationEntitlementService entitlementService;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    private UsageStreamService usageStreamService;
+
+    @BeforeEach
+    void setUp() {
+        usageStreamService = new UsageStreamService(usageLogRepository, usageLogService, entitlementService, cacheInvalidationBus);
+        ReflectionTestUtils.setField(usageStreamService, "emitterTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(usageStreamService, "minIntervalMs", 0L);
+        ReflectionTestUtils.setField(usageStreamService, "flushIntervalMs", 20L);
+        ReflectionTestUtils.setField(usageStreamService, "heartbeatIntervalMs", 60_000L);
+
+        when(entitlementService.getEntitlement(ORGANIZATION_ID)).thenReturn(OrganizationEntitlement.builder()
+                .organizationId(ORGANIZATION_ID)
+                .planFound(true)
+                .planMonthlyQuota(100)
+                .build());
+        when(usageLogService.getRecentUsageLogs(eq(ORGANIZATION_ID), isNull(), any(LocalDateTime.class), any(LocalDateTime.class), anyInt()))
+                .thenReturn(List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        usageStreamService.shutdown();
+    }
+
+    @Test
+    void testOnUsageRecorded_ShouldBroadcastToOtherInstances() {
+        usageStreamService.onUsageRecorded(new UsageRecordedEvent(ORGANIZATION_ID, USER_ID, "/search", LocalDateTime.now()));
+
+        verify(cacheInvalidationBus).broadcast(
+                new CacheInvalidation(CacheInvalidationBus.USAGE_STREAM, ORGANIZATION_ID + ":" + USER_ID));
+    }
+
+    @Test
+    void testRemoteUsage_ShouldRefreshSubscriberOnDedicatedThread() {
+        usageStreamService.start();
+        ArgumentCaptor<CacheInvalidationBus.Handler> handler = ArgumentCaptor.forClass(CacheInvalidationBus.Handler.class);
+        verify(cacheInvalidationBus).register(eq(CacheInvalidationBus.USAGE_STREAM), handler.capture());
+
+        usageStreamService.subscribe(ORGANIZATION_ID, USER_ID, 5);
+        verify(usageLogRepository, times(1)).countByOrganizationIdAndTimestampBetween(eq(ORGANIZATION_ID), any(), any());
+
+        // Recherche servie par une autre instance
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(usageLogRepository.countByOrganizationIdAndTimestampBetween(eq(ORGANIZATION_ID), any(), any()))
+                .thenAnswer(invocation -> {
+                    threads.add(Thread.currentThread().getName());
+                    return 3L;
+                });
+        handler.getValue().invalidate(ORGANIZATION_ID + ":" + USER_ID);
+
+        verify(usageLogRepository, timeout(5000).times(2)).countByOrganizationIdAndTimestampBetween(eq(ORGANIZATION_ID), any(), any());
+        // Usage personnel recalculé pour l'utilisateur concerné (ouverture + rafraîchissement)
+        verify(usageLogRepository, timeout(5000).times(2))
+                .countByOrganizationIdAndKeycloakUserIdAndTimestampBetween(eq(ORGANIZATION_ID), eq(USER_ID), any(), any());
+        assertEquals(List.of("usage-stream"), threads);
+        verifyNoMoreInteractions(usageLogRepository);
+    }
+}
@@ -33,12 +33,36 @@ export interface InvoiceItem {
   itemType?: string;
 }
 
+export interface InvoicePage {
+  items: Invoice[];
+  nextCursor?: string | null;
+  hasMore: boolean;
+}
+
 export interface GenerateInvoiceRequest {
   organizationId: number;
   periodStart: string;
   periodEnd: string;
 }
 
+export interface BillingJob {
+  id: number;
+  jobType: 'MONTHLY' | 'BIWEEKLY_PAY_PER_REQUEST';
+  periodStart: string;
+  periodEnd: string;
+  status: 'RUNNING' | 'COMPLETED' | 'COMPLETED_WITH_ERRORS';
+  totalItems: number;
+  generatedCount: number;
+  skippedCount: number;
+  failedCount: number;
+  pendingCount: number;
+  startedAt: string;
+  lastCheckpointAt?: string | null;
+  finishedAt?: string | null;
+  running: boolean;
+  organizationsPerSecond: number;
+}
+
 export interface UpdateInvoiceStatusRequest {
   status: 'DRAFT' | 'PENDING' | 'PAID' | 'OVERDUE' | 'CANCELLED';
   notes?: string;
@@ -52,10 +76,15 @@ export class InvoiceService {
   private http = inject(HttpClient);
 
   /**
-   * Récupère les factures de l'utilisateur connecté.
+   * Récupère une page de factures de l'utilisateur connecté (de la plus récente à la plus ancienne).
+   * Passer le nextCursor de la page précédente pour obtenir la suivante.
    */
-  getMyInvoices(): Observable<Invoice[]> {
-    return this.http.get<Invoice[]>(`${this.apiUrl}/my-invoices`);
+  getMyInvoicesPage(cursor?: string | null, limit = 50): Observable<InvoicePage> {
+    let params = new HttpParams().set('limit', limit.toString());
+    if (cursor) {
+      params = params.set('cursor', cursor);
+    }
+    return this.http.get<InvoicePage>(`${this.apiUrl}/my-invoices/page`, { params });
   }
 
   /**
@@ -97,17 +126,18 @@ export class InvoiceService {
   }
 
   /**
-   * Récupère toutes les factures (admin uniquement).
-   */
-  getAllInvoices(): Observable<Invoice[]> {
-    return this.http.get<Invoice[]>(`${this.apiUrl}/admin/all`);
-  }
-
-  /**
-   * Récupère les factures d'une organisation (admin uniquement).
+   * Récupère une page de factures, éventuellement d'une seule organisation (admin uniquement).
+   * Passer le nextCursor de la page précédente pour obtenir la suivante.
    */
-  getInvoicesByOrganization(organizationId: number): Observable<Invoice[]> {
-    return this.http.get<Invoice[]>(`${this.apiUrl}/admin/organization/${organizationId}`);
+  getInvoicesPage(organizationId?: number | null, cursor?: string | null, limit = 100): Observable<InvoicePage> {
+    let params = new HttpParams().set('limit', limit.toString());
+    if (organizationId) {
+      params = params.set('organizationId', organizationId.toString());
+    }
+    if (cursor) {
+      params = params.set('cursor', cursor);
+    }
+    return this.http.get<InvoicePage>(`${this.apiUrl}/admin/page`, { params });
   }
 
   /**
@@ -145,14 +175,21 @@ export class InvoiceService {
   }
 
   /**
-   * Génère les factures mensuelles pour toutes les organisations (admin uniquement).
+   * Lance la génération des factures mensuelles pour toutes les organisations (admin uniquement).
+   * Le traitement s'exécute en arrière-plan : suivre son avancement avec getBillingJob().
    */
-  generateAllMonthlyInvoices(year: number, month: number): Observable<{ message: string; count: number; invoices: Invoice[] }> {
+  generateAllMonthlyInvoices(year: number, month: number): Observable<BillingJob> {
     let params = new HttpParams();
     params = params.set('year', year.toString());
     params = params.set('month', month.toString());
-    return this.http.post<{ message: string; count: number; invoices: Invoice[] }>(
-      `${this.apiUrl}/admin/generate-all-monthly`, null, { params });
+    return this.http.post<BillingJob>(`${this.apiUrl}/admin/generate-all-monthly`, null, { params });
+  }
+
+  /**
+   * Récupère l'avancement d'un traitement de facturation en masse (admin uniquement).
+   */
+  getBillingJob(id: number): Observable<BillingJob> {
+    return this.http.get<BillingJob>(`${this.apiUrl}/admin/billing-jobs/${id}`);
   }
 
   /**
@@ -1,10 +1,11 @@
-import { Component, OnInit, inject } from '@angular/core';
+import { Component, OnInit, OnDestroy, inject } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
 import { Router, RouterModule } from '@angular/router';
-import { InvoiceService, Invoice, GenerateInvoiceRequest, UpdateInvoiceStatusRequest } from '../../../core/services/invoice.service';
+import { InvoiceService, Invoice, GenerateInvoiceRequest, UpdateInvoiceStatusRequest, BillingJob } from '../../../core/services/invoice.service';
 import { AdminService, Organization } from '../../../core/services/admin.service';
 import { NotificationService } from '../../../core/services/notification.service';
+import { interval, Subscription } from 'rxjs';
 
 @Component({
   selector: 'app-invoices-admin',
@@ -83,6 +84,38 @@ import { NotificationService } from '../../../core/services/notification.service
         </div>
       }
 
+      <!-- Avancement de la génération mensuelle -->
+      @if (billingJob) {
+        <div class="form-card billing-job-progress">
+          <h3>
+            Factures mensuelles du {{ formatDate(billingJob.periodStart) }} au {{ formatDate(billingJob.periodEnd) }}
+            @if (billingJob.status === 'RUNNING') {
+              <span class="job-status running">En cours</span>
+            } @else if (billingJob.status === 'COMPLETED_WITH_ERRORS') {
+              <span class="job-status errors">Terminé avec erreurs</span>
+            } @else {
+              <span class="job-status completed">Terminé</span>
+            }
+          </h3>
+          <div class="progress-bar">
+            <div class="progress-fill" [style.width.%]="getBillingJobProgress()"></div>
+          </div>
+          <p class="job-counts">
+            {{ billingJob.totalItems - billingJob.pendingCount }} / {{ billingJob.totalItems }} organisation(s) traitée(s) :
+            {{ billingJob.generatedCount }} facture(s) générée(s), {{ billingJob.skippedCount }} ignorée(s),
+            {{ billingJob.failedCount }} erreur(s)
+            @if (billingJob.status === 'RUNNING' && billingJob.organizationsPerSecond > 0) {
+              - {{ billingJob.organizationsPerSecond | number:'1.1-1' }} org/s
+            }
+          </p>
+          @if (billingJob.status !== 'RUNNING') {
+            <div class="form-actions">
+              <button type="button" class="btn btn-secondary" (click)="closeBillingJob()">Fermer</button>
+            </div>
+          }
+        </div>
+      }
+
       <!-- Filtres et recherche -->
       <div class="filters-bar">
         <div class="search-group">
@@ -105,7 +138,7 @@ import { NotificationService } from '../../../core/services/notification.service
         </div>
         <div class="filter-group">
           <label for="organizationFilter">Organisation :</label>
-          <select id="organizationFilter" [(ngModel)]="organizationFilter" (change)="applyFilters()" class="filter-select">
+          <select id="organizationFilter" [(ngModel)]="organizationFilter" (change)="loadInvoices()" class="filter-select">
             <option [ngValue]="null">Toutes</option>
             @for (org of organizations; track org.id) {
               <option [ngValue]="org.id">{{ org.name }}</option>
@@ -143,7 +176,7 @@ import { NotificationService } from '../../../core/services/notification.service
       } @else {
         <!-- Informations de pagination -->
         <div class="pagination-info">
-          <p>Affichage de {{ getStartIndex() }} à {{ getEndIndex() }} sur {{ filteredInvoices.length }} facture(s)</p>
+          <p>Affichage de {{ getStartIndex() }} à {{ getEndIndex() }} sur {{ filteredInvoices.length }} facture(s){{ hasMore ? ' chargée(s)' : '' }}</p>
         </div>
 
         <!-- Tableau des factures -->
@@ -212,6 +245,13 @@ import { NotificationService } from '../../../core/services/notification.service
             Suivant →
           </button>
         </div>
+        @if (hasMore) {
+          <div class="pagination">
+            <button class="btn btn-secondary" (click)="loadMoreInvoices()" [disabled]="loadingMore">
+              {{ loadingMore ? 'Chargement...' : 'Charger les factures plus anciennes' }}
+            </button>
+          </div>
+        }
       }
     </div>
   `,
@@ -285,6 +325,44 @@ import { NotificationService } from '../../../core/services/notification.service
       margin-top: 1.5rem;
     }
 
+    .job-status {
+      margin-left: 0.5rem;
+      padding: 0.2rem 0.6rem;
+      border-radius: 4px;
+      font-size: 0.85rem;
+      color: white;
+    }
+
+    .job-status.running {
+      background: #3498db;
+    }
+
+    .job-status.completed {
+      background: #27ae60;
+    }
+
+    .job-status.errors {
+      background: #e67e22;
+    }
+
+    .progress-bar {
+      height: 12px;
+      background: #f5f5f5;
+      border-radius: 6px;
+      overflow: hidden;
+    }
+
+    .progress-fill {
+      height: 100%;
+      background: #3498db;
+      transition: width 0.3s ease;
+    }
+
+    .job-counts {
+      margin-bottom: 0;
+      color: #2c3e50;
+    }
+
     .filters-bar {
       background: #e0e0e0;
       padding: 1.5rem;
@@ -474,7 +552,7 @@ import { NotificationService } from '../../../core/services/notification.service
     }
   `]
 })
-export class InvoicesAdminComponent implements OnInit {
+export class InvoicesAdminComponent implements OnInit, OnDestroy {
   invoiceService = inject(InvoiceService);
   adminService = inject(AdminService);
   notificationService = inject(NotificationService);
@@ -486,7 +564,12 @@ export class InvoicesAdminComponent implements OnInit {
   organizations: Organization[] = [];
   
   loading = false;
+  loadingMore = false;
   error: string | null = null;
+
+  // Pagination par curseur côté serveur
+  nextCursor: string | null = null;
+  hasMore = false;
   
   // Filtres
   searchTerm = '';
@@ -512,6 +595,9 @@ export class InvoicesAdminComponent implements OnInit {
   };
   generateYear = new Date().getFullYear();
   generateMonth = new Date().getMonth() + 1;
+  // Traitement de génération mensuelle suivi (avancement rafraîchi toutes les 2 secondes)
+  billingJob: BillingJob | null = null;
+  private billingJobSubscription?: Subscription;
   currentYear = new Date().getFullYear();
   
   months = [
@@ -535,6 +621,10 @@ export class InvoicesAdminComponent implements OnInit {
     this.loadInvoices();
   }
 
+  ngOnDestroy() {
+    this.stopBillingJobPolling();
+  }
+
   loadOrganizations() {
     this.adminService.getOrganizations().subscribe({
       next: (orgs) => {
@@ -547,20 +637,38 @@ export class InvoicesAdminComponent implements OnInit {
     });
   }
 
+  /**
+   * Charge la première page de factures (les suivantes sont chargées à la demande).
+   */
   loadInvoices() {
+    this.invoices = [];
+    this.nextCursor = null;
+    this.hasMore = false;
     this.loading = true;
     this.error = null;
+    this.fetchPage();
+  }
 
-    this.invoiceService.getAllInvoices().subscribe({
-      next: (invoices) => {
-        this.invoices = invoices || [];
+  loadMoreInvoices() {
+    this.loadingMore = true;
+    this.fetchPage();
+  }
+
+  private fetchPage() {
+    this.invoiceService.getInvoicesPage(this.organizationFilter, this.nextCursor).subscribe({
+      next: (page) => {
+        this.invoices = [...this.invoices, ...(page.items || [])];
+        this.nextCursor = page.nextCursor ?? null;
+        this.hasMore = page.hasMore;
         this.applyFilters();
         this.loading = false;
+        this.loadingMore = false;
       },
       error: (err) => {
         console.error('Erreur lors du chargement des factures:', err);
         this.error = 'Erreur lors du chargement des factures. Veuillez réessayer.';
         this.loading = false;
+        this.loadingMore = false;
         this.notificationService.error('Erreur lors du chargement des factures');
       }
     });
@@ -615,10 +723,16 @@ export class InvoicesAdminComponent implements OnInit {
   resetFilters() {
     this.searchTerm = '';
     this.statusFilter = null;
+    const organizationChanged = this.organizationFilter !== null;
     this.organizationFilter = null;
     this.dateFrom = null;
     this.dateTo = null;
-    this.applyFilters();
+    if (organizationChanged) {
+      // Le filtre par organisation est appliqué côté serveur
+      this.loadInvoices();
+    } else {
+      this.applyFilters();
+    }
   }
 
   updatePagination() {
@@ -667,9 +781,15 @@ export class InvoicesAdminComponent implements OnInit {
   generateAllMonthlyInvoices() {
     this.generatingAll = true;
     this.invoiceService.generateAllMonthlyInvoices(this.generateYear, this.generateMonth).subscribe({
-      next: (result) => {
-        this.notificationService.success(`${result.count} facture(s) générée(s) avec succès`);
-        this.loadInvoices();
+      next: (job) => {
+        this.billingJob = job;
+        if (job.status === 'RUNNING') {
+          this.notificationService.success('Génération des factures lancée en arrière-plan');
+          this.pollBillingJob(job.id);
+        } else {
+          this.notificationService.success(`${job.generatedCount} facture(s) générée(s)`);
+          this.loadInvoices();
+        }
         this.cancelGenerateAll();
         this.generatingAll = false;
       },
@@ -681,6 +801,49 @@ export class InvoicesAdminComponent implements OnInit {
     });
   }
 
+  pollBillingJob(jobId: number) {
+    this.stopBillingJobPolling();
+    this.billingJobSubscription = interval(2000).subscribe(() => {
+      this.invoiceService.getBillingJob(jobId).subscribe({
+        next: (job) => {
+          this.billingJob = job;
+          if (job.status !== 'RUNNING') {
+            this.stopBillingJobPolling();
+            if (job.status === 'COMPLETED_WITH_ERRORS') {
+              this.notificationService.error(`${job.failedCount} organisation(s) en erreur : relancer la génération pour les retraiter`);
+            } else {
+              this.notificationService.success(`${job.generatedCount} facture(s) générée(s)`);
+            }
+            this.loadInvoices();
+          }
+        },
+        error: (err) => {
+          console.error('Erreur lors du suivi de la génération des factures:', err);
+          this.stopBillingJobPolling();
+        }
+      });
+    });
+  }
+
+  stopBillingJobPolling() {
+    if (this.billingJobSubscription) {
+      this.billingJobSubscription.unsubscribe();
+      this.billingJobSubscription = undefined;
+    }
+  }
+
+  closeBillingJob() {
+    this.stopBillingJobPolling();
+    this.billingJob = null;
+  }
+
+  getBillingJobProgress(): number {
+    if (!this.billingJob || this.billingJob.totalItems === 0) {
+      return this.billingJob && this.billingJob.status !== 'RUNNING' ? 100 : 0;
+    }
+    return Math.round(100 * (this.billingJob.totalItems - this.billingJob.pendingCount) / this.billingJob.totalItems);
+  }
+
   cancelGenerate() {
     this.showGenerateForm = false;
     this.generateRequest = {
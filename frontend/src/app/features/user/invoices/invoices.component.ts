@@ -67,7 +67,7 @@ import { NotificationService } from '../../../core/services/notification.service
       } @else {
         <!-- Informations de pagination -->
         <div class="pagination-info">
-          <p>Affichage de {{ getStartIndex() }} à {{ getEndIndex() }} sur {{ filteredInvoices.length }} facture(s)</p>
+          <p>Affichage de {{ getStartIndex() }} à {{ getEndIndex() }} sur {{ filteredInvoices.length }} facture(s){{ hasMore ? ' chargée(s)' : '' }}</p>
         </div>
 
         <div class="invoices-table-wrapper">
@@ -131,6 +131,13 @@ import { NotificationService } from '../../../core/services/notification.service
             Suivant →
           </button>
         </div>
+        @if (hasMore) {
+          <div class="pagination">
+            <button class="btn btn-secondary" (click)="loadMoreInvoices()" [disabled]="loadingMore">
+              {{ loadingMore ? 'Chargement...' : 'Charger les factures plus anciennes' }}
+            </button>
+          </div>
+        }
       }
     </div>
   `,
@@ -382,8 +389,13 @@ export class InvoicesComponent implements OnInit {
   filteredInvoices: Invoice[] = [];
   paginatedInvoices: Invoice[] = [];
   loading = false;
+  loadingMore = false;
   error: string | null = null;
 
+  // Pagination par curseur côté serveur
+  nextCursor: string | null = null;
+  hasMore = false;
+
   // Filtres
   searchTerm = '';
   statusFilter: string | null = null;
@@ -399,20 +411,38 @@ export class InvoicesComponent implements OnInit {
     this.loadInvoices();
   }
 
+  /**
+   * Charge la première page de factures (les suivantes sont chargées à la demande).
+   */
   loadInvoices() {
+    this.invoices = [];
+    this.nextCursor = null;
+    this.hasMore = false;
     this.loading = true;
     this.error = null;
+    this.fetchPage();
+  }
+
+  loadMoreInvoices() {
+    this.loadingMore = true;
+    this.fetchPage();
+  }
 
-    this.invoiceService.getMyInvoices().subscribe({
-      next: (invoices) => {
-        this.invoices = invoices || [];
+  private fetchPage() {
+    this.invoiceService.getMyInvoicesPage(this.nextCursor).subscribe({
+      next: (page) => {
+        this.invoices = [...this.invoices, ...(page.items || [])];
+        this.nextCursor = page.nextCursor ?? null;
+        this.hasMore = page.hasMore;
         this.applyFilters();
         this.loading = false;
+        this.loadingMore = false;
       },
       error: (err) => {
         console.error('Erreur lors du chargement des factures:', err);
         this.error = 'Erreur lors du chargement des factures. Veuillez réessayer.';
         this.loading = false;
+        this.loadingMore = false;
         this.notificationService.error('Erreur lors du chargement des factures');
       }
     });
@@ -0,0 +1,124 @@
+#!/bin/bash
+
+# Mesure du temps de démarrage du backend (time-to-ready) selon le mode de lancement
+# Usage: ./startup-benchmark.sh [nombre-de-lancements] [modes...]
+#   Modes : classic (jar seul), aot (-Dspring.aot.enabled=true), cds (archive CDS), aot-cds (les deux)
+#   Exemple : ./startup-benchmark.sh 5 classic aot-cds
+#
+# Prérequis :
+#   - cd backend && ./mvnw -Pfast-startup package -DskipTests   (produit backend/target/application ;
+#     l'archive CDS y est entraînée en mode AOT avec les profils aot.profiles, prod par défaut)
+#   - profils actifs identiques à ceux du traitement AOT (AOT_PROFILES, prod par défaut) : les conditions
+#     des beans sont figées à la compilation et le démarrage AOT échoue avec d'autres profils
+#   - base de données et Keycloak joignables, variables d'environnement du backend exportées
+#     (POSTGRES_*, KEYCLOAK_*, OPENAI_API_KEY...), comme pour un lancement normal
+#
+# Le temps mesuré va du lancement de la JVM jusqu'à la première réponse 200 de /health/ready
+# (démarrage terminé, traitements de ApplicationReadyEvent compris).
+
+RUNS=${1:-3}
+shift
+MODES=${*:-classic aot cds aot-cds}
+
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd)"
+APP_DIR="${APP_DIR:-$SCRIPT_DIR/../backend/target/application}"
+PORT="${BACKEND_INTERNAL_PORT:-8081}"
+READY_URL="http://localhost:$PORT/health/ready"
+TIMEOUT_SECONDS="${TIMEOUT_SECONDS:-180}"
+LOG_FILE="$(mktemp)"
+export AOT_PROFILES="${AOT_PROFILES:-prod}"
+export SPRING_PROFILES_ACTIVE="${SPRING_PROFILES_ACTIVE:-$AOT_PROFILES}"
+
+# Couleurs
+RED='\033[0;31m'
+GREEN='\033[0;32m'
+YELLOW='\033[1;33m'
+NC='\033[0m'
+
+if [ ! -f "$APP_DIR/backend.jar" ]; then
+    echo -e "${RED}✗${NC} $APP_DIR/backend.jar introuvable. Lancer d'abord : cd backend && ./mvnw -Pfast-startup package -DskipTests"
+    exit 1
+fi
+
+if curl -s -o /dev/null "$READY_URL"; then
+    echo -e "${RED}✗${NC} Le port $PORT est déjà utilisé : arrêter le backend en cours avant la mesure"
+    exit 1
+fi
+
+now_ms() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+java_options() {
+    case "$1" in
+        classic) echo "" ;;
+        aot) echo "-Dspring.aot.enabled=true" ;;
+        cds) echo "-XX:SharedArchiveFile=application.jsa" ;;
+        aot-cds) echo "-XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true" ;;
+        *) return 1 ;;
+    esac
+}
+
+# Lance le backend une fois et affiche le temps jusqu'à /health/ready (en ms), ou rien en cas d'échec
+run_once() {
+    local options=$1
+    local start pid elapsed
+    start=$(now_ms)
+    (cd "$APP_DIR" && exec java $options -jar backend.jar) > "$LOG_FILE" 2>&1 &
+    pid=$!
+    while true; do
+        if [ "$(curl -s -o /dev/null -w '%{http_code}' "$READY_URL")" = "200" ]; then
+            elapsed=$(( $(now_ms) - start ))
+            break
+        fi
+        if ! kill -0 "$pid" 2>/dev/null || [ $(( $(now_ms) - start )) -gt $(( TIMEOUT_SECONDS * 1000 )) ]; then
+            elapsed=""
+            break
+        fi
+        sleep 0.1
+    done
+    kill "$pid" 2>/dev/null
+    wait "$pid" 2>/dev/null
+    echo "$elapsed"
+}
+
+echo "⏱️  Mesure du temps de démarrage du backend"
+echo "========================================="
+echo "Application : $APP_DIR"
+echo "Lancements par mode : $RUNS"
+echo ""
+
+for mode in $MODES; do
+    if ! options=$(java_options "$mode"); then
+        echo -e "${YELLOW}⚠️${NC} Mode inconnu ignoré : $mode"
+        continue
+    fi
+    if [[ "$mode" == *cds ]] && [ ! -f "$APP_DIR/application.jsa" ]; then
+        echo -e "${YELLOW}⚠️${NC} $mode ignoré : archive CDS absente (exécution d'entraînement non faite)"
+        continue
+    fi
+
+    times=()
+    for i in $(seq 1 "$RUNS"); do
+        elapsed=$(run_once "$options")
+        if [ -z "$elapsed" ]; then
+            echo -e "${RED}✗${NC} $mode #$i : pas prêt après ${TIMEOUT_SECONDS} s, dernières lignes du journal :"
+            tail -20 "$LOG_FILE"
+            continue
+        fi
+        started=$(grep -o "Started BackendApplication in [0-9.]* seconds" "$LOG_FILE" | grep -o "[0-9.]*" | head -1)
+        ready=$(grep -o "Application prête en [0-9]* ms" "$LOG_FILE" | grep -o "[0-9]*" | head -1)
+        echo "  $mode #$i : prêt en ${elapsed} ms (contexte démarré en ${started:-?} s, prêt en ${ready:-?} ms selon l'application)"
+        times+=("$elapsed")
+    done
+
+    if [ ${#times[@]} -gt 0 ]; then
+        sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+        sum=0
+        for t in "${sorted[@]}"; do sum=$(( sum + t )); done
+        echo -e "${GREEN}✓${NC} $mode : min ${sorted[0]} ms, médiane ${sorted[$(( ${#sorted[@]} / 2 ))]} ms, moyenne $(( sum / ${#sorted[@]} )) ms"
+    fi
+    echo ""
+done
+
+rm -f "$LOG_FILE"